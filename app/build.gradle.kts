@@ -66,6 +66,11 @@ android {
     kotlinOptions {
         jvmTarget = "1.8"
     }
+
+    // 本地单元测试中android.jar的方法返回默认值，工具类按系统服务不可用处理
+    testOptions {
+        unitTests.isReturnDefaultValues = true
+    }
     
     // 解决JavaMail库中的文件冲突
     packagingOptions {
@@ -93,6 +98,8 @@ dependencies {
     implementation("com.google.android.material:material:1.4.0")
     implementation("androidx.constraintlayout:constraintlayout:2.1.0")
     testImplementation("junit:junit:4.+")
+    // 本地单元测试中模拟上报服务器
+    testImplementation("com.squareup.okhttp3:mockwebserver:4.9.3")
     androidTestImplementation("androidx.test.ext:junit:1.1.3")
     androidTestImplementation("androidx.test.espresso:espresso-core:3.4.0")
     
@@ -8,6 +8,7 @@ import android.util.Log;
 import androidx.work.Configuration;
 import androidx.work.WorkManager;
 
+import com.funshion.funautosend.model.PipelineMetrics;
 import com.funshion.funautosend.util.LogUtil;
 
 /**
@@ -20,6 +21,8 @@ public class FunAutoSendApplication extends Application implements Configuration
     @Override
     public void onCreate() {
         super.onCreate();
+        // 记录进程启动时间，守护进程据此判断从未完成扫描的主进程是否停滞
+        PipelineMetrics.markProcessStart();
         // 初始化日志工具
         LogUtil.init(this);
         LogUtil.setLogEnabled(true);
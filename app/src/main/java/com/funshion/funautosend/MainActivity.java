@@ -7,7 +7,6 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
-import android.os.Handler;
 import android.text.TextUtils;
 import com.funshion.funautosend.util.LogUtil;
 import android.view.View;
@@ -29,6 +28,8 @@ import com.funshion.funautosend.model.SmsMessage;
 import com.funshion.funautosend.service.SmsForwardService;
 import com.funshion.funautosend.ui.MainAdapter;
 import com.funshion.funautosend.util.ApiClient;
+import com.funshion.funautosend.util.ConfigRefreshCoordinator;
+import com.funshion.funautosend.util.ConfigRepository;
 import com.funshion.funautosend.util.CountdownHelper;
 import com.funshion.funautosend.util.EmailHelper;
 import com.funshion.funautosend.util.ForwardedSmsManager;
@@ -39,6 +40,7 @@ import com.funshion.funautosend.util.PermissionHelper;
 import com.funshion.funautosend.util.PreferencesHelper;
 import com.funshion.funautosend.util.SmsHelper;
 import com.funshion.funautosend.util.SmsStorageHelper;
+import com.funshion.funautosend.util.WakeupScheduler;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -105,8 +107,8 @@ public class MainActivity extends Activity {
     // 扫描间隔时间，参考SmsForwardService中的CHECK_INTERVAL常量
     // 这里设置为5分钟，可根据需要调整
     private static final int SMS_SCAN_INTERVAL = 1 * 60 * 1000; // 5分钟，单位：毫秒
-    private Handler smsScanHandler;
-    private Runnable smsScanRunnable;
+    // 注册到WakeupScheduler的定时任务名称
+    private static final String TASK_SMS_SCAN = "界面短信扫描";
     
     /**
      * 扫描所有短信内容
@@ -148,9 +150,14 @@ public class MainActivity extends Activity {
                 }
             }).start();
         } else {
-            // 请求读取短信权限
+            // 请求读取短信权限，定时扫描在WakeupScheduler线程中执行，申请权限需要切换到主线程
             LogUtil.d("MainActivity", "请求读取短信权限");
-            SmsHelper.requestReadSmsPermission(this);
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    SmsHelper.requestReadSmsPermission(MainActivity.this);
+                }
+            });
         }
     }
     
@@ -158,20 +165,14 @@ public class MainActivity extends Activity {
      * 初始化定时扫描短信功能
      */
     private void initSmsAutoScan() {
-        smsScanHandler = new Handler();
-        smsScanRunnable = new Runnable() {
+        // 与服务中的定时任务对齐到同一批唤醒
+        WakeupScheduler.getInstance().register(TASK_SMS_SCAN, SMS_SCAN_INTERVAL, new Runnable() {
             @Override
             public void run() {
                 LogUtil.d("MainActivity", "执行定时短信扫描");
                 scanAllSms();
-                
-                // 安排下一次扫描
-                smsScanHandler.postDelayed(this, SMS_SCAN_INTERVAL);
             }
-        };
-        
-        // 启动定时扫描
-        smsScanHandler.postDelayed(smsScanRunnable, SMS_SCAN_INTERVAL);
+        });
         LogUtil.d("MainActivity", "定时短信扫描功能已初始化，间隔: " + SMS_SCAN_INTERVAL / 1000 + "秒");
     }
     
@@ -179,10 +180,8 @@ public class MainActivity extends Activity {
      * 停止定时扫描短信
      */
     private void stopSmsAutoScan() {
-        if (smsScanHandler != null && smsScanRunnable != null) {
-            smsScanHandler.removeCallbacks(smsScanRunnable);
-            LogUtil.d("MainActivity", "定时短信扫描已停止");
-        }
+        WakeupScheduler.getInstance().unregister(TASK_SMS_SCAN);
+        LogUtil.d("MainActivity", "定时短信扫描已停止");
     }
     
     // 注意：onRequestPermissionsResult方法已在类中其他位置定义，
@@ -421,28 +420,18 @@ public class MainActivity extends Activity {
         
         // 检查是否有网络权限
         if (PermissionHelper.hasPermission(this, android.Manifest.permission.INTERNET)) {
-            // 获取电池电量
-            int batteryPercentage = PermissionHelper.getBatteryLevel(this);
-            
-            // 使用ApiClient执行网络请求，传入电池电量参数
-            ApiClient.fetchApiData(this, batteryPercentage, new ApiClient.ApiCallback() {
+            // 手动刷新忽略刷新间隔限制，后台刷新进行中时直接等待其结果
+            ConfigRefreshCoordinator.getInstance(this).refresh("手动刷新", true, new ApiClient.ConfigCallback() {
                 @Override
-                public void onSuccess(final String result) {
+                public void onSuccess(final ConfigRepository.ConfigSnapshot snapshot) {
                     runOnUiThread(new Runnable() {
                         @Override
                         public void run() {
                             // Toast.makeText(MainActivity.this, "请求成功", Toast.LENGTH_SHORT).show();
-                            LogUtil.d("MainActivity", "接口返回数据: " + result);
+                            LogUtil.d("MainActivity", "接口数据已更新，配置数量: " + snapshot.apiResultList.size());
                             
-                            // 获取已保存的手机号
-                            String savedPhone1 = PreferencesHelper.getPhoneNumber1(MainActivity.this);
-                            String savedPhone2 = PreferencesHelper.getPhoneNumber2(MainActivity.this);
-                            
-                            // 解析接口数据
-                            ApiClient.ParseResult parseResult = ApiClient.parseApiResult(result, savedPhone1, savedPhone2);
-                            
-                            // 更新数据并显示
-                            updateAndShowApiResult(parseResult);
+                            // 更新数据并显示，接口数据已由ConfigRepository解析并保存
+                            updateAndShowApiResult(snapshot);
                             
                             // 确保请求完成后才开始倒计时
 //                            countdownHelper.startCountdown();
@@ -494,14 +483,14 @@ public class MainActivity extends Activity {
     /**
      * 更新并显示API结果
      */
-    private void updateAndShowApiResult(ApiClient.ParseResult parseResult) {
+    private void updateAndShowApiResult(ConfigRepository.ConfigSnapshot snapshot) {
         // 清空现有数据
         apiResultList.clear();
         targetList.clear();
         
         // 添加新数据
-        apiResultList.addAll(parseResult.getApiResultList());
-        targetList.addAll(parseResult.getTargetList());
+        apiResultList.addAll(snapshot.apiResultList);
+        targetList.addAll(snapshot.targetList);
         
         // 更新RecyclerView数据
         updateRecyclerViewData();
@@ -593,6 +582,9 @@ public class MainActivity extends Activity {
     protected void onDestroy() {
         super.onDestroy();
         
+        // 停止定时扫描，WakeupScheduler持有的任务引用着当前Activity
+        stopSmsAutoScan();
+        
         // 停止倒计时
 //        if (countdownHelper != null) {
 //            countdownHelper.stopCountdown();
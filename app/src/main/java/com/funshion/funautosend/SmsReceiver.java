@@ -15,6 +15,7 @@ import com.funshion.funautosend.service.SmsForwardService;
 import com.funshion.funautosend.util.ForwardedSmsManager;
 import com.funshion.funautosend.util.PreferencesHelper;
 import com.funshion.funautosend.util.SmsHelper;
+import com.funshion.funautosend.util.WakeLockManager;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -33,6 +34,8 @@ import java.util.concurrent.TimeUnit;
 public class SmsReceiver extends BroadcastReceiver {
     private static final String TAG = "SmsReceiver";
     private static final String SMS_RECEIVED_ACTION = "android.provider.Telephony.SMS_RECEIVED";
+    // 转发处理持有WakeLock的超时时间
+    private static final long SEND_WAKELOCK_TIMEOUT = 60 * 1000;
     
     private SmsReceivedListener mListener;
     private Intent mLastReceivedIntent; // 保存最后接收到的短信广播意图，用于获取SIM卡信息
@@ -161,6 +164,10 @@ public class SmsReceiver extends BroadcastReceiver {
                 }
         );
         
+        // 转发处理完成前保持CPU唤醒，广播返回后进程仍可能被系统休眠
+        final WakeLockManager.Hold wakeLockHold = WakeLockManager.getInstance(context)
+                .acquire(WakeLockManager.TaskType.SEND, SEND_WAKELOCK_TIMEOUT);
+        
         executor.execute(new Runnable() {
             @Override
             public void run() {
@@ -241,6 +248,7 @@ public class SmsReceiver extends BroadcastReceiver {
                 } finally {
                     // 执行完任务后关闭线程池
                     executor.shutdown();
+                    wakeLockHold.release();
                 }
             }
         });
@@ -7,6 +7,8 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Build;
 import android.os.Bundle;
+import com.funshion.funautosend.util.KeepAliveCostTracker;
+import com.funshion.funautosend.util.KeepAliveManager;
 import com.funshion.funautosend.util.LogUtil;
 import android.view.Gravity;
 import android.view.Window;
@@ -26,6 +28,7 @@ public class OnePixelActivity extends Activity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         LogUtil.d(TAG, "OnePixelActivity onCreate");
+        long cpuBegin = KeepAliveCostTracker.getInstance().begin();
 
         // 注册广播接收器，用于接收关闭Activity的广播
         finishReceiver = new BroadcastReceiver() {
@@ -48,6 +51,8 @@ public class OnePixelActivity extends Activity {
         params.width = 1;
         params.height = 1;
         window.setAttributes(params);
+        
+        KeepAliveCostTracker.getInstance().end(KeepAliveManager.Mechanism.ONE_PIXEL, cpuBegin);
     }
 
     @Override
@@ -88,10 +93,13 @@ public class OnePixelActivity extends Activity {
     }
 
     /**
-     * 启动1像素Activity
+     * 启动1像素Activity，1像素保活已关闭时不启动
      * @param context 上下文
      */
     public static void start(Context context) {
+        if (!KeepAliveManager.getInstance(context).isMechanismEnabled(KeepAliveManager.Mechanism.ONE_PIXEL)) {
+            return;
+        }
         Intent intent = new Intent(context, OnePixelActivity.class);
         intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
         context.startActivity(intent);
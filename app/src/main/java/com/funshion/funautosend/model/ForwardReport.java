@@ -0,0 +1,32 @@
+package com.funshion.funautosend.model;
+
+import java.util.Map;
+
+/**
+ * 一条原短信的转发上报信息
+ * 转发结果（短信或邮件）出来后按这些信息上报；只包含可序列化的数据，
+ * 暂存或延迟发送的转发可以连同上报信息一起持久化，进程重启后仍能上报结果
+ */
+public class ForwardReport {
+    // 转发规则字段（id、workPhone等）
+    public Map<String, String> fields;
+    // 发送者手机号
+    public String senderPhone;
+    // 原短信内容
+    public String content;
+    // 原短信ID
+    public String smsId;
+    // 原短信接收时间
+    public String receiveTime;
+
+    public ForwardReport() {
+    }
+
+    public ForwardReport(Map<String, String> fields, String senderPhone, String content, String smsId, String receiveTime) {
+        this.fields = fields;
+        this.senderPhone = senderPhone;
+        this.content = content;
+        this.smsId = smsId;
+        this.receiveTime = receiveTime;
+    }
+}
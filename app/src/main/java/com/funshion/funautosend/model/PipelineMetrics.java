@@ -0,0 +1,188 @@
+package com.funshion.funautosend.model;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.SystemClock;
+
+import java.io.File;
+
+/**
+ * 转发流程运行状态快照，通过AIDL在主进程和守护进程之间传递
+ */
+public class PipelineMetrics implements Parcelable {
+    // 快照所属进程ID
+    public int pid;
+    // 采集时间
+    public long collectedAt;
+    // 发件箱中待发送的邮件数
+    public int emailQueueDepth;
+    // 积压的上报数据条数
+    public int reportQueueDepth;
+    // 最早一条积压上报数据的等待时间（毫秒）
+    public long oldestReportAgeMs;
+    // 等待发送/送达回执的转发短信数
+    public int forwardPendingCount;
+    // 上次短信扫描完成的时间，0表示还没有扫描过
+    public long lastScanTime;
+    // 上次短信扫描完成时的SystemClock.uptimeMillis()，设备休眠时不增长，用于判断流程是否停滞
+    public long lastScanUptime;
+    // 最近一条送达短信的端到端耗时（毫秒），-1表示还没有
+    public long lastForwardLatencyMs = -1;
+    // 错误计数
+    public long reportDroppedCount;
+    public long emailFailedCount;
+    public long refreshFailureCount;
+    // 堆内存使用情况（字节）
+    public long heapUsedBytes;
+    public long heapMaxBytes;
+    // 进程启动以来使用的CPU时间（毫秒）、当前线程数
+    public long cpuTimeMs;
+    public int threadCount;
+    // 保活相关的唤醒次数，由进程自己填写
+    public long wakeupCount;
+    // 进程启动时的SystemClock.uptimeMillis()，0表示未知；还没有扫描过时用它判断流程是否停滞
+    public long processStartUptime;
+
+    // 当前进程启动时的SystemClock.uptimeMillis()，由Application记录
+    private static volatile long sProcessStartUptime;
+
+    public PipelineMetrics() {
+    }
+
+    protected PipelineMetrics(Parcel in) {
+        pid = in.readInt();
+        collectedAt = in.readLong();
+        emailQueueDepth = in.readInt();
+        reportQueueDepth = in.readInt();
+        oldestReportAgeMs = in.readLong();
+        forwardPendingCount = in.readInt();
+        lastScanTime = in.readLong();
+        lastScanUptime = in.readLong();
+        lastForwardLatencyMs = in.readLong();
+        reportDroppedCount = in.readLong();
+        emailFailedCount = in.readLong();
+        refreshFailureCount = in.readLong();
+        heapUsedBytes = in.readLong();
+        heapMaxBytes = in.readLong();
+        cpuTimeMs = in.readLong();
+        threadCount = in.readInt();
+        wakeupCount = in.readLong();
+        processStartUptime = in.readLong();
+    }
+
+    /**
+     * 记录当前进程的启动时间，在Application.onCreate中调用
+     */
+    public static void markProcessStart() {
+        sProcessStartUptime = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * 创建只包含当前进程基本信息（进程ID、堆内存、CPU时间、线程数）的快照
+     */
+    public static PipelineMetrics forCurrentProcess() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        Runtime runtime = Runtime.getRuntime();
+        metrics.pid = android.os.Process.myPid();
+        metrics.collectedAt = System.currentTimeMillis();
+        metrics.heapUsedBytes = runtime.totalMemory() - runtime.freeMemory();
+        metrics.heapMaxBytes = runtime.maxMemory();
+        metrics.cpuTimeMs = android.os.Process.getElapsedCpuTime();
+        metrics.threadCount = countThreads();
+        metrics.processStartUptime = sProcessStartUptime;
+        return metrics;
+    }
+
+    /**
+     * 统计当前进程的线程数（包括系统创建的线程）
+     */
+    private static int countThreads() {
+        String[] tasks = new File("/proc/self/task").list();
+        return tasks != null ? tasks.length : Thread.activeCount();
+    }
+
+    /**
+     * 距离上次短信扫描完成经过的非休眠时间
+     * @return 时间（毫秒），还没有扫描过时返回-1
+     */
+    public long getScanIdleUptimeMs() {
+        if (lastScanUptime == 0) {
+            return -1;
+        }
+        return SystemClock.uptimeMillis() - lastScanUptime;
+    }
+
+    /**
+     * 转发流程没有进展的非休眠时间，用于判断流程是否停滞
+     * 距离上次短信扫描完成的时间；启动后还没有扫描过时（例如启动阶段卡死）为距离进程启动的时间
+     * @return 时间（毫秒），都未知时返回-1
+     */
+    public long getStallIdleUptimeMs() {
+        return getStallIdleUptimeMs(SystemClock.uptimeMillis());
+    }
+
+    long getStallIdleUptimeMs(long uptimeNow) {
+        if (lastScanUptime != 0) {
+            return uptimeNow - lastScanUptime;
+        }
+        if (processStartUptime != 0) {
+            return uptimeNow - processStartUptime;
+        }
+        return -1;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(pid);
+        dest.writeLong(collectedAt);
+        dest.writeInt(emailQueueDepth);
+        dest.writeInt(reportQueueDepth);
+        dest.writeLong(oldestReportAgeMs);
+        dest.writeInt(forwardPendingCount);
+        dest.writeLong(lastScanTime);
+        dest.writeLong(lastScanUptime);
+        dest.writeLong(lastForwardLatencyMs);
+        dest.writeLong(reportDroppedCount);
+        dest.writeLong(emailFailedCount);
+        dest.writeLong(refreshFailureCount);
+        dest.writeLong(heapUsedBytes);
+        dest.writeLong(heapMaxBytes);
+        dest.writeLong(cpuTimeMs);
+        dest.writeInt(threadCount);
+        dest.writeLong(wakeupCount);
+        dest.writeLong(processStartUptime);
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    public static final Creator<PipelineMetrics> CREATOR = new Creator<PipelineMetrics>() {
+        @Override
+        public PipelineMetrics createFromParcel(Parcel in) {
+            return new PipelineMetrics(in);
+        }
+
+        @Override
+        public PipelineMetrics[] newArray(int size) {
+            return new PipelineMetrics[size];
+        }
+    };
+
+    @Override
+    public String toString() {
+        return "进程: " + pid
+                + ", 邮件待发送: " + emailQueueDepth
+                + ", 上报积压: " + reportQueueDepth + " 条/最早 " + (oldestReportAgeMs / 1000) + " 秒"
+                + ", 待回执短信: " + forwardPendingCount
+                + ", 距上次扫描: " + (lastScanUptime == 0 ? "未扫描" : (getScanIdleUptimeMs() / 1000) + " 秒")
+                + ", 最近转发耗时: " + (lastForwardLatencyMs < 0 ? "无" : lastForwardLatencyMs + "ms")
+                + ", 上报丢弃: " + reportDroppedCount
+                + ", 邮件失败: " + emailFailedCount
+                + ", 刷新失败: " + refreshFailureCount
+                + ", 堆内存: " + (heapUsedBytes / 1024 / 1024) + "/" + (heapMaxBytes / 1024 / 1024) + "MB"
+                + ", CPU: " + cpuTimeMs + "ms"
+                + ", 线程: " + threadCount;
+    }
+}
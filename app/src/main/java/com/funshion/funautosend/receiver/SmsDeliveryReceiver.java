@@ -0,0 +1,91 @@
+package com.funshion.funautosend.receiver;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.telephony.SmsMessage;
+import com.funshion.funautosend.util.LogUtil;
+
+import com.funshion.funautosend.util.ForwardLatencyTracker;
+import com.funshion.funautosend.util.SmsSendIntentFactory;
+
+/**
+ * 短信送达报告广播接收器
+ * 用于监听转发短信是否已送达目标手机，并记录送达耗时
+ */
+public class SmsDeliveryReceiver extends BroadcastReceiver {
+    private static final String TAG = "SmsDeliveryReceiver";
+
+    // 送达报告广播的action
+    public static final String ACTION_SMS_DELIVERED = "SMS_DELIVERED";
+
+    // TP-Status 状态值范围：0x00-0x1F 表示已完成，0x20-0x3F 表示仍在尝试投递，0x40及以上表示失败
+    private static final int STATUS_PENDING_MIN = 0x20;
+    private static final int STATUS_FAILED_MIN = 0x40;
+    // 送达报告中没有PDU或无法解析
+    private static final int STATUS_UNKNOWN = -1;
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (intent == null) {
+            LogUtil.e(TAG, "接收到的Intent为null");
+            return;
+        }
+
+        String action = intent.getAction();
+        if (!ACTION_SMS_DELIVERED.equals(action)) {
+            LogUtil.d(TAG, "收到非短信送达报告广播: " + action);
+            return;
+        }
+
+        String smsId = SmsSendStatusReceiver.getSmsIdFromIntent(intent);
+        String targetPhone = SmsSendStatusReceiver.getTargetPhoneFromIntent(intent);
+        int partIndex = intent.getIntExtra(SmsSendIntentFactory.EXTRA_PART_INDEX, -1);
+
+        if (smsId == null || smsId.isEmpty()) {
+            LogUtil.d(TAG, "送达报告中没有短信ID");
+            return;
+        }
+
+        int status = getDeliveryStatus(intent);
+        LogUtil.d(TAG, "收到短信送达报告，短信ID: " + smsId + ", 部分索引: " + partIndex + ", 状态: " + status);
+
+        if (status == STATUS_UNKNOWN) {
+            // 无法确定是否送达时不记录，避免把失败的投递统计为已送达
+            LogUtil.w(TAG, "送达报告状态未知，不记录送达结果，短信ID: " + smsId);
+            return;
+        }
+
+        if (status >= STATUS_PENDING_MIN && status < STATUS_FAILED_MIN) {
+            // 网络仍在尝试投递，等待最终的送达报告
+            LogUtil.d(TAG, "短信仍在投递中，等待最终送达报告，短信ID: " + smsId);
+            return;
+        }
+
+        ForwardLatencyTracker.getInstance().onDelivered(smsId, targetPhone, status < STATUS_PENDING_MIN);
+    }
+
+    /**
+     * 从送达报告PDU中解析投递状态
+     * @return 投递状态，无法解析时返回 {@link #STATUS_UNKNOWN}
+     */
+    private int getDeliveryStatus(Intent intent) {
+        try {
+            byte[] pdu = intent.getByteArrayExtra("pdu");
+            if (pdu == null) {
+                return STATUS_UNKNOWN;
+            }
+            SmsMessage message;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                message = SmsMessage.createFromPdu(pdu, intent.getStringExtra("format"));
+            } else {
+                message = SmsMessage.createFromPdu(pdu);
+            }
+            return message != null ? message.getStatus() : STATUS_UNKNOWN;
+        } catch (Exception e) {
+            LogUtil.e(TAG, "解析送达报告失败: " + e.getMessage());
+            return STATUS_UNKNOWN;
+        }
+    }
+}
@@ -10,7 +10,11 @@ import com.funshion.funautosend.util.LogUtil;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.funshion.funautosend.util.ForwardLatencyTracker;
 import com.funshion.funautosend.util.ForwardedSmsManager;
+import com.funshion.funautosend.util.SendSimSelector;
+import com.funshion.funautosend.util.SimCircuitBreaker;
+import com.funshion.funautosend.util.SmsSendIntentFactory;
 
 /**
  * 短信发送状态广播接收器
@@ -21,6 +25,10 @@ public class SmsSendStatusReceiver extends BroadcastReceiver {
     
     // 用于存储短信ID的extra键
     private static final String EXTRA_SMS_ID = "SMS_ID";
+    // 用于存储目标手机号的extra键，用于区分同一短信转发到不同目标号码的记录
+    private static final String EXTRA_TARGET_PHONE = "TARGET_PHONE";
+    // 用于存储发送所用SIM卡ID的extra键，用于按SIM卡统计无线错误
+    private static final String EXTRA_SIM_ID = "SIM_ID";
     
     // 用于跟踪多部分短信的发送状态
     private static final Map<String, Boolean> multipartSmsStatus = new HashMap<>();
@@ -29,7 +37,7 @@ public class SmsSendStatusReceiver extends BroadcastReceiver {
     /**
      * 从Intent中获取短信ID
      */
-    private static String getSmsIdFromIntent(Intent intent) {
+    static String getSmsIdFromIntent(Intent intent) {
         if (intent != null) {
             return intent.getStringExtra(EXTRA_SMS_ID);
         }
@@ -45,6 +53,34 @@ public class SmsSendStatusReceiver extends BroadcastReceiver {
         }
     }
     
+    /**
+     * 从Intent中获取目标手机号
+     */
+    static String getTargetPhoneFromIntent(Intent intent) {
+        if (intent != null) {
+            return intent.getStringExtra(EXTRA_TARGET_PHONE);
+        }
+        return null;
+    }
+    
+    /**
+     * 向Intent添加目标手机号
+     */
+    public static void addTargetPhoneToIntent(Intent intent, String targetPhone) {
+        if (intent != null && targetPhone != null) {
+            intent.putExtra(EXTRA_TARGET_PHONE, targetPhone);
+        }
+    }
+    
+    /**
+     * 向Intent添加发送所用的SIM卡ID
+     */
+    public static void addSimIdToIntent(Intent intent, String simId) {
+        if (intent != null && simId != null) {
+            intent.putExtra(EXTRA_SIM_ID, simId);
+        }
+    }
+    
     @Override
     public void onReceive(Context context, Intent intent) {
         if (intent == null) {
@@ -53,7 +89,7 @@ public class SmsSendStatusReceiver extends BroadcastReceiver {
         }
         
         String action = intent.getAction();
-        if (action == null || !action.equals("SMS_SENT")) {
+        if (action == null || !action.equals(SmsSendIntentFactory.ACTION_SMS_SENT)) {
             LogUtil.d(TAG, "收到非短信发送状态广播: " + action);
             return;
         }
@@ -61,12 +97,19 @@ public class SmsSendStatusReceiver extends BroadcastReceiver {
         // 获取发送状态结果码
         int resultCode = getResultCode();
         // 获取短信部分索引
-        int partIndex = intent.getIntExtra("PART_INDEX", -1);
+        int partIndex = intent.getIntExtra(SmsSendIntentFactory.EXTRA_PART_INDEX, -1);
         // 直接从Intent中获取短信ID
         String smsId = getSmsIdFromIntent(intent);
+        // 发送所用的SIM卡ID
+        String simId = intent.getStringExtra(EXTRA_SIM_ID);
         
         LogUtil.d(TAG, "收到短信发送状态广播，结果码: " + resultCode + ", 部分索引: " + partIndex + ", 短信ID: " + smsId);
         
+        // 无论是否有短信ID，都要更新SIM卡熔断状态和发送负载
+        boolean sendOk = resultCode == Activity.RESULT_OK || resultCode == SmsManager.RESULT_NO_DEFAULT_SMS_APP;
+        SimCircuitBreaker.getInstance(context).onSendResult(simId, resultCode, sendOk);
+        SendSimSelector.getInstance(context).onSendResult(simId, sendOk);
+        
         // 检查是否有短信ID需要处理
         if (smsId == null || smsId.isEmpty()) {
             LogUtil.d(TAG, "没有待处理的短信ID");
@@ -111,6 +154,9 @@ public class SmsSendStatusReceiver extends BroadcastReceiver {
                 break;
         }
         
+        // 记录发送阶段耗时
+        ForwardLatencyTracker.getInstance().onSent(smsId, getTargetPhoneFromIntent(intent), isSuccessful);
+        
         // 处理多部分短信的情况
         if (partIndex >= 0) {
             synchronized (lock) {
@@ -13,8 +13,12 @@ import android.media.AudioTrack;
 import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.SystemClock;
 import com.funshion.funautosend.util.LogUtil;
+import com.funshion.funautosend.util.KeepAliveCostTracker;
 import com.funshion.funautosend.util.KeepAliveManager;
+import com.funshion.funautosend.util.PreferencesHelper;
+import com.funshion.funautosend.util.WakeupScheduler;
 
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
@@ -38,6 +42,22 @@ public class AudioPlayerService extends Service {
     private boolean isPlaying = false; // 当前是否正在播放
     private ExecutorService executorService; // 用于异步播放的线程池
     private Thread playbackThread; // 播放线程
+    // 播放线程每隔多少次循环记录一次开销
+    private static final int COST_REPORT_LOOPS = 1000;
+    // 低占空比模式使用的采样率和静态缓冲区时长，静音数据不需要高采样率
+    private static final int LOW_DUTY_SAMPLE_RATE = 8000;
+    private static final int LOW_DUTY_BUFFER_MS = 1000;
+    // 是否使用静态循环播放（低占空比模式），不需要播放线程持续写入数据
+    private boolean staticMode = false;
+    // 本次开始播放的时间和播放线程使用的CPU时间，停止时记录，用于比较两种模式的开销
+    private long playbackStartUptime;
+    private volatile long playbackThreadCpuMs;
+    // 静态循环模式没有播放线程发现播放被中断，由定时任务检查播放状态，被系统暂停或音频服务重启后恢复播放
+    private static final String TASK_STATIC_PLAYBACK_CHECK = "无声音乐检查";
+    private static final long STATIC_PLAYBACK_CHECK_INTERVAL = 5 * 60 * 1000;
+    private final Handler mainHandler = new Handler(android.os.Looper.getMainLooper());
+    // 静态循环模式下恢复播放的次数
+    private int staticRestartCount;
 
     @Override
     public void onCreate() {
@@ -139,9 +159,84 @@ public class AudioPlayerService extends Service {
     }
 
     /**
-     * 初始化AudioTrack用于播放静音音频流
+     * 初始化AudioTrack，开启低占空比模式时优先使用静态循环播放，失败时使用流式播放
+     * 低占空比模式开关由转发规则的audioLowDuty字段下发，见 {@link com.funshion.funautosend.util.RemoteSettings}
      */
     private void initAudioTrack() {
+        if (PreferencesHelper.isAudioLowDutyEnabled(this) && initStaticAudioTrack()) {
+            return;
+        }
+        initStreamAudioTrack();
+    }
+    
+    /**
+     * 初始化静态模式的AudioTrack：以最低常用采样率把一段静音数据一次性写入缓冲区并无限循环播放，
+     * 之后由音频系统循环播放，本进程不需要再唤醒线程写入数据
+     * @return 是否初始化成功
+     */
+    private boolean initStaticAudioTrack() {
+        try {
+            int channelConfig = AudioFormat.CHANNEL_OUT_MONO;
+            int audioFormat = AudioFormat.ENCODING_PCM_16BIT;
+            int frames = LOW_DUTY_SAMPLE_RATE * LOW_DUTY_BUFFER_MS / 1000;
+            // 单声道16位PCM，每帧2字节
+            int bufferSize = frames * 2;
+            
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                AudioAttributes audioAttributes = new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_MEDIA)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                        .build();
+                
+                AudioFormat format = new AudioFormat.Builder()
+                        .setSampleRate(LOW_DUTY_SAMPLE_RATE)
+                        .setEncoding(audioFormat)
+                        .setChannelMask(channelConfig)
+                        .build();
+                
+                audioTrack = new AudioTrack.Builder()
+                        .setAudioAttributes(audioAttributes)
+                        .setAudioFormat(format)
+                        .setBufferSizeInBytes(bufferSize)
+                        .setTransferMode(AudioTrack.MODE_STATIC)
+                        .build();
+            } else {
+                audioTrack = new AudioTrack(
+                        AudioManager.STREAM_MUSIC,
+                        LOW_DUTY_SAMPLE_RATE,
+                        channelConfig,
+                        audioFormat,
+                        bufferSize,
+                        AudioTrack.MODE_STATIC);
+            }
+            
+            // 写入静音数据后设置无限循环
+            short[] silentBuffer = new short[frames];
+            int written = audioTrack.write(silentBuffer, 0, silentBuffer.length);
+            if (written != frames || audioTrack.setLoopPoints(0, frames, -1) != AudioTrack.SUCCESS) {
+                throw new IllegalStateException("写入静音数据或设置循环失败: " + written);
+            }
+            audioTrack.setVolume(0.0f);
+            staticMode = true;
+            
+            LogUtil.d(TAG, "AudioTrack初始化成功（静态循环模式，采样率" + LOW_DUTY_SAMPLE_RATE + "Hz）");
+            return true;
+        } catch (Exception e) {
+            LogUtil.e(TAG, "静态循环模式AudioTrack初始化失败，改用流式播放", e);
+            if (audioTrack != null) {
+                audioTrack.release();
+                audioTrack = null;
+            }
+            staticMode = false;
+            return false;
+        }
+    }
+
+    /**
+     * 初始化流式模式的AudioTrack，由播放线程持续写入静音数据
+     */
+    private void initStreamAudioTrack() {
+        staticMode = false;
         try {
             // 配置音频参数
             int sampleRate = 44100; // 标准采样率
@@ -193,12 +288,53 @@ public class AudioPlayerService extends Service {
      */
     private void startSilentPlayback() {
         try {
-            if (isPlaying || audioTrack == null) {
+            if (audioTrack == null) {
                 return;
             }
+            
+            if (staticMode) {
+                // 静态循环模式只需要开始播放，被系统暂停时重新开始
+                if (!isPlaying || audioTrack.getPlayState() != AudioTrack.PLAYSTATE_PLAYING) {
+                    long cpuBegin = KeepAliveCostTracker.getInstance().begin();
+                    audioTrack.play();
+                    if (!isPlaying) {
+                        playbackStartUptime = SystemClock.uptimeMillis();
+                        playbackThreadCpuMs = 0;
+                    }
+                    isPlaying = true;
+                    KeepAliveCostTracker.getInstance().end(KeepAliveManager.Mechanism.AUDIO_PLAYER, cpuBegin);
+                    LogUtil.d(TAG, "静音音频循环播放已开始");
+                    WakeupScheduler.getInstance().register(TASK_STATIC_PLAYBACK_CHECK, STATIC_PLAYBACK_CHECK_INTERVAL,
+                            new Runnable() {
+                                @Override
+                                public void run() {
+                                    // 在主线程检查，与服务的启动、停止串行执行
+                                    mainHandler.post(new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            checkStaticPlayback();
+                                        }
+                                    });
+                                }
+                            });
+                }
+                return;
+            }
+            
+            if (isPlaying) {
+                return;
+            }
+            playbackStartUptime = SystemClock.uptimeMillis();
+            playbackThreadCpuMs = 0;
 
             // 启动播放线程
             playbackThread = new Thread(() -> {
+                KeepAliveCostTracker tracker = KeepAliveCostTracker.getInstance();
+                tracker.onThreadStarted(KeepAliveManager.Mechanism.AUDIO_PLAYER);
+                // 每次循环都会唤醒一次线程，累计一定次数后再记录，避免每次循环都加锁
+                int loops = 0;
+                long threadCpuBegin = SystemClock.currentThreadTimeMillis();
+                long cpuBegin = threadCpuBegin;
                 try {
                     // 准备播放
                     audioTrack.play();
@@ -221,6 +357,13 @@ public class AudioPlayerService extends Service {
                         
                         // 短暂休眠，避免CPU过度占用
                         Thread.sleep(10);
+                        
+                        if (++loops >= COST_REPORT_LOOPS) {
+                            long cpuNow = SystemClock.currentThreadTimeMillis();
+                            tracker.addCost(KeepAliveManager.Mechanism.AUDIO_PLAYER, loops, cpuNow - cpuBegin);
+                            loops = 0;
+                            cpuBegin = cpuNow;
+                        }
                     }
                 } catch (InterruptedException e) {
                     LogUtil.d(TAG, "播放线程被中断");
@@ -231,6 +374,11 @@ public class AudioPlayerService extends Service {
                     // 尝试重新初始化和播放
                     initAudioTrack();
                     startSilentPlayback();
+                } finally {
+                    long cpuNow = SystemClock.currentThreadTimeMillis();
+                    tracker.addCost(KeepAliveManager.Mechanism.AUDIO_PLAYER, loops, cpuNow - cpuBegin);
+                    playbackThreadCpuMs += cpuNow - threadCpuBegin;
+                    tracker.onThreadStopped(KeepAliveManager.Mechanism.AUDIO_PLAYER);
                 }
             });
             
@@ -240,12 +388,48 @@ public class AudioPlayerService extends Service {
         }
     }
 
+    /**
+     * 检查静态循环模式的播放状态，被系统暂停时重新开始播放；
+     * 重新开始失败（例如音频服务重启后AudioTrack已失效）时重建AudioTrack
+     */
+    private void checkStaticPlayback() {
+        if (!isPlaying || !staticMode || audioTrack == null) {
+            return;
+        }
+        long cpuBegin = KeepAliveCostTracker.getInstance().begin();
+        try {
+            int playState = audioTrack.getPlayState();
+            if (playState == AudioTrack.PLAYSTATE_PLAYING) {
+                return;
+            }
+            staticRestartCount++;
+            LogUtil.w(TAG, "静音音频循环播放已中断，状态: " + playState + "，恢复播放，第" + staticRestartCount + "次");
+            try {
+                audioTrack.play();
+            } catch (IllegalStateException e) {
+                LogUtil.w(TAG, "恢复播放失败: " + e.getMessage());
+            }
+            if (audioTrack.getPlayState() != AudioTrack.PLAYSTATE_PLAYING) {
+                LogUtil.w(TAG, "AudioTrack已失效，重新初始化");
+                stopSilentPlayback();
+                initAudioTrack();
+                startSilentPlayback();
+            }
+        } catch (Exception e) {
+            LogUtil.e(TAG, "检查静音音频播放状态失败", e);
+        } finally {
+            KeepAliveCostTracker.getInstance().end(KeepAliveManager.Mechanism.AUDIO_PLAYER, cpuBegin);
+        }
+    }
+
     /**
      * 停止静音音频流播放
      */
     private void stopSilentPlayback() {
         try {
+            boolean wasPlaying = isPlaying;
             isPlaying = false;
+            WakeupScheduler.getInstance().unregister(TASK_STATIC_PLAYBACK_CHECK);
             
             // 中断播放线程
             if (playbackThread != null && playbackThread.isAlive()) {
@@ -269,7 +453,16 @@ public class AudioPlayerService extends Service {
                 audioTrack = null;
             }
             
-            LogUtil.d(TAG, "静音音频流播放已停止");
+            if (wasPlaying) {
+                // 静态循环模式没有播放线程，CPU时间只有开始播放时的一次调用；
+                // 这里只统计本进程的CPU时间，audioserver混音线程的开销两种模式都有，不在统计之内
+                LogUtil.d(TAG, "静音音频流播放已停止，模式: " + (staticMode ? "静态循环" : "流式写入")
+                        + "，播放时长: " + (SystemClock.uptimeMillis() - playbackStartUptime) / 1000 + "秒"
+                        + "，播放线程CPU: " + playbackThreadCpuMs + "ms（仅本进程，不含audioserver混音开销）"
+                        + (staticMode ? "，恢复播放: " + staticRestartCount + "次" : ""));
+            } else {
+                LogUtil.d(TAG, "静音音频流播放已停止");
+            }
         } catch (Exception e) {
             LogUtil.e(TAG, "停止静音播放失败", e);
         }
@@ -279,19 +472,47 @@ public class AudioPlayerService extends Service {
      * 延迟重启服务
      */
     private void restartServiceWithDelay() {
+        if (!KeepAliveManager.getInstance(this).isMechanismEnabled(KeepAliveManager.Mechanism.AUDIO_PLAYER)) {
+            LogUtil.d(TAG, "无声音乐保活已关闭，不再重启");
+            return;
+        }
         Handler handler = new Handler();
         handler.postDelayed(() -> {
-            try {
-                Intent restartIntent = new Intent(AudioPlayerService.this, AudioPlayerService.class);
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                    startForegroundService(restartIntent);
-                } else {
-                    startService(restartIntent);
-                }
-                LogUtil.d(TAG, "尝试重启AudioPlayerService");
-            } catch (Exception e) {
-                LogUtil.e(TAG, "重启服务失败", e);
-            }
+            LogUtil.d(TAG, "尝试重启AudioPlayerService");
+            start(AudioPlayerService.this);
         }, 1000); // 1秒后重启
     }
+    
+    /**
+     * 启动无声音乐播放服务，无声音乐保活已关闭时不启动
+     * @param context 上下文
+     */
+    public static void start(Context context) {
+        if (!KeepAliveManager.getInstance(context).isMechanismEnabled(KeepAliveManager.Mechanism.AUDIO_PLAYER)) {
+            LogUtil.d(TAG, "无声音乐保活已关闭，不启动无声音乐播放服务");
+            return;
+        }
+        try {
+            Intent intent = new Intent(context, AudioPlayerService.class);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                context.startForegroundService(intent);
+            } else {
+                context.startService(intent);
+            }
+        } catch (Exception e) {
+            LogUtil.e(TAG, "启动无声音乐播放服务失败", e);
+        }
+    }
+    
+    /**
+     * 停止无声音乐播放服务
+     * @param context 上下文
+     */
+    public static void stop(Context context) {
+        try {
+            context.stopService(new Intent(context, AudioPlayerService.class));
+        } catch (Exception e) {
+            LogUtil.e(TAG, "停止无声音乐播放服务失败", e);
+        }
+    }
 }
\ No newline at end of file
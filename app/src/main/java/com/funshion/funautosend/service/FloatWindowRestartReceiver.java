@@ -6,10 +6,13 @@ import android.content.Intent;
 import com.funshion.funautosend.util.LogUtil;
 
 import com.funshion.funautosend.util.FloatWindowPermissionHelper;
+import com.funshion.funautosend.util.KeepAliveCostTracker;
+import com.funshion.funautosend.util.KeepAliveManager;
 
 /**
  * 悬浮窗服务重启广播接收器
  * 用于监听系统广播并在特定事件时重启悬浮窗服务
+ * 接收器在清单中静态注册，悬浮窗保活关闭后不再处理任何广播
  */
 public class FloatWindowRestartReceiver extends BroadcastReceiver {
     private static final String TAG = "FloatWindowRestartReceiver";
@@ -23,7 +26,12 @@ public class FloatWindowRestartReceiver extends BroadcastReceiver {
         }
 
         String action = intent.getAction();
+        if (!KeepAliveManager.getInstance(context).isMechanismEnabled(KeepAliveManager.Mechanism.FLOAT_WINDOW)) {
+            LogUtil.d(TAG, "悬浮窗保活已关闭，忽略广播: " + action);
+            return;
+        }
         LogUtil.d(TAG, "接收到广播: " + action);
+        long cpuBegin = KeepAliveCostTracker.getInstance().begin();
 
         // 根据不同的广播事件决定是否重启悬浮窗服务
         switch (action) {
@@ -62,6 +70,8 @@ public class FloatWindowRestartReceiver extends BroadcastReceiver {
                 startFloatWindowServiceIfPermissionGranted(context);
                 break;
         }
+        
+        KeepAliveCostTracker.getInstance().end(KeepAliveManager.Mechanism.FLOAT_WINDOW, cpuBegin);
     }
 
     /**
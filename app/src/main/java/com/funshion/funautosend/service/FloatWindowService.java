@@ -26,7 +26,9 @@ import com.funshion.funautosend.R;
 import com.funshion.funautosend.MainActivity;
 import com.funshion.funautosend.util.NotificationUtils;
 import com.funshion.funautosend.util.FloatWindowPermissionHelper;
+import com.funshion.funautosend.util.KeepAliveCostTracker;
 import com.funshion.funautosend.util.KeepAliveManager;
+import com.funshion.funautosend.util.WakeupScheduler;
 
 /**
  * 悬浮窗口服务，用于在应用后台运行时显示一个可交互的悬浮弹窗
@@ -36,7 +38,10 @@ public class FloatWindowService extends Service {
 
     private static final String TAG = "FloatWindowService";
     private static final int FLOAT_WINDOW_NOTIFICATION_ID = 1003;
-    private static final int ALARM_INTERVAL = 5 * 60 * 1000; // 5分钟
+    // 悬浮窗状态检查间隔，注册到WakeupScheduler，与其他定时任务对齐到同一批唤醒
+    private static final long CHECK_INTERVAL = 5 * 60 * 1000; // 5分钟
+    private static final String TASK_FLOAT_WINDOW_CHECK = "悬浮窗检查";
+    private final android.os.Handler mainHandler = new android.os.Handler(android.os.Looper.getMainLooper());
     
     private WindowManager windowManager;
     private View floatView;
@@ -65,7 +70,7 @@ public class FloatWindowService extends Service {
                 NotificationUtils.createHighPriorityForegroundServiceNotification(this));
         
         // 启动定时检查机制
-        startAlarmManager();
+        startPeriodicCheck();
         
         // 触发WorkManager立即保活检查
         KeepAliveManager.getInstance(this).getWorkManagerKeepAliveHelper().runKeepAliveCheckNow();
@@ -74,6 +79,7 @@ public class FloatWindowService extends Service {
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         LogUtil.d(TAG, "悬浮窗服务启动");
+        long cpuBegin = KeepAliveCostTracker.getInstance().begin();
         
         // 确保悬浮窗已显示
         showFloatWindow();
@@ -81,6 +87,8 @@ public class FloatWindowService extends Service {
         // 再次触发WorkManager保活检查
         KeepAliveManager.getInstance(this).getWorkManagerKeepAliveHelper().runKeepAliveCheckNow();
         
+        KeepAliveCostTracker.getInstance().end(KeepAliveManager.Mechanism.FLOAT_WINDOW, cpuBegin);
+        
         // START_REDELIVER_INTENT 比 START_STICKY 优先级更高，系统会尽力保证服务重启
         return START_REDELIVER_INTENT;
     }
@@ -93,8 +101,8 @@ public class FloatWindowService extends Service {
         // 移除悬浮窗
         removeFloatWindow();
         
-        // 取消AlarmManager
-        cancelAlarmManager();
+        // 取消定时检查
+        stopPeriodicCheck();
         
         // 尝试自我重启服务
         restartService();
@@ -397,6 +405,11 @@ public class FloatWindowService extends Service {
      * @param context 上下文
      */
     public static void start(Context context) {
+        if (!KeepAliveManager.getInstance(context).isMechanismEnabled(KeepAliveManager.Mechanism.FLOAT_WINDOW)) {
+            LogUtil.d(TAG, "悬浮窗保活已关闭，不启动悬浮窗服务");
+            return;
+        }
+        
         // 检查是否有悬浮窗权限
         if (!FloatWindowPermissionHelper.hasFloatWindowPermission(context)) {
             LogUtil.w(TAG, "没有悬浮窗权限，无法启动悬浮窗服务");
@@ -412,37 +425,12 @@ public class FloatWindowService extends Service {
     }
     
     /**
-     * 启动AlarmManager定时检查
-     */
-    private void startAlarmManager() {
-        AlarmManager alarmManager = (AlarmManager) getSystemService(ALARM_SERVICE);
-        Intent intent = new Intent(FloatWindowRestartReceiver.ACTION_RESTART_FLOAT_WINDOW_SERVICE);
-        PendingIntent pendingIntent = PendingIntent.getBroadcast(
-                this, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
-        
-        // 设置定时任务，每5分钟检查一次服务状态
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            alarmManager.setExactAndAllowWhileIdle(
-                    AlarmManager.ELAPSED_REALTIME_WAKEUP,
-                    SystemClock.elapsedRealtime() + ALARM_INTERVAL,
-                    pendingIntent);
-        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-            alarmManager.setExact(
-                    AlarmManager.ELAPSED_REALTIME_WAKEUP,
-                    SystemClock.elapsedRealtime() + ALARM_INTERVAL,
-                    pendingIntent);
-        } else {
-            alarmManager.set(
-                    AlarmManager.ELAPSED_REALTIME_WAKEUP,
-                    SystemClock.elapsedRealtime() + ALARM_INTERVAL,
-                    pendingIntent);
-        }
-    }
-    
-    /**
-     * 取消AlarmManager
+     * 启动定时检查，悬浮窗被移除时重新显示
+     * 检查只在服务存活时有意义，注册到WakeupScheduler与其他定时任务共用唤醒，不再单独设置闹钟；
+     * 服务被销毁后的重启由 {@link #restartService()} 负责
      */
-    private void cancelAlarmManager() {
+    private void startPeriodicCheck() {
+        // 取消旧版本设置的检查闹钟
         try {
             AlarmManager alarmManager = (AlarmManager) getSystemService(ALARM_SERVICE);
             Intent intent = new Intent(FloatWindowRestartReceiver.ACTION_RESTART_FLOAT_WINDOW_SERVICE);
@@ -452,12 +440,48 @@ public class FloatWindowService extends Service {
         } catch (Exception e) {
             LogUtil.e(TAG, "取消AlarmManager失败: " + e.getMessage());
         }
+        WakeupScheduler.getInstance().register(TASK_FLOAT_WINDOW_CHECK, CHECK_INTERVAL, new Runnable() {
+            @Override
+            public void run() {
+                // 悬浮窗只能在主线程操作
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        checkFloatWindow();
+                    }
+                });
+            }
+        });
+    }
+    
+    /**
+     * 停止定时检查
+     */
+    private void stopPeriodicCheck() {
+        WakeupScheduler.getInstance().unregister(TASK_FLOAT_WINDOW_CHECK);
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+    
+    /**
+     * 悬浮窗不在窗口上时重新显示
+     */
+    private void checkFloatWindow() {
+        long cpuBegin = KeepAliveCostTracker.getInstance().begin();
+        if (floatView == null || !floatView.isAttachedToWindow()) {
+            LogUtil.d(TAG, "悬浮窗已被移除，重新显示");
+            showFloatWindow();
+        }
+        KeepAliveCostTracker.getInstance().end(KeepAliveManager.Mechanism.FLOAT_WINDOW, cpuBegin);
     }
     
     /**
      * 尝试自我重启服务
      */
     private void restartService() {
+        if (!KeepAliveManager.getInstance(this).isMechanismEnabled(KeepAliveManager.Mechanism.FLOAT_WINDOW)) {
+            LogUtil.d(TAG, "悬浮窗保活已关闭，不再重启");
+            return;
+        }
         LogUtil.d(TAG, "尝试自我重启服务");
         // 立即重启
         start(this);
@@ -12,8 +12,11 @@ import android.os.RemoteException;
 import com.funshion.funautosend.util.LogUtil;
 
 import com.funshion.funautosend.IKeepAliveAidlInterface;
+import com.funshion.funautosend.model.PipelineMetrics;
+import com.funshion.funautosend.util.KeepAliveCostTracker;
 import com.funshion.funautosend.util.KeepAliveManager;
 import com.funshion.funautosend.util.NotificationUtils;
+import com.funshion.funautosend.util.RestartLatencyTracker;
 
 import java.util.concurrent.TimeUnit;
 
@@ -24,19 +27,50 @@ import java.util.concurrent.TimeUnit;
 public class GuardianService extends Service {
     private static final String TAG = "GuardianService";
     private static final String PROCESS_NAME = ":guardian";
+    // 要求守护进程停止的参数，关闭守护进程保活时使用
+    private static final String EXTRA_STOP = "EXTRA_STOP";
     
     // 主进程服务的绑定连接
     private ServiceConnection mMainServiceConnection = null;
     // AIDL接口实例
     private IKeepAliveAidlInterface mMainServiceAidl = null;
-    // 用于检查主服务是否存活的Handler
+    // 主进程服务的Binder，用于接收死亡通知
+    private IBinder mMainServiceBinder = null;
+    // 用于处理主服务连接状态的Handler，所有连接状态都在主线程中修改
     private Handler mCheckHandler = new Handler();
-    // 检查间隔（毫秒）
-    private static final long CHECK_INTERVAL = 5000;
+    // 兜底检查间隔（毫秒），主进程死亡由死亡通知发现，这里只处理绑定一直没有成功等少见情况
+    private static final long PROBE_INTERVAL = 5 * 60 * 1000;
     // 上次成功连接时间
     private long mLastConnectTime = 0;
     // 服务是否已绑定的标志
     private boolean mIsServiceBound = false;
+    // 是否已经发现主进程死亡并在重启中，避免死亡通知和断开连接回调重复重启
+    private boolean mRestartPending = false;
+    // 主进程重启耗时统计
+    private final RestartLatencyTracker mRestartTracker = new RestartLatencyTracker();
+    // 主进程定时扫描超过该时间（非休眠时间）没有执行，认为转发流程已停滞
+    private static final long PIPELINE_STALL_MS = 10 * 60 * 1000;
+    // 两次因流程停滞重启主进程的最小间隔，避免反复重启
+    private static final long STALL_RESTART_COOLDOWN_MS = 30 * 60 * 1000;
+    // 上次因流程停滞重启主进程的时间
+    private long mLastStallRestartTime = 0;
+    // 最近一次从主进程获取的运行状态，用于诊断
+    private PipelineMetrics mLastPipelineMetrics = null;
+    // 是否是主进程要求停止，要求停止时销毁后不再自我重启
+    private boolean mStopRequested = false;
+    
+    // 主进程死亡通知，在Binder线程中回调
+    private final IBinder.DeathRecipient mDeathRecipient = new IBinder.DeathRecipient() {
+        @Override
+        public void binderDied() {
+            mCheckHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onMainServiceDied("收到主进程死亡通知");
+                }
+            });
+        }
+    };
     
     // AIDL接口实现
     private IKeepAliveAidlInterface.Stub mBinder = new IKeepAliveAidlInterface.Stub() {
@@ -49,6 +83,14 @@ public class GuardianService extends Service {
         public String getProcessName() throws RemoteException {
             return PROCESS_NAME;
         }
+        
+        @Override
+        public PipelineMetrics getPipelineMetrics() throws RemoteException {
+            // 守护进程不运行转发流程，只返回进程基本信息，用于统计守护进程保活的开销
+            PipelineMetrics metrics = PipelineMetrics.forCurrentProcess();
+            metrics.wakeupCount = KeepAliveCostTracker.getInstance().getWakeups(KeepAliveManager.Mechanism.GUARDIAN);
+            return metrics;
+        }
     };
     
     @Override
@@ -70,6 +112,14 @@ public class GuardianService extends Service {
     public int onStartCommand(Intent intent, int flags, int startId) {
         LogUtil.d(TAG, "守护进程服务启动");
         
+        if (intent != null && intent.getBooleanExtra(EXTRA_STOP, false)) {
+            // 守护进程保活已关闭，停止后不再自我重启
+            LogUtil.d(TAG, "收到停止请求，停止守护进程服务");
+            mStopRequested = true;
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        
         return START_STICKY;
     }
     
@@ -85,6 +135,7 @@ public class GuardianService extends Service {
         
         // 移除检查任务
         mCheckHandler.removeCallbacksAndMessages(null);
+        unlinkMainServiceDeath();
         
         // 解绑主服务
         if (mMainServiceConnection != null && mIsServiceBound) {
@@ -96,6 +147,10 @@ public class GuardianService extends Service {
             }
         }
         
+        if (mStopRequested) {
+            return;
+        }
+        
         // 尝试重启自己
         try {
             Intent restartIntent = new Intent(this, GuardianService.class);
@@ -114,6 +169,7 @@ public class GuardianService extends Service {
     
     /**
      * 开始监控主进程服务
+     * 通过Binder死亡通知发现主进程死亡，不再定期通过AIDL轮询
      */
     private void startMonitoringMainService() {
         // 初始化服务连接
@@ -125,67 +181,141 @@ public class GuardianService extends Service {
                     mMainServiceAidl = IKeepAliveAidlInterface.Stub.asInterface(service);
                     mLastConnectTime = System.currentTimeMillis();
                     mIsServiceBound = true;
+                    mRestartPending = false;
+                    
+                    long latency = mRestartTracker.onPeerConnected();
+                    if (latency >= 0) {
+                        LogUtil.d(TAG, "主进程服务已恢复，重启耗时: " + latency + "ms，" + mRestartTracker.getStatsSummary());
+                    }
+                    
+                    // 注册死亡通知
+                    mMainServiceBinder = service;
+                    try {
+                        service.linkToDeath(mDeathRecipient, 0);
+                    } catch (RemoteException e) {
+                        // 连接建立时主进程已经死亡
+                        onMainServiceDied("注册死亡通知时主进程已死亡");
+                    }
                 }
                 
                 @Override
                 public void onServiceDisconnected(ComponentName name) {
-                    LogUtil.d(TAG, "与主进程服务断开连接");
-                    mMainServiceAidl = null;
-                    mIsServiceBound = false;
-                    // 尝试重连并重启主服务
-                    reconnectAndRestartMainService();
+                    onMainServiceDied("与主进程服务断开连接");
                 }
                 
                 @Override
                 public void onBindingDied(ComponentName name) {
-                    LogUtil.d(TAG, "主进程服务绑定死亡");
-                    mMainServiceAidl = null;
-                    mIsServiceBound = false;
-                    // 尝试重连并重启主服务
-                    reconnectAndRestartMainService();
+                    onMainServiceDied("主进程服务绑定死亡");
                 }
             };
         }
         
-        // 开始定期检查任务
-        mCheckHandler.postDelayed(mCheckRunnable, CHECK_INTERVAL);
+        // 绑定主进程服务，之前由第一次定期检查完成，现在检查间隔较长，改为立即绑定
+        try {
+            Intent bindIntent = new Intent(this, SmsForwardService.class);
+            bindService(bindIntent, mMainServiceConnection, Context.BIND_AUTO_CREATE);
+            LogUtil.d(TAG, "尝试绑定主进程服务");
+        } catch (Exception e) {
+            LogUtil.e(TAG, "绑定主进程服务失败", e);
+        }
+
+        // 开始兜底检查任务
+        mCheckHandler.postDelayed(mCheckRunnable, PROBE_INTERVAL);
     }
     
     /**
-     * 检查主服务是否存活的Runnable
+     * 主进程死亡时调用，在主线程中执行
+     * @param reason 发现死亡的途径，用于日志
+     */
+    private void onMainServiceDied(String reason) {
+        if (mRestartPending) {
+            return;
+        }
+        LogUtil.d(TAG, reason + "，尝试重启主进程服务");
+        mRestartPending = true;
+        mRestartTracker.onPeerDied();
+        unlinkMainServiceDeath();
+        mMainServiceAidl = null;
+        reconnectAndRestartMainService();
+    }
+    
+    private void unlinkMainServiceDeath() {
+        if (mMainServiceBinder != null) {
+            try {
+                mMainServiceBinder.unlinkToDeath(mDeathRecipient, 0);
+            } catch (Exception e) {
+                // 对端已经死亡时死亡通知已自动移除
+            }
+            mMainServiceBinder = null;
+        }
+    }
+    
+    /**
+     * 兜底检查主服务是否存活的Runnable
      */
     private Runnable mCheckRunnable = new Runnable() {
         @Override
         public void run() {
+            long cpuBegin = KeepAliveCostTracker.getInstance().begin();
             try {
-                // 检查主服务是否存活
                 if (mMainServiceAidl != null) {
-                    boolean isAlive = mMainServiceAidl.isProcessAlive();
-                    if (isAlive) {
-                        LogUtil.d(TAG, "主进程服务存活");
-                        mLastConnectTime = System.currentTimeMillis();
+                    if (!mMainServiceAidl.isProcessAlive()) {
+                        onMainServiceDied("主进程服务不存活");
                     } else {
-                        LogUtil.d(TAG, "主进程服务不存活，尝试重启");
-                        reconnectAndRestartMainService();
-                    }
-                } else {
-                    // 如果超过10秒未连接成功，尝试重启主服务
-                    if (System.currentTimeMillis() - mLastConnectTime > 10000) {
-                        LogUtil.d(TAG, "长时间未连接到主进程服务，尝试重启");
-                        reconnectAndRestartMainService();
+                        mLastConnectTime = System.currentTimeMillis();
+                        checkPipelineStall(mMainServiceAidl.getPipelineMetrics());
                     }
+                } else if (System.currentTimeMillis() - mLastConnectTime > PROBE_INTERVAL) {
+                    // 长时间没有连接上，可能是重启或绑定失败，重新尝试
+                    LogUtil.d(TAG, "长时间未连接到主进程服务，尝试重启");
+                    mRestartTracker.onPeerDied();
+                    mRestartPending = true;
+                    reconnectAndRestartMainService();
                 }
             } catch (RemoteException e) {
-                LogUtil.d(TAG, "与主进程服务通信异常，尝试重启");
-                mMainServiceAidl = null;
-                reconnectAndRestartMainService();
+                onMainServiceDied("与主进程服务通信异常");
             } finally {
-                // 继续定期检查
-                mCheckHandler.postDelayed(this, CHECK_INTERVAL);
+                // 继续兜底检查
+                mCheckHandler.postDelayed(this, PROBE_INTERVAL);
+                KeepAliveCostTracker.getInstance().end(KeepAliveManager.Mechanism.GUARDIAN, cpuBegin);
             }
         }
     };
     
+    /**
+     * 根据主进程的运行状态判断转发流程是否停滞，停滞时结束主进程，由死亡通知触发重启
+     * 进程存活但定时任务不再执行（例如线程卡死）时，只靠进程存活检查发现不了
+     */
+    private void checkPipelineStall(PipelineMetrics metrics) {
+        if (metrics == null) {
+            return;
+        }
+        mLastPipelineMetrics = metrics;
+        LogUtil.d(TAG, "主进程运行状态: " + metrics);
+        
+        long idle = metrics.getStallIdleUptimeMs();
+        if (idle < PIPELINE_STALL_MS) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now - mLastStallRestartTime < STALL_RESTART_COOLDOWN_MS) {
+            LogUtil.w(TAG, "主进程转发流程停滞，距上次重启时间过短，暂不重启");
+            return;
+        }
+        mLastStallRestartTime = now;
+        LogUtil.w(TAG, "主进程转发流程已停滞 " + (idle / 1000) + " 秒，结束主进程并重启");
+        // 同一应用的进程可以直接结束，随后会收到死亡通知并重启主进程
+        android.os.Process.killProcess(metrics.pid);
+    }
+    
+    /**
+     * 获取最近一次从主进程获取的运行状态，用于诊断
+     * @return 运行状态，还没有获取过时返回null
+     */
+    public PipelineMetrics getLastPipelineMetrics() {
+        return mLastPipelineMetrics;
+    }
+    
     /**
      * 重连并重启主服务
      */
@@ -246,11 +376,18 @@ public class GuardianService extends Service {
     
     /**
      * 停止守护进程服务
+     * 守护进程运行在独立进程中，读不到主进程刚修改的开关，通过启动参数通知它停止后不要自我重启
      */
     public static void stop(Context context) {
         try {
             Intent intent = new Intent(context, GuardianService.class);
-            context.stopService(intent);
+            intent.putExtra(EXTRA_STOP, true);
+            try {
+                context.startService(intent);
+            } catch (IllegalStateException e) {
+                // 后台无法启动服务时直接停止
+                context.stopService(intent);
+            }
             LogUtil.d(TAG, "停止守护进程服务");
         } catch (Exception e) {
             LogUtil.e(TAG, "停止守护进程服务失败", e);
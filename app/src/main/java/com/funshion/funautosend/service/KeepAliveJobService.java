@@ -3,6 +3,8 @@ package com.funshion.funautosend.service;
 import android.app.job.JobParameters;
 import android.app.job.JobService;
 import android.content.Intent;
+import com.funshion.funautosend.util.KeepAliveCostTracker;
+import com.funshion.funautosend.util.KeepAliveManager;
 import com.funshion.funautosend.util.LogUtil;
 
 /**
@@ -15,10 +17,13 @@ public class KeepAliveJobService extends JobService {
     @Override
     public boolean onStartJob(JobParameters params) {
         LogUtil.d(TAG, "JobService启动，检查并重启前台服务");
+        long cpuBegin = KeepAliveCostTracker.getInstance().begin();
         
         // 检查并启动SmsForwardService
         checkAndStartSmsForwardService();
         
+        KeepAliveCostTracker.getInstance().end(KeepAliveManager.Mechanism.JOB_SCHEDULER, cpuBegin);
+        
         // 任务执行完毕，不需要在后台线程继续处理
         return false;
     }
@@ -3,6 +3,8 @@ package com.funshion.funautosend.service;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
+import com.funshion.funautosend.util.KeepAliveCostTracker;
+import com.funshion.funautosend.util.KeepAliveManager;
 import com.funshion.funautosend.util.LogUtil;
 
 import androidx.annotation.NonNull;
@@ -25,6 +27,7 @@ public class KeepAliveWorker extends Worker {
     @Override
     public Result doWork() {
         LogUtil.d(TAG, "WorkManager保活任务执行，检查并重启前台服务");
+        long cpuBegin = KeepAliveCostTracker.getInstance().begin();
         
         // 检查并启动SmsForwardService
         checkAndStartSmsForwardService();
@@ -35,6 +38,8 @@ public class KeepAliveWorker extends Worker {
         // 检查并启动GuardianService（守护进程服务）
         checkAndStartGuardianService();
         
+        KeepAliveCostTracker.getInstance().end(KeepAliveManager.Mechanism.WORK_MANAGER, cpuBegin);
+        
         // 返回成功结果，系统会根据我们的调度策略继续调度任务
         return Result.success();
     }
@@ -95,6 +100,9 @@ public class KeepAliveWorker extends Worker {
      * 检查并启动无声音乐播放服务
      */
     private void checkAndStartAudioPlayerService() {
+        if (!KeepAliveManager.getInstance(getApplicationContext()).isMechanismEnabled(KeepAliveManager.Mechanism.AUDIO_PLAYER)) {
+            return;
+        }
         try {
             // 先检查服务是否已经在运行
             if (isServiceRunning(AudioPlayerService.class)) {
@@ -120,6 +128,9 @@ public class KeepAliveWorker extends Worker {
      * 检查并启动守护进程服务
      */
     private void checkAndStartGuardianService() {
+        if (!KeepAliveManager.getInstance(getApplicationContext()).isMechanismEnabled(KeepAliveManager.Mechanism.GUARDIAN)) {
+            return;
+        }
         try {
             // 先检查服务是否已经在运行
             if (isServiceRunning(GuardianService.class)) {
@@ -7,10 +7,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.ServiceConnection;
-import android.net.ConnectivityManager;
-import android.net.Network;
-import android.net.NetworkCapabilities;
-import android.net.NetworkRequest;
 import android.os.Build;
 import android.os.Handler;
 import android.os.HandlerThread;
@@ -24,15 +20,36 @@ import com.funshion.funautosend.util.LogUtil;
 import androidx.annotation.Nullable;
 
 import com.funshion.funautosend.IKeepAliveAidlInterface;
+import com.funshion.funautosend.model.PipelineMetrics;
 import com.funshion.funautosend.activity.OnePixelActivity;
 import com.funshion.funautosend.service.FloatWindowService;
+import com.funshion.funautosend.util.AdaptiveRefreshScheduler;
 import com.funshion.funautosend.util.ApiClient;
+import com.funshion.funautosend.util.CombinedReportCollector;
+import com.funshion.funautosend.util.ConfigLongPollChannel;
+import com.funshion.funautosend.util.ConfigRefreshCoordinator;
+import com.funshion.funautosend.util.ConfigRepository;
+import com.funshion.funautosend.util.EmailHelper;
+import com.funshion.funautosend.util.EmailOutbox;
+import com.funshion.funautosend.util.ForwardLatencyTracker;
+import com.funshion.funautosend.util.HttpClientProvider;
+import com.funshion.funautosend.util.NetworkDispatcher;
+import com.funshion.funautosend.util.NetworkStateHolder;
 import com.funshion.funautosend.util.NotificationUtils;
 import com.funshion.funautosend.util.PermissionHelper;
+import com.funshion.funautosend.util.PipelineMetricsCollector;
 import com.funshion.funautosend.util.PreferencesHelper;
+import com.funshion.funautosend.util.ReportQueue;
+import com.funshion.funautosend.util.RestartLatencyTracker;
 import com.funshion.funautosend.util.SystemBroadcastReceiver;
+import com.funshion.funautosend.util.WakeLockManager;
+import com.funshion.funautosend.util.WakeupScheduler;
+import com.funshion.funautosend.util.KeepAliveCostTracker;
 import com.funshion.funautosend.util.KeepAliveManager;
 import com.funshion.funautosend.util.SmsHelper;
+import com.funshion.funautosend.util.SimCircuitBreaker;
+import com.funshion.funautosend.util.SmsAggregator;
+import com.funshion.funautosend.util.SendSimSelector;
 
 import android.app.Notification;
 import java.text.SimpleDateFormat;
@@ -49,18 +66,19 @@ public class SmsForwardService extends Service {
     private Handler refreshHandler; // 用于后台自动刷新的Handler
     private HandlerThread refreshHandlerThread; // 用于刷新任务的HandlerThread
     private Runnable refreshRunnable; // 自动刷新任务
-    private static final int REFRESH_INTERVAL = 1*60 * 1000; // 刷新间隔时间（1分钟，单位：毫秒）
+    private int refreshTickCount; // 定时刷新执行次数，用于控制统计日志的打印频率
+    private static final int STATS_LOG_TICKS = 10; // 每10次定时刷新打印一次运行统计
     private static final int HIGH_PRIORITY_INTERVAL = 1800 * 1000; // 30分钟切换到高优先级通知一次
-    private static final long WAKELOCK_TIMEOUT = 30 * 1000; // WakeLock超时时间，30秒
-    private static final long NETWORK_RETRY_DELAY = 10 * 1000; // 网络重连延迟，10秒
-    private PowerManager.WakeLock wakeLock; // 用于保持CPU唤醒的WakeLock
-    private ConnectivityManager.NetworkCallback networkCallback; // 网络状态监听回调
-    private boolean isNetworkAvailable = true; // 网络可用性标志
+    private static final long REFRESH_WAKELOCK_TIMEOUT = 90 * 1000; // 刷新任务持有WakeLock的超时时间，需要大于配置请求的超时时间
+    private static final long SCAN_WAKELOCK_TIMEOUT = 60 * 1000; // 扫描任务持有WakeLock的超时时间
+    private NetworkStateHolder.Listener networkStateListener; // 网络状态监听
+    private ConfigLongPollChannel.ConfigListener configLongPollListener; // 配置长轮询收到新配置时的监听
     
     // 短信扫描相关
-    private Handler smsScanHandler; // 用于定时扫描短信的Handler
-    private Runnable smsScanRunnable; // 定时扫描短信任务
     private static final int SMS_SCAN_INTERVAL = 1 * 30 * 1000; // 短信扫描间隔（30秒，单位：毫秒）
+    // 注册到WakeupScheduler的定时任务名称
+    private static final String TASK_REFRESH = "配置刷新";
+    private static final String TASK_SMS_SCAN = "短信扫描";
     private Handler smsTriggerScanHandler; // 用于短信触发扫描的Handler
     private Runnable smsTriggerScanRunnable; // 短信触发扫描任务
     private static final long SMS_DELAY_SCAN_INTERVAL = 3000; // 短信延迟扫描间隔（3秒，单位：毫秒）
@@ -78,23 +96,40 @@ public class SmsForwardService extends Service {
     private ServiceConnection mGuardianServiceConnection = null;
     // 守护进程AIDL接口实例
     private IKeepAliveAidlInterface mGuardianServiceAidl = null;
-    // 用于检查守护进程是否存活的Handler
+    // 守护进程的Binder，用于接收死亡通知
+    private IBinder mGuardianBinder = null;
+    // 用于处理守护进程连接状态的Handler，所有守护进程相关状态都在主线程中修改
     private Handler mCheckHandler = new Handler();
-    // 检查间隔（毫秒）
-    private static final long CHECK_INTERVAL = 5000;
+    // 兜底检查间隔（毫秒），守护进程死亡由死亡通知发现，这里只处理绑定一直没有成功等少见情况
+    private static final long GUARDIAN_PROBE_INTERVAL = 5 * 60 * 1000;
+    private static final String TASK_GUARDIAN_PROBE = "守护进程检查";
     // 上次成功连接守护进程的时间
     private long mLastGuardianConnectTime = 0;
     // 守护进程服务是否已绑定的标志
     private boolean mIsGuardianServiceBound = false;
+    // 是否已经发现守护进程死亡并在重启中，避免死亡通知和断开连接回调重复重启
+    private boolean mGuardianRestartPending = false;
+    // 守护进程重启耗时统计
+    private final RestartLatencyTracker mGuardianRestartTracker = new RestartLatencyTracker();
+    
+    // 守护进程死亡通知，在Binder线程中回调
+    private final IBinder.DeathRecipient mGuardianDeathRecipient = new IBinder.DeathRecipient() {
+        @Override
+        public void binderDied() {
+            mCheckHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onGuardianDied("收到守护进程死亡通知");
+                }
+            });
+        }
+    };
 
     @Override
     public void onCreate() {
         super.onCreate();
         LogUtil.d(TAG, "前台服务创建");
 
-        // 初始化电源管理器和WakeLock
-        initPowerManager();
-        
         // 初始化网络状态监听
         initNetworkMonitor();
         
@@ -107,6 +142,16 @@ public class SmsForwardService extends Service {
         // 初始化后台自动刷新机制
         initBackgroundRefresh();
         
+        // 开启配置长轮询时，配置变化可以立即下发
+        configLongPollListener = new ConfigLongPollChannel.ConfigListener() {
+            @Override
+            public void onConfigChanged(ConfigRepository.ConfigSnapshot snapshot) {
+                LogUtil.d(TAG, "配置长轮询收到新配置");
+                applyFetchedConfig(snapshot);
+            }
+        };
+        ConfigLongPollChannel.getInstance(this).start(configLongPollListener);
+        
         // 初始化短信扫描机制
         initSmsScan();
 
@@ -115,11 +160,23 @@ public class SmsForwardService extends Service {
                 NotificationUtils.createForegroundServiceNotification(this));
 
         // 首次启动时立即执行一次刷新
-        handleBackgroundRefresh();
+        handleBackgroundRefresh("首次启动");
         
         // 首次启动时立即扫描一次短信
         scanAllSms();
         
+        // 恢复上次进程未发送完的邮件
+        EmailOutbox.getInstance(this).drain();
+        
+        // 恢复上次进程未发送的聚合短信，创建聚合器时会按原计划重新安排发送
+        SmsAggregator.getInstance(this);
+        
+        // 恢复上次进程因SIM卡熔断暂存的转发
+        SimCircuitBreaker.getInstance(this);
+        
+        // 恢复上次进程等待合并上报的转发结果，已超时的单独上报
+        CombinedReportCollector.getInstance(this);
+        
         // 记录当前时间作为首次启动时间
         lastHighPriorityTime = System.currentTimeMillis();
         
@@ -133,13 +190,15 @@ public class SmsForwardService extends Service {
         startGuardianService();
         
         // 确保AlarmManager定时任务被设置
-        setupAlarmManagerForRefresh();
+        setupAlarmManagerForRefresh(AdaptiveRefreshScheduler.getInstance(this).getNextIntervalMs() + WakeupScheduler.SLOT_MS);
         
         // 移除不必要的保活检查，避免循环触发
     }
 
     // 短信扫描动作常量
     private static final String ACTION_SCAN_SMS = "ACTION_SCAN_SMS";
+    // 守护进程保活开关变化
+    private static final String EXTRA_GUARDIAN_SWITCH_CHANGED = "GUARDIAN_SWITCH_CHANGED";
     
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
@@ -156,7 +215,11 @@ public class SmsForwardService extends Service {
         if (intent != null && intent.getBooleanExtra("FROM_ALARM_MANAGER", false)) {
             LogUtil.d(TAG, "接收到来自AlarmManager的刷新请求，立即执行刷新");
             // 立即执行一次刷新操作
-            handleBackgroundRefresh();
+            handleBackgroundRefresh("定时闹钟");
+        }
+        
+        if (intent != null && intent.getBooleanExtra(EXTRA_GUARDIAN_SWITCH_CHANGED, false)) {
+            onGuardianSwitchChanged();
         }
         
         // 返回START_STICKY，系统在内存不足杀死服务后，会尝试重建服务
@@ -174,6 +237,11 @@ public class SmsForwardService extends Service {
         public String getProcessName() throws RemoteException {
             return ":main";
         }
+        
+        @Override
+        public PipelineMetrics getPipelineMetrics() throws RemoteException {
+            return PipelineMetricsCollector.collect(SmsForwardService.this);
+        }
     };
     
     @Nullable
@@ -187,19 +255,15 @@ public class SmsForwardService extends Service {
      */
     private void cleanupResources() {
         // 释放WakeLock
-        releaseWakeLock();
+        WakeLockManager.getInstance(this).releaseAll();
+        
+        // 停止配置长轮询
+        ConfigLongPollChannel.getInstance(this).stop();
         
         // 注销网络监听
-        if (networkCallback != null) {
-            ConnectivityManager connectivityManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
-            if (connectivityManager != null) {
-                try {
-                    connectivityManager.unregisterNetworkCallback(networkCallback);
-                    LogUtil.d(TAG, "网络状态监听已注销");
-                } catch (Exception e) {
-                    LogUtil.e(TAG, "注销网络监听失败: " + e.getMessage());
-                }
-            }
+        if (networkStateListener != null) {
+            NetworkStateHolder.getInstance(this).removeListener(networkStateListener);
+            LogUtil.d(TAG, "网络状态监听已注销");
         }
     }
     
@@ -327,57 +391,38 @@ public class SmsForwardService extends Service {
         LogUtil.d(TAG, "屏幕状态广播接收器初始化完成");
     }
 
-    /**
-     * 初始化电源管理器和WakeLock
-     */
-    private void initPowerManager() {
-        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
-        if (powerManager != null) {
-            // 使用PARTIAL_WAKE_LOCK确保CPU在设备休眠时仍能工作
-            wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG + ":WakeLock");
-                    LogUtil.d(TAG, "WakeLock初始化完成");
-        }
-    }
-    
     /**
      * 初始化网络状态监听
+     * 网络状态由 {@link NetworkStateHolder} 统一监听，上报队列、发件箱和请求调度器各自订阅状态变化，这里只处理服务自身的逻辑
      */
     private void initNetworkMonitor() {
-        ConnectivityManager connectivityManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
-        if (connectivityManager != null) {
-            networkCallback = new ConnectivityManager.NetworkCallback() {
-                @Override
-                public void onAvailable(Network network) {
-                    super.onAvailable(network);
-                    isNetworkAvailable = true;
+        networkStateListener = new NetworkStateHolder.Listener() {
+            @Override
+            public void onNetworkStateChanged(NetworkStateHolder.NetworkState state, NetworkStateHolder.NetworkState previous) {
+                if (state.connected == previous.connected) {
+                    return;
+                }
+                if (state.connected) {
                     LogUtil.d(TAG, "网络连接可用");
+                    // 预先建立到配置和上报服务器的连接
+                    ApiClient.prewarmConnections();
                     // 网络恢复时立即尝试刷新
                     if (refreshHandler != null) {
                         refreshHandler.post(new Runnable() {
                             @Override
                             public void run() {
-                                handleBackgroundRefresh();
+                                handleBackgroundRefresh("网络恢复");
                             }
                         });
                     }
-                }
-                
-                @Override
-                public void onLost(Network network) {
-                    super.onLost(network);
-                    isNetworkAvailable = false;
+                } else {
                     LogUtil.d(TAG, "网络连接丢失");
+                    HttpClientProvider.getInstance().onNetworkLost();
                 }
-            };
-            
-            // 请求网络监听
-            NetworkRequest networkRequest = new NetworkRequest.Builder()
-                    .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
-                    .build();
-            
-            connectivityManager.registerNetworkCallback(networkRequest, networkCallback);
-            LogUtil.d(TAG, "网络状态监听初始化完成");
-        }
+            }
+        };
+        NetworkStateHolder.getInstance(this).addListener(networkStateListener);
+        LogUtil.d(TAG, "网络状态监听初始化完成");
     }
     
     /**
@@ -399,34 +444,6 @@ public class SmsForwardService extends Service {
         }
     }
     
-    /**
-     * 获取并持有WakeLock
-     */
-    private void acquireWakeLock() {
-        if (wakeLock != null && !wakeLock.isHeld()) {
-            try {
-                wakeLock.acquire(WAKELOCK_TIMEOUT);
-                LogUtil.d(TAG, "WakeLock已获取");
-            } catch (Exception e) {
-                LogUtil.e(TAG, "获取WakeLock失败: " + e.getMessage());
-            }
-        }
-    }
-    
-    /**
-     * 释放WakeLock
-     */
-    private void releaseWakeLock() {
-        if (wakeLock != null && wakeLock.isHeld()) {
-            try {
-                wakeLock.release();
-                LogUtil.d(TAG, "WakeLock已释放");
-            } catch (Exception e) {
-                LogUtil.e(TAG, "释放WakeLock失败: " + e.getMessage());
-            }
-        }
-    }
-    
     // 刷新相关常量
     private static final String ACTION_REFRESH_DATA = "com.funshion.funautosend.ACTION_REFRESH_DATA";
     
@@ -452,21 +469,26 @@ public class SmsForwardService extends Service {
             public void run() {
                 try {
                     // 执行后台刷新操作
-                    handleBackgroundRefresh();
+                    handleBackgroundRefresh("定时刷新");
                     
                     // 检查是否需要切换到高优先级通知
                     checkAndSwitchToHighPriorityNotification();
+                    
+                    // 统计信息每隔几次刷新汇总打印一次，不在每次唤醒时都拼接和写入大量日志
+                    if (refreshTickCount++ % STATS_LOG_TICKS == 0) {
+                        LogUtil.d(TAG, "运行统计:\n" + buildStatsSummary());
+                    }
                 } catch (Exception e) {
                     LogUtil.e(TAG, "刷新任务执行异常: " + e.getMessage(), e);
                 } finally {
-                    // 即使发生异常，也要确保安排下一次刷新
+                    // 即使发生异常，也要确保安排下一次刷新；配置请求完成后间隔的变化由间隔监听器立即应用
                     try {
-                        if (refreshHandler != null) {
-                            LogUtil.d(TAG, "安排下一次刷新，间隔: " + (REFRESH_INTERVAL / 1000) + "秒");
-                            refreshHandler.postDelayed(this, REFRESH_INTERVAL);
-                        }
-                        // 同时设置AlarmManager作为备用机制
-                        setupAlarmManagerForRefresh();
+                        long interval = AdaptiveRefreshScheduler.getInstance(SmsForwardService.this).getNextIntervalMs();
+                        LogUtil.d(TAG, "安排下一次刷新，间隔: " + (interval / 1000) + "秒");
+                        WakeupScheduler.getInstance().setInterval(TASK_REFRESH, interval);
+                        // 同时设置AlarmManager作为备用机制，每次刷新只设置这一次
+                        // 闹钟比定时任务晚一个时间片，进程正常运行时闹钟总是在触发前被重新设置，只在设备休眠时才唤醒
+                        setupAlarmManagerForRefresh(interval + WakeupScheduler.SLOT_MS);
                     } catch (Exception e) {
                         LogUtil.e(TAG, "安排下一次刷新任务失败: " + e.getMessage(), e);
                     }
@@ -475,17 +497,59 @@ public class SmsForwardService extends Service {
         };
         
         // 设置AlarmManager作为可靠的定时机制
-        setupAlarmManagerForRefresh();
+        long interval = AdaptiveRefreshScheduler.getInstance(this).getNextIntervalMs();
+        setupAlarmManagerForRefresh(interval + WakeupScheduler.SLOT_MS);
+        
+        // 启动定时刷新，与其他定时任务对齐到同一批唤醒
+        WakeupScheduler.getInstance().register(TASK_REFRESH, interval, refreshRunnable);
         
-        // 启动定时刷新
-        refreshHandler.postDelayed(refreshRunnable, REFRESH_INTERVAL);
-        LogUtil.d(TAG, "后台自动刷新机制初始化完成，刷新间隔: " + (REFRESH_INTERVAL / 1000) + "秒");
+        // 配置变化或收到配置更新通知后立即按新间隔重新安排，不等当前这一轮（可能是最长间隔）结束
+        AdaptiveRefreshScheduler.getInstance(this).setIntervalListener(new AdaptiveRefreshScheduler.IntervalListener() {
+            @Override
+            public void onIntervalChanged(long intervalMs) {
+                LogUtil.d(TAG, "刷新间隔调整为: " + (intervalMs / 1000) + "秒，重新安排刷新");
+                WakeupScheduler.getInstance().setInterval(TASK_REFRESH, intervalMs);
+                setupAlarmManagerForRefresh(intervalMs + WakeupScheduler.SLOT_MS);
+            }
+        });
+        LogUtil.d(TAG, "后台自动刷新机制初始化完成，刷新间隔: " + (interval / 1000) + "秒");
+    }
+    
+    /**
+     * 汇总各模块的统计信息，每个模块一行，便于分析转发时间花在哪个阶段以及各机制的开销
+     */
+    private String buildStatsSummary() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("转发耗时: ").append(ForwardLatencyTracker.getInstance().getStatsSummary());
+        builder.append("\nSIM卡熔断: ").append(SimCircuitBreaker.getInstance(this).getStatsSummary());
+        builder.append("\nSIM卡发送负载: ").append(SendSimSelector.getInstance(this).getLoadSummary());
+        builder.append("\n邮件发送队列: ").append(EmailHelper.getQueueMetrics())
+                .append(", 发件箱待发送: ").append(EmailOutbox.getInstance(this).getPendingCount());
+        builder.append("\n上报队列: ").append(ReportQueue.getInstance(this).getMetricsSummary());
+        builder.append("\n网络请求调度: ").append(NetworkDispatcher.getInstance(this).getMetricsSummary())
+                .append(", HTTP连接池: ").append(HttpClientProvider.getInstance().getStatsSummary());
+        if (PreferencesHelper.isCombinedReportEnabled(this)) {
+            builder.append("\n合并上报: ").append(CombinedReportCollector.getInstance(this).getStatsSummary());
+        }
+        builder.append("\n配置刷新: ").append(AdaptiveRefreshScheduler.getInstance(this).getStatsSummary());
+        builder.append("\n定时唤醒: ").append(WakeupScheduler.getInstance().getStatsSummary());
+        builder.append("\nWakeLock: ").append(WakeLockManager.getInstance(this).getStatsSummary());
+        builder.append("\n守护进程: ").append(mGuardianRestartTracker.getStatsSummary());
+        builder.append("\n保活开销: ").append(KeepAliveManager.getInstance(this).getStatsSummary());
+        builder.append("\n转发流程: ").append(PipelineMetricsCollector.collect(this));
+        builder.append("\n配置发布: ").append(ConfigRepository.getInstance(this).getStatsSummary())
+                .append(", 刷新请求: ").append(ConfigRefreshCoordinator.getInstance(this).getStatsSummary());
+        if (PreferencesHelper.isConfigLongPollEnabled(this)) {
+            builder.append("\n配置长轮询: ").append(ConfigLongPollChannel.getInstance(this).getStatsSummary());
+        }
+        return builder.toString();
     }
     
     /**
      * 设置AlarmManager用于定时刷新，确保在设备休眠时也能正常触发
+     * @param intervalMs 距离下一次刷新的时间
      */
-    private void setupAlarmManagerForRefresh() {
+    private void setupAlarmManagerForRefresh(long intervalMs) {
         try {
             android.app.AlarmManager alarmManager = (android.app.AlarmManager) getSystemService(Context.ALARM_SERVICE);
             if (alarmManager != null) {
@@ -502,7 +566,7 @@ public class SmsForwardService extends Service {
                 // 取消之前可能存在的闹钟
                 alarmManager.cancel(pendingIntent);
                 
-                long triggerAtMillis = System.currentTimeMillis() + REFRESH_INTERVAL;
+                long triggerAtMillis = System.currentTimeMillis() + intervalMs;
                 
                 // 根据Android版本选择不同的设置方式，确保在Doze模式下也能触发
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
@@ -526,70 +590,44 @@ public class SmsForwardService extends Service {
     
     /**
      * 处理后台自动刷新操作
+     * 所有触发来源都经过 {@link ConfigRefreshCoordinator}，同时触发时只发起一个请求
+     * @param source 触发来源，用于日志
      */
-    private void handleBackgroundRefresh() {
-        LogUtil.d(TAG, "开始后台刷新任务");
+    private void handleBackgroundRefresh(String source) {
+        LogUtil.d(TAG, "开始后台刷新任务，触发来源: " + source);
         
-        // 获取本机电量信息并打印，不影响正常刷新逻辑
-        int batteryPercentage = PermissionHelper.getBatteryLevel(this);
-        
-        // 获取WakeLock确保在刷新过程中CPU不会休眠
-        acquireWakeLock();
+        // 获取WakeLock确保在刷新过程中CPU不会休眠，持有到请求完成，而不是请求发出后就释放
+        final WakeLockManager.Hold wakeLockHold = WakeLockManager.getInstance(this)
+                .acquire(WakeLockManager.TaskType.REFRESH, REFRESH_WAKELOCK_TIMEOUT);
+        boolean requestPending = false;
         
         try {
             // 检查是否有网络权限
             if (PermissionHelper.hasPermission(this, android.Manifest.permission.INTERNET)) {
-                // 检查网络状态
-                ConnectivityManager cm = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
-                NetworkCapabilities capabilities = null;
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                    Network activeNetwork = cm.getActiveNetwork();
-                    if (activeNetwork != null) {
-                        capabilities = cm.getNetworkCapabilities(activeNetwork);
-                    }
-                }
-                
-                if (capabilities != null && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)) {
-                    LogUtil.d(TAG, "网络可用，执行刷新请求");
-                    
-                    // 从服务器获取最新的配置数据，传入电量参数
-                            ApiClient.fetchApiData(SmsForwardService.this, batteryPercentage, new ApiClient.ApiCallback() {
+                // 检查网络状态，读取缓存的网络状态，不再每次查询ConnectivityManager
+                if (NetworkStateHolder.getInstance(this).isConnected()) {
+                    // 从服务器获取最新的配置数据，请求进行中时等待该请求的结果
+                    requestPending = ConfigRefreshCoordinator.getInstance(this).refresh(source, false, new ApiClient.ConfigCallback() {
                         @Override
-                        public void onSuccess(String result) {
+                        public void onSuccess(ConfigRepository.ConfigSnapshot snapshot) {
                             LogUtil.d(TAG, "后台刷新成功: 获取到最新配置数据");
-                                
-                            // 解析API结果
-                            String savedPhone1 = PreferencesHelper.getPhoneNumber1(SmsForwardService.this);
-                            String savedPhone2 = PreferencesHelper.getPhoneNumber2(SmsForwardService.this);
-                            ApiClient.ParseResult parseResult = ApiClient.parseApiResult(result, savedPhone1, savedPhone2);
-                            
-                            // 保存解析结果到本地存储
-                            PreferencesHelper.saveApiResultList(SmsForwardService.this, parseResult.getApiResultList());
-                            PreferencesHelper.saveTargetList(SmsForwardService.this, parseResult.getTargetList());
-                            
-                            LogUtil.d(TAG, "解析结果 - 目标列表数量: " + parseResult.getTargetList().size());
-                            LogUtil.d(TAG, "数据已保存到本地存储");
-                            
-                            // 刷新成功后更新通知，保持服务活跃
-                            String time = new SimpleDateFormat("HH:mm:ss").format(new Date());
-                            updateServiceNotification("数据刷新成功 - " + time);
-                            
-                            // 确保AlarmManager定时任务继续运行
-                            setupAlarmManagerForRefresh();
+                            cancelRetryRefresh();
+                            applyFetchedConfig(snapshot);
+                            wakeLockHold.release();
                         }
                         
                         @Override
                         public void onFailure(String error) {
                             LogUtil.e(TAG, "后台刷新失败: " + error);
-                            // 失败时记录日志并尝试再次刷新
+                            // 失败时按退避时间安排重试
                             // 使用AlarmManager确保即使在休眠状态也能唤醒系统执行刷新
                             scheduleRetryRefresh();
+                            wakeLockHold.release();
                         }
                     });
                 } else {
-                    LogUtil.w(TAG, "网络不可用，无法执行后台刷新");
-                    // 网络不可用时，使用AlarmManager安排重试
-                    scheduleRetryRefresh();
+                    // 网络恢复时会立即刷新，不再安排重试
+                    LogUtil.w(TAG, "网络不可用，无法执行后台刷新，等待网络恢复");
                 }
             } else {
                 LogUtil.w(TAG, "没有网络权限，无法执行后台刷新");
@@ -602,17 +640,44 @@ public class SmsForwardService extends Service {
             // 发生异常时也尝试重试
             scheduleRetryRefresh();
         } finally {
-            // 确保释放WakeLock
-            releaseWakeLock();
+            // 没有发出请求时立即释放WakeLock，否则在请求完成的回调中释放
+            if (!requestPending) {
+                wakeLockHold.release();
+            }
         }
         LogUtil.d(TAG, "后台刷新任务完成");
     }
     
+    /**
+     * 应用拉取到的配置快照，定时刷新和配置长轮询共用
+     * 快照已由 {@link ConfigRepository} 解析并保存，这里不再重复解析和保存
+     * @param snapshot 配置快照
+     */
+    private void applyFetchedConfig(ConfigRepository.ConfigSnapshot snapshot) {
+        LogUtil.d(TAG, "解析结果 - 目标列表数量: " + snapshot.targetList.size());
+        
+        // 长轮询开关由配置下发，开关变化后在这里启动或停止长轮询（重复启动、停止不会有影响）
+        if (PreferencesHelper.isConfigLongPollEnabled(this)) {
+            ConfigLongPollChannel.getInstance(this).start(configLongPollListener);
+        } else {
+            ConfigLongPollChannel.getInstance(this).stop();
+        }
+        
+        // 刷新成功后更新通知，保持服务活跃
+        String time = new SimpleDateFormat("HH:mm:ss").format(new Date());
+        updateServiceNotification("数据刷新成功 - " + time);
+    }
+    
     /**
      * 更新服务通知，保持服务在后台的活跃状态
      */
     private void updateServiceNotification(String content) {
         try {
+            // 有SIM卡处于熔断状态时在通知中显示出来
+            String breakerSummary = SimCircuitBreaker.getInstance(this).getStatusSummary();
+            if (!breakerSummary.isEmpty()) {
+                content = content + " | " + breakerSummary;
+            }
             Notification notification = NotificationUtils.updateForegroundServiceNotification(this, content);
             startForeground(NotificationUtils.NOTIFICATION_ID, notification);
                 LogUtil.d(TAG, "服务通知已更新");
@@ -622,23 +687,16 @@ public class SmsForwardService extends Service {
     }
     
     /**
-     * 使用AlarmManager安排重试刷新
+     * 使用AlarmManager安排重试刷新，重试时间由 {@link ConfigRefreshCoordinator} 的失败退避决定
      */
     private void scheduleRetryRefresh() {
         try {
             android.app.AlarmManager alarmManager = (android.app.AlarmManager) getSystemService(Context.ALARM_SERVICE);
             if (alarmManager != null) {
-                Intent intent = new Intent(this, SystemBroadcastReceiver.class);
-                intent.setAction("com.funshion.funautosend.ACTION_REFRESH_RETRY");
+                android.app.PendingIntent pendingIntent = getRetryRefreshIntent();
                 
-                int flags = android.app.PendingIntent.FLAG_UPDATE_CURRENT;
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                    flags |= android.app.PendingIntent.FLAG_IMMUTABLE;
-                }
-                
-                android.app.PendingIntent pendingIntent = android.app.PendingIntent.getBroadcast(this, 0, intent, flags);
-                
-                long triggerAtMillis = System.currentTimeMillis() + NETWORK_RETRY_DELAY;
+                long delay = Math.max(ConfigRefreshCoordinator.getInstance(this).getRetryDelayMs(), 1000);
+                long triggerAtMillis = System.currentTimeMillis() + delay;
                 
                 // 使用setExactAndAllowWhileIdle确保在Doze模式下也能触发
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
@@ -649,13 +707,39 @@ public class SmsForwardService extends Service {
                     alarmManager.set(android.app.AlarmManager.RTC_WAKEUP, triggerAtMillis, pendingIntent);
                 }
                 
-                LogUtil.d(TAG, "已使用AlarmManager安排刷新重试");
+                LogUtil.d(TAG, "已使用AlarmManager安排刷新重试，" + (delay / 1000) + "秒后执行");
             }
         } catch (Exception e) {
             LogUtil.e(TAG, "安排刷新重试失败: " + e.getMessage());
         }
     }
     
+    /**
+     * 刷新成功后取消尚未触发的重试
+     */
+    private void cancelRetryRefresh() {
+        try {
+            android.app.AlarmManager alarmManager = (android.app.AlarmManager) getSystemService(Context.ALARM_SERVICE);
+            if (alarmManager != null) {
+                alarmManager.cancel(getRetryRefreshIntent());
+            }
+        } catch (Exception e) {
+            LogUtil.e(TAG, "取消刷新重试失败: " + e.getMessage());
+        }
+    }
+    
+    private android.app.PendingIntent getRetryRefreshIntent() {
+        Intent intent = new Intent(this, SystemBroadcastReceiver.class);
+        intent.setAction("com.funshion.funautosend.ACTION_REFRESH_RETRY");
+        
+        int flags = android.app.PendingIntent.FLAG_UPDATE_CURRENT;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            flags |= android.app.PendingIntent.FLAG_IMMUTABLE;
+        }
+        
+        return android.app.PendingIntent.getBroadcast(this, 0, intent, flags);
+    }
+    
     /**
      * 检查并切换到高优先级通知
      */
@@ -782,6 +866,8 @@ public class SmsForwardService extends Service {
         
         // 清理Runnable引用
         if (refreshRunnable != null) {
+            AdaptiveRefreshScheduler.getInstance(this).setIntervalListener(null);
+            WakeupScheduler.getInstance().unregister(TASK_REFRESH);
             refreshRunnable = null;
         }
         
@@ -792,23 +878,14 @@ public class SmsForwardService extends Service {
      * 初始化短信扫描机制
      */
     private void initSmsScan() {
-        // 创建定时扫描Handler
-        smsScanHandler = new Handler();
-        
-        // 创建定时扫描短信任务
-        smsScanRunnable = new Runnable() {
+        // 定时扫描与配置刷新等定时任务对齐到同一批唤醒
+        WakeupScheduler.getInstance().register(TASK_SMS_SCAN, SMS_SCAN_INTERVAL, new Runnable() {
             @Override
             public void run() {
                 // 执行短信扫描操作
                 scanAllSms();
-                
-                // 安排下一次扫描
-                smsScanHandler.postDelayed(this, SMS_SCAN_INTERVAL);
             }
-        };
-        
-        // 启动定时扫描
-        smsScanHandler.postDelayed(smsScanRunnable, SMS_SCAN_INTERVAL);
+        });
         LogUtil.d(TAG, "短信扫描机制初始化完成，扫描间隔: " + (SMS_SCAN_INTERVAL / 1000) + "秒");
         
         // 初始化短信触发扫描相关
@@ -830,6 +907,9 @@ public class SmsForwardService extends Service {
         
         // 检查是否有读取短信权限
         if (SmsHelper.hasReadSmsPermission(this)) {
+            // 扫描完成前保持CPU唤醒
+            final WakeLockManager.Hold wakeLockHold = WakeLockManager.getInstance(this)
+                    .acquire(WakeLockManager.TaskType.SCAN, SCAN_WAKELOCK_TIMEOUT);
             // 在后台线程中执行扫描，避免阻塞服务线程
             new Thread(new Runnable() {
                 @Override
@@ -840,11 +920,16 @@ public class SmsForwardService extends Service {
                     } catch (Exception e) {
                         LogUtil.e(TAG, "短信扫描过程中出现异常: " + e.getMessage());
                         e.printStackTrace();
+                    } finally {
+                        PipelineMetricsCollector.onScanFinished();
+                        wakeLockHold.release();
                     }
                 }
             }).start();
         } else {
             LogUtil.d(TAG, "服务中没有读取短信权限，无法扫描短信");
+            // 没有权限时扫描任务仍在正常运行，不能让守护进程误判为停滞
+            PipelineMetricsCollector.onScanFinished();
         }
     }
     
@@ -852,12 +937,8 @@ public class SmsForwardService extends Service {
      * 停止短信扫描
      */
     private void stopSmsScan() {
-        if (smsScanHandler != null && smsScanRunnable != null) {
-            smsScanHandler.removeCallbacks(smsScanRunnable);
-            smsScanHandler = null;
-            smsScanRunnable = null;
-            LogUtil.d(TAG, "定时短信扫描已停止");
-        }
+        WakeupScheduler.getInstance().unregister(TASK_SMS_SCAN);
+        LogUtil.d(TAG, "定时短信扫描已停止");
         
         if (smsTriggerScanHandler != null && smsTriggerScanRunnable != null) {
             smsTriggerScanHandler.removeCallbacks(smsTriggerScanRunnable);
@@ -885,19 +966,8 @@ public class SmsForwardService extends Service {
      * 启动无声音乐播放服务
      */
     private void startAudioPlayerService() {
-        try {
-            Intent audioServiceIntent = new Intent(this, AudioPlayerService.class);
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                // Android 8.0及以上使用startForegroundService
-                startForegroundService(audioServiceIntent);
-            } else {
-                // Android 8.0以下使用普通的startService
-                startService(audioServiceIntent);
-            }
-            LogUtil.d(TAG, "无声音乐播放服务启动成功");
-        } catch (Exception e) {
-            LogUtil.e(TAG, "无声音乐播放服务启动失败: " + e.getMessage());
-        }
+        // 无声音乐保活关闭时不会启动
+        AudioPlayerService.start(this);
     }
     
     /**
@@ -915,8 +985,14 @@ public class SmsForwardService extends Service {
     
     /**
      * 启动守护进程服务并开始监控
+     * 通过Binder死亡通知发现守护进程死亡，不再定期通过AIDL轮询
      */
     private void startGuardianService() {
+        if (!KeepAliveManager.getInstance(this).isMechanismEnabled(KeepAliveManager.Mechanism.GUARDIAN)) {
+            LogUtil.d(TAG, "守护进程保活已关闭，不启动守护进程");
+            return;
+        }
+        
         // 启动守护进程服务
         GuardianService.start(this);
         
@@ -929,24 +1005,31 @@ public class SmsForwardService extends Service {
                     mGuardianServiceAidl = IKeepAliveAidlInterface.Stub.asInterface(service);
                     mLastGuardianConnectTime = System.currentTimeMillis();
                     mIsGuardianServiceBound = true;
+                    mGuardianRestartPending = false;
+                    
+                    long latency = mGuardianRestartTracker.onPeerConnected();
+                    if (latency >= 0) {
+                        LogUtil.d(TAG, "守护进程已恢复，重启耗时: " + latency + "ms");
+                    }
+                    
+                    // 注册死亡通知
+                    mGuardianBinder = service;
+                    try {
+                        service.linkToDeath(mGuardianDeathRecipient, 0);
+                    } catch (RemoteException e) {
+                        // 连接建立时守护进程已经死亡
+                        onGuardianDied("注册死亡通知时守护进程已死亡");
+                    }
                 }
                 
                 @Override
                 public void onServiceDisconnected(ComponentName name) {
-                    LogUtil.d(TAG, "与守护进程服务断开连接");
-                    mGuardianServiceAidl = null;
-                    mIsGuardianServiceBound = false;
-                    // 尝试重连守护进程
-                    reconnectGuardianService();
+                    onGuardianDied("与守护进程服务断开连接");
                 }
                 
                 @Override
                 public void onBindingDied(ComponentName name) {
-                    LogUtil.d(TAG, "守护进程服务绑定死亡");
-                    mGuardianServiceAidl = null;
-                    mIsGuardianServiceBound = false;
-                    // 尝试重连守护进程
-                    reconnectGuardianService();
+                    onGuardianDied("守护进程服务绑定死亡");
                 }
             };
         }
@@ -960,45 +1043,116 @@ public class SmsForwardService extends Service {
             LogUtil.e(TAG, "绑定守护进程服务失败", e);
         }
         
-        // 开始定期检查守护进程是否存活
-        mCheckHandler.postDelayed(mGuardianCheckRunnable, CHECK_INTERVAL);
+        // 兜底检查，与其他定时任务对齐到同一批唤醒
+        WakeupScheduler.getInstance().register(TASK_GUARDIAN_PROBE, GUARDIAN_PROBE_INTERVAL, new Runnable() {
+            @Override
+            public void run() {
+                mCheckHandler.post(mGuardianProbeRunnable);
+            }
+        });
+    }
+    
+    /**
+     * 守护进程死亡时调用，在主线程中执行
+     * @param reason 发现死亡的途径，用于日志
+     */
+    private void onGuardianDied(String reason) {
+        if (mGuardianRestartPending) {
+            return;
+        }
+        if (!KeepAliveManager.getInstance(this).isMechanismEnabled(KeepAliveManager.Mechanism.GUARDIAN)) {
+            LogUtil.d(TAG, reason + "，守护进程保活已关闭，不再重启");
+            cleanupGuardianMonitoring();
+            return;
+        }
+        LogUtil.d(TAG, reason + "，尝试重启守护进程");
+        mGuardianRestartPending = true;
+        mGuardianRestartTracker.onPeerDied();
+        unlinkGuardianDeath();
+        mGuardianServiceAidl = null;
+        reconnectGuardianService();
+    }
+    
+    private void unlinkGuardianDeath() {
+        if (mGuardianBinder != null) {
+            try {
+                mGuardianBinder.unlinkToDeath(mGuardianDeathRecipient, 0);
+            } catch (Exception e) {
+                // 对端已经死亡时死亡通知已自动移除
+            }
+            mGuardianBinder = null;
+        }
     }
     
     /**
-     * 检查守护进程是否存活的Runnable
+     * 兜底检查守护进程是否存活
      */
-    private Runnable mGuardianCheckRunnable = new Runnable() {
+    private Runnable mGuardianProbeRunnable = new Runnable() {
         @Override
         public void run() {
+            long cpuBegin = KeepAliveCostTracker.getInstance().begin();
             try {
-                // 检查守护进程是否存活
                 if (mGuardianServiceAidl != null) {
-                    boolean isAlive = mGuardianServiceAidl.isProcessAlive();
-                    if (isAlive) {
-                        LogUtil.d(TAG, "守护进程服务存活");
-                        mLastGuardianConnectTime = System.currentTimeMillis();
+                    if (!mGuardianServiceAidl.isProcessAlive()) {
+                        onGuardianDied("守护进程服务不存活");
                     } else {
-                        LogUtil.d(TAG, "守护进程服务不存活，尝试重启");
-                        reconnectGuardianService();
-                    }
-                } else {
-                    // 如果超过10秒未连接成功，尝试重启守护进程
-                    if (System.currentTimeMillis() - mLastGuardianConnectTime > 10000) {
-                        LogUtil.d(TAG, "长时间未连接到守护进程服务，尝试重启");
-                        reconnectGuardianService();
+                        mLastGuardianConnectTime = System.currentTimeMillis();
+                        // 记录守护进程自身的开销
+                        PipelineMetrics metrics = mGuardianServiceAidl.getPipelineMetrics();
+                        if (metrics != null) {
+                            KeepAliveCostTracker.getInstance().updateProcessCost(KeepAliveManager.Mechanism.GUARDIAN,
+                                    metrics.cpuTimeMs, metrics.wakeupCount, metrics.threadCount);
+                        }
                     }
+                } else if (System.currentTimeMillis() - mLastGuardianConnectTime > GUARDIAN_PROBE_INTERVAL) {
+                    // 长时间没有连接上，可能是重启或绑定失败，重新尝试
+                    LogUtil.d(TAG, "长时间未连接到守护进程服务，尝试重启");
+                    mGuardianRestartTracker.onPeerDied();
+                    mGuardianRestartPending = true;
+                    reconnectGuardianService();
                 }
             } catch (RemoteException e) {
-                    LogUtil.d(TAG, "与守护进程服务通信异常，尝试重启");
-                mGuardianServiceAidl = null;
-                reconnectGuardianService();
+                onGuardianDied("与守护进程服务通信异常");
             } finally {
-                // 继续定期检查
-                mCheckHandler.postDelayed(this, CHECK_INTERVAL);
+                KeepAliveCostTracker.getInstance().end(KeepAliveManager.Mechanism.GUARDIAN, cpuBegin);
             }
         }
     };
     
+    /**
+     * 通知前台服务守护进程保活开关已变化，由前台服务启动或停止守护进程
+     * @param context 上下文
+     */
+    public static void applyGuardianSwitch(Context context) {
+        try {
+            Intent intent = new Intent(context, SmsForwardService.class);
+            intent.putExtra(EXTRA_GUARDIAN_SWITCH_CHANGED, true);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                context.startForegroundService(intent);
+            } else {
+                context.startService(intent);
+            }
+        } catch (Exception e) {
+            LogUtil.e(TAG, "通知守护进程开关变化失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 守护进程保活开关变化时调用，开启时启动并绑定守护进程，关闭时解绑并停止守护进程
+     */
+    private void onGuardianSwitchChanged() {
+        if (KeepAliveManager.getInstance(this).isMechanismEnabled(KeepAliveManager.Mechanism.GUARDIAN)) {
+            if (!mIsGuardianServiceBound) {
+                startGuardianService();
+            }
+        } else {
+            // 先解绑，绑定还在时守护进程不会被销毁
+            cleanupGuardianMonitoring();
+            mGuardianRestartPending = false;
+            GuardianService.stop(this);
+        }
+    }
+    
     /**
      * 重新连接守护进程服务
      */
@@ -1039,7 +1193,9 @@ public class SmsForwardService extends Service {
      */
     private void cleanupGuardianMonitoring() {
         // 移除检查任务
+        WakeupScheduler.getInstance().unregister(TASK_GUARDIAN_PROBE);
         mCheckHandler.removeCallbacksAndMessages(null);
+        unlinkGuardianDeath();
         
         // 解绑守护进程服务
         if (mGuardianServiceConnection != null && mIsGuardianServiceBound) {
@@ -0,0 +1,171 @@
+package com.funshion.funautosend.util;
+
+import android.content.Context;
+import com.funshion.funautosend.util.LogUtil;
+
+/**
+ * 自适应配置刷新间隔
+ * 配置连续没有变化时逐步拉长刷新间隔（每次翻倍），直到上限；配置发生变化或服务器通知配置有更新时恢复为最短间隔。
+ * 配置变化推送通道（{@link ConfigLongPollChannel}）可用时使用最长间隔。
+ * 间隔变化时立即通知 {@link IntervalListener}，由定时任务按新间隔重新安排，不用等到下一次刷新才生效。
+ * 同时统计与固定间隔刷新相比节省了多少次唤醒
+ *
+ * 间隔上限由转发规则的maxRefreshInterval字段下发，见 {@link RemoteSettings}
+ */
+public class AdaptiveRefreshScheduler {
+    private static final String TAG = "AdaptiveRefreshScheduler";
+
+    // 最短刷新间隔，与原来的固定刷新间隔一致
+    public static final long MIN_INTERVAL_MS = 60 * 1000;
+
+    private static volatile AdaptiveRefreshScheduler instance;
+
+    private final Context context;
+    private final long startTime = System.currentTimeMillis();
+    private long currentIntervalMs = MIN_INTERVAL_MS;
+    // 上一次刷新得到的配置指纹，0表示还没有刷新过
+    private int lastConfigHash;
+    private int unchangedCount;
+    // 配置变化推送通道（长轮询）是否可用
+    private boolean pushActive;
+    private volatile IntervalListener intervalListener;
+
+    // 统计数据
+    private long refreshCount;
+    private long changeCount;
+
+    AdaptiveRefreshScheduler(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * 刷新间隔变化监听器，在调整间隔的线程（网络请求回调、长轮询线程）中执行
+     */
+    public interface IntervalListener {
+        void onIntervalChanged(long intervalMs);
+    }
+
+    /**
+     * 获取单例实例
+     */
+    public static AdaptiveRefreshScheduler getInstance(Context context) {
+        if (instance == null) {
+            synchronized (AdaptiveRefreshScheduler.class) {
+                if (instance == null) {
+                    instance = new AdaptiveRefreshScheduler(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 获取下一次刷新前应等待的时间
+     */
+    public synchronized long getNextIntervalMs() {
+        // 推送通道可用时配置变化会立即下发，定时刷新只作为兜底，使用最长间隔
+        return pushActive ? getMaxIntervalMs() : currentIntervalMs;
+    }
+
+    /**
+     * 设置刷新间隔变化监听器
+     * @param listener 监听器，为null时取消监听
+     */
+    public void setIntervalListener(IntervalListener listener) {
+        intervalListener = listener;
+    }
+
+    /**
+     * 设置配置变化推送通道是否可用
+     */
+    public void setPushActive(boolean active) {
+        long before;
+        synchronized (this) {
+            before = getNextIntervalMs();
+            pushActive = active;
+        }
+        notifyIfChanged(before);
+    }
+
+    /**
+     * 记录一次刷新
+     */
+    public synchronized void onRefresh() {
+        refreshCount++;
+    }
+
+    /**
+     * 刷新成功后调用，根据配置是否变化调整刷新间隔
+     * @param configHash 本次得到的配置指纹
+     * @return 配置是否发生了变化
+     */
+    public boolean onRefreshSuccess(int configHash) {
+        long before;
+        boolean changed;
+        synchronized (this) {
+            before = getNextIntervalMs();
+            changed = lastConfigHash == 0 || configHash != lastConfigHash;
+            lastConfigHash = configHash;
+            if (changed) {
+                changeCount++;
+                unchangedCount = 0;
+                currentIntervalMs = MIN_INTERVAL_MS;
+            } else {
+                unchangedCount++;
+                currentIntervalMs = Math.min(currentIntervalMs * 2, getMaxIntervalMs());
+            }
+            LogUtil.d(TAG, "配置" + (changed ? "已变化" : "未变化（连续 " + unchangedCount + " 次）")
+                    + "，下一次刷新间隔: " + (currentIntervalMs / 1000) + "秒");
+        }
+        notifyIfChanged(before);
+        return changed;
+    }
+
+    /**
+     * 服务器通知配置有更新时调用，恢复为最短刷新间隔
+     */
+    public void onConfigChangeSignal() {
+        long before;
+        synchronized (this) {
+            before = getNextIntervalMs();
+            unchangedCount = 0;
+            currentIntervalMs = MIN_INTERVAL_MS;
+        }
+        LogUtil.d(TAG, "收到配置更新通知，恢复最短刷新间隔");
+        notifyIfChanged(before);
+    }
+
+    /**
+     * 间隔有变化时通知监听器，在锁外调用，避免与定时任务的锁互相等待
+     */
+    private void notifyIfChanged(long before) {
+        long after = getNextIntervalMs();
+        IntervalListener listener = intervalListener;
+        if (listener != null && after != before) {
+            listener.onIntervalChanged(after);
+        }
+    }
+
+    private long getMaxIntervalMs() {
+        return Math.max(MIN_INTERVAL_MS, PreferencesHelper.getMaxRefreshInterval(context) * 1000L);
+    }
+
+    /**
+     * 获取与固定间隔刷新相比节省的唤醒次数
+     */
+    public synchronized long getSavedWakeups() {
+        long fixedCount = (System.currentTimeMillis() - startTime) / MIN_INTERVAL_MS;
+        return Math.max(0, fixedCount - refreshCount);
+    }
+
+    /**
+     * 获取刷新统计信息
+     */
+    public synchronized String getStatsSummary() {
+        return "当前间隔: " + (getNextIntervalMs() / 1000) + "秒"
+                + (pushActive ? "（长轮询可用）" : "")
+                + ", 已刷新: " + refreshCount
+                + ", 配置变化: " + changeCount
+                + ", 节省唤醒: " + getSavedWakeups();
+    }
+}
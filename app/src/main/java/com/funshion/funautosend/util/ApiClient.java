@@ -3,21 +3,19 @@ package com.funshion.funautosend.util;
 import android.content.Context;
 import com.funshion.funautosend.util.LogUtil;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 import okhttp3.Call;
 import okhttp3.Callback;
@@ -40,21 +38,15 @@ public class ApiClient {
     private static final String API_URL = "https://mgc.funshion.com/service/openapi/query/smsForwardConfig";
 
     private static final String ALPHA_REPORT_URL = "http://172.17.5.156:8089/service/openapi/reportSmsForward";
-    private static final String REPORT_URL = "https://mgc.funshion.com/service/openapi/reportSmsForward";
+    static final String REPORT_URL = "https://mgc.funshion.com/service/openapi/reportSmsForward";
+    // 配置变化长轮询地址，服务器在配置版本变化或超时后才返回
+    static final String CONFIG_WATCH_URL = "https://mgc.funshion.com/service/openapi/query/smsForwardConfigWatch";
+    // 批量上报地址，请求体为上报数据的JSON数组
+    static final String BATCH_REPORT_URL = "https://mgc.funshion.com/service/openapi/reportSmsForwardBatch";
+    // 上报请求体类型
+    static final MediaType JSON_MEDIA_TYPE = MediaType.parse("application/json; charset=utf-8");
     // 授权令牌
     private static final String AUTH_TOKEN = "Bearer sk-716430cd7c376bc82ca6f2e014bbb3bf1748505057779RLUCKDCJg12S";
-    
-    // 创建独立的上报专用线程池，确保上报操作不会被其他网络请求阻塞
-    private static final ExecutorService REPORT_EXECUTOR = Executors.newFixedThreadPool(
-            Math.max(5, Runtime.getRuntime().availableProcessors() * 3)); // 最小5个线程，CPU核心数*3
-    
-    private static final OkHttpClient client = new OkHttpClient.Builder()
-            .connectTimeout(30, TimeUnit.SECONDS) // 连接超时设置为30秒
-            .readTimeout(30, TimeUnit.SECONDS)    // 读取超时设置为30秒
-            .writeTimeout(30, TimeUnit.SECONDS)   // 写入超时设置为30秒
-            .retryOnConnectionFailure(true)       // 连接失败时自动重试
-            .build();
-    private static final Gson gson = new Gson();
 
     /**
      * 接口回调接口
@@ -64,29 +56,22 @@ public class ApiClient {
         void onFailure(String error);
     }
 
+    /**
+     * 配置拉取回调接口，成功时返回已解析并保存的配置快照
+     */
+    public interface ConfigCallback {
+        void onSuccess(ConfigRepository.ConfigSnapshot snapshot);
+        void onFailure(String error);
+    }
+
     /**
      * 发送API请求（带电量参数）
      * @param context Context对象，用于访问偏好设置
      * @param batteryPercentage 电池电量百分比
      * @param callback 回调接口，用于处理请求结果
      */
-    public static void fetchApiData(final Context context, final int batteryPercentage, final ApiCallback callback) {
-        // 获取保存的手机号
-        String savedPhone1 = PreferencesHelper.getPhoneNumber1(context);
-        String savedPhone2 = PreferencesHelper.getPhoneNumber2(context);
-        
-        // 构建phones参数，格式为"121,121"
-        StringBuilder phonesBuilder = new StringBuilder();
-        if (savedPhone1 != null && !savedPhone1.isEmpty()) {
-            phonesBuilder.append(savedPhone1);
-        }
-        if (savedPhone2 != null && !savedPhone2.isEmpty()) {
-            if (phonesBuilder.length() > 0) {
-                phonesBuilder.append(",");
-            }
-            phonesBuilder.append(savedPhone2);
-        }
-        String phonesParam = phonesBuilder.toString();
+    public static void fetchApiData(final Context context, final int batteryPercentage, final ConfigCallback callback) {
+        String phonesParam = buildPhonesParam(context);
         
         // 构建请求URL，添加phones参数
         StringBuilder urlBuilder = new StringBuilder(API_URL);
@@ -114,7 +99,8 @@ public class ApiClient {
                 .header("Authorization", AUTH_TOKEN)
                 .build();
 
-        client.newCall(request).enqueue(new Callback() {
+        // 配置拉取优先于上报请求
+        NetworkDispatcher.getInstance(context).enqueue(request, NetworkDispatcher.Priority.CONFIG, new Callback() {
             @Override
             public void onFailure(Call call, IOException e) {
                 LogUtil.e(TAG, "请求失败: " + e.getMessage());
@@ -129,27 +115,11 @@ public class ApiClient {
                     if (response.isSuccessful() && response.body() != null) {
                         final String result = response.body().string();
                         
-                        // 保存数据到本地存储
-                        if (context != null) {
-                            // 获取已保存的手机号
-                            String savedPhone1 = PreferencesHelper.getPhoneNumber1(context);
-                            String savedPhone2 = PreferencesHelper.getPhoneNumber2(context);
-                            
-                            // 解析API结果
-                            ParseResult parseResult = parseApiResult(result, savedPhone1, savedPhone2);
-                            
-                            // 保存解析结果到本地存储
-                            PreferencesHelper.saveApiResultList(context, parseResult.getApiResultList());
-                            PreferencesHelper.saveTargetList(context, parseResult.getTargetList());
-                            
-                            // 保存最后更新时间
-                            PreferencesHelper.saveLastUpdateTime(context);
-                            
-                            LogUtil.d(TAG, "API数据已保存到本地存储");
-                        }
+                        // 只在这里解析和保存一次，调用方直接使用解析好的配置快照
+                        ConfigRepository.ConfigSnapshot snapshot = ConfigRepository.getInstance(context).publish(result);
                         
                         if (callback != null) {
-                            callback.onSuccess(result);
+                            callback.onSuccess(snapshot);
                         }
                     } else {
                         if (callback != null) {
@@ -171,6 +141,27 @@ public class ApiClient {
         });
     }
 
+    /**
+     * 构建phones参数，格式为"121,121"
+     */
+    static String buildPhonesParam(Context context) {
+        // 获取保存的手机号
+        String savedPhone1 = PreferencesHelper.getPhoneNumber1(context);
+        String savedPhone2 = PreferencesHelper.getPhoneNumber2(context);
+        
+        StringBuilder phonesBuilder = new StringBuilder();
+        if (savedPhone1 != null && !savedPhone1.isEmpty()) {
+            phonesBuilder.append(savedPhone1);
+        }
+        if (savedPhone2 != null && !savedPhone2.isEmpty()) {
+            if (phonesBuilder.length() > 0) {
+                phonesBuilder.append(",");
+            }
+            phonesBuilder.append(savedPhone2);
+        }
+        return phonesBuilder.toString();
+    }
+
     /**
      * 解析API返回结果
      * @param result API返回的JSON字符串
@@ -305,10 +296,17 @@ public class ApiClient {
         }
     }
     
+    /**
+     * 上报事件，使用流式写出JSON，避免基于反射的序列化
+     */
+    public interface ReportPayload {
+        void writeJson(JsonWriter writer) throws IOException;
+    }
+    
     /**
      * 短信上报请求参数类
      */
-    public static class SmsReportRequest {
+    public static class SmsReportRequest implements ReportPayload {
         private int id;
         private String workPhone;
         private String smsSender;
@@ -330,13 +328,16 @@ public class ApiClient {
             this.reportType = reportType;
         }
         
-        // Getters and setters can be added if needed
+        @Override
+        public void writeJson(JsonWriter writer) throws IOException {
+            writeReportJson(writer, id, workPhone, smsSender, smsReceiveTime, smsContent, forwardTime, forwardStatus, reportType);
+        }
     }
     
     /**
      * 邮件上报请求参数类
      */
-    public static class EmailReportRequest {
+    public static class EmailReportRequest implements ReportPayload {
         private int id;
         private String workPhone;
         private String smsSender;
@@ -358,162 +359,187 @@ public class ApiClient {
             this.reportType = reportType;
         }
         
-        // Getters and setters can be added if needed
+        @Override
+        public void writeJson(JsonWriter writer) throws IOException {
+            writeReportJson(writer, id, workPhone, smsSender, smsReceiveTime, smsContent, forwardTime, forwardStatus, reportType);
+        }
+    }
+    
+    /**
+     * 合并上报请求参数类
+     * 同一条转发短信的短信和邮件转发结果合并为一条数据，短信内容只上报一次；
+     * 短信相关字段与短信上报数据一致，另外附带邮件的转发时间和状态
+     */
+    public static class CombinedReportRequest implements ReportPayload {
+        private final SmsReportRequest sms;
+        private final EmailReportRequest email;
+        
+        public CombinedReportRequest(SmsReportRequest sms, EmailReportRequest email) {
+            this.sms = sms;
+            this.email = email;
+        }
+        
+        @Override
+        public void writeJson(JsonWriter writer) throws IOException {
+            writer.beginObject();
+            writer.name("id").value(sms.id);
+            writer.name("workPhone").value(sms.workPhone);
+            writer.name("smsSender").value(sms.smsSender);
+            writer.name("smsReceiveTime").value(sms.smsReceiveTime);
+            writer.name("smsContent").value(sms.smsContent);
+            writer.name("forwardTime").value(sms.forwardTime);
+            writer.name("forwardStatus").value(sms.forwardStatus);
+            writer.name("emailForwardTime").value(email.forwardTime);
+            writer.name("emailForwardStatus").value(email.forwardStatus);
+            writer.name("reportType").value("combined");
+            writer.endObject();
+        }
+    }
+    
+    /**
+     * 写出单条上报数据，字段与原先Gson序列化的结果一致（null字段不输出）
+     */
+    private static void writeReportJson(JsonWriter writer, int id, String workPhone, String smsSender, String smsReceiveTime,
+                                        String smsContent, String forwardTime, int forwardStatus, String reportType) throws IOException {
+        writer.beginObject();
+        writer.name("id").value(id);
+        writer.name("workPhone").value(workPhone);
+        writer.name("smsSender").value(smsSender);
+        writer.name("smsReceiveTime").value(smsReceiveTime);
+        writer.name("smsContent").value(smsContent);
+        writer.name("forwardTime").value(forwardTime);
+        writer.name("forwardStatus").value(forwardStatus);
+        writer.name("reportType").value(reportType);
+        writer.endObject();
     }
     
     /**
      * 上报短信数据
+     * 上报数据先写入持久化的上报队列，再由队列批量发送，失败或断网时保留到发送成功为止
      * @param context Context对象
      * @param smsReportRequest 短信上报请求参数
      * @param callback 回调接口，用于处理请求结果
      */
     public static void reportSmsData(final Context context, final SmsReportRequest smsReportRequest, final ApiCallback callback) {
-        // 使用独立的上报线程池执行上报操作，避免与其他网络请求竞争资源
-        REPORT_EXECUTOR.execute(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    // 转换请求参数为JSON字符串
-                    String jsonBody = gson.toJson(smsReportRequest);
-                    
-                    // 打印完整的请求参数
-                    LogUtil.d(TAG, "上报短信数据: URL=" + REPORT_URL + ", RequestBody=" + jsonBody);
-                    
-                    // 创建请求体
-                    MediaType JSON = MediaType.parse("application/json; charset=utf-8");
-                    RequestBody body = RequestBody.create(jsonBody, JSON);
-                    
-                    // 构建请求
-                    Request request = new Request.Builder()
-                            .url(REPORT_URL)
-                            .post(body)
-                            // 添加Authorization请求头
-                            .header("Authorization", AUTH_TOKEN)
-                            .build();
-                    
-                    // 发送请求
-                    client.newCall(request).enqueue(new Callback() {
-                @Override
-                public void onFailure(Call call, IOException e) {
-                    LogUtil.e(TAG, "短信上报失败: " + e.getMessage());
-                    if (callback != null) {
-                        callback.onFailure("短信上报失败: " + e.getMessage());
-                    }
-                }
-                
-                @Override
-                public void onResponse(Call call, Response response) throws IOException {
-                    try {
-                        if (response.isSuccessful() && response.body() != null) {
-                            final String result = response.body().string();
-                            // 移除重复的成功日志打印，让调用者在回调中处理
-                            if (callback != null) {
-                                callback.onSuccess(result);
-                            }
-                        } else {
-                            String errorMsg = "短信上报失败，响应码: " + response.code();
-                            LogUtil.e(TAG, errorMsg);
-                            if (callback != null) {
-                                callback.onFailure(errorMsg);
-                            }
-                        }
-                    } catch (Exception e) {
-                        LogUtil.e(TAG, "处理短信上报响应失败: " + e.getMessage());
-                        if (callback != null) {
-                            callback.onFailure("处理短信上报响应失败: " + e.getMessage());
-                        }
-                    } finally {
-                        if (response.body() != null) {
-                            response.body().close();
-                        }
-                    }
-                }
-            });
-        } catch (Exception e) {
-                    LogUtil.e(TAG, "准备短信上报请求失败: " + e.getMessage());
-                    if (callback != null) {
-                        callback.onFailure("准备短信上报请求失败: " + e.getMessage());
-                    }
-                }
-            }
-        });
+        ReportQueue.getInstance(context).enqueue(smsReportRequest, "短信", callback);
     }
     
     /**
      * 上报邮件数据
+     * 上报数据先写入持久化的上报队列，再由队列批量发送，失败或断网时保留到发送成功为止
      * @param context Context对象
      * @param emailReportRequest 邮件上报请求参数
      * @param callback 回调接口，用于处理请求结果
      */
     public static void reportEmailData(final Context context, final EmailReportRequest emailReportRequest, final ApiCallback callback) {
-        // 使用独立的上报线程池执行上报操作，避免与其他网络请求竞争资源
-        REPORT_EXECUTOR.execute(new Runnable() {
+        ReportQueue.getInstance(context).enqueue(emailReportRequest, "邮件", callback);
+    }
+    
+    /**
+     * 合并上报短信和邮件数据
+     * @param context Context对象
+     * @param combinedReportRequest 合并上报请求参数
+     * @param callback 回调接口，用于处理请求结果
+     */
+    public static void reportCombinedData(final Context context, final CombinedReportRequest combinedReportRequest, final ApiCallback callback) {
+        ReportQueue.getInstance(context).enqueue(combinedReportRequest, "合并", callback);
+    }
+    
+    /**
+     * 将上报数据序列化为JSON字符串
+     */
+    static String toReportJson(ReportPayload payload) throws IOException {
+        StringWriter stringWriter = new StringWriter();
+        JsonWriter jsonWriter = new JsonWriter(stringWriter);
+        jsonWriter.setSerializeNulls(false);
+        payload.writeJson(jsonWriter);
+        jsonWriter.close();
+        return stringWriter.toString();
+    }
+    
+    /**
+     * 构建带授权头的请求（上报、配置长轮询）
+     */
+    static Request.Builder newAuthorizedRequestBuilder(String url) {
+        return new Request.Builder()
+                .url(url)
+                // 添加Authorization请求头
+                .header("Authorization", AUTH_TOKEN);
+    }
+    
+    /**
+     * 获取共享的HTTP客户端
+     * @param longCall 是否为耗时较长的请求（配置拉取），长请求使用更宽松的超时时间
+     */
+    static OkHttpClient getHttpClient(boolean longCall) {
+        HttpClientProvider provider = HttpClientProvider.getInstance();
+        return longCall ? provider.getLongCallClient() : provider.getShortCallClient();
+    }
+    
+    /**
+     * 预热到配置服务器和上报服务器的连接，网络恢复时调用
+     */
+    public static void prewarmConnections() {
+        HttpClientProvider.getInstance().prewarm(API_URL, REPORT_URL, BATCH_REPORT_URL);
+    }
+    
+    /**
+     * 逐条上报一个事件（服务器不支持批量上报时使用）
+     * 请求直接交给统一的网络调度器，按上报类请求的优先级排队
+     * @param context Context对象
+     * @param url 上报接口地址
+     * @param jsonBody 上报数据JSON
+     * @param idempotencyKey 幂等键，服务器据此忽略重复上报
+     * @param label 上报类型描述，用于日志
+     * @param callback 回调接口，用于处理请求结果
+     */
+    static void postReportJson(Context context, String url, final String jsonBody, final String idempotencyKey, final String label, final ApiCallback callback) {
+        // 打印完整的请求参数
+        LogUtil.d(TAG, "上报" + label + "数据: URL=" + url + ", RequestBody=" + jsonBody);
+        
+        // 构建请求
+        Request request = newAuthorizedRequestBuilder(url)
+                .header("Idempotency-Key", idempotencyKey)
+                .post(RequestBody.create(jsonBody, JSON_MEDIA_TYPE))
+                .build();
+        
+        // 发送请求
+        NetworkDispatcher.getInstance(context).enqueue(request, NetworkDispatcher.Priority.TELEMETRY, new Callback() {
             @Override
-            public void run() {
-                try {
-                    // 转换请求参数为JSON字符串
-                    String jsonBody = gson.toJson(emailReportRequest);
-                    
-                    // 打印完整的请求参数
-                    LogUtil.d(TAG, "上报邮件数据: URL=" + REPORT_URL + ", RequestBody=" + jsonBody);
-                    
-                    // 创建请求体
-                    MediaType JSON = MediaType.parse("application/json; charset=utf-8");
-                    RequestBody body = RequestBody.create(jsonBody, JSON);
-                    
-                    // 构建请求
-                    Request request = new Request.Builder()
-                            .url(REPORT_URL)
-                            .post(body)
-                            // 添加Authorization请求头
-                            .header("Authorization", AUTH_TOKEN)
-                            .build();
-                    
-                    // 发送请求
-                    client.newCall(request).enqueue(new Callback() {
-                @Override
-                public void onFailure(Call call, IOException e) {
-                    LogUtil.e(TAG, "邮件上报失败: " + e.getMessage());
-                    if (callback != null) {
-                        callback.onFailure("邮件上报失败: " + e.getMessage());
-                    }
+            public void onFailure(Call call, IOException e) {
+                LogUtil.e(TAG, label + "上报失败: " + e.getMessage());
+                if (callback != null) {
+                    callback.onFailure(label + "上报失败: " + e.getMessage());
                 }
-                
-                @Override
-                public void onResponse(Call call, Response response) throws IOException {
-                    try {
-                        if (response.isSuccessful() && response.body() != null) {
-                            final String result = response.body().string();
-                            // 移除重复的成功日志打印，让调用者在回调中处理
-                            if (callback != null) {
-                                callback.onSuccess(result);
-                            }
-                        } else {
-                            String errorMsg = "邮件上报失败，响应码: " + response.code();
-                            LogUtil.e(TAG, errorMsg);
-                            if (callback != null) {
-                                callback.onFailure(errorMsg);
-                            }
-                        }
-                    } catch (Exception e) {
-                        LogUtil.e(TAG, "处理邮件上报响应失败: " + e.getMessage());
+            }
+            
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                try {
+                    if (response.isSuccessful() && response.body() != null) {
+                        final String result = response.body().string();
+                        // 移除重复的成功日志打印，让调用者在回调中处理
                         if (callback != null) {
-                            callback.onFailure("处理邮件上报响应失败: " + e.getMessage());
+                            callback.onSuccess(result);
                         }
-                    } finally {
-                        if (response.body() != null) {
-                            response.body().close();
+                    } else {
+                        String errorMsg = label + "上报失败，响应码: " + response.code();
+                        LogUtil.e(TAG, errorMsg);
+                        if (callback != null) {
+                            callback.onFailure(errorMsg);
                         }
                     }
-                }
-            });
-        } catch (Exception e) {
-                    LogUtil.e(TAG, "准备邮件上报请求失败: " + e.getMessage());
+                } catch (Exception e) {
+                    LogUtil.e(TAG, "处理" + label + "上报响应失败: " + e.getMessage());
                     if (callback != null) {
-                        callback.onFailure("准备邮件上报请求失败: " + e.getMessage());
+                        callback.onFailure("处理" + label + "上报响应失败: " + e.getMessage());
+                    }
+                } finally {
+                    if (response.body() != null) {
+                        response.body().close();
                     }
                 }
             }
         });
     }
-}
\ No newline at end of file
+}
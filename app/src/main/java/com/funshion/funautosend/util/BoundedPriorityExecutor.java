@@ -0,0 +1,130 @@
+package com.funshion.funautosend.util;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 有界优先级线程池
+ * 线程空闲一段时间后自动回收，不会长期占用线程栈；等待队列有容量上限，队列满时拒绝提交，由调用方决定如何处理；
+ * 高优先级任务（例如验证码类短信对应的邮件）排在普通任务之前执行，同优先级按提交顺序执行
+ */
+public class BoundedPriorityExecutor {
+
+    public static final int PRIORITY_HIGH = 0;
+    public static final int PRIORITY_NORMAL = 1;
+
+    private final String name;
+    private final int queueCapacity;
+    private final ThreadPoolExecutor executor;
+    private final PriorityBlockingQueue<Runnable> queue = new PriorityBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicInteger peakQueueSize = new AtomicInteger();
+
+    /**
+     * @param name 线程名前缀
+     * @param maxThreads 最大线程数
+     * @param queueCapacity 等待队列容量
+     * @param keepAliveSeconds 线程空闲多久后回收
+     */
+    public BoundedPriorityExecutor(final String name, int maxThreads, int queueCapacity, long keepAliveSeconds) {
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        // 优先级队列是无界的，线程池不会创建超过核心数的线程，因此核心数即最大线程数，并允许核心线程超时回收
+        this.executor = new ThreadPoolExecutor(maxThreads, maxThreads, keepAliveSeconds, TimeUnit.SECONDS, queue,
+                new ThreadFactory() {
+                    private final AtomicInteger index = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        return new Thread(runnable, name + "-" + index.incrementAndGet());
+                    }
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 带优先级和提交顺序的任务
+     */
+    private static class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+        final Runnable task;
+        final int priority;
+        final long sequence;
+
+        PrioritizedTask(Runnable task, int priority, long sequence) {
+            this.task = task;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            if (priority != other.priority) {
+                return priority < other.priority ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * 提交任务
+     * @param task 任务
+     * @param priority 优先级，{@link #PRIORITY_HIGH} 或 {@link #PRIORITY_NORMAL}
+     * @return 是否已接受，队列已满时返回false
+     */
+    public boolean execute(Runnable task, int priority) {
+        // 队列容量检查和入队之间存在竞争，最多短暂超出几个任务，可以接受
+        if (queue.size() >= queueCapacity) {
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+        try {
+            executor.execute(new PrioritizedTask(task, priority, sequence.incrementAndGet()));
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+        int size = queue.size();
+        int peak = peakQueueSize.get();
+        while (size > peak && !peakQueueSize.compareAndSet(peak, size)) {
+            peak = peakQueueSize.get();
+        }
+        return true;
+    }
+
+    /**
+     * 获取等待执行的任务数
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * 获取被拒绝的任务数
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * 获取队列统计信息
+     */
+    public String getMetricsSummary() {
+        return name + " 队列: " + queue.size() + "/" + queueCapacity
+                + ", 峰值: " + peakQueueSize.get()
+                + ", 活动线程: " + executor.getActiveCount()
+                + ", 当前线程: " + executor.getPoolSize()
+                + ", 已完成: " + executor.getCompletedTaskCount()
+                + ", 已拒绝: " + rejectedCount.get();
+    }
+}
@@ -0,0 +1,330 @@
+package com.funshion.funautosend.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import com.funshion.funautosend.util.LogUtil;
+import com.google.gson.Gson;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 合并上报收集器
+ * 每条转发短信原本分别上报一次短信结果和一次邮件结果，两条数据字段相同且都带完整的短信内容。
+ * 开启合并上报后，先暂存先到达的结果，等另一个结果到达后合并为一条数据上报；
+ * 超时仍未等到另一个结果时，按原来的格式单独上报已有的结果，之后迟到的结果也单独上报
+ *
+ * 等待中的结果同时保存到SharedPreferences，交给上报队列后才删除，
+ * 进程重启后恢复并按原来的超时时间继续等待，已超时的直接单独上报
+ *
+ * 开关由转发规则的combinedReport字段下发，见 {@link RemoteSettings}
+ */
+public class CombinedReportCollector {
+    private static final String TAG = "CombinedReportCollector";
+
+    // 等待另一个结果的最长时间
+    private static final long WAIT_TIMEOUT_MS = 60 * 1000;
+    // 最多同时等待的转发数，超过后最早的一条单独上报
+    private static final int MAX_PENDING = 500;
+
+    private static final String PREFS_NAME = "CombinedReportPrefs";
+    // 每个等待中的结果单独保存，键为前缀加上报键
+    private static final String KEY_PENDING_PREFIX = "pending_";
+
+    private static volatile CombinedReportCollector instance;
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final Gson gson = new Gson();
+    private final ScheduledExecutorService scheduler;
+    // 上报键 -> 等待合并的结果，按到达顺序保存
+    private final LinkedHashMap<String, PendingReport> pending = new LinkedHashMap<>();
+    private final Object lock = new Object();
+
+    // 统计数据
+    private long combinedCount;
+    private long timeoutCount;
+
+    CombinedReportCollector(Context context) {
+        this.context = context;
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        load();
+    }
+
+    /**
+     * 获取单例实例
+     */
+    public static CombinedReportCollector getInstance(Context context) {
+        if (instance == null) {
+            synchronized (CombinedReportCollector.class) {
+                if (instance == null) {
+                    instance = new CombinedReportCollector(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 等待合并的一条转发短信的结果
+     */
+    private static class PendingReport {
+        ApiClient.SmsReportRequest sms;
+        ApiClient.EmailReportRequest email;
+        // 超时时间（墙上时间），进程重启后按它计算剩余等待时间
+        long timeoutAt;
+        transient ScheduledFuture<?> timeoutFuture;
+    }
+
+    /**
+     * 生成上报键，同一规则下的同一条短信的短信结果和邮件结果使用相同的键
+     * @param ruleId 规则ID
+     * @param smsId 短信ID
+     * @return 上报键，短信ID为空时返回null，此时不合并上报
+     */
+    public static String reportKey(String ruleId, String smsId) {
+        if (smsId == null || smsId.isEmpty()) {
+            return null;
+        }
+        return ruleId + "|" + smsId;
+    }
+
+    /**
+     * 提交短信转发结果
+     * @param key 上报键
+     * @param request 短信上报数据
+     */
+    public void onSmsResult(String key, ApiClient.SmsReportRequest request) {
+        onResult(key, request, null);
+    }
+
+    /**
+     * 提交邮件发送结果
+     * @param key 上报键
+     * @param request 邮件上报数据
+     */
+    public void onEmailResult(String key, ApiClient.EmailReportRequest request) {
+        onResult(key, null, request);
+    }
+
+    private void onResult(final String key, ApiClient.SmsReportRequest sms, ApiClient.EmailReportRequest email) {
+        PendingReport complete = null;
+        PendingReport evicted = null;
+        String evictedKey = null;
+        synchronized (lock) {
+            PendingReport report = pending.get(key);
+            if (report != null && (sms != null ? report.sms == null : report.email == null)) {
+                // 另一个结果已到达，合并上报
+                pending.remove(key);
+                if (report.timeoutFuture != null) {
+                    report.timeoutFuture.cancel(false);
+                }
+                if (sms != null) {
+                    report.sms = sms;
+                } else {
+                    report.email = email;
+                }
+                combinedCount++;
+                complete = report;
+            } else {
+                if (report != null) {
+                    // 同一个键重复提交同类结果，先单独上报之前的结果
+                    pending.remove(key);
+                    if (report.timeoutFuture != null) {
+                        report.timeoutFuture.cancel(false);
+                    }
+                    // 新结果保存时覆盖同一个键，不需要再删除
+                    evicted = report;
+                } else if (pending.size() >= MAX_PENDING) {
+                    Iterator<Map.Entry<String, PendingReport>> iterator = pending.entrySet().iterator();
+                    Map.Entry<String, PendingReport> eldest = iterator.next();
+                    evictedKey = eldest.getKey();
+                    evicted = eldest.getValue();
+                    iterator.remove();
+                    if (evicted.timeoutFuture != null) {
+                        evicted.timeoutFuture.cancel(false);
+                    }
+                }
+                PendingReport newReport = new PendingReport();
+                newReport.sms = sms;
+                newReport.email = email;
+                newReport.timeoutAt = now() + WAIT_TIMEOUT_MS;
+                scheduleTimeout(key, newReport, WAIT_TIMEOUT_MS);
+                pending.put(key, newReport);
+                savePending(key, newReport);
+            }
+        }
+
+        if (evicted != null) {
+            reportSeparately(evicted.sms, evicted.email);
+            if (evictedKey != null) {
+                removeSaved(evictedKey);
+            }
+        }
+        if (complete != null) {
+            reportCombined(complete.sms, complete.email);
+            removeSaved(key);
+        }
+    }
+
+    private void scheduleTimeout(final String key, PendingReport report, long delayMs) {
+        report.timeoutFuture = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                onTimeout(key);
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void onTimeout(String key) {
+        PendingReport report;
+        synchronized (lock) {
+            report = pending.remove(key);
+            if (report == null) {
+                return;
+            }
+            timeoutCount++;
+        }
+        LogUtil.d(TAG, "等待" + (report.sms == null ? "短信" : "邮件") + "结果超时，单独上报已有结果: " + key);
+        reportSeparately(report.sms, report.email);
+        removeSaved(key);
+    }
+
+    /**
+     * 合并上报，写入上报队列后返回
+     */
+    void reportCombined(ApiClient.SmsReportRequest sms, ApiClient.EmailReportRequest email) {
+        ApiClient.reportCombinedData(context, new ApiClient.CombinedReportRequest(sms, email), logCallback("合并"));
+    }
+
+    /**
+     * 按原来的格式单独上报已有的结果，写入上报队列后返回
+     */
+    void reportSeparately(ApiClient.SmsReportRequest sms, ApiClient.EmailReportRequest email) {
+        if (sms != null) {
+            ApiClient.reportSmsData(context, sms, logCallback("短信"));
+        }
+        if (email != null) {
+            ApiClient.reportEmailData(context, email, logCallback("邮件"));
+        }
+    }
+
+    /**
+     * 从存储中恢复进程退出前等待合并的结果，已超时的立即单独上报
+     */
+    private void load() {
+        try {
+            List<Map.Entry<String, PendingReport>> saved = new ArrayList<>();
+            for (Map.Entry<String, ?> item : prefs.getAll().entrySet()) {
+                String prefKey = item.getKey();
+                if (!prefKey.startsWith(KEY_PENDING_PREFIX) || !(item.getValue() instanceof String)) {
+                    continue;
+                }
+                String key = prefKey.substring(KEY_PENDING_PREFIX.length());
+                PendingReport report = null;
+                try {
+                    report = gson.fromJson((String) item.getValue(), PendingReport.class);
+                } catch (Exception e) {
+                    LogUtil.e(TAG, "解析等待合并的结果失败: " + key, e);
+                }
+                if (report == null || (report.sms == null && report.email == null)) {
+                    prefs.edit().remove(prefKey).apply();
+                    continue;
+                }
+                saved.add(new AbstractMap.SimpleEntry<>(key, report));
+            }
+            if (saved.isEmpty()) {
+                return;
+            }
+            // 按超时时间排序，保持原来的到达顺序
+            Collections.sort(saved, new Comparator<Map.Entry<String, PendingReport>>() {
+                @Override
+                public int compare(Map.Entry<String, PendingReport> a, Map.Entry<String, PendingReport> b) {
+                    return Long.compare(a.getValue().timeoutAt, b.getValue().timeoutAt);
+                }
+            });
+
+            long now = now();
+            List<Map.Entry<String, PendingReport>> expired = new ArrayList<>();
+            synchronized (lock) {
+                for (Map.Entry<String, PendingReport> entry : saved) {
+                    PendingReport report = entry.getValue();
+                    long remainingMs = report.timeoutAt - now;
+                    if (remainingMs <= 0) {
+                        expired.add(entry);
+                        continue;
+                    }
+                    // 系统时间被往回调时，最多等待一个完整的超时时间
+                    scheduleTimeout(entry.getKey(), report, Math.min(remainingMs, WAIT_TIMEOUT_MS));
+                    pending.put(entry.getKey(), report);
+                }
+                timeoutCount += expired.size();
+            }
+            LogUtil.d(TAG, "恢复等待合并的结果 " + saved.size() + " 条，其中已超时 " + expired.size() + " 条");
+            for (Map.Entry<String, PendingReport> entry : expired) {
+                reportSeparately(entry.getValue().sms, entry.getValue().email);
+                removeSaved(entry.getKey());
+            }
+        } catch (Exception e) {
+            LogUtil.e(TAG, "恢复等待合并的结果失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 保存等待合并的结果，调用时需持有lock
+     * 使用apply异步写入，避免在转发结果回调上阻塞
+     */
+    private void savePending(String key, PendingReport report) {
+        prefs.edit().putString(KEY_PENDING_PREFIX + key, gson.toJson(report)).apply();
+    }
+
+    /**
+     * 结果已交给上报队列后删除保存的记录；期间同一个键又有新结果等待时保留新结果
+     */
+    private void removeSaved(String key) {
+        synchronized (lock) {
+            if (!pending.containsKey(key)) {
+                prefs.edit().remove(KEY_PENDING_PREFIX + key).apply();
+            }
+        }
+    }
+
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    private static ApiClient.ApiCallback logCallback(final String label) {
+        return new ApiClient.ApiCallback() {
+            @Override
+            public void onSuccess(String result) {
+                LogUtil.d(TAG, label + "上报成功: " + result);
+            }
+
+            @Override
+            public void onFailure(String error) {
+                // 上报失败不影响主流程，仅记录日志
+                LogUtil.e(TAG, label + "上报失败: " + error);
+            }
+        };
+    }
+
+    /**
+     * 获取合并上报统计信息
+     */
+    public String getStatsSummary() {
+        synchronized (lock) {
+            return "等待合并: " + pending.size() + ", 已合并: " + combinedCount + ", 超时单独上报: " + timeoutCount;
+        }
+    }
+}
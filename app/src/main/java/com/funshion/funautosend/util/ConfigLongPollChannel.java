@@ -0,0 +1,352 @@
+package com.funshion.funautosend.util;
+
+import android.content.Context;
+import com.funshion.funautosend.util.LogUtil;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * 配置变化长轮询通道
+ * 带上当前配置版本向服务器发起请求，服务器在配置版本变化时立即返回新配置，否则挂起到超时后返回304，客户端随即发起下一次请求。
+ * 规则修改可以在秒级下发到设备，通道正常时定时刷新退到最长间隔；通道断开或服务器不支持时回到定时刷新
+ *
+ * 开关由转发规则的configLongPoll字段下发，见 {@link RemoteSettings}，开关变化后由前台服务启动或停止长轮询
+ */
+public class ConfigLongPollChannel {
+    private static final String TAG = "ConfigLongPollChannel";
+
+    // 请求服务器挂起的时间（秒），需要小于长轮询客户端的读取超时
+    private static final int HOLD_SECONDS = 60;
+    // 连接失败后的重试退避时间
+    private static final long INITIAL_BACKOFF_MS = 5 * 1000;
+    private static final long MAX_BACKOFF_MS = 5 * 60 * 1000;
+    // 服务器不支持长轮询后，多久再重新尝试
+    private static final long UNSUPPORTED_RETRY_MS = 6 * 60 * 60 * 1000L;
+    // 服务器返回配置版本的响应头
+    private static final String VERSION_HEADER = "X-Config-Version";
+
+    private static volatile ConfigLongPollChannel instance;
+
+    private final Context context;
+    private final String watchUrl;
+    private final ScheduledExecutorService scheduler;
+    private final Random random = new Random();
+    private final Object lock = new Object();
+
+    private ConfigListener listener;
+    private boolean running;
+    private Call currentCall;
+    // 当前配置版本，空表示还没有拿到过，服务器会立即返回当前配置
+    private String version = "";
+    private int consecutiveFailures;
+    private boolean connected;
+    // 服务器不支持长轮询的时间，0表示支持
+    private long unsupportedSince;
+    // 当前请求的发起时间
+    private long pollStartTime;
+
+    // 统计数据
+    private long changeCount;
+    private long pollCount;
+
+    /**
+     * @param watchUrl 配置变化长轮询接口地址
+     */
+    ConfigLongPollChannel(Context context, String watchUrl) {
+        this.context = context;
+        this.watchUrl = watchUrl;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        // 网络恢复时立即重新连接，不再等待退避时间
+        NetworkStateHolder.getInstance(context).addListener(new NetworkStateHolder.Listener() {
+            @Override
+            public void onNetworkStateChanged(NetworkStateHolder.NetworkState state, NetworkStateHolder.NetworkState previous) {
+                if (state.connected && !previous.connected) {
+                    synchronized (lock) {
+                        consecutiveFailures = 0;
+                    }
+                    schedulePoll(0);
+                }
+            }
+        });
+    }
+
+    /**
+     * 获取单例实例
+     */
+    public static ConfigLongPollChannel getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ConfigLongPollChannel.class) {
+                if (instance == null) {
+                    instance = new ConfigLongPollChannel(context.getApplicationContext(), ApiClient.CONFIG_WATCH_URL);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 配置变化监听器，在OkHttp的线程中回调
+     */
+    public interface ConfigListener {
+        /**
+         * @param snapshot 已解析并保存的新配置
+         */
+        void onConfigChanged(ConfigRepository.ConfigSnapshot snapshot);
+    }
+
+    /**
+     * 启动长轮询，未开启时不做任何事
+     * @param configListener 配置变化监听器
+     */
+    public void start(ConfigListener configListener) {
+        if (!PreferencesHelper.isConfigLongPollEnabled(context)) {
+            return;
+        }
+        synchronized (lock) {
+            listener = configListener;
+            if (running) {
+                return;
+            }
+            running = true;
+        }
+        LogUtil.d(TAG, "启动配置长轮询");
+        schedulePoll(0);
+    }
+
+    /**
+     * 停止长轮询
+     */
+    public void stop() {
+        Call call;
+        synchronized (lock) {
+            running = false;
+            listener = null;
+            call = currentCall;
+            currentCall = null;
+        }
+        if (call != null) {
+            call.cancel();
+        }
+        setConnected(false);
+    }
+
+    /**
+     * 长轮询通道当前是否可用
+     */
+    public boolean isConnected() {
+        synchronized (lock) {
+            return connected;
+        }
+    }
+
+    private void schedulePoll(long delayMs) {
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void poll() {
+        String cursor;
+        synchronized (lock) {
+            if (!running || currentCall != null) {
+                return;
+            }
+            if (unsupportedSince > 0 && System.currentTimeMillis() - unsupportedSince < UNSUPPORTED_RETRY_MS) {
+                return;
+            }
+            cursor = version;
+        }
+        if (!NetworkStateHolder.getInstance(context).isConnected()) {
+            // 网络恢复时会重新调度
+            setConnected(false);
+            return;
+        }
+
+        HttpUrl url = HttpUrl.parse(watchUrl).newBuilder()
+                .addQueryParameter("phones", ApiClient.buildPhonesParam(context))
+                .addQueryParameter("version", cursor)
+                .addQueryParameter("timeout", String.valueOf(HOLD_SECONDS))
+                .build();
+        Request request = ApiClient.newAuthorizedRequestBuilder(url.toString()).get().build();
+        // 长轮询请求一直挂起，不经过网络调度器，避免长期占用配置类请求的并发数
+        final Call call = HttpClientProvider.getInstance().getLongPollClient().newCall(request);
+        synchronized (lock) {
+            if (!running) {
+                return;
+            }
+            currentCall = call;
+            pollStartTime = System.currentTimeMillis();
+            pollCount++;
+        }
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                finishCall(call);
+                if (call.isCanceled()) {
+                    return;
+                }
+                LogUtil.w(TAG, "配置长轮询失败: " + e.getMessage());
+                onPollFailed();
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                finishCall(call);
+                try {
+                    int code = response.code();
+                    if (code == 304) {
+                        // 挂起超时，配置没有变化
+                        onPollSucceeded(false);
+                    } else if (response.isSuccessful() && response.body() != null) {
+                        String result = response.body().string();
+                        String newVersion = response.header(VERSION_HEADER);
+                        if (newVersion == null) {
+                            newVersion = parseVersion(result);
+                        }
+                        if (newVersion == null) {
+                            // 没有版本号无法判断配置是否变化，继续请求会变成不停轮询
+                            markUnsupported("返回数据没有配置版本");
+                            return;
+                        }
+                        onPollSucceeded(onConfigReceived(result, newVersion));
+                    } else if (code == 404 || code == 405 || code == 501) {
+                        markUnsupported("响应码: " + code);
+                    } else {
+                        LogUtil.w(TAG, "配置长轮询失败，响应码: " + code);
+                        onPollFailed();
+                    }
+                } catch (Exception e) {
+                    LogUtil.e(TAG, "处理配置长轮询响应失败: " + e.getMessage());
+                    onPollFailed();
+                } finally {
+                    response.close();
+                }
+            }
+        });
+    }
+
+    private void finishCall(Call call) {
+        synchronized (lock) {
+            if (currentCall == call) {
+                currentCall = null;
+            }
+        }
+    }
+
+    /**
+     * @return 配置版本是否变化
+     */
+    private boolean onConfigReceived(String result, String newVersion) {
+        ConfigListener configListener;
+        synchronized (lock) {
+            if (newVersion.equals(version)) {
+                return false;
+            }
+            version = newVersion;
+            changeCount++;
+            configListener = listener;
+        }
+        LogUtil.d(TAG, "收到配置变化，版本: " + newVersion);
+        AdaptiveRefreshScheduler.getInstance(context).onConfigChangeSignal();
+        // 与定时刷新走同一个解析和保存流程
+        ConfigRepository.ConfigSnapshot snapshot = ConfigRepository.getInstance(context).publish(result);
+        if (configListener != null) {
+            configListener.onConfigChanged(snapshot);
+        }
+        return true;
+    }
+
+    private void markUnsupported(String reason) {
+        LogUtil.w(TAG, "服务器不支持配置长轮询（" + reason + "），改为定时刷新");
+        synchronized (lock) {
+            unsupportedSince = System.currentTimeMillis();
+        }
+        setConnected(false);
+        schedulePoll(UNSUPPORTED_RETRY_MS);
+    }
+
+    /**
+     * 响应头没有版本时，从返回数据的version字段读取
+     */
+    static String parseVersion(String result) {
+        try {
+            JsonElement element = JsonParser.parseString(result);
+            if (element.isJsonObject()) {
+                JsonObject object = element.getAsJsonObject();
+                if (object.has("version") && !object.get("version").isJsonNull()) {
+                    return object.get("version").getAsString();
+                }
+            }
+        } catch (Exception e) {
+            LogUtil.w(TAG, "读取配置版本失败: " + e.getMessage());
+        }
+        return null;
+    }
+
+    private void onPollSucceeded(boolean changed) {
+        long elapsed;
+        synchronized (lock) {
+            elapsed = System.currentTimeMillis() - pollStartTime;
+        }
+        // 配置没变但服务器没有挂起请求就返回了，按失败退避，避免不停地发请求
+        if (!changed && elapsed < HOLD_SECONDS * 1000L / 2) {
+            LogUtil.w(TAG, "服务器没有挂起长轮询请求，稍后重试");
+            onPollFailed();
+            return;
+        }
+        synchronized (lock) {
+            consecutiveFailures = 0;
+        }
+        setConnected(true);
+        schedulePoll(0);
+    }
+
+    private void onPollFailed() {
+        long delay;
+        synchronized (lock) {
+            consecutiveFailures++;
+            long backoff = Math.min(INITIAL_BACKOFF_MS << Math.min(consecutiveFailures - 1, 10), MAX_BACKOFF_MS);
+            delay = backoff / 2 + (long) (random.nextDouble() * backoff / 2);
+        }
+        setConnected(false);
+        schedulePoll(delay);
+    }
+
+    private void setConnected(boolean value) {
+        synchronized (lock) {
+            if (connected == value) {
+                return;
+            }
+            connected = value;
+        }
+        LogUtil.d(TAG, value ? "配置长轮询已连接，定时刷新退到最长间隔" : "配置长轮询已断开，恢复定时刷新");
+        AdaptiveRefreshScheduler.getInstance(context).setPushActive(value);
+    }
+
+    /**
+     * 获取长轮询统计信息
+     */
+    public String getStatsSummary() {
+        synchronized (lock) {
+            return "已连接: " + connected + ", 请求: " + pollCount + ", 配置变化: " + changeCount
+                    + ", 版本: " + (version.isEmpty() ? "无" : version);
+        }
+    }
+}
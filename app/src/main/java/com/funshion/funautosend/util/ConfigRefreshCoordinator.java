@@ -0,0 +1,204 @@
+package com.funshion.funautosend.util;
+
+import android.content.Context;
+import com.funshion.funautosend.util.LogUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 配置刷新协调器
+ * 定时刷新、闹钟、网络恢复、刷新重试和界面手动刷新都通过这里拉取配置：
+ * 同一时间只有一个配置请求，请求进行中的触发直接等待这个请求的结果；
+ * 两次刷新之间保持最小间隔，失败后按带随机抖动的指数退避推迟下一次刷新，网络恢复时清除退避
+ */
+public class ConfigRefreshCoordinator {
+    private static final String TAG = "ConfigRefreshCoordinator";
+
+    // 刷新成功后，多久内的非强制刷新直接跳过
+    private static final long MIN_SPACING_MS = 10 * 1000;
+    // 刷新失败后的重试退避时间
+    private static final long INITIAL_BACKOFF_MS = 10 * 1000;
+    private static final long MAX_BACKOFF_MS = 10 * 60 * 1000;
+
+    private static volatile ConfigRefreshCoordinator instance;
+
+    private final Context context;
+    private final Random random = new Random();
+    private final Object lock = new Object();
+
+    // 进行中的请求的回调，null表示当前没有请求
+    private List<ApiClient.ConfigCallback> waiters;
+    // 在此时间之前的非强制刷新直接跳过
+    private long nextAllowedTime;
+    private int consecutiveFailures;
+
+    // 统计数据
+    private long requestCount;
+    private long joinedCount;
+    private long skippedCount;
+    private long failureCount;
+
+    ConfigRefreshCoordinator(Context context) {
+        this.context = context;
+        // 网络恢复后不再等待失败退避
+        NetworkStateHolder.getInstance(context).addListener(new NetworkStateHolder.Listener() {
+            @Override
+            public void onNetworkStateChanged(NetworkStateHolder.NetworkState state, NetworkStateHolder.NetworkState previous) {
+                if (state.connected && !previous.connected) {
+                    synchronized (lock) {
+                        consecutiveFailures = 0;
+                        nextAllowedTime = 0;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 获取单例实例
+     */
+    public static ConfigRefreshCoordinator getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ConfigRefreshCoordinator.class) {
+                if (instance == null) {
+                    instance = new ConfigRefreshCoordinator(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 刷新配置
+     * 已有请求进行中时等待该请求的结果；距离上次刷新太近或处于失败退避中时跳过，此时不会回调
+     * @param source 触发来源，用于日志
+     * @param force 是否忽略最小间隔和失败退避（用户手动刷新），仍会合并到进行中的请求
+     * @param callback 回调接口，可以为null
+     * @return 是否发起或加入了请求，false表示本次触发被跳过
+     */
+    public boolean refresh(String source, boolean force, ApiClient.ConfigCallback callback) {
+        final List<ApiClient.ConfigCallback> requestWaiters;
+        synchronized (lock) {
+            if (waiters != null) {
+                joinedCount++;
+                if (callback != null) {
+                    waiters.add(callback);
+                }
+                LogUtil.d(TAG, "配置请求进行中，" + source + "触发的刷新等待该请求的结果");
+                return true;
+            }
+            long now = now();
+            if (!force && now < nextAllowedTime) {
+                skippedCount++;
+                LogUtil.d(TAG, "跳过" + source + "触发的刷新，" + ((nextAllowedTime - now) / 1000) + "秒后才允许刷新");
+                return false;
+            }
+            waiters = new ArrayList<>();
+            if (callback != null) {
+                waiters.add(callback);
+            }
+            requestWaiters = waiters;
+            requestCount++;
+        }
+
+        LogUtil.d(TAG, "发起配置请求，触发来源: " + source);
+        AdaptiveRefreshScheduler.getInstance(context).onRefresh();
+        fetchConfig(new ApiClient.ConfigCallback() {
+            @Override
+            public void onSuccess(ConfigRepository.ConfigSnapshot snapshot) {
+                synchronized (lock) {
+                    // 同一个请求只处理第一次回调，例如回调方抛出异常后请求方又回调了onFailure
+                    if (waiters != requestWaiters) {
+                        LogUtil.w(TAG, "配置请求已完成，忽略重复的成功回调");
+                        return;
+                    }
+                    consecutiveFailures = 0;
+                    nextAllowedTime = now() + MIN_SPACING_MS;
+                    waiters = null;
+                }
+                // 每次网络请求只调整一次刷新间隔，不随等待该请求的回调数量重复调整
+                AdaptiveRefreshScheduler.getInstance(context).onRefreshSuccess(snapshot.configHash);
+                for (ApiClient.ConfigCallback waiter : requestWaiters) {
+                    try {
+                        waiter.onSuccess(snapshot);
+                    } catch (Exception e) {
+                        // 一个回调出错不影响其他等待该请求的回调
+                        LogUtil.e(TAG, "配置刷新成功回调执行失败: " + e.getMessage(), e);
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(String error) {
+                long delay;
+                int failures;
+                synchronized (lock) {
+                    if (waiters != requestWaiters) {
+                        LogUtil.w(TAG, "配置请求已完成，忽略重复的失败回调: " + error);
+                        return;
+                    }
+                    failureCount++;
+                    failures = ++consecutiveFailures;
+                    long backoff = Math.min(INITIAL_BACKOFF_MS << Math.min(failures - 1, 10), MAX_BACKOFF_MS);
+                    delay = backoff / 2 + (long) (random.nextDouble() * backoff / 2);
+                    nextAllowedTime = now() + delay;
+                    waiters = null;
+                }
+                LogUtil.w(TAG, "配置请求失败（连续 " + failures + " 次），" + (delay / 1000) + "秒后重试");
+                for (ApiClient.ConfigCallback waiter : requestWaiters) {
+                    try {
+                        waiter.onFailure(error);
+                    } catch (Exception e) {
+                        LogUtil.e(TAG, "配置刷新失败回调执行失败: " + e.getMessage(), e);
+                    }
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * 发起配置请求，单元测试中覆盖以模拟请求结果
+     */
+    void fetchConfig(ApiClient.ConfigCallback callback) {
+        int batteryPercentage = PermissionHelper.getBatteryLevel(context);
+        ApiClient.fetchApiData(context, batteryPercentage, callback);
+    }
+
+    /**
+     * 当前时间，单元测试中覆盖以控制刷新间隔
+     */
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * 获取距离允许下一次刷新还需要等待的时间，刷新失败后用于安排重试
+     */
+    public long getRetryDelayMs() {
+        synchronized (lock) {
+            return Math.max(0, nextAllowedTime - now());
+        }
+    }
+
+    /**
+     * 获取配置请求失败的次数
+     */
+    public long getFailureCount() {
+        synchronized (lock) {
+            return failureCount;
+        }
+    }
+
+    /**
+     * 获取刷新统计信息
+     */
+    public String getStatsSummary() {
+        synchronized (lock) {
+            return "请求: " + requestCount + ", 合并: " + joinedCount + ", 跳过: " + skippedCount
+                    + ", 失败: " + failureCount + (waiters != null ? ", 请求进行中" : "");
+        }
+    }
+}
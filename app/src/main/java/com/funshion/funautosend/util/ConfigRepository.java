@@ -0,0 +1,120 @@
+package com.funshion.funautosend.util;
+
+import android.content.Context;
+import com.funshion.funautosend.util.LogUtil;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 转发配置仓库
+ * 配置拉取接口的返回数据只在这里解析一次，解析结果作为不可修改的快照发布给调用方，并只写入一次本地存储；
+ * 定时刷新、配置长轮询和界面刷新都从这里拿到解析好的快照，不再各自重复解析和保存
+ */
+public class ConfigRepository {
+    private static final String TAG = "ConfigRepository";
+
+    private static volatile ConfigRepository instance;
+
+    private final Context context;
+    private final Object lock = new Object();
+    // 最近一次发布的配置快照，还没有拉取过时为null
+    private volatile ConfigSnapshot snapshot;
+
+    // 统计数据
+    private long publishCount;
+    private long persistCount;
+
+    private ConfigRepository(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * 获取单例实例
+     */
+    public static ConfigRepository getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ConfigRepository.class) {
+                if (instance == null) {
+                    instance = new ConfigRepository(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 配置快照，创建后不再修改
+     */
+    public static class ConfigSnapshot {
+        // 全部配置项
+        public final List<Map<String, Object>> apiResultList;
+        // 与本机号码匹配的转发规则
+        public final List<Map<String, Object>> targetList;
+        // 配置指纹，用于判断配置是否变化
+        public final int configHash;
+        // 拉取时间
+        public final long fetchedAt;
+
+        ConfigSnapshot(List<Map<String, Object>> apiResultList, List<Map<String, Object>> targetList, long fetchedAt) {
+            this.apiResultList = Collections.unmodifiableList(apiResultList);
+            this.targetList = Collections.unmodifiableList(targetList);
+            this.configHash = 31 * apiResultList.hashCode() + targetList.hashCode();
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    /**
+     * 解析配置拉取接口的返回数据，发布新的快照并保存到本地存储
+     * 配置与上一次发布的快照相同时只更新最后更新时间
+     * @param result 配置拉取接口的返回数据
+     * @return 新的配置快照
+     */
+    public ConfigSnapshot publish(String result) {
+        String savedPhone1 = PreferencesHelper.getPhoneNumber1(context);
+        String savedPhone2 = PreferencesHelper.getPhoneNumber2(context);
+        ApiClient.ParseResult parseResult = ApiClient.parseApiResult(result, savedPhone1, savedPhone2);
+        ConfigSnapshot current = new ConfigSnapshot(parseResult.getApiResultList(), parseResult.getTargetList(),
+                System.currentTimeMillis());
+
+        boolean changed;
+        synchronized (lock) {
+            ConfigSnapshot previous = snapshot;
+            changed = previous == null || previous.configHash != current.configHash;
+            snapshot = current;
+            publishCount++;
+            if (changed) {
+                persistCount++;
+            }
+        }
+
+        if (changed) {
+            PreferencesHelper.saveConfig(context, current.apiResultList, current.targetList);
+            LogUtil.d(TAG, "配置已保存到本地存储，目标列表数量: " + current.targetList.size());
+            // 规则中带有的设备级设置字段写入本地设置
+            RemoteSettings.apply(context, current.targetList);
+        } else {
+            PreferencesHelper.saveLastUpdateTime(context);
+            LogUtil.d(TAG, "配置没有变化，只更新最后更新时间");
+        }
+        return current;
+    }
+
+    /**
+     * 获取最近一次发布的配置快照
+     * @return 配置快照，本次进程还没有拉取过配置时返回null
+     */
+    public ConfigSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * 获取配置发布统计信息
+     */
+    public String getStatsSummary() {
+        synchronized (lock) {
+            return "已发布: " + publishCount + ", 已保存: " + persistCount;
+        }
+    }
+}
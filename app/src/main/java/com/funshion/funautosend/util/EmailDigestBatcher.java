@@ -0,0 +1,73 @@
+package com.funshion.funautosend.util;
+
+import android.content.Context;
+
+import com.funshion.funautosend.model.ForwardReport;
+
+import java.util.List;
+
+/**
+ * 邮件汇总器
+ * 多条规则经常配置同一个收件邮箱，开启汇总后，汇总窗口内发往同一收件人的邮件合并为一封多条目邮件发送，
+ * 减少高峰期的SMTP往返次数和邮箱频率限制。汇总窗口为0时（默认）直接发送，与原有行为一致
+ *
+ * 汇总中的邮件先持久化到发件箱，由发件箱延迟到汇总窗口结束后合并发送，进程重启不会丢失，
+ * 见 {@link EmailOutbox#enqueueDigest}
+ *
+ * 配置由转发规则的emailDigest*字段下发，见 {@link RemoteSettings}，保存在 {@link PreferencesHelper#saveEmailDigestConfig}
+ */
+public class EmailDigestBatcher {
+    // 未配置最大等待时间时，默认为汇总窗口的3倍
+    private static final int DEFAULT_MAX_DELAY_FACTOR = 3;
+    // 最大等待时间上限（秒）
+    private static final int MAX_DELAY_LIMIT_SECONDS = 600;
+
+    private static volatile EmailDigestBatcher instance;
+
+    private final Context context;
+
+    private EmailDigestBatcher(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * 获取单例实例
+     */
+    public static EmailDigestBatcher getInstance(Context context) {
+        if (instance == null) {
+            synchronized (EmailDigestBatcher.class) {
+                if (instance == null) {
+                    instance = new EmailDigestBatcher(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 提交一封邮件，开启汇总时加入发件箱等待与同一收件人的邮件合并，否则直接发送
+     * @param toEmail 收件人邮箱
+     * @param subject 邮件主题
+     * @param content 邮件内容
+     * @param dedupeKey 去重键（例如短信ID），可为null
+     * @param reports 邮件包含的原短信上报信息，汇总发送时按汇总邮件的发送结果逐条上报
+     */
+    public void submit(String toEmail, String subject, String content, String dedupeKey,
+                       List<ForwardReport> reports) {
+        long windowMs = PreferencesHelper.getEmailDigestWindow(context) * 1000L;
+        if (windowMs <= 0) {
+            EmailHelper.sendEmail(context, toEmail, subject, content, dedupeKey, reports);
+            return;
+        }
+        EmailOutbox.getInstance(context).enqueueDigest(toEmail, subject, content, dedupeKey, reports,
+                windowMs, getMaxDelayMs(windowMs));
+    }
+
+    private long getMaxDelayMs(long windowMs) {
+        long maxDelayMs = PreferencesHelper.getEmailDigestMaxDelay(context) * 1000L;
+        if (maxDelayMs <= 0) {
+            maxDelayMs = windowMs * DEFAULT_MAX_DELAY_FACTOR;
+        }
+        return Math.max(windowMs, Math.min(maxDelayMs, MAX_DELAY_LIMIT_SECONDS * 1000L));
+    }
+}
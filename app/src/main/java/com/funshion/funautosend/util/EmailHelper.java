@@ -1,25 +1,20 @@
 package com.funshion.funautosend.util;
 
 import android.content.Context;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
 import android.os.Handler;
 import android.os.Looper;
 import com.funshion.funautosend.util.LogUtil;
 import android.widget.Toast;
 
+import com.funshion.funautosend.model.ForwardReport;
+
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
-import java.util.Properties;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
 
 import javax.mail.Message;
-import javax.mail.MessagingException;
-import javax.mail.PasswordAuthentication;
-import javax.mail.Session;
-import javax.mail.Transport;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
 
@@ -37,9 +32,12 @@ public class EmailHelper {
         void onFailure(String error);
     }
 
-    // 使用自定义线程池替代AsyncTask
-    private static final ExecutorService EMAIL_EXECUTOR = Executors.newFixedThreadPool(
-            Math.max(3, Runtime.getRuntime().availableProcessors() * 2)); // 最小3个线程，最大CPU核心数*2
+    // 邮件发送线程池：线程数与SMTP连接池的连接数一致，空闲30秒后回收线程；
+    // 等待队列有上限，队列满时邮件留在持久化的发件箱中稍后重试；验证码类邮件优先发送
+    private static final BoundedPriorityExecutor EMAIL_EXECUTOR = new BoundedPriorityExecutor("EmailSender", 3, 100, 30);
+    // 验证码类短信内容的特征：包含验证码关键字和4-8位数字
+    private static final Pattern OTP_KEYWORD_PATTERN = Pattern.compile("验证码|校验码|动态码|动态密码|确认码|verification code|\\bOTP\\b|\\bcode\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern OTP_CODE_PATTERN = Pattern.compile("(?<!\\d)\\d{4,8}(?!\\d)");
     private static final Handler UI_HANDLER = new Handler(Looper.getMainLooper());
 
     /**
@@ -51,67 +49,92 @@ public class EmailHelper {
      * @param callback 发送回调
      */
     public static void sendEmail(final Context context, final String toEmail, final String subject, final String content, final EmailSendCallback callback) {
-        sendEmailInternal(context, toEmail, subject, content, callback);
+        sendEmail(context, toEmail, subject, content, null, callback);
     }
 
     /**
-     * 检查网络状态并打印日志
+     * 发送邮件，邮件先进入持久化的发件箱，失败自动重试，相同去重键的邮件只发送一次
      * @param context 上下文
-     * @param operation 操作描述
-     * @return 是否有网络连接
+     * @param toEmail 收件人邮箱
+     * @param subject 邮件主题
+     * @param content 邮件内容
+     * @param dedupeKey 去重键（例如短信ID），可为null
+     * @param callback 最终发送结果回调
      */
-    private static boolean checkAndLogNetworkStatus(Context context, String operation) {
-        boolean isConnected = false;
-        String networkType = "未知";
-        
-        try {
-            if (context != null) {
-                ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
-                if (cm != null) {
-                    NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
-                    if (activeNetwork != null && activeNetwork.isConnectedOrConnecting()) {
-                        isConnected = true;
-                        if (activeNetwork.getType() == ConnectivityManager.TYPE_WIFI) {
-                            networkType = "WIFI";
-                        } else if (activeNetwork.getType() == ConnectivityManager.TYPE_MOBILE) {
-                            networkType = "移动数据";  
-                        } else {
-                            networkType = activeNetwork.getTypeName();
-                        }
-                    }
+    public static void sendEmail(final Context context, final String toEmail, final String subject, final String content, final String dedupeKey, final EmailSendCallback callback) {
+        sendEmailInternal(context, toEmail, subject, content, dedupeKey, null, callback);
+    }
+
+    /**
+     * 转发短信的邮件，发送完成后按原短信上报信息逐条上报结果
+     * 上报信息随邮件持久化在发件箱中，进程重启后恢复的邮件同样会上报
+     * @param reports 邮件包含的原短信上报信息
+     */
+    public static void sendEmail(final Context context, final String toEmail, final String subject, final String content, final String dedupeKey, final List<ForwardReport> reports) {
+        sendEmailInternal(context, toEmail, subject, content, dedupeKey, reports, null);
+    }
+
+    /**
+     * 内部邮件发送实现
+     */
+    private static void sendEmailInternal(final Context context, final String toEmail, final String subject, final String content, final String dedupeKey,
+                                          final List<ForwardReport> reports, final EmailSendCallback callback) {
+        LogUtil.d("EmailHelper", " 执行发送邮件 sendEmailInternal context:"+context);
+
+        // 在加入发件箱前检查网络状态，没有网络时发件箱会等网络恢复后再发送
+        if (context != null) {
+            NetworkStateHolder.getInstance(context).logStatus(TAG, "EmailHelper sendEmailInternal 发送邮件前");
+        }
+
+        if (context == null) {
+            // 没有上下文时无法持久化，直接发送
+            boolean accepted = execute(new Runnable() {
+                @Override
+                public void run() {
+                    postResult(null, sendEmailInBackground(toEmail, subject, content), callback);
                 }
+            }, isHighPriority(content));
+            if (!accepted) {
+                LogUtil.e(TAG, "邮件发送队列已满，放弃发送: " + subject);
+                postResult(null, false, callback);
             }
-        } catch (Exception e) {
-            LogUtil.e(TAG, "检查网络状态时出错: " + e.getMessage());
+            return;
         }
-        
-        LogUtil.d(TAG, operation + " - 网络状态: " + (isConnected ? "已连接 (" + networkType + ")" : "未连接"));
-        return isConnected;
+        EmailOutbox.getInstance(context).enqueue(toEmail, subject, content, dedupeKey, reports, callback);
     }
-    
+
     /**
-     * 内部邮件发送实现
+     * 在邮件发送线程池中执行任务
+     * @param task 任务
+     * @param highPriority 是否优先执行
+     * @return 是否已接受，队列已满时返回false
      */
-    private static void sendEmailInternal(final Context context, final String toEmail, final String subject, final String content, final EmailSendCallback callback) {
-        LogUtil.d("EmailHelper", " 执行发送邮件 sendEmailInternal context:"+context);
+    static boolean execute(Runnable task, boolean highPriority) {
+        return EMAIL_EXECUTOR.execute(task, highPriority ? BoundedPriorityExecutor.PRIORITY_HIGH : BoundedPriorityExecutor.PRIORITY_NORMAL);
+    }
+
+    /**
+     * 判断邮件内容是否为验证码类短信，验证码有时效性，需要优先发送
+     */
+    static boolean isHighPriority(String content) {
+        return content != null && OTP_KEYWORD_PATTERN.matcher(content).find() && OTP_CODE_PATTERN.matcher(content).find();
+    }
 
-        final Context appContext = context != null ? context.getApplicationContext() : null;
-        
-        // 在执行线程池任务前检查网络状态
-        checkAndLogNetworkStatus(context, "EmailHelper sendEmailInternal 发送邮件前");
-        
-        EMAIL_EXECUTOR.execute(new Runnable() {
+    /**
+     * 获取邮件发送队列统计信息
+     */
+    public static String getQueueMetrics() {
+        return EMAIL_EXECUTOR.getMetricsSummary();
+    }
+
+    /**
+     * 在UI线程回调发送结果
+     */
+    static void postResult(final Context context, final boolean result, final EmailSendCallback callback) {
+        UI_HANDLER.post(new Runnable() {
             @Override
             public void run() {
-                final boolean result = sendEmailInBackground(toEmail, subject, content);
-                
-                // 在UI线程执行回调
-                UI_HANDLER.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        handleSendResult(appContext, result, callback);
-                    }
-                });
+                handleSendResult(context, result, callback);
             }
         });
     }
@@ -119,39 +142,22 @@ public class EmailHelper {
     /**
      * 在后台线程执行邮件发送
      */
-    private static boolean sendEmailInBackground(String toEmail, String subject, String content) {
+    static boolean sendEmailInBackground(String toEmail, String subject, String content) {
         try {
             //当前时间
             long startTime = System.currentTimeMillis();
             LogUtil.d("EmailTask", "开始执行发送邮件操作");
 
-            // 配置邮件服务器信息
-            Properties props = new Properties();
-            props.put("mail.transport.protocol", "SMTP");
-            props.put("mail.smtp.host", "smtp.exmail.qq.com"); // foxmail邮箱SMTP服务器
-            props.put("mail.smtp.port", "465"); // foxmail邮箱SMTP SSL端口(正确端口)
-            props.put("mail.smtp.auth", "true");
-            props.put("mail.smtp.socketFactory.port", "465"); // SSL端口
-            props.put("mail.smtp.socketFactory.class", "javax.net.ssl.SSLSocketFactory"); // SSL工厂类
-            props.put("mail.smtp.ssl.enable", "true"); // 启用SSL
-
-            // 创建邮件会话
-            Session session = Session.getInstance(props, new javax.mail.Authenticator() {
-                protected PasswordAuthentication getPasswordAuthentication() {
-                    // 发件人邮箱地址以及授权码
-                    return new PasswordAuthentication("java_team@fun.tv", "Nihao123)");
-                }
-            });
-
-            // 创建邮件消息
-            Message message = new MimeMessage(session);
-            message.setFrom(new InternetAddress("java_team@fun.tv")); // 发件人邮箱必须与认证邮箱一致
+            // 使用连接池共享的邮件会话创建邮件消息
+            SmtpTransportPool pool = SmtpTransportPool.getInstance();
+            Message message = new MimeMessage(pool.getSession());
+            message.setFrom(new InternetAddress(pool.getSender())); // 发件人邮箱必须与认证邮箱一致
             message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(toEmail)); // 收件人邮箱
             message.setSubject(subject); // 邮件主题
             message.setText(content); // 邮件内容
 
-            // 发送邮件
-            Transport.send(message);
+            // 复用已认证的SMTP连接发送邮件，避免每封邮件都重新握手和登录
+            pool.send(message);
             long endTime = System.currentTimeMillis();
             LogUtil.d("EmailTask", "邮件发送完成，耗时："+(endTime-startTime));
             return true;
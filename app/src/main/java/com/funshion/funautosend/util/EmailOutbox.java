@@ -0,0 +1,628 @@
+package com.funshion.funautosend.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import com.funshion.funautosend.util.LogUtil;
+
+import com.funshion.funautosend.model.ForwardReport;
+import com.google.gson.Gson;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 邮件发件箱
+ * 待发送的邮件先持久化到SharedPreferences，再由发件箱负责发送：
+ * 发送失败按指数退避重试；没有网络时暂停，网络恢复后并行发送积压的邮件；
+ * 已发送成功的邮件指纹写入存储，进程重启后不会重复发送同一封邮件。
+ * 每封邮件和每个指纹单独存一个键，增删时只序列化变化的条目；待发送邮件和已发送指纹使用commit同步写入，
+ * 写入完成后进程被杀也不会丢失邮件或重复发送；
+ * 邮件对应的原短信上报信息随邮件一起保存，进程重启后恢复的邮件发送完成后仍能上报结果。
+ * 开启邮件汇总时，汇总邮件同样先持久化到发件箱，汇总窗口内延迟发送，到期后同一收件人的邮件合并为一封发送
+ */
+public class EmailOutbox {
+    private static final String TAG = "EmailOutbox";
+
+    private static final String PREFS_NAME = "EmailOutboxPrefs";
+    // 待发送邮件键前缀，后接邮件指纹，值为邮件JSON
+    private static final String KEY_PENDING_PREFIX = "pending_";
+    // 已发送邮件指纹键前缀，后接邮件指纹，值为发送成功时间
+    private static final String KEY_DELIVERED_PREFIX = "delivered_";
+
+    // 最多积压的邮件数量，超过后丢弃最早的邮件
+    private static final int MAX_PENDING = 500;
+    // 记录的已发送邮件指纹数量
+    private static final int MAX_DELIVERED = 1000;
+    // 最多尝试次数，超过后放弃并回调失败
+    private static final int MAX_ATTEMPTS = 8;
+    // 重试退避时间
+    private static final long INITIAL_BACKOFF_MS = 30 * 1000;
+    private static final long MAX_BACKOFF_MS = 30 * 60 * 1000;
+    // 邮件发送队列已满时重新提交的间隔
+    private static final long REJECTED_RETRY_DELAY_MS = 5 * 1000;
+    // 发送一封邮件持有WakeLock的超时时间
+    private static final long SEND_WAKELOCK_TIMEOUT_MS = 2 * 60 * 1000;
+
+    private static volatile EmailOutbox instance;
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final Gson gson = new Gson();
+    private final Random random = new Random();
+    private final ScheduledExecutorService scheduler;
+    private final Object lock = new Object();
+
+    // 指纹 -> 待发送邮件，按加入顺序保存
+    private final LinkedHashMap<String, OutboxEntry> pending = new LinkedHashMap<>();
+    // 已发送成功的邮件指纹
+    private final LinkedHashSet<String> delivered = new LinkedHashSet<>();
+    // 正在发送中的邮件指纹
+    private final Set<String> inFlight = new HashSet<>();
+    // 指纹 -> 等待发送结果的回调，只在内存中保存
+    private final Map<String, List<EmailHelper.EmailSendCallback>> callbacks = new HashMap<>();
+    private ScheduledFuture<?> drainFuture;
+    // 重试多次后放弃的邮件数
+    private long failedCount;
+
+    private EmailOutbox(Context context) {
+        this.context = context;
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        // 使用已保存的SMTP配置，之后配置变化由 {@link RemoteSettings} 更新
+        SmtpTransportPool.getInstance().configure(PreferencesHelper.getSmtpConfig(context));
+        load();
+        registerNetworkListener();
+    }
+
+    /**
+     * 获取单例实例
+     */
+    public static EmailOutbox getInstance(Context context) {
+        if (instance == null) {
+            synchronized (EmailOutbox.class) {
+                if (instance == null) {
+                    instance = new EmailOutbox(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 发件箱中的一封邮件
+     */
+    private static class OutboxEntry {
+        String fingerprint;
+        String toEmail;
+        String subject;
+        String content;
+        int attempts;
+        long createdAt;
+        long nextAttemptAt;
+        // 邮件包含的原短信，发送完成后逐条上报邮件转发结果
+        List<ForwardReport> reports;
+        // 是否可与同一收件人的其他汇总邮件合并发送
+        boolean digest;
+    }
+
+    /**
+     * 将邮件加入发件箱
+     * @param toEmail 收件人邮箱
+     * @param subject 邮件主题
+     * @param content 邮件内容
+     * @param dedupeKey 去重键（例如短信ID），相同内容和去重键的邮件只发送一次，可为null
+     * @param callback 最终发送结果回调，可为null
+     */
+    public void enqueue(String toEmail, String subject, String content, String dedupeKey,
+                        EmailHelper.EmailSendCallback callback) {
+        enqueue(toEmail, subject, content, dedupeKey, null, callback);
+    }
+
+    /**
+     * 将邮件加入发件箱
+     * @param reports 邮件包含的原短信上报信息，随邮件持久化，发送完成后逐条上报结果，可为null
+     * @see #enqueue(String, String, String, String, EmailHelper.EmailSendCallback)
+     */
+    public void enqueue(String toEmail, String subject, String content, String dedupeKey,
+                        List<ForwardReport> reports, EmailHelper.EmailSendCallback callback) {
+        enqueueInternal(toEmail, subject, content, dedupeKey, reports, callback, -1, -1);
+    }
+
+    /**
+     * 将邮件加入发件箱，在汇总窗口内延迟发送，到期后与同一收件人的其他汇总邮件合并为一封发送
+     * 每来一封邮件，同一收件人的汇总窗口重新计时，但从第一封邮件开始不超过最大等待时间
+     * @param windowMs 汇总窗口（毫秒）
+     * @param maxDelayMs 最大等待时间（毫秒）
+     * @see #enqueue(String, String, String, String, List, EmailHelper.EmailSendCallback)
+     */
+    public void enqueueDigest(String toEmail, String subject, String content, String dedupeKey,
+                              List<ForwardReport> reports, long windowMs, long maxDelayMs) {
+        enqueueInternal(toEmail, subject, content, dedupeKey, reports, null, windowMs, maxDelayMs);
+    }
+
+    private void enqueueInternal(String toEmail, String subject, String content, String dedupeKey,
+                                 List<ForwardReport> reports, EmailHelper.EmailSendCallback callback,
+                                 long digestWindowMs, long digestMaxDelayMs) {
+        String fingerprint = fingerprint(toEmail, subject, content, dedupeKey);
+        OutboxEntry dropped = null;
+        synchronized (lock) {
+            if (delivered.contains(fingerprint)) {
+                LogUtil.d(TAG, "邮件已发送过，跳过: " + subject);
+                EmailHelper.postResult(context, true, callback);
+                SmsHelper.reportEmailResults(context, reports, true);
+                return;
+            }
+            addCallback(fingerprint, callback);
+            OutboxEntry existing = pending.get(fingerprint);
+            if (existing != null) {
+                LogUtil.d(TAG, "邮件已在发件箱中，等待发送结果: " + subject);
+                if (reports != null && !reports.isEmpty()) {
+                    if (existing.reports == null) {
+                        existing.reports = new ArrayList<>();
+                    }
+                    existing.reports.addAll(reports);
+                    savePending(existing);
+                }
+                return;
+            }
+            OutboxEntry entry = new OutboxEntry();
+            entry.fingerprint = fingerprint;
+            entry.toEmail = toEmail;
+            entry.subject = subject;
+            entry.content = content;
+            entry.createdAt = System.currentTimeMillis();
+            entry.nextAttemptAt = entry.createdAt;
+            entry.reports = reports != null ? new ArrayList<>(reports) : null;
+            entry.digest = digestWindowMs > 0;
+            pending.put(fingerprint, entry);
+            if (entry.digest) {
+                scheduleDigestGroup(toEmail, digestWindowMs, digestMaxDelayMs);
+            }
+            savePending(entry);
+            if (pending.size() > MAX_PENDING) {
+                Iterator<OutboxEntry> iterator = pending.values().iterator();
+                dropped = iterator.next();
+                iterator.remove();
+                removePending(dropped.fingerprint);
+            }
+            LogUtil.d(TAG, "邮件已加入发件箱，待发送数: " + pending.size());
+        }
+        if (dropped != null) {
+            LogUtil.e(TAG, "发件箱积压过多，丢弃最早的邮件: " + dropped.subject);
+            finish(dropped, false);
+        }
+        drain();
+    }
+
+    /**
+     * 重新计算同一收件人未发送过的汇总邮件的发送时间，调用时需持有lock
+     */
+    private void scheduleDigestGroup(String toEmail, long windowMs, long maxDelayMs) {
+        long now = System.currentTimeMillis();
+        long firstCreatedAt = now;
+        int count = 0;
+        List<OutboxEntry> group = new ArrayList<>();
+        for (OutboxEntry entry : pending.values()) {
+            if (entry.digest && entry.attempts == 0 && toEmail.equals(entry.toEmail)
+                    && !inFlight.contains(entry.fingerprint)) {
+                group.add(entry);
+                firstCreatedAt = Math.min(firstCreatedAt, entry.createdAt);
+                count++;
+            }
+        }
+        long dueAt = Math.min(now + windowMs, firstCreatedAt + maxDelayMs);
+        // 达到单封汇总邮件的条数上限时立即发送
+        if (count >= getDigestMaxEntries()) {
+            dueAt = now;
+        }
+        for (OutboxEntry entry : group) {
+            if (entry.nextAttemptAt != dueAt) {
+                entry.nextAttemptAt = dueAt;
+                savePending(entry);
+            }
+        }
+        LogUtil.d(TAG, "邮件已加入汇总，收件人: " + toEmail + ", 当前条数: " + count + ", " + (dueAt - now) + "ms后发送");
+    }
+
+    /**
+     * 发送所有到期的邮件，没有网络时暂停，等网络恢复后再发送
+     */
+    public void drain() {
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                drainInternal();
+            }
+        });
+    }
+
+    private void drainInternal() {
+        if (!isNetworkConnected()) {
+            LogUtil.d(TAG, "没有网络连接，暂停发送，待发送数: " + getPendingCount());
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long nextDue = Long.MAX_VALUE;
+        List<OutboxEntry> due = new ArrayList<>();
+        synchronized (lock) {
+            for (OutboxEntry entry : pending.values()) {
+                if (inFlight.contains(entry.fingerprint)) {
+                    continue;
+                }
+                if (entry.nextAttemptAt <= now) {
+                    due.add(entry);
+                    inFlight.add(entry.fingerprint);
+                } else {
+                    nextDue = Math.min(nextDue, entry.nextAttemptAt);
+                }
+            }
+        }
+        // 到期的邮件并行提交到邮件发送线程池，线程池队列已满时留在发件箱中稍后再提交
+        boolean rejected = false;
+        for (final List<OutboxEntry> group : groupDue(due)) {
+            boolean highPriority = false;
+            for (OutboxEntry entry : group) {
+                highPriority |= EmailHelper.isHighPriority(entry.content);
+            }
+            // 邮件发送完成前保持CPU唤醒，包括在发送线程池中排队的时间
+            final WakeLockManager.Hold wakeLockHold = WakeLockManager.getInstance(context)
+                    .acquire(WakeLockManager.TaskType.SEND, SEND_WAKELOCK_TIMEOUT_MS);
+            boolean accepted = EmailHelper.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        attempt(group);
+                    } finally {
+                        wakeLockHold.release();
+                    }
+                }
+            }, highPriority);
+            if (!accepted) {
+                wakeLockHold.release();
+                synchronized (lock) {
+                    for (OutboxEntry entry : group) {
+                        inFlight.remove(entry.fingerprint);
+                    }
+                }
+                rejected = true;
+            }
+        }
+        if (rejected) {
+            LogUtil.w(TAG, "邮件发送队列已满，" + (REJECTED_RETRY_DELAY_MS / 1000) + " 秒后重新提交");
+            nextDue = Math.min(nextDue, now + REJECTED_RETRY_DELAY_MS);
+        }
+        if (nextDue != Long.MAX_VALUE) {
+            scheduleDrain(nextDue - now);
+        }
+    }
+
+    /**
+     * 将到期的邮件分组：普通邮件单独发送，同一收件人的汇总邮件按条数和大小上限合并
+     */
+    private List<List<OutboxEntry>> groupDue(List<OutboxEntry> due) {
+        int maxEntries = getDigestMaxEntries();
+        int maxBytes = PreferencesHelper.getEmailDigestMaxBytes(context);
+        List<List<OutboxEntry>> groups = new ArrayList<>();
+        // 收件人 -> 正在合并的汇总分组及其大小
+        Map<String, List<OutboxEntry>> openGroups = new HashMap<>();
+        Map<String, Integer> openBytes = new HashMap<>();
+        for (OutboxEntry entry : due) {
+            if (!entry.digest) {
+                groups.add(Collections.singletonList(entry));
+                continue;
+            }
+            int bytes = entryBytes(entry);
+            List<OutboxEntry> group = openGroups.get(entry.toEmail);
+            if (group != null && (group.size() + 1 > maxEntries || openBytes.get(entry.toEmail) + bytes > maxBytes)) {
+                group = null;
+            }
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.add(group);
+                openGroups.put(entry.toEmail, group);
+                openBytes.put(entry.toEmail, 0);
+            }
+            group.add(entry);
+            openBytes.put(entry.toEmail, openBytes.get(entry.toEmail) + bytes);
+        }
+        return groups;
+    }
+
+    private void attempt(List<OutboxEntry> group) {
+        OutboxEntry first = group.get(0);
+        boolean success;
+        String subject;
+        if (group.size() == 1) {
+            subject = first.subject;
+            success = EmailHelper.sendEmailInBackground(first.toEmail, first.subject, first.content);
+        } else {
+            subject = EmailHelper.getCurrentFormattedDate() + "【短信内容审核】汇总" + group.size() + "条";
+            StringBuilder content = new StringBuilder();
+            for (int i = 0; i < group.size(); i++) {
+                OutboxEntry entry = group.get(i);
+                content.append(i + 1).append(".【").append(entry.subject).append("】\n")
+                        .append(entry.content).append("\n\n");
+            }
+            LogUtil.d(TAG, "发送汇总邮件，收件人: " + first.toEmail + ", 合并条数: " + group.size());
+            success = EmailHelper.sendEmailInBackground(first.toEmail, subject, content.toString());
+        }
+        if (success) {
+            synchronized (lock) {
+                for (OutboxEntry entry : group) {
+                    inFlight.remove(entry.fingerprint);
+                    pending.remove(entry.fingerprint);
+                    delivered.add(entry.fingerprint);
+                    saveDelivered(entry.fingerprint);
+                }
+            }
+            for (OutboxEntry entry : group) {
+                finish(entry, true);
+            }
+            return;
+        }
+
+        List<OutboxEntry> givenUp = new ArrayList<>();
+        boolean online = isNetworkConnected();
+        int attempts = 0;
+        long nextAttemptAt = 0;
+        synchronized (lock) {
+            // 同一分组使用相同的重试时间，下次到期时仍能合并发送
+            long backoff = -1;
+            for (OutboxEntry entry : group) {
+                inFlight.remove(entry.fingerprint);
+                if (!pending.containsKey(entry.fingerprint)) {
+                    continue;
+                }
+                // 断网导致的失败不计入重试次数，网络恢复后立即重发
+                if (online) {
+                    entry.attempts++;
+                }
+                if (entry.attempts >= MAX_ATTEMPTS) {
+                    pending.remove(entry.fingerprint);
+                    removePending(entry.fingerprint);
+                    failedCount++;
+                    givenUp.add(entry);
+                } else {
+                    if (backoff < 0) {
+                        backoff = online ? backoffMs(entry.attempts) : 0;
+                    }
+                    entry.nextAttemptAt = System.currentTimeMillis() + backoff;
+                    savePending(entry);
+                    attempts = entry.attempts;
+                    nextAttemptAt = entry.nextAttemptAt;
+                }
+            }
+        }
+        for (OutboxEntry entry : givenUp) {
+            LogUtil.e(TAG, "邮件重试 " + MAX_ATTEMPTS + " 次后仍发送失败，放弃: " + entry.subject);
+            finish(entry, false);
+        }
+        if (nextAttemptAt > 0 && online) {
+            LogUtil.w(TAG, "邮件发送失败，第 " + attempts + " 次，" + ((nextAttemptAt - System.currentTimeMillis()) / 1000) + " 秒后重试: " + subject);
+            drain();
+        }
+    }
+
+    private int getDigestMaxEntries() {
+        return Math.max(1, PreferencesHelper.getEmailDigestMaxEntries(context));
+    }
+
+    private static int entryBytes(OutboxEntry entry) {
+        int bytes = entry.content != null ? entry.content.getBytes(StandardCharsets.UTF_8).length : 0;
+        return bytes + (entry.subject != null ? entry.subject.getBytes(StandardCharsets.UTF_8).length : 0);
+    }
+
+    private long backoffMs(int attempts) {
+        long backoff = INITIAL_BACKOFF_MS << Math.min(attempts - 1, 10);
+        backoff = Math.min(backoff, MAX_BACKOFF_MS);
+        // 加入随机抖动，避免大量邮件同时重试
+        return backoff / 2 + (long) (random.nextDouble() * backoff / 2);
+    }
+
+    private void scheduleDrain(long delayMs) {
+        synchronized (lock) {
+            if (drainFuture != null && !drainFuture.isDone()
+                    && drainFuture.getDelay(TimeUnit.MILLISECONDS) <= delayMs) {
+                return;
+            }
+            if (drainFuture != null) {
+                drainFuture.cancel(false);
+            }
+            drainFuture = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    drainInternal();
+                }
+            }, Math.max(0, delayMs), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void addCallback(String fingerprint, EmailHelper.EmailSendCallback callback) {
+        if (callback == null) {
+            return;
+        }
+        List<EmailHelper.EmailSendCallback> list = callbacks.get(fingerprint);
+        if (list == null) {
+            list = new ArrayList<>();
+            callbacks.put(fingerprint, list);
+        }
+        list.add(callback);
+    }
+
+    /**
+     * 邮件发送完成或放弃后回调结果，并上报邮件包含的原短信
+     * 回调只在内存中保存，进程重启后恢复的邮件只能通过持久化的上报信息上报
+     */
+    private void finish(OutboxEntry entry, boolean success) {
+        List<EmailHelper.EmailSendCallback> list;
+        synchronized (lock) {
+            list = callbacks.remove(entry.fingerprint);
+        }
+        SmsHelper.reportEmailResults(context, entry.reports, success);
+        if (list == null) {
+            return;
+        }
+        for (EmailHelper.EmailSendCallback callback : list) {
+            EmailHelper.postResult(context, success, callback);
+        }
+    }
+
+    /**
+     * 获取待发送的邮件数量
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * 获取重试多次后放弃发送的邮件数量
+     */
+    public long getFailedCount() {
+        synchronized (lock) {
+            return failedCount;
+        }
+    }
+
+    private boolean isNetworkConnected() {
+        return NetworkStateHolder.getInstance(context).isConnected();
+    }
+
+    /**
+     * 监听网络恢复，网络可用时立即发送积压的邮件
+     */
+    private void registerNetworkListener() {
+        NetworkStateHolder.getInstance(context).addListener(new NetworkStateHolder.Listener() {
+            @Override
+            public void onNetworkStateChanged(NetworkStateHolder.NetworkState state, NetworkStateHolder.NetworkState previous) {
+                if (state.connected && !previous.connected && getPendingCount() > 0) {
+                    LogUtil.d(TAG, "网络已恢复，开始发送积压邮件: " + getPendingCount());
+                    drain();
+                }
+            }
+        });
+    }
+
+    private void load() {
+        try {
+            final Map<String, Long> deliveredTimes = new HashMap<>();
+            List<OutboxEntry> entries = new ArrayList<>();
+            for (Map.Entry<String, ?> item : prefs.getAll().entrySet()) {
+                String key = item.getKey();
+                Object value = item.getValue();
+                if (key.startsWith(KEY_DELIVERED_PREFIX) && value instanceof Long) {
+                    deliveredTimes.put(key.substring(KEY_DELIVERED_PREFIX.length()), (Long) value);
+                } else if (key.startsWith(KEY_PENDING_PREFIX) && value instanceof String) {
+                    try {
+                        OutboxEntry entry = gson.fromJson((String) value, OutboxEntry.class);
+                        if (entry != null && entry.fingerprint != null) {
+                            entries.add(entry);
+                        }
+                    } catch (Exception e) {
+                        LogUtil.e(TAG, "解析待发送邮件失败，丢弃: " + key);
+                        prefs.edit().remove(key).apply();
+                    }
+                }
+            }
+
+            List<String> fingerprints = new ArrayList<>(deliveredTimes.keySet());
+            Collections.sort(fingerprints, new Comparator<String>() {
+                @Override
+                public int compare(String a, String b) {
+                    return Long.compare(deliveredTimes.get(a), deliveredTimes.get(b));
+                }
+            });
+            delivered.addAll(fingerprints);
+
+            Collections.sort(entries, new Comparator<OutboxEntry>() {
+                @Override
+                public int compare(OutboxEntry a, OutboxEntry b) {
+                    return Long.compare(a.createdAt, b.createdAt);
+                }
+            });
+            for (OutboxEntry entry : entries) {
+                // 已发送成功但待发送记录还没来得及删除的邮件不再发送
+                if (delivered.contains(entry.fingerprint)) {
+                    removePending(entry.fingerprint);
+                } else {
+                    pending.put(entry.fingerprint, entry);
+                }
+            }
+            if (!pending.isEmpty()) {
+                LogUtil.d(TAG, "从存储恢复待发送邮件: " + pending.size());
+            }
+        } catch (Exception e) {
+            LogUtil.e(TAG, "读取发件箱失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 保存（或更新）一封待发送邮件，调用时需持有lock
+     * 同步写入，返回后邮件已落盘，进程被杀后可以恢复
+     */
+    private void savePending(OutboxEntry entry) {
+        if (!prefs.edit().putString(KEY_PENDING_PREFIX + entry.fingerprint, gson.toJson(entry)).commit()) {
+            LogUtil.e(TAG, "保存待发送邮件失败: " + entry.subject);
+        }
+    }
+
+    /**
+     * 删除一封待发送邮件的存储，调用时需持有lock
+     */
+    private void removePending(String fingerprint) {
+        prefs.edit().remove(KEY_PENDING_PREFIX + fingerprint).apply();
+    }
+
+    /**
+     * 在同一次写入中删除待发送记录并记录已发送指纹，超过上限时淘汰最早的指纹，调用时需持有lock
+     * 同步写入，返回后进程被杀也不会重复发送已发送成功的邮件
+     */
+    private void saveDelivered(String fingerprint) {
+        SharedPreferences.Editor editor = prefs.edit()
+                .remove(KEY_PENDING_PREFIX + fingerprint)
+                .putLong(KEY_DELIVERED_PREFIX + fingerprint, System.currentTimeMillis());
+        Iterator<String> iterator = delivered.iterator();
+        while (delivered.size() > MAX_DELIVERED && iterator.hasNext()) {
+            editor.remove(KEY_DELIVERED_PREFIX + iterator.next());
+            iterator.remove();
+        }
+        if (!editor.commit()) {
+            LogUtil.e(TAG, "保存已发送邮件指纹失败: " + fingerprint);
+        }
+    }
+
+    private static String fingerprint(String toEmail, String subject, String content, String dedupeKey) {
+        // 没有去重键时每次调用都视为不同的邮件，指纹只用于保证进程重启后不重复发送
+        String key = dedupeKey != null ? dedupeKey : UUID.randomUUID().toString();
+        String raw = toEmail + "|" + subject + "|" + content + "|" + key;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(raw.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder();
+            for (byte b : hash) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (Exception e) {
+            return String.valueOf(raw.hashCode());
+        }
+    }
+}
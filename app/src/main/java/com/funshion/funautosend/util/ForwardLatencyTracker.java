@@ -0,0 +1,347 @@
+package com.funshion.funautosend.util;
+
+import com.funshion.funautosend.util.LogUtil;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 转发耗时跟踪器
+ * 记录每条转发短信的 接收 -> 提交 -> 发送 -> 送达 各阶段时间戳，
+ * 并按SIM卡和目标号码分别统计端到端耗时直方图，用于分析转发时间花在哪里
+ */
+public class ForwardLatencyTracker {
+    private static final String TAG = "ForwardLatencyTracker";
+
+    // 最多同时跟踪的转发记录数，超过后丢弃最早的记录，避免内存无限增长
+    private static final int MAX_TRACKED_RECORDS = 500;
+
+    // 直方图桶上界（毫秒），最后一个桶表示超过最大上界
+    private static final long[] BUCKET_BOUNDS_MS = {
+            1000, 2000, 5000, 10000, 30000, 60000, 120000, 300000
+    };
+
+    private static final ForwardLatencyTracker INSTANCE = new ForwardLatencyTracker();
+
+    // 短信ID+目标号码 -> 转发记录，按插入顺序保存，便于淘汰最早的记录
+    // 同一条短信可能按多条规则转发到不同目标号码，因此需要带上目标号码区分
+    private final LinkedHashMap<String, ForwardRecord> records = new LinkedHashMap<>();
+    // SIM卡ID -> 送达耗时直方图
+    private final Map<String, LatencyHistogram> simHistograms = new HashMap<>();
+    // 目标号码 -> 送达耗时直方图
+    private final Map<String, LatencyHistogram> targetHistograms = new HashMap<>();
+    private final Object lock = new Object();
+    // 最近一条送达短信的端到端耗时，-1表示还没有
+    private long lastEndToEndMs = -1;
+
+    private final SimpleDateFormat receiveTimeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
+
+    private ForwardLatencyTracker() {
+    }
+
+    /**
+     * 获取单例实例
+     */
+    public static ForwardLatencyTracker getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 单条转发记录
+     */
+    private static class ForwardRecord {
+        String simId;
+        String targetPhone;
+        int partCount;
+        int sentParts;
+        int deliveredParts;
+        long receivedAt;
+        // 聚合摘要短信包含的每条原短信的接收时间，送达后分别计入直方图
+        long[] memberReceivedAts;
+        long submittedAt;
+        long sentAt;
+        long deliveredAt;
+    }
+
+    /**
+     * 耗时直方图
+     */
+    public static class LatencyHistogram {
+        private final long[] counts = new long[BUCKET_BOUNDS_MS.length + 1];
+        private long totalCount;
+        private long totalMs;
+        private long maxMs;
+
+        void record(long latencyMs) {
+            int index = BUCKET_BOUNDS_MS.length;
+            for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+                if (latencyMs <= BUCKET_BOUNDS_MS[i]) {
+                    index = i;
+                    break;
+                }
+            }
+            counts[index]++;
+            totalCount++;
+            totalMs += latencyMs;
+            if (latencyMs > maxMs) {
+                maxMs = latencyMs;
+            }
+        }
+
+        public long getTotalCount() {
+            return totalCount;
+        }
+
+        public long getAverageMs() {
+            return totalCount > 0 ? totalMs / totalCount : 0;
+        }
+
+        public long getMaxMs() {
+            return maxMs;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("count=").append(totalCount)
+                    .append(", avg=").append(getAverageMs()).append("ms")
+                    .append(", max=").append(maxMs).append("ms, buckets=[");
+            for (int i = 0; i < counts.length; i++) {
+                if (i > 0) {
+                    builder.append(", ");
+                }
+                builder.append(i < BUCKET_BOUNDS_MS.length ? "<=" + (BUCKET_BOUNDS_MS[i] / 1000) + "s" : ">" + (BUCKET_BOUNDS_MS[BUCKET_BOUNDS_MS.length - 1] / 1000) + "s")
+                        .append(":").append(counts[i]);
+            }
+            return builder.append("]").toString();
+        }
+    }
+
+    /**
+     * 记录短信已提交到系统发送
+     * @param smsId 短信ID
+     * @param simId 发送使用的SIM卡ID
+     * @param targetPhone 目标手机号
+     * @param receiveTime 原短信接收时间（yyyy-MM-dd HH:mm:ss），为空时使用提交时间
+     * @param partCount 短信拆分的部分数
+     */
+    public void onSubmitted(String smsId, String simId, String targetPhone, String receiveTime, int partCount) {
+        onSubmitted(smsId, simId, targetPhone, Collections.singletonList(receiveTime), partCount);
+    }
+
+    /**
+     * 记录短信已提交到系统发送，聚合摘要短信包含多条原短信，每条原短信分别统计端到端耗时
+     * @param receiveTimes 短信包含的每条原短信的接收时间，为空时使用提交时间
+     * @see #onSubmitted(String, String, String, String, int)
+     */
+    public void onSubmitted(String smsId, String simId, String targetPhone, List<String> receiveTimes, int partCount) {
+        if (smsId == null || smsId.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        ForwardRecord record = new ForwardRecord();
+        record.simId = simId != null ? simId : "默认";
+        record.targetPhone = targetPhone;
+        record.partCount = Math.max(1, partCount);
+        record.submittedAt = now;
+        int memberCount = receiveTimes != null ? receiveTimes.size() : 0;
+        record.memberReceivedAts = new long[Math.max(1, memberCount)];
+        record.memberReceivedAts[0] = now;
+        for (int i = 0; i < memberCount; i++) {
+            record.memberReceivedAts[i] = parseReceiveTime(receiveTimes.get(i), now);
+        }
+        // 阶段耗时按最早接收的一条计算
+        record.receivedAt = now;
+        for (long receivedAt : record.memberReceivedAts) {
+            record.receivedAt = Math.min(record.receivedAt, receivedAt);
+        }
+
+        String key = recordKey(smsId, targetPhone);
+        synchronized (lock) {
+            records.remove(key);
+            records.put(key, record);
+            trimRecords();
+        }
+        LogUtil.d(TAG, "记录转发提交，短信ID: " + smsId + ", 接收->提交耗时: " + (record.submittedAt - record.receivedAt) + "ms");
+    }
+
+    /**
+     * 记录短信（或其中一部分）已发送
+     * @param smsId 短信ID
+     * @param targetPhone 目标手机号
+     * @param success 是否发送成功
+     */
+    public void onSent(String smsId, String targetPhone, boolean success) {
+        if (smsId == null) {
+            return;
+        }
+        String key = recordKey(smsId, targetPhone);
+        synchronized (lock) {
+            ForwardRecord record = records.get(key);
+            if (record == null) {
+                return;
+            }
+            if (!success) {
+                // 发送失败的记录不会再有送达回执，直接移除
+                records.remove(key);
+                return;
+            }
+            record.sentParts++;
+            if (record.sentParts >= record.partCount && record.sentAt == 0) {
+                record.sentAt = System.currentTimeMillis();
+                LogUtil.d(TAG, "短信已发送，短信ID: " + smsId + ", 提交->发送耗时: " + (record.sentAt - record.submittedAt) + "ms");
+            }
+        }
+    }
+
+    /**
+     * 记录短信（或其中一部分）已送达
+     * @param smsId 短信ID
+     * @param targetPhone 目标手机号
+     * @param delivered 送达报告是否表示成功送达
+     */
+    public void onDelivered(String smsId, String targetPhone, boolean delivered) {
+        if (smsId == null) {
+            return;
+        }
+        String key = recordKey(smsId, targetPhone);
+        synchronized (lock) {
+            ForwardRecord record = records.get(key);
+            if (record == null) {
+                return;
+            }
+            if (!delivered) {
+                records.remove(key);
+                LogUtil.w(TAG, "短信送达失败，短信ID: " + smsId);
+                return;
+            }
+            record.deliveredParts++;
+            if (record.deliveredParts < record.partCount) {
+                return;
+            }
+            record.deliveredAt = System.currentTimeMillis();
+            records.remove(key);
+
+            long endToEnd = record.deliveredAt - record.receivedAt;
+            for (long receivedAt : record.memberReceivedAts) {
+                long memberEndToEnd = record.deliveredAt - receivedAt;
+                lastEndToEndMs = memberEndToEnd;
+                histogramFor(simHistograms, record.simId).record(memberEndToEnd);
+                if (record.targetPhone != null) {
+                    histogramFor(targetHistograms, record.targetPhone).record(memberEndToEnd);
+                }
+            }
+
+            LogUtil.d(TAG, "短信已送达，短信ID: " + smsId
+                    + ", 接收->提交: " + (record.submittedAt - record.receivedAt) + "ms"
+                    + ", 提交->发送: " + (record.sentAt > 0 ? (record.sentAt - record.submittedAt) + "ms" : "未知")
+                    + ", 发送->送达: " + (record.sentAt > 0 ? (record.deliveredAt - record.sentAt) + "ms" : "未知")
+                    + ", 端到端: " + endToEnd + "ms"
+                    + (record.memberReceivedAts.length > 1 ? ", 包含原短信: " + record.memberReceivedAts.length + "条" : ""));
+        }
+    }
+
+    /**
+     * 获取按SIM卡统计的直方图副本
+     */
+    public Map<String, String> getSimHistogramSummary() {
+        synchronized (lock) {
+            return summarize(simHistograms);
+        }
+    }
+
+    /**
+     * 获取按目标号码统计的直方图副本
+     */
+    public Map<String, String> getTargetHistogramSummary() {
+        synchronized (lock) {
+            return summarize(targetHistograms);
+        }
+    }
+
+    /**
+     * 获取最近一条送达短信的端到端耗时
+     * @return 耗时（毫秒），还没有送达记录时返回-1
+     */
+    public long getLastLatencyMs() {
+        synchronized (lock) {
+            return lastEndToEndMs;
+        }
+    }
+
+    /**
+     * 获取当前正在等待发送/送达回执的记录数
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return records.size();
+        }
+    }
+
+    /**
+     * 获取当前统计信息
+     */
+    public String getStatsSummary() {
+        synchronized (lock) {
+            StringBuilder builder = new StringBuilder("待回执: ").append(records.size());
+            for (Map.Entry<String, LatencyHistogram> entry : simHistograms.entrySet()) {
+                builder.append(", SIM卡").append(entry.getKey()).append(": ").append(entry.getValue());
+            }
+            for (Map.Entry<String, LatencyHistogram> entry : targetHistograms.entrySet()) {
+                builder.append(", 目标").append(entry.getKey()).append(": ").append(entry.getValue());
+            }
+            return builder.toString();
+        }
+    }
+
+    private Map<String, String> summarize(Map<String, LatencyHistogram> histograms) {
+        Map<String, String> summary = new HashMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            summary.put(entry.getKey(), entry.getValue().toString());
+        }
+        return summary;
+    }
+
+    private LatencyHistogram histogramFor(Map<String, LatencyHistogram> histograms, String key) {
+        LatencyHistogram histogram = histograms.get(key);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            histograms.put(key, histogram);
+        }
+        return histogram;
+    }
+
+    private static String recordKey(String smsId, String targetPhone) {
+        return smsId + "|" + (targetPhone != null ? targetPhone : "");
+    }
+
+    private void trimRecords() {
+        Iterator<String> iterator = records.keySet().iterator();
+        while (records.size() > MAX_TRACKED_RECORDS && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private long parseReceiveTime(String receiveTime, long fallback) {
+        if (receiveTime == null || receiveTime.isEmpty()) {
+            return fallback;
+        }
+        try {
+            // SimpleDateFormat非线程安全，回调可能来自不同线程，这里加锁保护
+            synchronized (receiveTimeFormat) {
+                return receiveTimeFormat.parse(receiveTime).getTime();
+            }
+        } catch (ParseException e) {
+            LogUtil.w(TAG, "解析短信接收时间失败: " + receiveTime);
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.funshion.funautosend.util;
+
+import com.funshion.funautosend.util.LogUtil;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * 共享的HTTP客户端
+ * 所有HTTP请求共用同一个连接池和调度器，服务器支持时使用HTTP/2复用连接；
+ * 短请求（上报）和长请求（配置拉取）使用不同的超时时间。
+ * 网络恢复时预先解析域名并建立到配置和上报服务器的连接，网络恢复后的第一个请求不必再等待DNS、TCP和TLS握手
+ */
+public class HttpClientProvider {
+    private static final String TAG = "HttpClientProvider";
+
+    // 连接池最多保持的空闲连接数和空闲时间
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    // 长轮询读取超时（秒）
+    static final int LONG_POLL_READ_TIMEOUT_SECONDS = 90;
+    // 两次预热之间的最小间隔，网络抖动时避免重复预热
+    private static final long MIN_PREWARM_INTERVAL_MS = 30 * 1000;
+
+    private static final HttpClientProvider INSTANCE = new HttpClientProvider();
+
+    private final OkHttpClient shortCallClient;
+    private final OkHttpClient longCallClient;
+    private final OkHttpClient longPollClient;
+    private final ExecutorService prewarmExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicLong lastPrewarmTime = new AtomicLong();
+
+    // 统计数据
+    private final AtomicLong prewarmCount = new AtomicLong();
+
+    private HttpClientProvider() {
+        shortCallClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(15, TimeUnit.SECONDS)
+                .writeTimeout(15, TimeUnit.SECONDS)
+                .callTimeout(30, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true)       // 连接失败时自动重试
+                .build();
+        // 长请求与短请求共用连接池和调度器，只放宽超时时间
+        longCallClient = shortCallClient.newBuilder()
+                .readTimeout(30, TimeUnit.SECONDS)
+                .writeTimeout(30, TimeUnit.SECONDS)
+                .callTimeout(60, TimeUnit.SECONDS)
+                .build();
+        // 长轮询请求由服务器挂起，读取超时需要大于服务器的挂起时间
+        longPollClient = shortCallClient.newBuilder()
+                .readTimeout(LONG_POLL_READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .callTimeout(0, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 获取单例实例
+     */
+    public static HttpClientProvider getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 获取短请求使用的客户端（上报等）
+     */
+    public OkHttpClient getShortCallClient() {
+        return shortCallClient;
+    }
+
+    /**
+     * 获取长请求使用的客户端（配置拉取等）
+     */
+    public OkHttpClient getLongCallClient() {
+        return longCallClient;
+    }
+
+    /**
+     * 获取长轮询使用的客户端（配置变化通知）
+     */
+    public OkHttpClient getLongPollClient() {
+        return longPollClient;
+    }
+
+    /**
+     * 网络断开时关闭连接池中的连接，这些连接绑定在旧网络上，已经不可用
+     */
+    public void onNetworkLost() {
+        shortCallClient.connectionPool().evictAll();
+    }
+
+    /**
+     * 预热到指定地址所在服务器的连接
+     * 先解析域名，再发送一个HEAD请求建立TCP和TLS连接，连接保留在连接池中供后续请求复用
+     * @param urls 需要预热的地址，同一服务器只预热一次
+     */
+    public void prewarm(String... urls) {
+        long now = System.currentTimeMillis();
+        long last = lastPrewarmTime.get();
+        if (now - last < MIN_PREWARM_INTERVAL_MS || !lastPrewarmTime.compareAndSet(last, now)) {
+            return;
+        }
+        // 网络切换后旧连接已不可用
+        shortCallClient.connectionPool().evictAll();
+
+        final Set<HttpUrl> origins = new LinkedHashSet<>();
+        for (String url : urls) {
+            HttpUrl httpUrl = HttpUrl.parse(url);
+            if (httpUrl != null) {
+                origins.add(httpUrl.newBuilder().encodedPath("/").query(null).build());
+            }
+        }
+        prewarmExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (HttpUrl origin : origins) {
+                    prewarmOrigin(origin);
+                }
+            }
+        });
+    }
+
+    private void prewarmOrigin(final HttpUrl origin) {
+        final long start = System.currentTimeMillis();
+        try {
+            InetAddress.getAllByName(origin.host());
+        } catch (IOException e) {
+            LogUtil.w(TAG, "预解析域名失败: " + origin.host() + ", " + e.getMessage());
+            return;
+        }
+        Request request = new Request.Builder().url(origin).head().build();
+        shortCallClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                LogUtil.w(TAG, "预热连接失败: " + origin.host() + ", " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                // 只为建立连接，响应码不重要
+                response.close();
+                prewarmCount.incrementAndGet();
+                LogUtil.d(TAG, "已预热连接: " + origin.host() + ", 协议: " + response.protocol()
+                        + ", 耗时: " + (System.currentTimeMillis() - start) + "ms");
+            }
+        });
+    }
+
+    /**
+     * 获取连接池统计信息
+     */
+    public String getStatsSummary() {
+        ConnectionPool pool = shortCallClient.connectionPool();
+        return "连接: " + pool.connectionCount() + ", 空闲: " + pool.idleConnectionCount()
+                + ", 已预热: " + prewarmCount.get();
+    }
+}
@@ -0,0 +1,132 @@
+package com.funshion.funautosend.util;
+
+import android.os.SystemClock;
+
+/**
+ * 保活机制开销统计
+ * 按保活机制分别统计唤醒次数、CPU时间和常驻线程数，用于判断哪些机制值得保留。
+ * 每个进程各有一份统计，守护进程的开销通过AIDL获取后记录在主进程中
+ */
+public class KeepAliveCostTracker {
+    private static final KeepAliveCostTracker INSTANCE = new KeepAliveCostTracker();
+
+    private final Object lock = new Object();
+    private final long[] wakeups = new long[KeepAliveManager.Mechanism.values().length];
+    private final long[] cpuTimeMs = new long[KeepAliveManager.Mechanism.values().length];
+    private final int[] threadCounts = new int[KeepAliveManager.Mechanism.values().length];
+
+    // 运行在独立进程中的机制（守护进程）整个进程的开销，-1表示还没有获取到
+    private final long[] processCpuTimeMs = new long[KeepAliveManager.Mechanism.values().length];
+    private final long[] processWakeups = new long[KeepAliveManager.Mechanism.values().length];
+    private final int[] processThreadCounts = new int[KeepAliveManager.Mechanism.values().length];
+
+    private KeepAliveCostTracker() {
+        for (int i = 0; i < processCpuTimeMs.length; i++) {
+            processCpuTimeMs[i] = -1;
+        }
+    }
+
+    /**
+     * 获取单例实例
+     */
+    public static KeepAliveCostTracker getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 保活回调开始执行时调用
+     * @return 当前线程已使用的CPU时间，传给 {@link #end(KeepAliveManager.Mechanism, long)}
+     */
+    public long begin() {
+        return SystemClock.currentThreadTimeMillis();
+    }
+
+    /**
+     * 保活回调执行结束时调用，记录一次唤醒和本次回调使用的CPU时间
+     * @param mechanism 保活机制
+     * @param begin {@link #begin()} 的返回值
+     */
+    public void end(KeepAliveManager.Mechanism mechanism, long begin) {
+        addCost(mechanism, 1, SystemClock.currentThreadTimeMillis() - begin);
+    }
+
+    /**
+     * 记录常驻线程累计的开销，线程定期调用，避免每次循环都加锁
+     * @param mechanism 保活机制
+     * @param wakeupCount 新增的唤醒次数
+     * @param cpuMs 新增的CPU时间（毫秒）
+     */
+    public void addCost(KeepAliveManager.Mechanism mechanism, long wakeupCount, long cpuMs) {
+        int index = mechanism.ordinal();
+        synchronized (lock) {
+            wakeups[index] += wakeupCount;
+            cpuTimeMs[index] += Math.max(0, cpuMs);
+        }
+    }
+
+    /**
+     * 保活机制启动常驻线程时调用
+     */
+    public void onThreadStarted(KeepAliveManager.Mechanism mechanism) {
+        synchronized (lock) {
+            threadCounts[mechanism.ordinal()]++;
+        }
+    }
+
+    /**
+     * 保活机制的常驻线程结束时调用
+     */
+    public void onThreadStopped(KeepAliveManager.Mechanism mechanism) {
+        synchronized (lock) {
+            int index = mechanism.ordinal();
+            if (threadCounts[index] > 0) {
+                threadCounts[index]--;
+            }
+        }
+    }
+
+    /**
+     * 记录运行在独立进程中的保活机制整个进程的开销
+     * @param mechanism 保活机制
+     * @param cpuMs 进程启动以来的CPU时间（毫秒）
+     * @param wakeupCount 进程启动以来的唤醒次数
+     * @param threadCount 进程当前线程数
+     */
+    public void updateProcessCost(KeepAliveManager.Mechanism mechanism, long cpuMs, long wakeupCount, int threadCount) {
+        int index = mechanism.ordinal();
+        synchronized (lock) {
+            processCpuTimeMs[index] = cpuMs;
+            processWakeups[index] = wakeupCount;
+            processThreadCounts[index] = threadCount;
+        }
+    }
+
+    /**
+     * 获取当前进程中某个保活机制的唤醒次数
+     */
+    public long getWakeups(KeepAliveManager.Mechanism mechanism) {
+        synchronized (lock) {
+            return wakeups[mechanism.ordinal()];
+        }
+    }
+
+    /**
+     * 获取某个保活机制的开销统计信息
+     */
+    public String getSummary(KeepAliveManager.Mechanism mechanism) {
+        int index = mechanism.ordinal();
+        synchronized (lock) {
+            StringBuilder builder = new StringBuilder();
+            builder.append("唤醒").append(wakeups[index]).append("次/CPU ").append(cpuTimeMs[index]).append("ms");
+            if (threadCounts[index] > 0) {
+                builder.append("/线程").append(threadCounts[index]);
+            }
+            if (processCpuTimeMs[index] >= 0) {
+                builder.append("/独立进程: 唤醒").append(processWakeups[index])
+                        .append("次/CPU ").append(processCpuTimeMs[index])
+                        .append("ms/线程").append(processThreadCounts[index]);
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -12,13 +12,19 @@ import com.funshion.funautosend.util.LogUtil;
 
 import androidx.annotation.RequiresApi;
 
+import com.funshion.funautosend.activity.OnePixelActivity;
+import com.funshion.funautosend.service.AudioPlayerService;
+import com.funshion.funautosend.service.FloatWindowService;
 import com.funshion.funautosend.service.KeepAliveJobService;
+import com.funshion.funautosend.service.SmsForwardService;
 
 import java.util.concurrent.TimeUnit;
 
 /**
  * 保活管理器，统一管理各种进程保活机制
  * 包括：JobScheduler、系统广播监听等
+ * 每种保活机制都可以单独开关，开关保存在配置中，修改后立即生效；开关由转发规则的keepAliveDisabled字段下发，见 {@link RemoteSettings}
+ * 清单中静态注册的广播接收器不会随开关注销，由接收器自己检查开关
  */
 public class KeepAliveManager {
     private static final String TAG = "KeepAliveManager";
@@ -27,6 +33,31 @@ public class KeepAliveManager {
     private Context context;
     private SystemBroadcastReceiver systemBroadcastReceiver;
     private WorkManagerKeepAliveHelper workManagerKeepAliveHelper;
+    // 系统广播接收器是否已注册
+    private boolean systemBroadcastRegistered = false;
+
+    /**
+     * 保活机制
+     */
+    public enum Mechanism {
+        JOB_SCHEDULER("JobScheduler"),
+        WORK_MANAGER("WorkManager"),
+        SYSTEM_BROADCAST("系统广播"),
+        AUDIO_PLAYER("无声音乐"),
+        ONE_PIXEL("1像素Activity"),
+        FLOAT_WINDOW("悬浮窗"),
+        GUARDIAN("守护进程");
+
+        private final String label;
+
+        Mechanism(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
 
     private KeepAliveManager(Context context) {
         this.context = context.getApplicationContext();
@@ -45,24 +76,115 @@ public class KeepAliveManager {
     }
 
     /**
-     * 启动所有保活机制
+     * 启动所有保活机制，已关闭的机制不启动
+     * 无声音乐、1像素Activity、悬浮窗和守护进程由前台服务启动，启动时各自检查开关
      */
     public void startAllKeepAliveMechanisms() {
         LogUtil.d(TAG, "启动所有保活机制");
         
         // 注册系统广播接收器
-        registerSystemBroadcastReceiver();
+        if (isMechanismEnabled(Mechanism.SYSTEM_BROADCAST)) {
+            registerSystemBroadcastReceiver();
+        }
         
         // 启动JobScheduler任务
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && isMechanismEnabled(Mechanism.JOB_SCHEDULER)) {
             startJobScheduler();
         }
         
-        // 启动WorkManager定期保活任务
-        workManagerKeepAliveHelper.startPeriodicKeepAliveWork();
+        if (isMechanismEnabled(Mechanism.WORK_MANAGER)) {
+            // 启动WorkManager定期保活任务
+            workManagerKeepAliveHelper.startPeriodicKeepAliveWork();
+            
+            // 立即执行一次保活检查
+            workManagerKeepAliveHelper.runKeepAliveCheckNow();
+        }
+    }
+    
+    /**
+     * 保活机制是否开启
+     */
+    public boolean isMechanismEnabled(Mechanism mechanism) {
+        return PreferencesHelper.isKeepAliveMechanismEnabled(context, mechanism);
+    }
+    
+    /**
+     * 开启或关闭某个保活机制，立即生效
+     * @param mechanism 保活机制
+     * @param enabled 是否开启
+     */
+    public void setMechanismEnabled(Mechanism mechanism, boolean enabled) {
+        PreferencesHelper.setKeepAliveMechanismEnabled(context, mechanism, enabled);
+        LogUtil.d(TAG, (enabled ? "开启" : "关闭") + "保活机制: " + mechanism.label);
         
-        // 立即执行一次保活检查
-        workManagerKeepAliveHelper.runKeepAliveCheckNow();
+        switch (mechanism) {
+            case JOB_SCHEDULER:
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                    if (enabled) {
+                        startJobScheduler();
+                    } else {
+                        cancelJobScheduler();
+                    }
+                }
+                break;
+            case WORK_MANAGER:
+                if (enabled) {
+                    workManagerKeepAliveHelper.startPeriodicKeepAliveWork();
+                } else {
+                    workManagerKeepAliveHelper.stopPeriodicKeepAliveWork();
+                }
+                break;
+            case SYSTEM_BROADCAST:
+                if (enabled) {
+                    registerSystemBroadcastReceiver();
+                } else {
+                    unregisterSystemBroadcastReceiver();
+                }
+                break;
+            case AUDIO_PLAYER:
+                if (enabled) {
+                    AudioPlayerService.start(context);
+                } else {
+                    AudioPlayerService.stop(context);
+                }
+                break;
+            case ONE_PIXEL:
+                // 开启后下次屏幕关闭时启动
+                if (!enabled) {
+                    OnePixelActivity.finish(context);
+                }
+                break;
+            case FLOAT_WINDOW:
+                if (enabled) {
+                    FloatWindowService.start(context);
+                } else {
+                    FloatWindowService.stop(context);
+                }
+                break;
+            case GUARDIAN:
+                // 守护进程由前台服务绑定，需要由前台服务解绑或重新绑定
+                SmsForwardService.applyGuardianSwitch(context);
+                break;
+        }
+    }
+    
+    /**
+     * 获取各保活机制的开关状态和开销统计信息
+     */
+    public String getStatsSummary() {
+        KeepAliveCostTracker tracker = KeepAliveCostTracker.getInstance();
+        StringBuilder builder = new StringBuilder();
+        for (Mechanism mechanism : Mechanism.values()) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(mechanism.label);
+            if (!isMechanismEnabled(mechanism)) {
+                builder.append("[关]");
+            }
+            builder.append(": ").append(tracker.getSummary(mechanism));
+        }
+        return builder.toString();
     }
 
     /**
@@ -87,6 +209,9 @@ public class KeepAliveManager {
      * 注册系统广播接收器
      */
     private void registerSystemBroadcastReceiver() {
+        if (systemBroadcastRegistered) {
+            return;
+        }
         try {
             IntentFilter intentFilter = new IntentFilter();
             // 监听开机广播
@@ -101,6 +226,7 @@ public class KeepAliveManager {
             
             // 注册广播接收器
             context.registerReceiver(systemBroadcastReceiver, intentFilter);
+            systemBroadcastRegistered = true;
             LogUtil.d(TAG, "系统广播接收器注册成功");
         } catch (Exception e) {
             LogUtil.e(TAG, "系统广播接收器注册失败: " + e.getMessage());
@@ -112,8 +238,9 @@ public class KeepAliveManager {
      */
     private void unregisterSystemBroadcastReceiver() {
         try {
-            if (systemBroadcastReceiver != null) {
+            if (systemBroadcastReceiver != null && systemBroadcastRegistered) {
                 context.unregisterReceiver(systemBroadcastReceiver);
+                systemBroadcastRegistered = false;
                 LogUtil.d(TAG, "系统广播接收器注销成功");
             }
         } catch (Exception e) {
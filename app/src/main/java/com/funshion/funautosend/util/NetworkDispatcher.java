@@ -0,0 +1,301 @@
+package com.funshion.funautosend.util;
+
+import android.content.Context;
+import com.funshion.funautosend.util.LogUtil;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * 统一的网络请求调度器
+ * 所有HTTP请求按优先级排队，直接交给OkHttp异步执行，不再先经过一个线程池再入队；
+ * 每个主机同时执行的请求数有上限，低优先级请求可用的并发数更少，保证配置拉取等请求总能及时开始。
+ * 按流量计费网络（开启相关设置时）或省流量模式下暂缓上报类请求，正在执行的上报请求会被取消并重新排队，
+ * 切换到不计费网络后再发送；按流量计费网络下是否暂缓由转发规则的deferTelemetryOnMetered字段下发，见 {@link RemoteSettings}。
+ * 暂缓状态变化时通知 {@link TelemetryListener}，上报队列在暂缓期间不再提交新的批次
+ */
+public class NetworkDispatcher {
+    private static final String TAG = "NetworkDispatcher";
+
+    // 同时执行的请求总数上限
+    private static final int MAX_REQUESTS = 8;
+
+    /**
+     * 请求优先级，按声明顺序从高到低
+     */
+    public enum Priority {
+        // 转发配置拉取（转发本身通过短信和邮件发送，不经过HTTP）
+        CONFIG(3),
+        // 转发结果上报等统计类请求
+        TELEMETRY(2);
+
+        // 该优先级的请求可以占用的单主机并发数
+        final int maxRequestsPerHost;
+
+        Priority(int maxRequestsPerHost) {
+            this.maxRequestsPerHost = maxRequestsPerHost;
+        }
+    }
+
+    private static volatile NetworkDispatcher instance;
+
+    private final Context context;
+    private final Object lock = new Object();
+    // 每个优先级一个等待队列
+    private final ArrayDeque<Job>[] pending;
+    private final List<Job> running = new ArrayList<>();
+    private final Map<String, Integer> runningPerHost = new HashMap<>();
+    private boolean telemetryDeferred;
+    private final CopyOnWriteArrayList<TelemetryListener> telemetryListeners = new CopyOnWriteArrayList<>();
+
+    // 统计数据
+    private long completedCount;
+    private long requeuedCount;
+
+    @SuppressWarnings("unchecked")
+    NetworkDispatcher(Context context) {
+        this.context = context;
+        this.pending = new ArrayDeque[Priority.values().length];
+        for (int i = 0; i < pending.length; i++) {
+            pending[i] = new ArrayDeque<>();
+        }
+        this.telemetryDeferred = shouldDeferTelemetry();
+        NetworkStateHolder.getInstance(context).addListener(new NetworkStateHolder.Listener() {
+            @Override
+            public void onNetworkStateChanged(NetworkStateHolder.NetworkState state, NetworkStateHolder.NetworkState previous) {
+                onNetworkChanged();
+            }
+        });
+    }
+
+    /**
+     * 获取单例实例
+     */
+    public static NetworkDispatcher getInstance(Context context) {
+        if (instance == null) {
+            synchronized (NetworkDispatcher.class) {
+                if (instance == null) {
+                    instance = new NetworkDispatcher(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 上报类请求暂缓状态变化监听器，在网络状态回调的线程中执行，不要做耗时操作
+     */
+    public interface TelemetryListener {
+        void onTelemetryDeferredChanged(boolean deferred);
+    }
+
+    /**
+     * 添加上报类请求暂缓状态监听器
+     */
+    public void addTelemetryListener(TelemetryListener listener) {
+        telemetryListeners.addIfAbsent(listener);
+    }
+
+    /**
+     * 移除上报类请求暂缓状态监听器
+     */
+    public void removeTelemetryListener(TelemetryListener listener) {
+        telemetryListeners.remove(listener);
+    }
+
+    /**
+     * 上报类请求当前是否被暂缓（计费网络或省流量模式），暂缓期间提交的上报请求在调度器中排队等待
+     */
+    public boolean isTelemetryDeferred() {
+        synchronized (lock) {
+            return telemetryDeferred;
+        }
+    }
+
+    /**
+     * 排队中的一个请求
+     */
+    private static class Job {
+        final Request request;
+        final Priority priority;
+        final Callback callback;
+        final String host;
+        Call call;
+        // 因网络计费被取消，需要重新排队
+        boolean requeue;
+
+        Job(Request request, Priority priority, Callback callback) {
+            this.request = request;
+            this.priority = priority;
+            this.callback = callback;
+            this.host = request.url().host();
+        }
+    }
+
+    /**
+     * 提交一个异步请求
+     * @param request 请求
+     * @param priority 优先级
+     * @param callback OkHttp回调，在OkHttp的线程中执行
+     */
+    public void enqueue(Request request, Priority priority, Callback callback) {
+        synchronized (lock) {
+            pending[priority.ordinal()].addLast(new Job(request, priority, callback));
+        }
+        promote();
+    }
+
+    /**
+     * 网络变化时重新判断是否暂缓上报类请求
+     */
+    private void onNetworkChanged() {
+        setTelemetryDeferred(shouldDeferTelemetry());
+    }
+
+    /**
+     * 设置是否暂缓上报类请求，暂缓时取消正在执行的上报请求并重新排队，状态变化时通知监听器
+     */
+    void setTelemetryDeferred(boolean defer) {
+        List<Call> toCancel = new ArrayList<>();
+        boolean changed;
+        synchronized (lock) {
+            changed = defer != telemetryDeferred;
+            if (changed) {
+                LogUtil.d(TAG, defer ? "当前为计费或省流量网络，暂缓上报类请求" : "已切换到不计费网络，恢复上报类请求");
+            }
+            telemetryDeferred = defer;
+            if (defer) {
+                for (Job job : running) {
+                    if (job.priority == Priority.TELEMETRY && !job.requeue) {
+                        job.requeue = true;
+                        toCancel.add(job.call);
+                    }
+                }
+            }
+        }
+        for (Call call : toCancel) {
+            call.cancel();
+        }
+        promote();
+        if (changed) {
+            for (TelemetryListener listener : telemetryListeners) {
+                try {
+                    listener.onTelemetryDeferredChanged(defer);
+                } catch (Exception e) {
+                    LogUtil.e(TAG, "通知上报暂缓状态变化时出错: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private void promote() {
+        List<Job> toStart = new ArrayList<>();
+        synchronized (lock) {
+            for (Priority priority : Priority.values()) {
+                if (priority == Priority.TELEMETRY && telemetryDeferred) {
+                    continue;
+                }
+                Iterator<Job> iterator = pending[priority.ordinal()].iterator();
+                while (iterator.hasNext() && running.size() < MAX_REQUESTS) {
+                    Job job = iterator.next();
+                    Integer hostCount = runningPerHost.get(job.host);
+                    int count = hostCount != null ? hostCount : 0;
+                    if (count >= priority.maxRequestsPerHost) {
+                        continue;
+                    }
+                    iterator.remove();
+                    runningPerHost.put(job.host, count + 1);
+                    job.call = ApiClient.getHttpClient(priority == Priority.CONFIG).newCall(job.request);
+                    running.add(job);
+                    toStart.add(job);
+                }
+            }
+        }
+        for (Job job : toStart) {
+            start(job);
+        }
+    }
+
+    private void start(final Job job) {
+        job.call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                boolean requeued;
+                synchronized (lock) {
+                    finishLocked(job);
+                    requeued = job.requeue;
+                    if (requeued) {
+                        // 被取消的上报请求放回队首，等网络不计费后再发送
+                        job.requeue = false;
+                        job.call = null;
+                        pending[job.priority.ordinal()].addFirst(job);
+                        requeuedCount++;
+                    } else {
+                        completedCount++;
+                    }
+                }
+                if (!requeued) {
+                    job.callback.onFailure(call, e);
+                }
+                promote();
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                synchronized (lock) {
+                    finishLocked(job);
+                    completedCount++;
+                }
+                try {
+                    job.callback.onResponse(call, response);
+                } finally {
+                    promote();
+                }
+            }
+        });
+    }
+
+    private void finishLocked(Job job) {
+        running.remove(job);
+        Integer hostCount = runningPerHost.get(job.host);
+        if (hostCount == null || hostCount <= 1) {
+            runningPerHost.remove(job.host);
+        } else {
+            runningPerHost.put(job.host, hostCount - 1);
+        }
+    }
+
+    private boolean shouldDeferTelemetry() {
+        NetworkStateHolder.NetworkState state = NetworkStateHolder.getInstance(context).getState();
+        // 用户开启省流量模式时总是暂缓；只用移动数据的设备上暂缓上报会导致一直无法上报，因此计费网络是否暂缓由设置决定
+        return state.restricted || (state.metered && PreferencesHelper.isDeferTelemetryOnMetered(context));
+    }
+
+    /**
+     * 获取调度统计信息
+     */
+    public String getMetricsSummary() {
+        synchronized (lock) {
+            StringBuilder builder = new StringBuilder();
+            builder.append("执行中: ").append(running.size()).append(", 等待: ");
+            for (Priority priority : Priority.values()) {
+                builder.append(priority.name()).append("=").append(pending[priority.ordinal()].size()).append(" ");
+            }
+            builder.append(", 已完成: ").append(completedCount)
+                    .append(", 重新排队: ").append(requeuedCount)
+                    .append(", 上报暂缓: ").append(telemetryDeferred);
+            return builder.toString();
+        }
+    }
+}
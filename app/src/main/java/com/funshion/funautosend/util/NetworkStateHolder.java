@@ -0,0 +1,210 @@
+package com.funshion.funautosend.util;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
+import android.os.Build;
+import com.funshion.funautosend.util.LogUtil;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 进程内共享的网络状态
+ * 由一个NetworkCallback在网络变化时更新，各组件读取当前状态只需要一次volatile读，不再每次调用ConnectivityManager；
+ * 状态变化时通知订阅者，断网时暂停的队列可以在网络恢复后立即继续发送
+ */
+public class NetworkStateHolder {
+    private static final String TAG = "NetworkStateHolder";
+
+    private static volatile NetworkStateHolder instance;
+
+    private final ConnectivityManager connectivityManager;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile NetworkState state;
+
+    private NetworkStateHolder(Context context) {
+        this.connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        this.state = queryState();
+        registerNetworkCallback();
+    }
+
+    /**
+     * 获取单例实例
+     */
+    public static NetworkStateHolder getInstance(Context context) {
+        if (instance == null) {
+            synchronized (NetworkStateHolder.class) {
+                if (instance == null) {
+                    instance = new NetworkStateHolder(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 网络状态快照，创建后不再修改
+     */
+    public static class NetworkState {
+        // 是否有网络连接
+        public final boolean connected;
+        // 网络类型描述，例如WIFI、移动数据
+        public final String type;
+        // 是否按流量计费
+        public final boolean metered;
+        // 是否开启了省流量模式（限制后台数据）
+        public final boolean restricted;
+
+        NetworkState(boolean connected, String type, boolean metered, boolean restricted) {
+            this.connected = connected;
+            this.type = type;
+            this.metered = metered;
+            this.restricted = restricted;
+        }
+
+        boolean sameAs(NetworkState other) {
+            return other != null && connected == other.connected && metered == other.metered
+                    && restricted == other.restricted && type.equals(other.type);
+        }
+
+        @Override
+        public String toString() {
+            if (!connected) {
+                return "未连接";
+            }
+            return "已连接 (" + type + (metered ? ", 计费" : "") + (restricted ? ", 省流量" : "") + ")";
+        }
+    }
+
+    /**
+     * 网络状态变化监听器，在ConnectivityManager的回调线程中执行，不要做耗时操作
+     */
+    public interface Listener {
+        void onNetworkStateChanged(NetworkState state, NetworkState previous);
+    }
+
+    /**
+     * 获取当前网络状态
+     */
+    public NetworkState getState() {
+        return state;
+    }
+
+    /**
+     * 当前是否有网络连接
+     */
+    public boolean isConnected() {
+        return state.connected;
+    }
+
+    /**
+     * 打印当前网络状态
+     * @param tag 日志标签
+     * @param operation 操作描述
+     * @return 是否有网络连接
+     */
+    public boolean logStatus(String tag, String operation) {
+        NetworkState current = state;
+        LogUtil.d(tag, operation + " - 网络状态: " + current);
+        return current.connected;
+    }
+
+    /**
+     * 添加状态变化监听器
+     */
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    /**
+     * 移除状态变化监听器
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void registerNetworkCallback() {
+        if (connectivityManager == null) {
+            return;
+        }
+        ConnectivityManager.NetworkCallback callback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                update();
+            }
+
+            @Override
+            public void onCapabilitiesChanged(Network network, NetworkCapabilities networkCapabilities) {
+                update();
+            }
+
+            @Override
+            public void onLost(Network network) {
+                update();
+            }
+        };
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                // 只跟踪默认网络，与应用实际使用的网络一致
+                connectivityManager.registerDefaultNetworkCallback(callback);
+            } else {
+                NetworkRequest request = new NetworkRequest.Builder()
+                        .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                        .build();
+                connectivityManager.registerNetworkCallback(request, callback);
+            }
+        } catch (Exception e) {
+            LogUtil.e(TAG, "注册网络监听失败: " + e.getMessage());
+        }
+    }
+
+    private void update() {
+        NetworkState previous = state;
+        NetworkState current = queryState();
+        if (current.sameAs(previous)) {
+            return;
+        }
+        state = current;
+        LogUtil.d(TAG, "网络状态变化: " + previous + " -> " + current);
+        for (Listener listener : listeners) {
+            try {
+                listener.onNetworkStateChanged(current, previous);
+            } catch (Exception e) {
+                LogUtil.e(TAG, "通知网络状态变化时出错: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 查询当前网络状态，只在网络变化时调用
+     */
+    private NetworkState queryState() {
+        if (connectivityManager == null) {
+            // 无法获取网络状态时按有网络处理，交给实际请求判断
+            return new NetworkState(true, "未知", false, false);
+        }
+        try {
+            NetworkInfo activeNetwork = connectivityManager.getActiveNetworkInfo();
+            if (activeNetwork == null || !activeNetwork.isConnectedOrConnecting()) {
+                return new NetworkState(false, "未知", false, false);
+            }
+            String type;
+            if (activeNetwork.getType() == ConnectivityManager.TYPE_WIFI) {
+                type = "WIFI";
+            } else if (activeNetwork.getType() == ConnectivityManager.TYPE_MOBILE) {
+                type = "移动数据";
+            } else {
+                type = activeNetwork.getTypeName();
+            }
+            boolean restricted = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                    && connectivityManager.getRestrictBackgroundStatus() == ConnectivityManager.RESTRICT_BACKGROUND_STATUS_ENABLED;
+            return new NetworkState(true, type, connectivityManager.isActiveNetworkMetered(), restricted);
+        } catch (Exception e) {
+            LogUtil.e(TAG, "检查网络状态时出错: " + e.getMessage());
+            return new NetworkState(true, "未知", false, false);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.funshion.funautosend.util;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.funshion.funautosend.model.PipelineMetrics;
+
+/**
+ * 采集主进程转发流程的运行状态，通过AIDL提供给守护进程判断流程是否停滞
+ */
+public class PipelineMetricsCollector {
+    // 上次短信扫描完成的时间
+    private static volatile long lastScanTime;
+    private static volatile long lastScanUptime;
+
+    /**
+     * 定时短信扫描结束时调用（不论是否扫描成功），表示定时任务仍在正常运行
+     */
+    public static void onScanFinished() {
+        lastScanTime = System.currentTimeMillis();
+        lastScanUptime = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * 采集当前转发流程的运行状态
+     */
+    public static PipelineMetrics collect(Context context) {
+        PipelineMetrics metrics = PipelineMetrics.forCurrentProcess();
+        metrics.emailQueueDepth = EmailOutbox.getInstance(context).getPendingCount();
+        ReportQueue reportQueue = ReportQueue.getInstance(context);
+        metrics.reportQueueDepth = reportQueue.getBacklogCount();
+        metrics.oldestReportAgeMs = reportQueue.getOldestBacklogAgeMs();
+        metrics.reportDroppedCount = reportQueue.getDroppedCount();
+        ForwardLatencyTracker tracker = ForwardLatencyTracker.getInstance();
+        metrics.forwardPendingCount = tracker.getPendingCount();
+        metrics.lastForwardLatencyMs = tracker.getLastLatencyMs();
+        metrics.lastScanTime = lastScanTime;
+        metrics.lastScanUptime = lastScanUptime;
+        metrics.emailFailedCount = EmailOutbox.getInstance(context).getFailedCount();
+        metrics.refreshFailureCount = ConfigRefreshCoordinator.getInstance(context).getFailureCount();
+        return metrics;
+    }
+}
@@ -22,6 +22,23 @@ public class PreferencesHelper {
     public static final String KEY_TARGET_LIST = "targetList";
     public static final String KEY_LAST_UPDATE_TIME = "lastUpdateTime";
     public static final String KEY_SAVE_LOG_ENABLED = "saveLogEnabled";
+    public static final String KEY_SEND_SIM_POLICY = "sendSimPolicy";
+    public static final String KEY_EMAIL_DIGEST_WINDOW = "emailDigestWindow";
+    public static final String KEY_EMAIL_DIGEST_MAX_DELAY = "emailDigestMaxDelay";
+    public static final String KEY_EMAIL_DIGEST_MAX_ENTRIES = "emailDigestMaxEntries";
+    public static final String KEY_EMAIL_DIGEST_MAX_BYTES = "emailDigestMaxBytes";
+    public static final String KEY_REPORT_BATCH_ENABLED = "reportBatchEnabled";
+    public static final String KEY_COMBINED_REPORT_ENABLED = "combinedReportEnabled";
+    public static final String KEY_DEFER_TELEMETRY_ON_METERED = "deferTelemetryOnMetered";
+    public static final String KEY_MAX_REFRESH_INTERVAL = "maxRefreshInterval";
+    public static final String KEY_CONFIG_LONG_POLL_ENABLED = "configLongPollEnabled";
+    // 保活机制开关，后面加上机制名
+    public static final String KEY_KEEP_ALIVE_ENABLED_PREFIX = "keepAliveEnabled_";
+    public static final String KEY_AUDIO_LOW_DUTY_ENABLED = "audioLowDutyEnabled";
+    public static final String KEY_SMTP_HOST = "smtpHost";
+    public static final String KEY_SMTP_PORT = "smtpPort";
+    public static final String KEY_SMTP_USER = "smtpUser";
+    public static final String KEY_SMTP_PASSWORD = "smtpPassword";
 
     /**
      * 获取SharedPreferences实例
@@ -164,6 +181,18 @@ public class PreferencesHelper {
         return gson.fromJson(json, type);
     }
 
+    /**
+     * 保存拉取到的配置，API结果列表、目标列表和最后更新时间在一次提交中写入
+     */
+    public static void saveConfig(Context context, List<Map<String, Object>> resultList, List<Map<String, Object>> targetList) {
+        Gson gson = new Gson();
+        SharedPreferences.Editor editor = getEditor(context);
+        editor.putString(KEY_API_RESULT_LIST, gson.toJson(resultList));
+        editor.putString(KEY_TARGET_LIST, gson.toJson(targetList));
+        editor.putLong(KEY_LAST_UPDATE_TIME, System.currentTimeMillis());
+        editor.apply();
+    }
+
     /**
      * 保存Long类型的值
      */
@@ -193,4 +222,184 @@ public class PreferencesHelper {
     public static long getLastUpdateTime(Context context) {
         return getLong(context, KEY_LAST_UPDATE_TIME, 0);
     }
-}
\ No newline at end of file
+    
+    /**
+     * 保存转发短信的发送SIM卡选择策略
+     * @param policy 策略名称，见 {@link SendSimSelector.Policy}
+     */
+    public static void saveSendSimPolicy(Context context, String policy) {
+        putString(context, KEY_SEND_SIM_POLICY, policy);
+    }
+    
+    /**
+     * 获取转发短信的发送SIM卡选择策略，默认使用接收短信的SIM卡发送
+     */
+    public static String getSendSimPolicy(Context context) {
+        return getString(context, KEY_SEND_SIM_POLICY, SendSimSelector.Policy.SAME_SIM.name());
+    }
+    
+    /**
+     * 保存邮件汇总配置
+     * @param windowSeconds 汇总窗口（秒），0表示关闭汇总，每条短信单独发送邮件
+     * @param maxDelaySeconds 最大等待时间（秒），从第一封邮件开始计算
+     * @param maxEntries 单封汇总邮件最多包含的条数
+     * @param maxBytes 单封汇总邮件正文的最大字节数
+     */
+    public static void saveEmailDigestConfig(Context context, int windowSeconds, int maxDelaySeconds, int maxEntries, int maxBytes) {
+        SharedPreferences.Editor editor = getEditor(context);
+        editor.putInt(KEY_EMAIL_DIGEST_WINDOW, windowSeconds);
+        editor.putInt(KEY_EMAIL_DIGEST_MAX_DELAY, maxDelaySeconds);
+        editor.putInt(KEY_EMAIL_DIGEST_MAX_ENTRIES, maxEntries);
+        editor.putInt(KEY_EMAIL_DIGEST_MAX_BYTES, maxBytes);
+        editor.apply();
+    }
+    
+    /**
+     * 获取邮件汇总窗口（秒），默认0表示关闭
+     */
+    public static int getEmailDigestWindow(Context context) {
+        return getInt(context, KEY_EMAIL_DIGEST_WINDOW, 0);
+    }
+    
+    /**
+     * 获取邮件汇总最大等待时间（秒），默认0表示使用汇总窗口的3倍
+     */
+    public static int getEmailDigestMaxDelay(Context context) {
+        return getInt(context, KEY_EMAIL_DIGEST_MAX_DELAY, 0);
+    }
+    
+    /**
+     * 获取单封汇总邮件最多包含的条数，默认20条
+     */
+    public static int getEmailDigestMaxEntries(Context context) {
+        return getInt(context, KEY_EMAIL_DIGEST_MAX_ENTRIES, 20);
+    }
+    
+    /**
+     * 获取单封汇总邮件正文的最大字节数，默认64KB
+     */
+    public static int getEmailDigestMaxBytes(Context context) {
+        return getInt(context, KEY_EMAIL_DIGEST_MAX_BYTES, 64 * 1024);
+    }
+    
+    /**
+     * 设置是否批量上报转发数据
+     */
+    public static void setReportBatchEnabled(Context context, boolean enabled) {
+        putBoolean(context, KEY_REPORT_BATCH_ENABLED, enabled);
+    }
+    
+    /**
+     * 是否批量上报转发数据，默认开启，服务器不支持时会自动退回逐条上报
+     */
+    public static boolean isReportBatchEnabled(Context context) {
+        return getBoolean(context, KEY_REPORT_BATCH_ENABLED, true);
+    }
+    
+    /**
+     * 设置是否合并上报短信和邮件的转发结果
+     */
+    public static void setCombinedReportEnabled(Context context, boolean enabled) {
+        putBoolean(context, KEY_COMBINED_REPORT_ENABLED, enabled);
+    }
+    
+    /**
+     * 是否合并上报短信和邮件的转发结果，默认关闭，需要服务器支持combined类型的上报数据
+     */
+    public static boolean isCombinedReportEnabled(Context context) {
+        return getBoolean(context, KEY_COMBINED_REPORT_ENABLED, false);
+    }
+    
+    /**
+     * 设置按流量计费网络下是否暂缓上报类请求
+     */
+    public static void setDeferTelemetryOnMetered(Context context, boolean defer) {
+        putBoolean(context, KEY_DEFER_TELEMETRY_ON_METERED, defer);
+    }
+    
+    /**
+     * 按流量计费网络下是否暂缓上报类请求，默认关闭（只用移动数据的设备开启后将无法上报）
+     */
+    public static boolean isDeferTelemetryOnMetered(Context context) {
+        return getBoolean(context, KEY_DEFER_TELEMETRY_ON_METERED, false);
+    }
+    
+    /**
+     * 保存配置刷新间隔上限（秒），配置长时间不变时刷新间隔最多拉长到该值
+     */
+    public static void saveMaxRefreshInterval(Context context, int seconds) {
+        putInt(context, KEY_MAX_REFRESH_INTERVAL, seconds);
+    }
+    
+    /**
+     * 获取配置刷新间隔上限（秒），默认15分钟
+     */
+    public static int getMaxRefreshInterval(Context context) {
+        return getInt(context, KEY_MAX_REFRESH_INTERVAL, 15 * 60);
+    }
+    
+    /**
+     * 设置是否开启配置变化长轮询
+     */
+    public static void setConfigLongPollEnabled(Context context, boolean enabled) {
+        putBoolean(context, KEY_CONFIG_LONG_POLL_ENABLED, enabled);
+    }
+    
+    /**
+     * 是否开启配置变化长轮询，默认关闭，需要服务器提供长轮询接口
+     */
+    public static boolean isConfigLongPollEnabled(Context context) {
+        return getBoolean(context, KEY_CONFIG_LONG_POLL_ENABLED, false);
+    }
+    
+    /**
+     * 设置某个保活机制是否开启
+     */
+    public static void setKeepAliveMechanismEnabled(Context context, KeepAliveManager.Mechanism mechanism, boolean enabled) {
+        putBoolean(context, KEY_KEEP_ALIVE_ENABLED_PREFIX + mechanism.name(), enabled);
+    }
+    
+    /**
+     * 某个保活机制是否开启，默认全部开启
+     */
+    public static boolean isKeepAliveMechanismEnabled(Context context, KeepAliveManager.Mechanism mechanism) {
+        return getBoolean(context, KEY_KEEP_ALIVE_ENABLED_PREFIX + mechanism.name(), true);
+    }
+    
+    /**
+     * 设置无声音乐是否使用低占空比模式（静态缓冲区循环播放）
+     */
+    public static void setAudioLowDutyEnabled(Context context, boolean enabled) {
+        putBoolean(context, KEY_AUDIO_LOW_DUTY_ENABLED, enabled);
+    }
+    
+    /**
+     * 无声音乐是否使用低占空比模式，默认开启，个别设备上保活效果变差时可以关闭，改回持续写入数据
+     */
+    public static boolean isAudioLowDutyEnabled(Context context) {
+        return getBoolean(context, KEY_AUDIO_LOW_DUTY_ENABLED, true);
+    }
+    
+    /**
+     * 保存SMTP服务器配置
+     */
+    public static void saveSmtpConfig(Context context, SmtpTransportPool.SmtpConfig config) {
+        SharedPreferences.Editor editor = getEditor(context);
+        editor.putString(KEY_SMTP_HOST, config.host);
+        editor.putString(KEY_SMTP_PORT, config.port);
+        editor.putString(KEY_SMTP_USER, config.user);
+        editor.putString(KEY_SMTP_PASSWORD, config.password);
+        editor.apply();
+    }
+    
+    /**
+     * 获取SMTP服务器配置，没有保存过时使用默认配置
+     */
+    public static SmtpTransportPool.SmtpConfig getSmtpConfig(Context context) {
+        return new SmtpTransportPool.SmtpConfig(
+                getString(context, KEY_SMTP_HOST, ""),
+                getString(context, KEY_SMTP_PORT, ""),
+                getString(context, KEY_SMTP_USER, ""),
+                getString(context, KEY_SMTP_PASSWORD, ""));
+    }
+}
@@ -0,0 +1,246 @@
+package com.funshion.funautosend.util;
+
+import android.content.Context;
+import com.funshion.funautosend.util.LogUtil;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 远程设置
+ * 本机转发规则中除了转发字段外还可以带有设备级设置字段，与allowSimFailover等规则字段一样按字段名读取，
+ * 配置发布时写入本地设置；多条规则都有同一字段时以第一条为准，规则中没有的字段保留本地设置不变
+ *
+ * 规则字段：
+ * sendSimPolicy 发送SIM卡选择策略，见 {@link SendSimSelector.Policy}
+ * emailDigestWindow/emailDigestMaxDelay/emailDigestMaxEntries/emailDigestMaxBytes 邮件汇总配置，见 {@link EmailDigestBatcher}
+ * reportBatch 是否批量上报转发数据（true/false），见 {@link ReportBatcher}
+ * combinedReport 是否合并上报短信和邮件的转发结果（true/false），见 {@link CombinedReportCollector}
+ * deferTelemetryOnMetered 按流量计费网络下是否暂缓上报类请求（true/false），见 {@link NetworkDispatcher}
+ * maxRefreshInterval 配置刷新间隔上限（秒），见 {@link AdaptiveRefreshScheduler}
+ * configLongPoll 是否开启配置变化长轮询（true/false），见 {@link ConfigLongPollChannel}
+ * audioLowDuty 无声音乐是否使用低占空比模式（true/false），无声音乐播放服务下次启动时生效
+ * smtpHost/smtpPort/smtpUser/smtpPassword 发送邮件的SMTP服务器配置，见 {@link SmtpTransportPool}
+ * keepAliveDisabled 关闭的保活机制，{@link KeepAliveManager.Mechanism} 名称以逗号分隔，none表示全部开启
+ */
+public class RemoteSettings {
+    private static final String TAG = "RemoteSettings";
+
+    public static final String FIELD_SEND_SIM_POLICY = "sendSimPolicy";
+    public static final String FIELD_EMAIL_DIGEST_WINDOW = "emailDigestWindow";
+    public static final String FIELD_EMAIL_DIGEST_MAX_DELAY = "emailDigestMaxDelay";
+    public static final String FIELD_EMAIL_DIGEST_MAX_ENTRIES = "emailDigestMaxEntries";
+    public static final String FIELD_EMAIL_DIGEST_MAX_BYTES = "emailDigestMaxBytes";
+    public static final String FIELD_REPORT_BATCH = "reportBatch";
+    public static final String FIELD_COMBINED_REPORT = "combinedReport";
+    public static final String FIELD_DEFER_TELEMETRY_ON_METERED = "deferTelemetryOnMetered";
+    public static final String FIELD_MAX_REFRESH_INTERVAL = "maxRefreshInterval";
+    public static final String FIELD_CONFIG_LONG_POLL = "configLongPoll";
+    public static final String FIELD_AUDIO_LOW_DUTY = "audioLowDuty";
+    public static final String FIELD_SMTP_HOST = "smtpHost";
+    public static final String FIELD_SMTP_PORT = "smtpPort";
+    public static final String FIELD_SMTP_USER = "smtpUser";
+    public static final String FIELD_SMTP_PASSWORD = "smtpPassword";
+    public static final String FIELD_KEEP_ALIVE_DISABLED = "keepAliveDisabled";
+
+    private RemoteSettings() {
+    }
+
+    /**
+     * 将本机转发规则中的设置字段写入本地设置
+     * @param context 上下文
+     * @param targetList 与本机号码匹配的转发规则
+     */
+    public static void apply(Context context, List<Map<String, Object>> targetList) {
+        if (targetList == null || targetList.isEmpty()) {
+            return;
+        }
+        try {
+            String sendSimPolicy = findField(targetList, FIELD_SEND_SIM_POLICY);
+            if (sendSimPolicy != null && !sendSimPolicy.equalsIgnoreCase(PreferencesHelper.getSendSimPolicy(context))) {
+                PreferencesHelper.saveSendSimPolicy(context, SendSimSelector.Policy.parse(sendSimPolicy).name());
+                LogUtil.d(TAG, "发送SIM卡选择策略: " + sendSimPolicy);
+            }
+            applyEmailDigestConfig(context, targetList);
+
+            Boolean reportBatch = findBooleanField(targetList, FIELD_REPORT_BATCH);
+            if (reportBatch != null && reportBatch != PreferencesHelper.isReportBatchEnabled(context)) {
+                PreferencesHelper.setReportBatchEnabled(context, reportBatch);
+                LogUtil.d(TAG, "批量上报: " + (reportBatch ? "开启" : "关闭"));
+            }
+
+            Boolean combinedReport = findBooleanField(targetList, FIELD_COMBINED_REPORT);
+            if (combinedReport != null && combinedReport != PreferencesHelper.isCombinedReportEnabled(context)) {
+                PreferencesHelper.setCombinedReportEnabled(context, combinedReport);
+                LogUtil.d(TAG, "合并上报: " + (combinedReport ? "开启" : "关闭"));
+            }
+
+            Boolean deferTelemetry = findBooleanField(targetList, FIELD_DEFER_TELEMETRY_ON_METERED);
+            if (deferTelemetry != null && deferTelemetry != PreferencesHelper.isDeferTelemetryOnMetered(context)) {
+                PreferencesHelper.setDeferTelemetryOnMetered(context, deferTelemetry);
+                LogUtil.d(TAG, "按流量计费网络暂缓上报: " + (deferTelemetry ? "开启" : "关闭"));
+            }
+
+            Integer maxRefreshInterval = findIntField(targetList, FIELD_MAX_REFRESH_INTERVAL);
+            if (maxRefreshInterval != null && maxRefreshInterval > 0
+                    && maxRefreshInterval != PreferencesHelper.getMaxRefreshInterval(context)) {
+                PreferencesHelper.saveMaxRefreshInterval(context, maxRefreshInterval);
+                LogUtil.d(TAG, "配置刷新间隔上限: " + maxRefreshInterval + " 秒");
+            }
+
+            Boolean configLongPoll = findBooleanField(targetList, FIELD_CONFIG_LONG_POLL);
+            if (configLongPoll != null && configLongPoll != PreferencesHelper.isConfigLongPollEnabled(context)) {
+                PreferencesHelper.setConfigLongPollEnabled(context, configLongPoll);
+                LogUtil.d(TAG, "配置长轮询: " + (configLongPoll ? "开启" : "关闭"));
+            }
+
+            Boolean audioLowDuty = findBooleanField(targetList, FIELD_AUDIO_LOW_DUTY);
+            if (audioLowDuty != null && audioLowDuty != PreferencesHelper.isAudioLowDutyEnabled(context)) {
+                PreferencesHelper.setAudioLowDutyEnabled(context, audioLowDuty);
+                LogUtil.d(TAG, "无声音乐低占空比模式: " + (audioLowDuty ? "开启" : "关闭"));
+            }
+
+            applySmtpConfig(context, targetList);
+            applyKeepAliveSwitches(context, targetList);
+        } catch (Exception e) {
+            LogUtil.e(TAG, "应用远程设置失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 邮件汇总配置的四个字段一起保存，规则中只带了部分字段时其余字段保留本地设置
+     */
+    private static void applyEmailDigestConfig(Context context, List<Map<String, Object>> targetList) {
+        Integer window = findIntField(targetList, FIELD_EMAIL_DIGEST_WINDOW);
+        Integer maxDelay = findIntField(targetList, FIELD_EMAIL_DIGEST_MAX_DELAY);
+        Integer maxEntries = findIntField(targetList, FIELD_EMAIL_DIGEST_MAX_ENTRIES);
+        Integer maxBytes = findIntField(targetList, FIELD_EMAIL_DIGEST_MAX_BYTES);
+        if (window == null && maxDelay == null && maxEntries == null && maxBytes == null) {
+            return;
+        }
+        int newWindow = window != null ? Math.max(0, window) : PreferencesHelper.getEmailDigestWindow(context);
+        int newMaxDelay = maxDelay != null ? Math.max(0, maxDelay) : PreferencesHelper.getEmailDigestMaxDelay(context);
+        int newMaxEntries = maxEntries != null ? Math.max(1, maxEntries) : PreferencesHelper.getEmailDigestMaxEntries(context);
+        int newMaxBytes = maxBytes != null ? Math.max(1, maxBytes) : PreferencesHelper.getEmailDigestMaxBytes(context);
+        if (newWindow == PreferencesHelper.getEmailDigestWindow(context)
+                && newMaxDelay == PreferencesHelper.getEmailDigestMaxDelay(context)
+                && newMaxEntries == PreferencesHelper.getEmailDigestMaxEntries(context)
+                && newMaxBytes == PreferencesHelper.getEmailDigestMaxBytes(context)) {
+            return;
+        }
+        PreferencesHelper.saveEmailDigestConfig(context, newWindow, newMaxDelay, newMaxEntries, newMaxBytes);
+        LogUtil.d(TAG, "邮件汇总配置: 窗口 " + newWindow + " 秒, 最大等待 " + newMaxDelay + " 秒, 最多 "
+                + newMaxEntries + " 条/" + newMaxBytes + " 字节");
+    }
+
+    /**
+     * SMTP配置的四个字段一起保存，规则中只带了部分字段时其余字段保留本地设置，保存后立即替换连接池的配置
+     */
+    private static void applySmtpConfig(Context context, List<Map<String, Object>> targetList) {
+        String host = findField(targetList, FIELD_SMTP_HOST);
+        String port = findField(targetList, FIELD_SMTP_PORT);
+        String user = findField(targetList, FIELD_SMTP_USER);
+        String password = findField(targetList, FIELD_SMTP_PASSWORD);
+        if (host == null && port == null && user == null && password == null) {
+            return;
+        }
+        SmtpTransportPool.SmtpConfig current = PreferencesHelper.getSmtpConfig(context);
+        SmtpTransportPool.SmtpConfig config = new SmtpTransportPool.SmtpConfig(
+                host != null ? host : current.host,
+                port != null ? port : current.port,
+                user != null ? user : current.user,
+                password != null ? password : current.password);
+        if (config.equals(current)) {
+            return;
+        }
+        PreferencesHelper.saveSmtpConfig(context, config);
+        SmtpTransportPool.getInstance().configure(config);
+    }
+
+    /**
+     * 按下发的关闭列表开启或关闭各保活机制，只有开关变化的机制才会调用 {@link KeepAliveManager#setMechanismEnabled}
+     */
+    private static void applyKeepAliveSwitches(Context context, List<Map<String, Object>> targetList) {
+        String value = findField(targetList, FIELD_KEEP_ALIVE_DISABLED);
+        if (value == null) {
+            return;
+        }
+        Set<KeepAliveManager.Mechanism> disabled = EnumSet.noneOf(KeepAliveManager.Mechanism.class);
+        if (!"none".equalsIgnoreCase(value)) {
+            for (String name : value.split(",")) {
+                name = name.trim();
+                if (name.isEmpty()) {
+                    continue;
+                }
+                try {
+                    disabled.add(KeepAliveManager.Mechanism.valueOf(name.toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    LogUtil.w(TAG, "未知的保活机制: " + name);
+                }
+            }
+        }
+        KeepAliveManager manager = KeepAliveManager.getInstance(context);
+        for (KeepAliveManager.Mechanism mechanism : KeepAliveManager.Mechanism.values()) {
+            boolean enabled = !disabled.contains(mechanism);
+            if (enabled != manager.isMechanismEnabled(mechanism)) {
+                manager.setMechanismEnabled(mechanism, enabled);
+            }
+        }
+    }
+
+    /**
+     * 获取第一条带有该字段的规则中的字段值
+     * @return 字段值，所有规则都没有该字段时返回null
+     */
+    @SuppressWarnings("unchecked")
+    static String findField(List<Map<String, Object>> targetList, String key) {
+        for (Map<String, Object> item : targetList) {
+            Object fields = item.get("fields");
+            if (!(fields instanceof Map)) {
+                continue;
+            }
+            Object value = ((Map<String, Object>) fields).get(key);
+            if (value != null && !value.toString().trim().isEmpty()) {
+                return value.toString().trim();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 解析整数字段，字段不存在或格式错误时返回null
+     */
+    static Integer findIntField(List<Map<String, Object>> targetList, String key) {
+        String value = findField(targetList, key);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return (int) Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            LogUtil.w(TAG, "解析设置字段失败: " + key + "=" + value);
+            return null;
+        }
+    }
+
+    /**
+     * 解析布尔字段，支持true/false和1/0，字段不存在或格式错误时返回null
+     */
+    static Boolean findBooleanField(List<Map<String, Object>> targetList, String key) {
+        String value = findField(targetList, key);
+        if (value == null) {
+            return null;
+        }
+        if ("1".equals(value) || "true".equalsIgnoreCase(value)) {
+            return Boolean.TRUE;
+        }
+        if ("0".equals(value) || "false".equalsIgnoreCase(value)) {
+            return Boolean.FALSE;
+        }
+        LogUtil.w(TAG, "解析设置字段失败: " + key + "=" + value);
+        return null;
+    }
+}
@@ -0,0 +1,229 @@
+package com.funshion.funautosend.util;
+
+import android.content.Context;
+import com.funshion.funautosend.util.LogUtil;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+
+/**
+ * 上报数据批量发送器
+ * 由 {@link ReportQueue} 取出一批积压的上报数据后调用，将多条数据合并为一个JSON数组，gzip压缩后一次POST，
+ * 每条转发短信原本需要两次HTTP请求，高峰期可以大幅减少请求数。
+ * 服务器不支持批量接口（404/405/415/501）时自动退回逐条上报，并在一段时间内不再尝试批量上报；
+ * 400表示这一批数据本身有问题，按本批失败处理，由队列重试，不会关闭批量上报
+ *
+ * 开关由转发规则的reportBatch字段下发，见 {@link RemoteSettings}
+ */
+public class ReportBatcher {
+    private static final String TAG = "ReportBatcher";
+
+    // 服务器不支持批量接口后，多久再重新尝试批量上报
+    private static final long BATCH_UNSUPPORTED_RETRY_MS = 6 * 60 * 60 * 1000L;
+
+    private static volatile ReportBatcher instance;
+
+    private final Context context;
+    private final String batchUrl;
+    private final String reportUrl;
+    // 服务器不支持批量接口的时间，0表示支持
+    private volatile long batchUnsupportedSince;
+
+    /**
+     * @param batchUrl 批量上报接口地址
+     * @param reportUrl 逐条上报接口地址
+     */
+    ReportBatcher(Context context, String batchUrl, String reportUrl) {
+        this.context = context;
+        this.batchUrl = batchUrl;
+        this.reportUrl = reportUrl;
+    }
+
+    /**
+     * 获取单例实例
+     */
+    public static ReportBatcher getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ReportBatcher.class) {
+                if (instance == null) {
+                    instance = new ReportBatcher(context.getApplicationContext(),
+                            ApiClient.BATCH_REPORT_URL, ApiClient.REPORT_URL);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 一批数据的发送结果监听器
+     */
+    interface ResultListener {
+        /**
+         * @param success 整批数据是否都已被服务器接受
+         * @param message 服务器响应或失败原因
+         */
+        void onResult(boolean success, String message);
+    }
+
+    /**
+     * 发送一批上报数据
+     * @param batch 队列中的上报数据
+     * @param listener 结果监听器，整批只回调一次
+     */
+    void send(List<ReportQueue.QueuedReport> batch, ResultListener listener) {
+        if (!isBatchMode() || batch.size() == 1) {
+            sendIndividually(batch, listener);
+            return;
+        }
+        sendBatch(batch, listener);
+    }
+
+    private boolean isBatchMode() {
+        if (!PreferencesHelper.isReportBatchEnabled(context)) {
+            return false;
+        }
+        long since = batchUnsupportedSince;
+        return since == 0 || System.currentTimeMillis() - since > BATCH_UNSUPPORTED_RETRY_MS;
+    }
+
+    private void sendBatch(final List<ReportQueue.QueuedReport> batch, final ResultListener listener) {
+        final RequestBody body;
+        try {
+            body = RequestBody.create(encode(batch), ApiClient.JSON_MEDIA_TYPE);
+        } catch (IOException e) {
+            LogUtil.e(TAG, "序列化批量上报数据失败，改为逐条上报: " + e.getMessage());
+            sendIndividually(batch, listener);
+            return;
+        }
+
+        LogUtil.d(TAG, "批量上报 " + batch.size() + " 条数据，压缩后 " + safeLength(body) + " 字节");
+        // 幂等键只放在请求头中，按数组顺序用逗号分隔，数据本身保持服务器已知的字段
+        StringBuilder idempotencyKeys = new StringBuilder();
+        for (ReportQueue.QueuedReport report : batch) {
+            if (idempotencyKeys.length() > 0) {
+                idempotencyKeys.append(',');
+            }
+            idempotencyKeys.append(report.key);
+        }
+        Request request = ApiClient.newAuthorizedRequestBuilder(batchUrl)
+                .header("Content-Encoding", "gzip")
+                .header("Idempotency-Key", idempotencyKeys.toString())
+                .post(body)
+                .build();
+        NetworkDispatcher.getInstance(context).enqueue(request, NetworkDispatcher.Priority.TELEMETRY, new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                LogUtil.e(TAG, "批量上报失败: " + e.getMessage());
+                listener.onResult(false, "批量上报失败: " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try {
+                    int code = response.code();
+                    if (response.isSuccessful()) {
+                        String result = response.body() != null ? response.body().string() : "";
+                        listener.onResult(true, result);
+                    } else if (isBatchUnsupported(code)) {
+                        // 服务器不支持批量接口或gzip请求体，退回逐条上报
+                        LogUtil.w(TAG, "服务器不支持批量上报，响应码: " + code + "，改为逐条上报");
+                        batchUnsupportedSince = System.currentTimeMillis();
+                        sendIndividually(batch, listener);
+                    } else {
+                        String errorMsg = "批量上报失败，响应码: " + code;
+                        LogUtil.e(TAG, errorMsg);
+                        listener.onResult(false, errorMsg);
+                    }
+                } catch (Exception e) {
+                    LogUtil.e(TAG, "处理批量上报响应失败: " + e.getMessage());
+                    listener.onResult(false, "处理批量上报响应失败: " + e.getMessage());
+                } finally {
+                    response.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * 响应码是否表示服务器不支持批量接口或gzip请求体
+     */
+    static boolean isBatchUnsupported(int code) {
+        return code == 404 || code == 405 || code == 415 || code == 501;
+    }
+
+    /**
+     * 逐条上报，全部成功后才认为整批成功；部分失败时整批重试，服务器按幂等键忽略已收到的数据
+     */
+    private void sendIndividually(List<ReportQueue.QueuedReport> batch, final ResultListener listener) {
+        final AtomicInteger remaining = new AtomicInteger(batch.size());
+        final AtomicBoolean allSucceeded = new AtomicBoolean(true);
+        final AtomicReference<String> lastMessage = new AtomicReference<>("");
+        for (ReportQueue.QueuedReport report : batch) {
+            ApiClient.postReportJson(context, reportUrl, report.json, report.key, report.label, new ApiClient.ApiCallback() {
+                @Override
+                public void onSuccess(String response) {
+                    if (allSucceeded.get()) {
+                        lastMessage.set(response);
+                    }
+                    finish();
+                }
+
+                @Override
+                public void onFailure(String errorMsg) {
+                    allSucceeded.set(false);
+                    lastMessage.set(errorMsg);
+                    finish();
+                }
+
+                private void finish() {
+                    if (remaining.decrementAndGet() == 0) {
+                        listener.onResult(allSucceeded.get(), lastMessage.get());
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * 将一批已序列化的数据流式写成JSON数组并gzip压缩
+     */
+    private static byte[] encode(List<ReportQueue.QueuedReport> batch) throws IOException {
+        Buffer buffer = new Buffer();
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(
+                new GZIPOutputStream(buffer.outputStream()), StandardCharsets.UTF_8));
+        try {
+            writer.beginArray();
+            for (ReportQueue.QueuedReport report : batch) {
+                writer.jsonValue(report.json);
+            }
+            writer.endArray();
+        } finally {
+            // 关闭时会写出gzip尾部
+            writer.close();
+        }
+        return buffer.readByteArray();
+    }
+
+    private static long safeLength(RequestBody body) {
+        try {
+            return body.contentLength();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,635 @@
+package com.funshion.funautosend.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import com.funshion.funautosend.util.LogUtil;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 持久化上报队列
+ * 上报数据先写入队列文件再发送，只有服务器确认后才从队列删除（至少送达一次）；
+ * 每条数据带有幂等键（通过Idempotency-Key请求头发送），重复上报时服务器可以据此去重。
+ * 队列文件只追加写入入队、删除和失败记录，不会每次变化都重写整个队列，记录过多时再压缩重写。
+ * 断网或上报失败时数据保留在队列中，网络恢复（{@link NetworkStateHolder} 通知网络已连接）时分批补发。
+ * 计费网络或省流量模式下 {@link NetworkDispatcher} 暂缓上报时停止发送新批次，已发出的批次在调度器中等待，
+ * 暂缓的时间不计入批次超时，恢复后继续发送。
+ * 队列有条数和大小上限，超过后丢弃最早的数据
+ */
+public class ReportQueue {
+    private static final String TAG = "ReportQueue";
+
+    // 旧版本保存在SharedPreferences中的队列，启动时迁移到队列文件
+    private static final String PREFS_NAME = "ReportQueuePrefs";
+    private static final String KEY_QUEUE = "queuedReports";
+    private static final String JOURNAL_FILE_NAME = "report_queue.journal";
+    // 队列文件记录类型：入队、删除（已上报或已丢弃）、上报失败一次
+    private static final char OP_ADD = 'A';
+    private static final char OP_REMOVE = 'D';
+    private static final char OP_FAIL = 'F';
+    // 队列文件中的无效记录超过此数量且超过有效数据两倍时压缩重写
+    private static final int COMPACT_MIN_RECORDS = 200;
+
+    // 第一条数据入队后等待合并的时间
+    private static final long BATCH_WINDOW_MS = 2000;
+    // 单批最多发送的条数
+    private static final int MAX_BATCH_SIZE = 20;
+    // 队列最多保存的条数和字节数
+    private static final int MAX_QUEUE_SIZE = 2000;
+    private static final int MAX_QUEUE_BYTES = 512 * 1024;
+    // 发送失败后的重试退避时间
+    private static final long INITIAL_BACKOFF_MS = 10 * 1000;
+    private static final long MAX_BACKOFF_MS = 10 * 60 * 1000;
+    // 单条数据最多尝试次数
+    private static final int MAX_ATTEMPTS = 20;
+    // 发送一批上报数据持有WakeLock的超时时间
+    private static final long REPORT_WAKELOCK_TIMEOUT_MS = 60 * 1000;
+    // 一批数据发出后多久仍没有结果回调时视为丢失，允许重新发送
+    private static final long SEND_TIMEOUT_MS = 2 * 60 * 1000;
+
+    private static volatile ReportQueue instance;
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final File journalFile;
+    private final ReportBatcher batcher;
+    private final NetworkDispatcher dispatcher;
+    private final Gson gson = new Gson();
+    private final Random random = new Random();
+    private final ScheduledExecutorService scheduler;
+    private final Object lock = new Object();
+
+    // 幂等键 -> 待上报数据，按入队顺序保存
+    private final LinkedHashMap<String, QueuedReport> queue = new LinkedHashMap<>();
+    // 幂等键 -> 回调，只在内存中保存
+    private final Map<String, ApiClient.ApiCallback> callbacks = new HashMap<>();
+    // 队列数据的UTF-8字节数
+    private int queueBytes;
+    private Writer journalWriter;
+    // 队列文件中的记录数，用于判断是否需要压缩
+    private int journalRecords;
+    private boolean sending;
+    // 当前批次的开始时间和序号，超时后迟到的结果不再影响新批次的发送状态
+    private long sendingSince;
+    private int sendingBatchId;
+    // 上报开始暂缓的时间，0表示未暂缓
+    private long deferredSince;
+    private int consecutiveFailures;
+    private long nextDrainAt;
+    private ScheduledFuture<?> drainFuture;
+    private ScheduledFuture<?> sendTimeoutFuture;
+
+    // 统计数据
+    private long deliveredCount;
+    private long droppedCount;
+
+    ReportQueue(Context context, ReportBatcher batcher, NetworkDispatcher dispatcher) {
+        this.context = context;
+        this.batcher = batcher;
+        this.dispatcher = dispatcher;
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.journalFile = new File(context.getFilesDir(), JOURNAL_FILE_NAME);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        load();
+        // 网络恢复时立即补发积压的数据
+        NetworkStateHolder.getInstance(context).addListener(new NetworkStateHolder.Listener() {
+            @Override
+            public void onNetworkStateChanged(NetworkStateHolder.NetworkState state, NetworkStateHolder.NetworkState previous) {
+                if (state.connected && !previous.connected) {
+                    onNetworkAvailable();
+                }
+            }
+        });
+        dispatcher.addTelemetryListener(new NetworkDispatcher.TelemetryListener() {
+            @Override
+            public void onTelemetryDeferredChanged(boolean deferred) {
+                onDeferralChanged(deferred);
+            }
+        });
+    }
+
+    /**
+     * 获取单例实例
+     */
+    public static ReportQueue getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ReportQueue.class) {
+                if (instance == null) {
+                    Context appContext = context.getApplicationContext();
+                    instance = new ReportQueue(appContext, ReportBatcher.getInstance(appContext),
+                            NetworkDispatcher.getInstance(appContext));
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 队列中的一条上报数据
+     */
+    static class QueuedReport {
+        String key;
+        String label;
+        String json;
+        long enqueuedAt;
+        int attempts;
+        // json的UTF-8字节数，不写入存储
+        transient int bytes;
+    }
+
+    /**
+     * 将上报数据写入队列
+     * @param payload 上报数据
+     * @param label 上报类型描述，用于日志
+     * @param callback 上报成功或被丢弃时的回调，可为null
+     */
+    public void enqueue(ApiClient.ReportPayload payload, String label, ApiClient.ApiCallback callback) {
+        QueuedReport report = new QueuedReport();
+        report.key = UUID.randomUUID().toString();
+        report.label = label;
+        report.enqueuedAt = System.currentTimeMillis();
+        try {
+            report.json = ApiClient.toReportJson(payload);
+            report.bytes = utf8Length(report.json);
+        } catch (Exception e) {
+            LogUtil.e(TAG, "序列化" + label + "上报数据失败: " + e.getMessage());
+            if (callback != null) {
+                callback.onFailure("序列化上报数据失败: " + e.getMessage());
+            }
+            return;
+        }
+
+        List<QueuedReport> dropped = new ArrayList<>();
+        boolean drainNow;
+        synchronized (lock) {
+            queue.put(report.key, report);
+            queueBytes += report.bytes;
+            appendRecord(OP_ADD, gson.toJson(report));
+            if (callback != null) {
+                callbacks.put(report.key, callback);
+            }
+            // 超过上限时丢弃最早的数据
+            while (queue.size() > MAX_QUEUE_SIZE || queueBytes > MAX_QUEUE_BYTES) {
+                QueuedReport oldest = queue.values().iterator().next();
+                removeLocked(oldest);
+                droppedCount++;
+                dropped.add(oldest);
+            }
+            flushJournal();
+            drainNow = queue.size() >= MAX_BATCH_SIZE;
+        }
+        for (QueuedReport droppedReport : dropped) {
+            LogUtil.e(TAG, "上报队列已满，丢弃最早的" + droppedReport.label + "上报数据，入队时间: " + droppedReport.enqueuedAt);
+            notifyDropped(droppedReport, "上报队列已满，数据被丢弃");
+        }
+        scheduleDrain(drainNow ? 0 : BATCH_WINDOW_MS);
+    }
+
+    /**
+     * 网络恢复时立即补发积压的数据，忽略当前的退避等待
+     */
+    private void onNetworkAvailable() {
+        synchronized (lock) {
+            if (queue.isEmpty()) {
+                return;
+            }
+            consecutiveFailures = 0;
+            LogUtil.d(TAG, "网络已恢复，开始补发积压的上报数据: " + queue.size() + " 条");
+        }
+        scheduleDrain(0);
+    }
+
+    /**
+     * 上报暂缓状态变化：暂缓时记录开始时间；恢复时把暂缓的时间从当前批次的发送时间中扣除，并立即继续发送
+     */
+    private void onDeferralChanged(boolean deferred) {
+        synchronized (lock) {
+            long now = now();
+            if (deferred) {
+                deferredSince = now;
+                LogUtil.d(TAG, "上报已暂缓，停止发送新批次，积压: " + queue.size() + " 条");
+                return;
+            }
+            if (sending && deferredSince > 0) {
+                sendingSince += now - Math.max(deferredSince, sendingSince);
+            }
+            deferredSince = 0;
+            if (queue.isEmpty()) {
+                return;
+            }
+            LogUtil.d(TAG, "上报已恢复，继续发送积压的上报数据: " + queue.size() + " 条");
+        }
+        scheduleDrain(0);
+    }
+
+    private void scheduleDrain(long delayMs) {
+        synchronized (lock) {
+            long at = System.currentTimeMillis() + delayMs;
+            if (drainFuture != null && !drainFuture.isDone()) {
+                if (nextDrainAt <= at) {
+                    return;
+                }
+                drainFuture.cancel(false);
+            }
+            nextDrainAt = at;
+            drainFuture = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            }, Math.max(0, delayMs), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void drain() {
+        final List<QueuedReport> batch = new ArrayList<>();
+        final int batchId;
+        synchronized (lock) {
+            boolean deferred = dispatcher.isTelemetryDeferred();
+            if (sending) {
+                if (deferred) {
+                    // 当前批次在调度器中等待不计费网络，暂缓期间不判断超时，恢复后再检查
+                    return;
+                }
+                long elapsed = now() - sendingSince;
+                if (elapsed < SEND_TIMEOUT_MS) {
+                    // 等待当前批次的结果，到超时时间再检查一次，避免结果回调丢失后队列一直停止发送
+                    if (sendTimeoutFuture == null || sendTimeoutFuture.isDone()) {
+                        sendTimeoutFuture = scheduler.schedule(new Runnable() {
+                            @Override
+                            public void run() {
+                                drain();
+                            }
+                        }, SEND_TIMEOUT_MS - elapsed, TimeUnit.MILLISECONDS);
+                    }
+                    return;
+                }
+                LogUtil.w(TAG, "上一批上报数据 " + (elapsed / 1000) + " 秒仍没有结果，视为丢失，重新发送");
+                sending = false;
+            }
+            if (queue.isEmpty()) {
+                return;
+            }
+            if (!isNetworkConnected()) {
+                LogUtil.d(TAG, "没有网络连接，暂停上报，积压: " + queue.size() + " 条");
+                return;
+            }
+            if (deferred) {
+                // 暂缓期间提交的批次只会在调度器中排队，并占用WakeLock，等恢复通知后再发送
+                LogUtil.d(TAG, "上报暂缓中，等待不计费网络，积压: " + queue.size() + " 条");
+                return;
+            }
+            for (QueuedReport report : queue.values()) {
+                batch.add(report);
+                if (batch.size() >= MAX_BATCH_SIZE) {
+                    break;
+                }
+            }
+            sending = true;
+            sendingSince = now();
+            batchId = ++sendingBatchId;
+        }
+
+        // 上报完成前保持CPU唤醒，在结果回调中释放
+        final WakeLockManager.Hold wakeLockHold = WakeLockManager.getInstance(context)
+                .acquire(WakeLockManager.TaskType.REPORT, REPORT_WAKELOCK_TIMEOUT_MS);
+        batcher.send(batch, new ReportBatcher.ResultListener() {
+            @Override
+            public void onResult(boolean success, String message) {
+                try {
+                    onBatchResult(batch, batchId, success, message);
+                } finally {
+                    wakeLockHold.release();
+                }
+            }
+        });
+    }
+
+    private void onBatchResult(List<QueuedReport> batch, int batchId, boolean success, String message) {
+        List<ApiClient.ApiCallback> delivered = new ArrayList<>();
+        List<QueuedReport> dropped = new ArrayList<>();
+        long retryDelay;
+        boolean hasMore;
+        synchronized (lock) {
+            // 超时后已开始发送新批次时，迟到的结果只更新队列数据，不改变发送状态
+            if (batchId == sendingBatchId) {
+                sending = false;
+            }
+            if (success) {
+                for (QueuedReport report : batch) {
+                    if (removeLocked(report)) {
+                        deliveredCount++;
+                    }
+                    ApiClient.ApiCallback callback = callbacks.remove(report.key);
+                    if (callback != null) {
+                        delivered.add(callback);
+                    }
+                }
+                consecutiveFailures = 0;
+                retryDelay = 0;
+            } else {
+                for (QueuedReport report : batch) {
+                    if (!queue.containsKey(report.key)) {
+                        continue;
+                    }
+                    report.attempts++;
+                    appendRecord(OP_FAIL, report.key);
+                    // 多次上报仍失败的数据可能是服务器无法接受的数据，丢弃以免阻塞后面的数据
+                    if (report.attempts >= MAX_ATTEMPTS && removeLocked(report)) {
+                        droppedCount++;
+                        dropped.add(report);
+                    }
+                }
+                consecutiveFailures++;
+                retryDelay = backoffMs(consecutiveFailures);
+                LogUtil.w(TAG, "上报失败，" + (retryDelay / 1000) + " 秒后重试，积压: " + queue.size() + " 条，原因: " + message);
+            }
+            flushJournal();
+            hasMore = !queue.isEmpty();
+        }
+        for (ApiClient.ApiCallback callback : delivered) {
+            callback.onSuccess(message);
+        }
+        for (QueuedReport report : dropped) {
+            LogUtil.e(TAG, report.label + "上报数据重试 " + MAX_ATTEMPTS + " 次后仍失败，丢弃，入队时间: " + report.enqueuedAt);
+            notifyDropped(report, "上报重试次数过多，数据被丢弃");
+        }
+        if (hasMore) {
+            scheduleDrain(retryDelay);
+        }
+    }
+
+    private void notifyDropped(QueuedReport report, String reason) {
+        ApiClient.ApiCallback callback;
+        synchronized (lock) {
+            callback = callbacks.remove(report.key);
+        }
+        if (callback != null) {
+            callback.onFailure(reason);
+        }
+    }
+
+    private long backoffMs(int failures) {
+        long backoff = Math.min(INITIAL_BACKOFF_MS << Math.min(failures - 1, 10), MAX_BACKOFF_MS);
+        return backoff / 2 + (long) (random.nextDouble() * backoff / 2);
+    }
+
+    /**
+     * 获取积压的上报数据条数
+     */
+    public int getBacklogCount() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * 获取最早一条积压数据的等待时间（毫秒），没有积压时为0
+     */
+    public long getOldestBacklogAgeMs() {
+        synchronized (lock) {
+            if (queue.isEmpty()) {
+                return 0;
+            }
+            return System.currentTimeMillis() - queue.values().iterator().next().enqueuedAt;
+        }
+    }
+
+    /**
+     * 获取多次上报失败或队列已满而丢弃的数据条数
+     */
+    public long getDroppedCount() {
+        synchronized (lock) {
+            return droppedCount;
+        }
+    }
+
+    /**
+     * 获取队列统计信息
+     */
+    public String getMetricsSummary() {
+        synchronized (lock) {
+            return "积压: " + queue.size() + " 条/" + queueBytes + " 字节"
+                    + ", 最早积压: " + (getOldestBacklogAgeMs() / 1000) + " 秒"
+                    + ", 已上报: " + deliveredCount
+                    + ", 已丢弃: " + droppedCount;
+        }
+    }
+
+    private boolean isNetworkConnected() {
+        return NetworkStateHolder.getInstance(context).isConnected();
+    }
+
+    /**
+     * 当前时间，单元测试中覆盖以控制批次超时
+     */
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * 从队列文件恢复积压的数据，并迁移旧版本保存在SharedPreferences中的队列
+     */
+    private void load() {
+        synchronized (lock) {
+            if (journalFile.exists()) {
+                replayJournal();
+            }
+            migrateFromPrefs();
+            // 启动时压缩重写一次，去掉已删除的记录
+            rewriteJournal();
+            if (!queue.isEmpty()) {
+                LogUtil.d(TAG, "从存储恢复积压的上报数据: " + queue.size() + " 条");
+                scheduleDrain(BATCH_WINDOW_MS);
+            }
+        }
+    }
+
+    private void replayJournal() {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() < 2) {
+                    continue;
+                }
+                String data = line.substring(1);
+                switch (line.charAt(0)) {
+                    case OP_ADD:
+                        try {
+                            QueuedReport report = gson.fromJson(data, QueuedReport.class);
+                            if (report != null && report.key != null && report.json != null) {
+                                report.bytes = utf8Length(report.json);
+                                queue.put(report.key, report);
+                            }
+                        } catch (Exception e) {
+                            // 进程被杀时最后一条记录可能不完整，跳过
+                            LogUtil.w(TAG, "跳过无法解析的上报队列记录");
+                        }
+                        break;
+                    case OP_REMOVE:
+                        queue.remove(data);
+                        break;
+                    case OP_FAIL:
+                        QueuedReport report = queue.get(data);
+                        if (report != null) {
+                            report.attempts++;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (IOException e) {
+            LogUtil.e(TAG, "读取上报队列文件失败: " + e.getMessage(), e);
+        } finally {
+            closeQuietly(reader);
+        }
+        queueBytes = 0;
+        for (QueuedReport report : queue.values()) {
+            queueBytes += report.bytes;
+        }
+    }
+
+    private void migrateFromPrefs() {
+        String json = prefs.getString(KEY_QUEUE, null);
+        if (json == null) {
+            return;
+        }
+        try {
+            Type type = new TypeToken<List<QueuedReport>>(){}.getType();
+            List<QueuedReport> list = gson.fromJson(json, type);
+            if (list != null) {
+                for (QueuedReport report : list) {
+                    if (report.key != null && report.json != null && !queue.containsKey(report.key)) {
+                        report.bytes = utf8Length(report.json);
+                        queue.put(report.key, report);
+                        queueBytes += report.bytes;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            LogUtil.e(TAG, "迁移旧版上报队列失败: " + e.getMessage(), e);
+        }
+        prefs.edit().remove(KEY_QUEUE).apply();
+    }
+
+    /**
+     * 从队列中删除一条数据并记录到队列文件，调用时需持有lock
+     * @return 数据是否还在队列中
+     */
+    private boolean removeLocked(QueuedReport report) {
+        if (queue.remove(report.key) == null) {
+            return false;
+        }
+        queueBytes -= report.bytes;
+        appendRecord(OP_REMOVE, report.key);
+        return true;
+    }
+
+    /**
+     * 追加一条记录到队列文件，调用时需持有lock，写完一组记录后调用 {@link #flushJournal()}
+     */
+    private void appendRecord(char op, String data) {
+        try {
+            if (journalWriter == null) {
+                journalWriter = new OutputStreamWriter(new FileOutputStream(journalFile, true), StandardCharsets.UTF_8);
+            }
+            journalWriter.write(op);
+            journalWriter.write(data);
+            journalWriter.write('\n');
+            journalRecords++;
+        } catch (IOException e) {
+            LogUtil.e(TAG, "写入上报队列文件失败: " + e.getMessage());
+            closeQuietly(journalWriter);
+            journalWriter = null;
+        }
+    }
+
+    /**
+     * 将追加的记录写入文件，无效记录过多时压缩重写，调用时需持有lock
+     */
+    private void flushJournal() {
+        if (journalRecords > COMPACT_MIN_RECORDS && journalRecords > queue.size() * 2) {
+            rewriteJournal();
+            return;
+        }
+        if (journalWriter == null) {
+            return;
+        }
+        try {
+            journalWriter.flush();
+        } catch (IOException e) {
+            LogUtil.e(TAG, "写入上报队列文件失败: " + e.getMessage());
+            closeQuietly(journalWriter);
+            journalWriter = null;
+        }
+    }
+
+    /**
+     * 只保留队列中的数据重写队列文件，先写临时文件再替换，调用时需持有lock
+     */
+    private void rewriteJournal() {
+        closeQuietly(journalWriter);
+        journalWriter = null;
+        File tempFile = new File(journalFile.getPath() + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8);
+            for (QueuedReport report : queue.values()) {
+                writer.write(OP_ADD);
+                writer.write(gson.toJson(report));
+                writer.write('\n');
+            }
+            writer.close();
+            writer = null;
+            if (!tempFile.renameTo(journalFile)) {
+                throw new IOException("重命名队列文件失败");
+            }
+            journalRecords = queue.size();
+        } catch (IOException e) {
+            LogUtil.e(TAG, "压缩上报队列文件失败: " + e.getMessage());
+            closeQuietly(writer);
+            tempFile.delete();
+        }
+    }
+
+    private static int utf8Length(String value) {
+        return value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
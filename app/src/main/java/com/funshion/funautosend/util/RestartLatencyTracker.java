@@ -0,0 +1,56 @@
+package com.funshion.funautosend.util;
+
+/**
+ * 进程重启耗时统计
+ * 记录从发现对端进程死亡到重新连接上对端服务的时间，主进程和守护进程各自持有一个实例
+ */
+public class RestartLatencyTracker {
+    // 发现对端死亡的时间，0表示对端当前没有处于重启中
+    private long diedAt;
+
+    // 统计数据
+    private long restartCount;
+    private long totalLatencyMs;
+    private long maxLatencyMs;
+    private long lastLatencyMs;
+
+    /**
+     * 发现对端进程死亡时调用，重复调用以第一次为准
+     */
+    public synchronized void onPeerDied() {
+        if (diedAt == 0) {
+            diedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 连接上对端服务时调用
+     * @return 本次重启耗时，对端之前没有死亡时返回-1
+     */
+    public synchronized long onPeerConnected() {
+        if (diedAt == 0) {
+            return -1;
+        }
+        long latency = System.currentTimeMillis() - diedAt;
+        diedAt = 0;
+        restartCount++;
+        totalLatencyMs += latency;
+        lastLatencyMs = latency;
+        maxLatencyMs = Math.max(maxLatencyMs, latency);
+        return latency;
+    }
+
+    /**
+     * 获取重启耗时统计信息
+     */
+    public synchronized String getStatsSummary() {
+        if (restartCount == 0) {
+            return "重启: 0" + (diedAt > 0 ? "，重启中" : "");
+        }
+        return "重启: " + restartCount
+                + ", 最近耗时: " + lastLatencyMs + "ms"
+                + ", 平均: " + (totalLatencyMs / restartCount) + "ms"
+                + ", 最长: " + maxLatencyMs + "ms"
+                + (diedAt > 0 ? "，重启中" : "");
+    }
+}
@@ -0,0 +1,267 @@
+package com.funshion.funautosend.util;
+
+import android.content.Context;
+import android.os.Build;
+import android.telephony.SubscriptionInfo;
+import android.telephony.SubscriptionManager;
+import com.funshion.funautosend.util.LogUtil;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 发送SIM卡选择器
+ * 双卡设备上根据配置的策略选择转发短信使用的SIM卡，高峰期可以把发送压力分摊到两张卡上
+ *
+ * 策略：
+ * SAME_SIM     使用接收短信的SIM卡发送（默认，与原有行为一致）
+ * LEAST_LOADED 选择待发送回执数最少、近期失败率最低的SIM卡
+ * ROUND_ROBIN  两张SIM卡轮流发送，近期失败率过高的卡会被跳过
+ *
+ * 熔断中的SIM卡不会被选中，见 {@link SimCircuitBreaker}
+ * 策略由转发规则的sendSimPolicy字段下发，见 {@link RemoteSettings}
+ */
+public class SendSimSelector {
+    private static final String TAG = "SendSimSelector";
+
+    /**
+     * 选择策略
+     */
+    public enum Policy {
+        SAME_SIM, LEAST_LOADED, ROUND_ROBIN;
+
+        static Policy parse(String value) {
+            if (value != null) {
+                for (Policy policy : values()) {
+                    if (policy.name().equalsIgnoreCase(value)) {
+                        return policy;
+                    }
+                }
+            }
+            return SAME_SIM;
+        }
+    }
+
+    private static final String[] SIM_IDS = {"1", "2"};
+    // 统计失败率时使用的最近发送结果数
+    private static final int RECENT_RESULT_WINDOW = 20;
+    // 近期失败率超过该值的SIM卡在轮询时被跳过
+    private static final double MAX_ROUND_ROBIN_FAILURE_RATE = 0.5;
+    // 计算负载时失败率的权重，失败率越高越不容易被选中
+    private static final double FAILURE_RATE_WEIGHT = 4.0;
+    // 超过该时间没有收到任何发送回执时，认为待回执计数已失效并清零
+    private static final long IN_FLIGHT_STALE_MS = 2 * 60 * 1000;
+
+    private static volatile SendSimSelector instance;
+
+    private final Context context;
+    private final SimCircuitBreaker breaker;
+    private final Map<String, SimLoad> loads = new HashMap<>();
+    private final Object lock = new Object();
+    private int roundRobinIndex;
+
+    SendSimSelector(Context context, SimCircuitBreaker breaker) {
+        this.context = context;
+        this.breaker = breaker;
+    }
+
+    /**
+     * 获取单例实例
+     */
+    public static SendSimSelector getInstance(Context context) {
+        if (instance == null) {
+            synchronized (SendSimSelector.class) {
+                if (instance == null) {
+                    Context appContext = context.getApplicationContext();
+                    instance = new SendSimSelector(appContext, SimCircuitBreaker.getInstance(appContext));
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 单张SIM卡的发送负载
+     */
+    private static class SimLoad {
+        // 已提交但还没有收到发送回执的短信部分数
+        int inFlight;
+        long lastActivityTime;
+        // 最近的发送结果，环形缓冲
+        final boolean[] recentResults = new boolean[RECENT_RESULT_WINDOW];
+        int resultCount;
+        int resultIndex;
+
+        double failureRate() {
+            int size = Math.min(resultCount, RECENT_RESULT_WINDOW);
+            if (size == 0) {
+                return 0;
+            }
+            int failures = 0;
+            for (int i = 0; i < size; i++) {
+                if (!recentResults[i]) {
+                    failures++;
+                }
+            }
+            return (double) failures / size;
+        }
+
+        double score() {
+            return inFlight * (1 + failureRate() * FAILURE_RATE_WEIGHT) + failureRate();
+        }
+    }
+
+    /**
+     * 为一条转发选择发送SIM卡
+     * @param receivedSimId 接收短信的SIM卡ID
+     * @return 发送使用的SIM卡ID
+     */
+    public String select(String receivedSimId) {
+        Policy policy = Policy.parse(PreferencesHelper.getSendSimPolicy(context));
+        if (policy == Policy.SAME_SIM || !isDualSimActive()) {
+            return receivedSimId;
+        }
+
+        synchronized (lock) {
+            String selected;
+            if (policy == Policy.ROUND_ROBIN) {
+                selected = selectRoundRobin();
+            } else {
+                selected = selectLeastLoaded(receivedSimId);
+            }
+            if (selected == null) {
+                // 两张卡都不可用时交给熔断器处理
+                return receivedSimId;
+            }
+            if (!selected.equals(receivedSimId)) {
+                LogUtil.d(TAG, "按策略 " + policy + " 选择SIM卡 " + selected + " 发送（接收SIM卡: " + receivedSimId + "）");
+            }
+            return selected;
+        }
+    }
+
+    private String selectRoundRobin() {
+        String fallback = null;
+        for (int i = 0; i < SIM_IDS.length; i++) {
+            String simId = SIM_IDS[(roundRobinIndex + i) % SIM_IDS.length];
+            if (breaker.getState(simId) != SimCircuitBreaker.State.CLOSED) {
+                continue;
+            }
+            if (loadFor(simId).failureRate() > MAX_ROUND_ROBIN_FAILURE_RATE) {
+                if (fallback == null) {
+                    fallback = simId;
+                }
+                continue;
+            }
+            roundRobinIndex = (roundRobinIndex + i + 1) % SIM_IDS.length;
+            return simId;
+        }
+        return fallback;
+    }
+
+    private String selectLeastLoaded(String receivedSimId) {
+        String selected = null;
+        double bestScore = Double.MAX_VALUE;
+        for (String simId : SIM_IDS) {
+            if (breaker.getState(simId) != SimCircuitBreaker.State.CLOSED) {
+                continue;
+            }
+            double score = loadFor(simId).score();
+            // 负载相同时优先使用接收短信的SIM卡
+            if (score < bestScore || (score == bestScore && simId.equals(receivedSimId))) {
+                bestScore = score;
+                selected = simId;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 记录短信已提交到指定SIM卡发送
+     * @param simId SIM卡ID
+     * @param partCount 短信拆分的部分数，每部分都会有一个发送回执
+     */
+    public void onSubmitted(String simId, int partCount) {
+        if (simId == null) {
+            return;
+        }
+        synchronized (lock) {
+            SimLoad load = loadFor(simId);
+            long now = System.currentTimeMillis();
+            if (load.inFlight > 0 && now - load.lastActivityTime > IN_FLIGHT_STALE_MS) {
+                LogUtil.w(TAG, "SIM卡 " + simId + " 长时间没有发送回执，重置待回执计数: " + load.inFlight);
+                load.inFlight = 0;
+            }
+            load.inFlight += Math.max(1, partCount);
+            load.lastActivityTime = now;
+        }
+    }
+
+    /**
+     * 记录指定SIM卡的一个发送回执
+     * @param simId SIM卡ID
+     * @param success 是否发送成功
+     */
+    public void onSendResult(String simId, boolean success) {
+        if (simId == null) {
+            return;
+        }
+        synchronized (lock) {
+            SimLoad load = loadFor(simId);
+            load.inFlight = Math.max(0, load.inFlight - 1);
+            load.lastActivityTime = System.currentTimeMillis();
+            load.recentResults[load.resultIndex] = success;
+            load.resultIndex = (load.resultIndex + 1) % RECENT_RESULT_WINDOW;
+            load.resultCount++;
+        }
+    }
+
+    /**
+     * 获取各SIM卡的负载描述，用于日志
+     */
+    public String getLoadSummary() {
+        synchronized (lock) {
+            StringBuilder builder = new StringBuilder();
+            for (String simId : SIM_IDS) {
+                SimLoad load = loadFor(simId);
+                if (builder.length() > 0) {
+                    builder.append(", ");
+                }
+                builder.append("SIM").append(simId)
+                        .append(" 待回执: ").append(load.inFlight)
+                        .append(" 失败率: ").append(Math.round(load.failureRate() * 100)).append("%");
+            }
+            return builder.toString();
+        }
+    }
+
+    private SimLoad loadFor(String simId) {
+        SimLoad load = loads.get(simId);
+        if (load == null) {
+            load = new SimLoad();
+            loads.put(simId, load);
+        }
+        return load;
+    }
+
+    /**
+     * 是否有两张可用的SIM卡
+     */
+    boolean isDualSimActive() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP_MR1) {
+            return false;
+        }
+        try {
+            SubscriptionManager subscriptionManager = (SubscriptionManager) context.getSystemService(Context.TELEPHONY_SUBSCRIPTION_SERVICE);
+            if (subscriptionManager == null) {
+                return false;
+            }
+            List<SubscriptionInfo> subscriptionInfoList = subscriptionManager.getActiveSubscriptionInfoList();
+            return subscriptionInfoList != null && subscriptionInfoList.size() >= 2;
+        } catch (Exception e) {
+            LogUtil.e(TAG, "获取SIM卡信息失败: " + e.getMessage());
+            return false;
+        }
+    }
+}
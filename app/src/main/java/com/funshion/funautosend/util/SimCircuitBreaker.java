@@ -0,0 +1,450 @@
+package com.funshion.funautosend.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.telephony.SmsManager;
+import com.funshion.funautosend.util.LogUtil;
+
+import com.funshion.funautosend.model.ForwardReport;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SIM卡熔断器
+ * 某张SIM卡连续出现无线关闭/无服务错误时熔断（OPEN），暂停经该卡发送；
+ * 冷却时间过后进入半开（HALF_OPEN）状态，只放行一条探测短信，探测成功后恢复（CLOSED），失败则加倍冷却时间继续熔断。
+ * 熔断期间的转发在规则允许时切换到另一张SIM卡，否则暂存，等SIM卡恢复后再发送。
+ * 暂存的转发对应的原短信已标记为已转发，因此暂存队列持久化到SharedPreferences，进程重启后重新提交。
+ */
+public class SimCircuitBreaker {
+    private static final String TAG = "SimCircuitBreaker";
+
+    private static final String PREFS_NAME = "SimCircuitBreakerPrefs";
+    private static final String KEY_HELD_FORWARDS = "heldForwards";
+
+    /**
+     * 熔断器状态
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    // 连续多少次无线错误后熔断
+    private static final int FAILURE_THRESHOLD = 2;
+    // 首次熔断的冷却时间
+    private static final long INITIAL_OPEN_DURATION_MS = 30 * 1000;
+    // 冷却时间上限
+    private static final long MAX_OPEN_DURATION_MS = 5 * 60 * 1000;
+    // 最多暂存的转发数量，超过后丢弃最早的并按失败上报
+    private static final int MAX_HELD_FORWARDS = 200;
+    // 未指定SIM卡时使用的键
+    private static final String DEFAULT_SIM_KEY = "默认";
+
+    private static volatile SimCircuitBreaker instance;
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final Gson gson = new Gson();
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, Breaker> breakers = new HashMap<>();
+    private final LinkedList<HeldForward> heldForwards = new LinkedList<>();
+    private final Object lock = new Object();
+
+    // 统计数据
+    private long openCount;
+    private long rejectedCount;
+    private long failoverCount;
+    private long droppedCount;
+
+    SimCircuitBreaker(Context context) {
+        this.context = context;
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        loadHeldForwards();
+    }
+
+    /**
+     * 获取单例实例
+     */
+    public static SimCircuitBreaker getInstance(Context context) {
+        if (instance == null) {
+            synchronized (SimCircuitBreaker.class) {
+                if (instance == null) {
+                    instance = new SimCircuitBreaker(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 暂存的转发
+     * 真正提交发送后按reports逐条上报原短信的转发结果，聚合摘要短信包含多条原短信
+     */
+    public static class HeldForward {
+        final String targetPhone;
+        final String message;
+        final String simId;
+        final String smsId;
+        final String receiveTime;
+        final boolean allowFailover;
+        final List<ForwardReport> reports;
+        // 暂存时熔断的SIM卡（实际发送使用的SIM卡，可能与接收短信的SIM卡不同）
+        String heldSimId;
+
+        public HeldForward(String targetPhone, String message, String simId, String smsId, String receiveTime,
+                           boolean allowFailover, List<ForwardReport> reports) {
+            this.targetPhone = targetPhone;
+            this.message = message;
+            this.simId = simId;
+            this.smsId = smsId;
+            this.receiveTime = receiveTime;
+            this.allowFailover = allowFailover;
+            this.reports = reports;
+        }
+    }
+
+    /**
+     * 单张SIM卡的熔断状态
+     */
+    private static class Breaker {
+        State state = State.CLOSED;
+        int consecutiveFailures;
+        long openedAt;
+        long openDurationMs = INITIAL_OPEN_DURATION_MS;
+        boolean probeInFlight;
+    }
+
+    /**
+     * 尝试获取经指定SIM卡发送的许可
+     * 半开状态下只有一条探测短信能获得许可
+     * @param simId SIM卡ID
+     * @return 是否允许发送
+     */
+    public boolean tryAcquire(String simId) {
+        synchronized (lock) {
+            Breaker breaker = breakerFor(simId);
+            switch (breaker.state) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if (now() - breaker.openedAt >= breaker.openDurationMs) {
+                        breaker.state = State.HALF_OPEN;
+                        breaker.probeInFlight = true;
+                        LogUtil.d(TAG, "SIM卡 " + keyOf(simId) + " 冷却结束，进入半开状态，放行探测短信");
+                        return true;
+                    }
+                    rejectedCount++;
+                    return false;
+                case HALF_OPEN:
+                default:
+                    if (!breaker.probeInFlight) {
+                        breaker.probeInFlight = true;
+                        return true;
+                    }
+                    rejectedCount++;
+                    return false;
+            }
+        }
+    }
+
+    /**
+     * 记录一次切换到另一张SIM卡发送
+     */
+    public void recordFailover() {
+        synchronized (lock) {
+            failoverCount++;
+        }
+    }
+
+    /**
+     * 根据短信发送结果码更新熔断状态
+     * 只有无线关闭和无服务错误计入熔断，其他错误与SIM卡无线状态无关，但半开状态下探测短信的任何失败都视为探测失败
+     * @param simId 发送使用的SIM卡ID
+     * @param resultCode 发送结果码
+     * @param success 是否发送成功
+     */
+    public void onSendResult(String simId, int resultCode, boolean success) {
+        boolean radioFailure = resultCode == SmsManager.RESULT_ERROR_RADIO_OFF
+                || resultCode == SmsManager.RESULT_ERROR_NO_SERVICE;
+        if (success) {
+            onSuccess(simId);
+        } else {
+            onFailure(simId, radioFailure);
+        }
+    }
+    
+    /**
+     * 探测短信没有提交到系统时释放探测名额，让下一条转发继续探测
+     */
+    public void releaseProbe(String simId) {
+        synchronized (lock) {
+            Breaker breaker = breakerFor(simId);
+            if (breaker.state == State.HALF_OPEN) {
+                breaker.probeInFlight = false;
+            }
+        }
+    }
+
+    private void onSuccess(String simId) {
+        boolean recovered = false;
+        synchronized (lock) {
+            Breaker breaker = breakerFor(simId);
+            if (breaker.state != State.CLOSED) {
+                LogUtil.d(TAG, "SIM卡 " + keyOf(simId) + " 探测成功，恢复发送");
+                recovered = true;
+            }
+            breaker.state = State.CLOSED;
+            breaker.consecutiveFailures = 0;
+            breaker.probeInFlight = false;
+            breaker.openDurationMs = INITIAL_OPEN_DURATION_MS;
+        }
+        if (recovered) {
+            drainHeldForwards(simId);
+        }
+    }
+
+    private void onFailure(String simId, boolean radioFailure) {
+        long delayMs = -1;
+        synchronized (lock) {
+            Breaker breaker = breakerFor(simId);
+            if (breaker.state == State.HALF_OPEN) {
+                // 探测失败（任何错误都算），加倍冷却时间继续熔断
+                breaker.openDurationMs = Math.min(breaker.openDurationMs * 2, MAX_OPEN_DURATION_MS);
+                open(simId, breaker);
+                delayMs = breaker.openDurationMs;
+            } else if (breaker.state == State.CLOSED && radioFailure) {
+                breaker.consecutiveFailures++;
+                if (breaker.consecutiveFailures >= FAILURE_THRESHOLD) {
+                    open(simId, breaker);
+                    delayMs = breaker.openDurationMs;
+                }
+            }
+        }
+        if (delayMs > 0) {
+            scheduleProbe(simId, delayMs);
+        }
+    }
+
+    private void open(String simId, Breaker breaker) {
+        breaker.state = State.OPEN;
+        breaker.openedAt = now();
+        breaker.probeInFlight = false;
+        openCount++;
+        LogUtil.w(TAG, "SIM卡 " + keyOf(simId) + " 发送失败，熔断 " + (breaker.openDurationMs / 1000) + " 秒");
+    }
+
+    /**
+     * 暂存一条暂时无法发送的转发
+     * @param forward 转发
+     * @param sendSimId 熔断中的发送SIM卡，该卡恢复或冷却结束时重新提交
+     */
+    public void hold(HeldForward forward, String sendSimId) {
+        HeldForward dropped = null;
+        synchronized (lock) {
+            forward.heldSimId = sendSimId;
+            heldForwards.add(forward);
+            if (heldForwards.size() > MAX_HELD_FORWARDS) {
+                dropped = heldForwards.removeFirst();
+                droppedCount++;
+            }
+            saveHeldForwards();
+            LogUtil.d(TAG, "SIM卡 " + keyOf(sendSimId) + " 熔断中，暂存转发，短信ID: " + forward.smsId + ", 暂存数: " + heldForwards.size());
+        }
+        if (dropped != null) {
+            LogUtil.e(TAG, "暂存转发过多，丢弃最早的转发，短信ID: " + dropped.smsId);
+            SmsHelper.reportSmsResults(context, dropped.reports, false);
+        }
+    }
+
+    /**
+     * 冷却时间结束后用暂存的转发作为探测短信
+     */
+    private void scheduleProbe(final String simId, long delayMs) {
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                HeldForward probe = null;
+                synchronized (lock) {
+                    for (HeldForward forward : heldForwards) {
+                        if (keyOf(forward.heldSimId).equals(keyOf(simId))) {
+                            probe = forward;
+                            break;
+                        }
+                    }
+                    if (probe != null) {
+                        heldForwards.remove(probe);
+                        saveHeldForwards();
+                    }
+                }
+                if (probe != null) {
+                    LogUtil.d(TAG, "使用暂存转发作为探测短信，短信ID: " + probe.smsId);
+                    SmsHelper.submitHeldForward(context, probe);
+                }
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * SIM卡恢复后重新提交为该卡暂存的转发
+     * @param simId 恢复的SIM卡ID，为null时重新提交所有暂存的转发
+     */
+    private void drainHeldForwards(String simId) {
+        final List<HeldForward> toSend = new ArrayList<>();
+        synchronized (lock) {
+            Iterator<HeldForward> iterator = heldForwards.iterator();
+            while (iterator.hasNext()) {
+                HeldForward forward = iterator.next();
+                if (simId == null || keyOf(forward.heldSimId).equals(keyOf(simId))) {
+                    toSend.add(forward);
+                    iterator.remove();
+                }
+            }
+            if (!toSend.isEmpty()) {
+                saveHeldForwards();
+            }
+        }
+        if (toSend.isEmpty()) {
+            return;
+        }
+        LogUtil.d(TAG, "SIM卡恢复，重新提交暂存转发 " + toSend.size() + " 条");
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (HeldForward forward : toSend) {
+                    SmsHelper.submitHeldForward(context, forward);
+                }
+            }
+        });
+    }
+
+    /**
+     * 从存储中恢复进程退出前暂存的转发
+     * 熔断状态不持久化，重启后所有SIM卡都处于正常状态，恢复的转发直接重新提交，仍然失败会再次熔断暂存
+     */
+    private void loadHeldForwards() {
+        String json = prefs.getString(KEY_HELD_FORWARDS, null);
+        if (json == null || json.isEmpty()) {
+            return;
+        }
+        try {
+            Type type = new TypeToken<List<HeldForward>>() {}.getType();
+            List<HeldForward> saved = gson.fromJson(json, type);
+            if (saved == null || saved.isEmpty()) {
+                return;
+            }
+            synchronized (lock) {
+                heldForwards.addAll(saved);
+            }
+            LogUtil.d(TAG, "恢复暂存转发 " + saved.size() + " 条");
+            drainHeldForwards(null);
+        } catch (Exception e) {
+            LogUtil.e(TAG, "恢复暂存转发失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 保存暂存的转发，调用时需持有lock
+     * 使用apply异步写入，避免在发送路径上阻塞
+     */
+    private void saveHeldForwards() {
+        if (heldForwards.isEmpty()) {
+            prefs.edit().remove(KEY_HELD_FORWARDS).apply();
+            return;
+        }
+        prefs.edit().putString(KEY_HELD_FORWARDS, gson.toJson(heldForwards)).apply();
+    }
+
+    /**
+     * 获取指定SIM卡的熔断状态
+     */
+    public State getState(String simId) {
+        synchronized (lock) {
+            return breakerFor(simId).state;
+        }
+    }
+
+    /**
+     * 获取当前暂存的转发数量
+     */
+    public int getHeldCount() {
+        synchronized (lock) {
+            return heldForwards.size();
+        }
+    }
+
+    /**
+     * 获取非正常状态SIM卡的状态描述，用于服务通知，全部正常时返回空字符串
+     */
+    public String getStatusSummary() {
+        synchronized (lock) {
+            StringBuilder builder = new StringBuilder();
+            Iterator<Map.Entry<String, Breaker>> iterator = breakers.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Breaker> entry = iterator.next();
+                State state = entry.getValue().state;
+                if (state == State.CLOSED) {
+                    continue;
+                }
+                if (builder.length() > 0) {
+                    builder.append(" ");
+                }
+                builder.append("SIM").append(entry.getKey()).append(state == State.OPEN ? ":熔断" : ":探测中");
+            }
+            if (builder.length() > 0 && !heldForwards.isEmpty()) {
+                builder.append(" 暂存").append(heldForwards.size()).append("条");
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * 获取熔断统计信息
+     */
+    public String getStatsSummary() {
+        synchronized (lock) {
+            StringBuilder builder = new StringBuilder("状态: ");
+            for (Map.Entry<String, Breaker> entry : breakers.entrySet()) {
+                builder.append("SIM").append(entry.getKey()).append("=").append(entry.getValue().state).append(" ");
+            }
+            builder.append(", 熔断次数: ").append(openCount)
+                    .append(", 拒绝次数: ").append(rejectedCount)
+                    .append(", 切换SIM卡次数: ").append(failoverCount)
+                    .append(", 暂存数: ").append(heldForwards.size())
+                    .append(", 丢弃数: ").append(droppedCount);
+            return builder.toString();
+        }
+    }
+
+    /**
+     * 当前时间，单元测试中覆盖以控制冷却时间
+     */
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    private Breaker breakerFor(String simId) {
+        String key = keyOf(simId);
+        Breaker breaker = breakers.get(key);
+        if (breaker == null) {
+            breaker = new Breaker();
+            breakers.put(key, breaker);
+        }
+        return breaker;
+    }
+
+    private static String keyOf(String simId) {
+        return simId == null || simId.isEmpty() ? DEFAULT_SIM_KEY : simId;
+    }
+}
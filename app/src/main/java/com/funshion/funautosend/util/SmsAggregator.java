@@ -0,0 +1,371 @@
+package com.funshion.funautosend.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.telephony.SmsManager;
+import com.funshion.funautosend.util.LogUtil;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 短信突发聚合器
+ * 同一规则、同一目标号码在聚合窗口内收到的多条短信合并为一条摘要短信和一封邮件发送，
+ * 用于减少短时间内连续收到多条短信（例如银行分段通知）时的外发数量。
+ * 加入聚合的短信已标记为已转发，因此待发送的批次持久化到SharedPreferences，进程重启后继续按原计划发送；
+ * 到期的批次在摘要短信和邮件交给发送流程（邮件进入持久化的发件箱）之后才从存储中删除，发送过程中进程被杀，重启后重新发送
+ *
+ * 规则字段：
+ * aggregateWindow   聚合窗口（秒），大于0时启用聚合，每收到一条新短信窗口重新计时
+ * aggregateMaxDelay 最大等待时间（秒），从窗口内第一条短信开始计算，超过后立即发送
+ */
+public class SmsAggregator {
+    private static final String TAG = "SmsAggregator";
+
+    private static final String PREFS_NAME = "SmsAggregatorPrefs";
+    private static final String KEY_PENDING_BATCHES = "pendingBatches";
+    private static final String KEY_FLUSHING_BATCHES = "flushingBatches";
+
+    public static final String FIELD_AGGREGATE_WINDOW = "aggregateWindow";
+    public static final String FIELD_AGGREGATE_MAX_DELAY = "aggregateMaxDelay";
+
+    // 未配置最大等待时间时，默认为聚合窗口的3倍
+    private static final int DEFAULT_MAX_DELAY_FACTOR = 3;
+    // 最大等待时间上限（秒），避免配置错误导致短信长时间不转发
+    private static final long MAX_DELAY_LIMIT_SECONDS = 300;
+    // 单条摘要短信最多拆分的部分数，超过后先发送已聚合的内容
+    private static final int MAX_DIGEST_SEGMENTS = 6;
+
+    private static volatile SmsAggregator instance;
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final Gson gson = new Gson();
+    private final ScheduledExecutorService scheduler;
+    // 聚合键（规则ID+目标号码） -> 待发送的聚合批次
+    private final Map<String, Batch> batches = new HashMap<>();
+    // 已到期、正在发送的批次，发送完成前仍保存在存储中
+    private final List<Batch> flushing = new ArrayList<>();
+    private final Object lock = new Object();
+
+    SmsAggregator(Context context) {
+        this.context = context;
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        load();
+    }
+
+    /**
+     * 获取单例实例
+     */
+    public static SmsAggregator getInstance(Context context) {
+        if (instance == null) {
+            synchronized (SmsAggregator.class) {
+                if (instance == null) {
+                    instance = new SmsAggregator(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 聚合中的单条短信
+     */
+    public static class PendingSms {
+        final String senderPhone;
+        final String content;
+        final String smsId;
+        final String simId;
+        final String time;
+
+        PendingSms(String senderPhone, String content, String smsId, String simId, String time) {
+            this.senderPhone = senderPhone;
+            this.content = content;
+            this.smsId = smsId;
+            this.simId = simId;
+            this.time = time;
+        }
+    }
+
+    /**
+     * 同一聚合键下的一批短信
+     */
+    private static class Batch {
+        Map<String, String> fields;
+        String targetPhone;
+        List<PendingSms> messages = new ArrayList<>();
+        long firstArrivalTime;
+        // 计划发送的时间，进程重启后按剩余时间重新计时
+        long flushAt;
+        transient ScheduledFuture<?> flushFuture;
+
+        Batch() {
+        }
+
+        Batch(Map<String, String> fields, String targetPhone) {
+            this.fields = fields;
+            this.targetPhone = targetPhone;
+        }
+    }
+
+    /**
+     * 获取规则配置的聚合窗口
+     * @param fields 规则字段
+     * @return 聚合窗口（毫秒），0表示未启用聚合
+     */
+    public static long getAggregateWindowMs(Map<String, String> fields) {
+        return parseSeconds(fields, FIELD_AGGREGATE_WINDOW) * 1000;
+    }
+
+    /**
+     * 获取规则配置的最大等待时间
+     * @param fields 规则字段
+     * @return 最大等待时间（毫秒）
+     */
+    static long getMaxDelayMs(Map<String, String> fields) {
+        long windowSeconds = parseSeconds(fields, FIELD_AGGREGATE_WINDOW);
+        long maxDelaySeconds = parseSeconds(fields, FIELD_AGGREGATE_MAX_DELAY);
+        if (maxDelaySeconds <= 0) {
+            maxDelaySeconds = windowSeconds * DEFAULT_MAX_DELAY_FACTOR;
+        }
+        maxDelaySeconds = Math.max(windowSeconds, Math.min(maxDelaySeconds, MAX_DELAY_LIMIT_SECONDS));
+        return maxDelaySeconds * 1000;
+    }
+
+    private static long parseSeconds(Map<String, String> fields, String key) {
+        if (fields == null) {
+            return 0;
+        }
+        String value = fields.get(key);
+        if (value == null || value.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Math.max(0, (long) Double.parseDouble(value));
+        } catch (NumberFormatException e) {
+            LogUtil.w(TAG, "解析聚合配置失败: " + key + "=" + value);
+            return 0;
+        }
+    }
+
+    /**
+     * 添加一条待转发短信到聚合批次
+     * @param fields 规则字段
+     * @param targetPhone 目标手机号
+     * @param senderPhone 发送者手机号
+     * @param content 短信内容
+     * @param smsId 短信ID
+     * @param simId 接收短信的SIM卡ID
+     * @param time 短信接收时间
+     */
+    public void add(Map<String, String> fields, String targetPhone, String senderPhone, String content,
+                    String smsId, String simId, String time) {
+        String key = fields.getOrDefault("id", "") + "|" + targetPhone;
+        long windowMs = getAggregateWindowMs(fields);
+        long maxDelayMs = getMaxDelayMs(fields);
+        PendingSms pendingSms = new PendingSms(senderPhone, content, smsId, simId, time);
+
+        synchronized (lock) {
+            Batch batch = batches.get(key);
+
+            // 加入新短信后超过分段上限时，先发送已有批次，新短信开启新批次
+            if (batch != null && exceedsSegmentLimit(batch, pendingSms)) {
+                LogUtil.d(TAG, "聚合内容将超过 " + MAX_DIGEST_SEGMENTS + " 段，先发送已聚合的 " + batch.messages.size() + " 条短信");
+                removeAndFlush(key, batch);
+                batch = null;
+            }
+
+            long now = System.currentTimeMillis();
+            if (batch == null) {
+                batch = new Batch(fields, targetPhone);
+                batch.firstArrivalTime = now;
+                batches.put(key, batch);
+            }
+            batch.messages.add(pendingSms);
+
+            // 每来一条短信窗口重新计时，但不超过最大等待时间
+            long delay = Math.max(0, Math.min(windowMs, batch.firstArrivalTime + maxDelayMs - now));
+            batch.flushAt = now + delay;
+            scheduleFlush(key, batch, delay);
+            savePending();
+
+            LogUtil.d(TAG, "短信已加入聚合批次，目标: " + targetPhone + ", 当前条数: " + batch.messages.size() + ", " + delay + "ms后发送");
+        }
+    }
+
+    /**
+     * 安排批次到时发送，调用时需持有lock
+     */
+    private void scheduleFlush(final String key, final Batch batch, long delayMs) {
+        if (batch.flushFuture != null) {
+            batch.flushFuture.cancel(false);
+        }
+        batch.flushFuture = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (lock) {
+                    if (batches.get(key) != batch) {
+                        return;
+                    }
+                    batches.remove(key);
+                    flushing.add(batch);
+                    savePending();
+                }
+                flush(batch);
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 从存储中恢复进程退出前未发送的批次，已超过计划发送时间的立即发送
+     */
+    private void load() {
+        try {
+            String json = prefs.getString(KEY_PENDING_BATCHES, null);
+            Map<String, Batch> saved = null;
+            if (json != null && !json.isEmpty()) {
+                Type type = new TypeToken<Map<String, Batch>>() {}.getType();
+                saved = gson.fromJson(json, type);
+            }
+            String flushingJson = prefs.getString(KEY_FLUSHING_BATCHES, null);
+            List<Batch> savedFlushing = null;
+            if (flushingJson != null && !flushingJson.isEmpty()) {
+                Type type = new TypeToken<List<Batch>>() {}.getType();
+                savedFlushing = gson.fromJson(flushingJson, type);
+            }
+            long now = System.currentTimeMillis();
+            synchronized (lock) {
+                if (saved != null) {
+                    for (Map.Entry<String, Batch> entry : saved.entrySet()) {
+                        Batch batch = entry.getValue();
+                        if (batch == null || batch.messages == null || batch.messages.isEmpty()) {
+                            continue;
+                        }
+                        batches.put(entry.getKey(), batch);
+                        scheduleFlush(entry.getKey(), batch, Math.max(0, batch.flushAt - now));
+                    }
+                }
+                // 上次进程退出时正在发送的批次，不确定是否已经交给发送流程，立即重新发送
+                if (savedFlushing != null) {
+                    for (Batch batch : savedFlushing) {
+                        if (batch == null || batch.messages == null || batch.messages.isEmpty()) {
+                            continue;
+                        }
+                        startFlush(batch);
+                    }
+                }
+            }
+            if (!batches.isEmpty() || !flushing.isEmpty()) {
+                LogUtil.d(TAG, "恢复未发送的聚合批次 " + (batches.size() + flushing.size()) + " 个，短信 " + getPendingCount() + " 条");
+            }
+        } catch (Exception e) {
+            LogUtil.e(TAG, "恢复聚合批次失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 保存待发送和正在发送的批次，调用时需持有lock
+     * 使用apply异步写入，避免在短信接收路径上阻塞
+     */
+    private void savePending() {
+        SharedPreferences.Editor editor = prefs.edit();
+        if (batches.isEmpty()) {
+            editor.remove(KEY_PENDING_BATCHES);
+        } else {
+            editor.putString(KEY_PENDING_BATCHES, gson.toJson(batches));
+        }
+        if (flushing.isEmpty()) {
+            editor.remove(KEY_FLUSHING_BATCHES);
+        } else {
+            editor.putString(KEY_FLUSHING_BATCHES, gson.toJson(flushing));
+        }
+        editor.apply();
+    }
+
+    /**
+     * 获取当前等待聚合发送的短信数量，包括正在发送的批次
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            int count = 0;
+            for (Batch batch : batches.values()) {
+                count += batch.messages.size();
+            }
+            for (Batch batch : flushing) {
+                count += batch.messages.size();
+            }
+            return count;
+        }
+    }
+
+    private boolean exceedsSegmentLimit(Batch batch, PendingSms newSms) {
+        List<PendingSms> candidate = new ArrayList<>(batch.messages);
+        candidate.add(newSms);
+        String digest = SmsHelper.buildDigestSmsContent(batch.fields, candidate);
+        try {
+            return SmsManager.getDefault().divideMessage(digest).size() > MAX_DIGEST_SEGMENTS;
+        } catch (Exception e) {
+            LogUtil.e(TAG, "计算摘要短信分段数失败: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 立即发送一个批次，调用时需持有lock，调用方负责保存
+     */
+    private void removeAndFlush(String key, Batch batch) {
+        batches.remove(key);
+        if (batch.flushFuture != null) {
+            batch.flushFuture.cancel(false);
+        }
+        startFlush(batch);
+    }
+
+    /**
+     * 把批次转为正在发送并在发送线程中发送，调用时需持有lock，调用方负责保存
+     */
+    private void startFlush(final Batch batch) {
+        flushing.add(batch);
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                flush(batch);
+            }
+        });
+    }
+
+    /**
+     * 发送批次，摘要短信和邮件交给发送流程后才从存储中删除
+     */
+    private void flush(Batch batch) {
+        try {
+            LogUtil.d(TAG, "发送聚合短信，目标: " + batch.targetPhone + ", 合并条数: " + batch.messages.size());
+            sendDigest(batch.fields, batch.targetPhone, batch.messages);
+        } catch (Exception e) {
+            LogUtil.e(TAG, "发送聚合短信失败: " + e.getMessage(), e);
+        } finally {
+            synchronized (lock) {
+                flushing.remove(batch);
+                savePending();
+            }
+        }
+    }
+
+    /**
+     * 发送摘要短信和邮件，单元测试中覆盖以记录发送内容
+     */
+    void sendDigest(Map<String, String> fields, String targetPhone, List<PendingSms> messages) {
+        SmsHelper.sendDigest(context, fields, targetPhone, messages);
+    }
+}
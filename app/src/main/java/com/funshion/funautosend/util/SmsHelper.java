@@ -2,14 +2,11 @@ package com.funshion.funautosend.util;
 
 import android.app.Activity;
 import android.app.PendingIntent;
-import android.content.ComponentName;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.database.Cursor;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
@@ -20,20 +17,19 @@ import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyManager;
 import com.funshion.funautosend.util.LogUtil;
 import android.widget.Toast;
-import java.lang.reflect.Method;
 
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
+import com.funshion.funautosend.model.ForwardReport;
 import com.funshion.funautosend.model.SmsMessage;
-import com.funshion.funautosend.receiver.SmsSendStatusReceiver;
 import com.funshion.funautosend.util.ApiClient;
 import com.funshion.funautosend.util.ApiClient.SmsReportRequest;
 import com.funshion.funautosend.util.ApiClient.EmailReportRequest;
 import com.funshion.funautosend.util.ApiClient.ApiCallback;
-import com.funshion.funautosend.util.EmailHelper.EmailSendCallback;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -49,41 +45,6 @@ public class SmsHelper {
     private static final int SMS_PERMISSION_REQUEST_CODE = 101;
     public static final int READ_SMS_PERMISSION_REQUEST_CODE = 102;
     
-    /**
-     * 检查网络状态并打印日志
-     * @param context 上下文
-     * @param operation 操作描述
-     * @return 是否有网络连接
-     */
-    private static boolean checkAndLogNetworkStatus(Context context, String operation) {
-        boolean isConnected = false;
-        String networkType = "未知";
-        
-        try {
-            if (context != null) {
-                ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
-                if (cm != null) {
-                    NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
-                    if (activeNetwork != null && activeNetwork.isConnectedOrConnecting()) {
-                        isConnected = true;
-                        if (activeNetwork.getType() == ConnectivityManager.TYPE_WIFI) {
-                            networkType = "WIFI";
-                        } else if (activeNetwork.getType() == ConnectivityManager.TYPE_MOBILE) {
-                            networkType = "移动数据";  
-                        } else {
-                            networkType = activeNetwork.getTypeName();
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            LogUtil.e(TAG, "检查网络状态时出错: " + e.getMessage());
-        }
-        
-        LogUtil.d(TAG, operation + " - 网络状态: " + (isConnected ? "已连接 (" + networkType + ")" : "未连接"));
-        return isConnected;
-    }
-    
     // 静态成员变量，用于存储最近一次扫描的短信列表
     private static List<SmsMessage> lastScannedSmsList = new ArrayList<>();
 
@@ -479,6 +440,29 @@ public class SmsHelper {
      * @return 是否成功提交发送请求
      */
     public static boolean sendSmsToTarget(String phoneNumber, String message, Context context, String simId, String smsId) {
+        return sendSmsToTarget(phoneNumber, message, context, simId, smsId, (String) null);
+    }
+
+    /**
+     * 发送短信到指定手机号码，并记录转发耗时
+     * @param phoneNumber 目标手机号
+     * @param message 短信内容
+     * @param context 上下文
+     * @param simId 发送短信的SIM卡ID（可选）
+     * @param smsId 原短信ID（可选，用于跟踪发送和送达状态）
+     * @param receiveTime 原短信接收时间（可选，用于计算端到端耗时）
+     * @return 是否成功提交发送请求
+     */
+    public static boolean sendSmsToTarget(String phoneNumber, String message, Context context, String simId, String smsId, String receiveTime) {
+        return sendSmsToTarget(phoneNumber, message, context, simId, smsId, Collections.singletonList(receiveTime));
+    }
+
+    /**
+     * 发送短信到指定手机号码，并记录转发耗时
+     * @param receiveTimes 短信包含的每条原短信的接收时间，聚合摘要短信包含多条
+     * @see #sendSmsToTarget(String, String, Context, String, String, String)
+     */
+    static boolean sendSmsToTarget(String phoneNumber, String message, Context context, String simId, String smsId, List<String> receiveTimes) {
         try {
             if (phoneNumber == null || phoneNumber.isEmpty()) {
                 if (context != null) {
@@ -508,86 +492,29 @@ public class SmsHelper {
                 LogUtil.d(TAG, "特殊字符已处理，处理后内容前50字符: " + (processedMessage.length() > 50 ? processedMessage.substring(0, 50) : processedMessage));
             }
 
-            // 创建发送状态监听器，使用ComponentName明确指定目标广播接收器
-            Intent sentIntent = new Intent("SMS_SENT");
-            // 使用ComponentName明确指定广播接收器，确保在Android高版本中能正确接收
-            sentIntent.setComponent(new ComponentName(context.getPackageName(), "com.funshion.funautosend.receiver.SmsSendStatusReceiver"));
-            
-            // 添加短信ID到Intent中（如果有）
-            if (smsId != null && !smsId.isEmpty()) {
-                try {
-                    // 使用反射调用方法，避免直接依赖可能导致的编译错误
-                    Class<?> receiverClass = Class.forName("com.funshion.funautosend.receiver.SmsSendStatusReceiver");
-                    Method method = receiverClass.getMethod("addSmsIdToIntent", Intent.class, String.class);
-                    method.invoke(null, sentIntent, smsId);
-                    LogUtil.d(TAG, "已将短信ID添加到Intent: " + smsId);
-                } catch (Exception e) {
-                    // 备用方案：直接设置Extra
-                    sentIntent.putExtra("SMS_ID", smsId);
-                    LogUtil.d(TAG, "备用方案：已将短信ID添加到Intent: " + smsId);
-                }
-            }
-            
-            // 生成唯一的requestCode，使用smsId的哈希值或时间戳
-            int requestCode = 0;
-            if (smsId != null && !smsId.isEmpty()) {
-                requestCode = smsId.hashCode();
-            } else {
-                requestCode = (int)(System.currentTimeMillis() % Integer.MAX_VALUE);
-            }
-            
-            PendingIntent pendingSentIntent = PendingIntent.getBroadcast(
-                context,
-                requestCode,
-                sentIntent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-            );
-            
             // 对于长短信进行拆分发送
             if (processedMessage.length() > 70) {
                 ArrayList<String> parts = smsManager.divideMessage(processedMessage);
                 LogUtil.d(TAG, "短信过长，已拆分为: " + parts.size() + " 部分");
                 
-                // 为每个短信部分创建发送状态监听器，同样使用ComponentName
+                // 为每个短信部分创建发送状态和送达报告监听器
                 ArrayList<PendingIntent> sentIntents = new ArrayList<>();
-                
+                ArrayList<PendingIntent> deliveredIntents = new ArrayList<>();
                 for (int i = 0; i < parts.size(); i++) {
-                    Intent partIntent = new Intent("SMS_SENT");
-                    partIntent.putExtra("PART_INDEX", i);
-                    partIntent.setComponent(new ComponentName(context.getPackageName(), "com.funshion.funautosend.receiver.SmsSendStatusReceiver"));
-                    
-                    // 添加短信ID到Intent中（如果有）
-                    if (smsId != null && !smsId.isEmpty()) {
-                        try {
-                            // 使用反射调用方法
-                            Class<?> receiverClass = Class.forName("com.funshion.funautosend.receiver.SmsSendStatusReceiver");
-                            Method method = receiverClass.getMethod("addSmsIdToIntent", Intent.class, String.class);
-                            method.invoke(null, partIntent, smsId);
-                            LogUtil.d(TAG, "已将短信ID添加到部分短信Intent: " + smsId + ", 部分索引: " + i);
-                        } catch (Exception e) {
-                            // 备用方案：直接设置Extra
-                            partIntent.putExtra("SMS_ID", smsId);
-                            LogUtil.d(TAG, "备用方案：已将短信ID添加到部分短信Intent: " + smsId + ", 部分索引: " + i);
-                        }
-                    }
-                    
-                    // 为每个短信部分生成唯一的requestCode，结合smsId和部分索引
-                    int partRequestCode = i;
-                    if (smsId != null && !smsId.isEmpty()) {
-                        partRequestCode = smsId.hashCode() + i; // 避免相同smsId不同部分的requestCode冲突
-                    }
-                    
-                    sentIntents.add(PendingIntent.getBroadcast(
-                        context,
-                        partRequestCode,
-                        partIntent,
-                        PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-                    ));
+                    sentIntents.add(SmsSendIntentFactory.createSentIntent(context, smsId, phoneNumber, simId, i));
+                    deliveredIntents.add(SmsSendIntentFactory.createDeliveredIntent(context, smsId, phoneNumber, i));
                 }
                 
-                smsManager.sendMultipartTextMessage(phoneNumber, null, parts, sentIntents, null);
+                ForwardLatencyTracker.getInstance().onSubmitted(smsId, simId, phoneNumber, receiveTimes, parts.size());
+                SendSimSelector.getInstance(context).onSubmitted(simId, parts.size());
+                smsManager.sendMultipartTextMessage(phoneNumber, null, parts, sentIntents, deliveredIntents);
             } else {
-                smsManager.sendTextMessage(phoneNumber, null, processedMessage, pendingSentIntent, null);
+                // 创建发送状态监听器和送达报告监听器，用于获取发送结果和送达目标手机的时间
+                PendingIntent pendingSentIntent = SmsSendIntentFactory.createSentIntent(context, smsId, phoneNumber, simId, -1);
+                PendingIntent pendingDeliveredIntent = SmsSendIntentFactory.createDeliveredIntent(context, smsId, phoneNumber, -1);
+                ForwardLatencyTracker.getInstance().onSubmitted(smsId, simId, phoneNumber, receiveTimes, 1);
+                SendSimSelector.getInstance(context).onSubmitted(simId, 1);
+                smsManager.sendTextMessage(phoneNumber, null, processedMessage, pendingSentIntent, pendingDeliveredIntent);
             }
             
             LogUtil.d(TAG, "短信发送命令已提交到系统");
@@ -759,6 +686,13 @@ public class SmsHelper {
 
             // 获取目标手机号
             String targetPhone = fields.get("operatePhone");
+            
+            // 规则启用了突发聚合时，交给聚合器在窗口结束后统一发送摘要短信和邮件
+            if (targetPhone != null && !targetPhone.isEmpty() && SmsAggregator.getAggregateWindowMs(fields) > 0) {
+                SmsAggregator.getInstance(context).add(fields, targetPhone, senderPhone, receivedContent, smsId, simId, time);
+                LogUtil.d(TAG, "规则已启用突发聚合，短信ID: " + smsId + " 已加入聚合批次");
+                return true;
+            }
 
             if (targetPhone != null && !targetPhone.isEmpty()) {
                 // 注意：现在我们直接将短信ID作为参数传递给sendSmsToTarget方法
@@ -766,12 +700,9 @@ public class SmsHelper {
                 LogUtil.d(TAG, "准备发送短信，ID: " + smsId + (smsId != null && smsId.startsWith("temp_") ? " (临时ID)" : ""));
                 
                 // 发送短信并记录结果，传递simId和smsId参数
-                  smsSentSuccessfully = sendSmsToTarget(targetPhone, smsContent, context, simId, smsId);
-                  
-                  // 短信转发完成后上报数据
-            // 上报短信前打印网络状态
-            checkAndLogNetworkStatus(context, "上报短信数据前");
-            reportSmsData(context, fields, senderPhone, receivedContent, smsSentSuccessfully, smsId, time);
+                // SIM卡熔断时可能切换到另一张卡发送，或暂存到SIM卡恢复后再发送，上报在真正提交发送后进行
+                smsSentSuccessfully = submitForward(context, fields, targetPhone, smsContent, simId, smsId, time,
+                        Collections.singletonList(new ForwardReport(fields, senderPhone, receivedContent, smsId, time)));
             } else {
                 LogUtil.w(TAG, "找不到目标手机号，无法发送短信");
                 
@@ -793,27 +724,10 @@ public class SmsHelper {
             // 发送邮件（使用带回调的方法，用于实现上报逻辑）
             LogUtil.d(TAG, "准备发送邮件 toEmail: "+toEmail);
             // 发送邮件前打印网络状态
-            checkAndLogNetworkStatus(context, "发送邮件前");
-            EmailHelper.sendEmail(context, toEmail, emailSubject, emailContent, new EmailSendCallback() {
-                @Override
-                public void onSuccess() {
-                    LogUtil.d(TAG, "邮件发送成功 执行上报");
-                    
-                    // 邮件上报前打印网络状态
-                    checkAndLogNetworkStatus(context, "邮件发送成功后上报前");
-                    // 邮件发送成功，执行上报
-                    reportEmailData(context, fields, id, senderPhone, time, receivedContent, true);
-                }
-                
-                @Override
-                public void onFailure(String error) {
-                    // 邮件发送失败，执行上报
-                    LogUtil.d(TAG, "邮件发送失败 执行上报");
-                    // 邮件上报前打印网络状态
-                    checkAndLogNetworkStatus(context, "邮件发送失败后上报前");
-                    reportEmailData(context, fields, id, senderPhone, time, receivedContent, false);
-                }
-            });
+            NetworkStateHolder.getInstance(context).logStatus(TAG, "发送邮件前");
+            // 上报信息随邮件保存在发件箱中，邮件发送完成后（包括进程重启后恢复发送的邮件）执行上报
+            EmailDigestBatcher.getInstance(context).submit(toEmail, emailSubject, emailContent, smsId,
+                    Collections.singletonList(new ForwardReport(fields, senderPhone, receivedContent, smsId, time)));
             
         } catch (Exception e) {
             LogUtil.e(TAG, "发送短信或邮件时出错: " + e.getMessage());
@@ -826,6 +740,211 @@ public class SmsHelper {
         return smsSentSuccessfully;
     }
     
+    /**
+     * 构建聚合摘要短信内容
+     * 只有一条短信时与普通转发格式一致：id,remark,senderPhone,content
+     * @param fields 规则字段
+     * @param messages 聚合的短信列表
+     * @return 摘要短信内容
+     */
+    static String buildDigestSmsContent(Map<String, String> fields, List<SmsAggregator.PendingSms> messages) {
+        String id = fields.getOrDefault("id", "未知ID");
+        String remark = fields.getOrDefault("remark", "无备注");
+        if (messages.size() == 1) {
+            SmsAggregator.PendingSms sms = messages.get(0);
+            return id + "," + remark + "," + sms.senderPhone + "," + sms.content;
+        }
+        StringBuilder builder = new StringBuilder();
+        builder.append(id).append(",").append(remark).append(",共").append(messages.size()).append("条");
+        for (int i = 0; i < messages.size(); i++) {
+            SmsAggregator.PendingSms sms = messages.get(i);
+            builder.append("\n").append(i + 1).append(".").append(sms.senderPhone).append(",").append(sms.content);
+        }
+        return builder.toString();
+    }
+    
+    /**
+     * 构建聚合摘要邮件正文
+     * 只有一条短信时与普通转发一致，只包含短信内容；多条时逐条列出接收时间、发送者和内容
+     * @param messages 聚合的短信列表
+     * @return 摘要邮件正文
+     */
+    static String buildDigestEmailContent(List<SmsAggregator.PendingSms> messages) {
+        if (messages.size() == 1) {
+            return messages.get(0).content;
+        }
+        StringBuilder builder = new StringBuilder();
+        for (SmsAggregator.PendingSms sms : messages) {
+            builder.append("【").append(sms.time).append(" ").append(sms.senderPhone).append("】\n")
+                    .append(sms.content).append("\n\n");
+        }
+        return builder.toString();
+    }
+    
+    /**
+     * 发送聚合摘要：一条摘要短信、一封摘要邮件，并为每条原短信分别上报
+     * @param context 上下文
+     * @param fields 规则字段
+     * @param targetPhone 目标手机号
+     * @param messages 聚合的短信列表
+     */
+    static void sendDigest(final Context context, final Map<String, String> fields, String targetPhone,
+                           final List<SmsAggregator.PendingSms> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        SmsAggregator.PendingSms first = messages.get(0);
+        final String id = fields.getOrDefault("id", "未知ID");
+        String remark = fields.getOrDefault("remark", "无备注");
+        
+        // 摘要短信使用第一条短信的ID和SIM卡进行发送状态跟踪，每条原短信分别上报并统计转发耗时
+        String smsContent = buildDigestSmsContent(fields, messages);
+        List<ForwardReport> reports = new ArrayList<>();
+        for (SmsAggregator.PendingSms sms : messages) {
+            reports.add(new ForwardReport(fields, sms.senderPhone, sms.content, sms.smsId, sms.time));
+        }
+        submitForward(context, fields, targetPhone, smsContent, first.simId, first.smsId, first.time, reports);
+        
+        // 摘要邮件：一条短信时格式与普通转发一致，多条时逐条列出
+        String toEmail = fields.getOrDefault("email", "zjfs@fun.tv");
+        String senderDesc = messages.size() == 1 ? first.senderPhone : first.senderPhone + "等" + messages.size() + "条";
+        String emailSubject = getCurrentFormattedDate() + "【短信内容审核】" + senderDesc + "," + id + "," + remark;
+        String emailContent = buildDigestEmailContent(messages);
+        
+        LogUtil.d(TAG, "准备发送聚合邮件 toEmail: " + toEmail + ", 合并条数: " + messages.size());
+        EmailDigestBatcher.getInstance(context).submit(toEmail, emailSubject, emailContent, first.smsId, reports);
+    }
+    
+    /**
+     * 按SIM卡熔断状态提交一条转发短信
+     * 原SIM卡熔断时，规则允许则切换到另一张SIM卡发送，否则暂存到SIM卡恢复后再发送
+     * @param context 上下文
+     * @param fields 规则字段
+     * @param targetPhone 目标手机号
+     * @param message 短信内容
+     * @param simId 接收短信的SIM卡ID
+     * @param smsId 短信ID
+     * @param receiveTime 短信接收时间
+     * @param reports 转发包含的原短信，真正提交发送后逐条上报
+     * @return 是否已提交发送或已暂存
+     */
+    static boolean submitForward(Context context, Map<String, String> fields, String targetPhone, String message,
+                                 String simId, String smsId, String receiveTime, List<ForwardReport> reports) {
+        return submitHeldForward(context, new SimCircuitBreaker.HeldForward(targetPhone, message, simId, smsId,
+                receiveTime, isSimFailoverAllowed(fields), reports));
+    }
+    
+    /**
+     * 提交一条转发短信，也用于熔断器恢复后重新提交暂存的转发
+     * @param context 上下文
+     * @param forward 待发送的转发
+     * @return 是否已提交发送或已暂存
+     */
+    static boolean submitHeldForward(Context context, SimCircuitBreaker.HeldForward forward) {
+        SimCircuitBreaker breaker = SimCircuitBreaker.getInstance(context);
+        // 按配置的策略选择发送SIM卡，默认使用接收短信的SIM卡
+        String sendSimId = SendSimSelector.getInstance(context).select(forward.simId);
+        if (!breaker.tryAcquire(sendSimId)) {
+            String failoverSimId = forward.allowFailover ? getFailoverSimId(context, sendSimId) : null;
+            if (failoverSimId != null && breaker.tryAcquire(failoverSimId)) {
+                LogUtil.w(TAG, "SIM卡 " + sendSimId + " 熔断中，切换到SIM卡 " + failoverSimId + " 发送，短信ID: " + forward.smsId);
+                breaker.recordFailover();
+                sendSimId = failoverSimId;
+            } else {
+                breaker.hold(forward, sendSimId);
+                return true;
+            }
+        }
+        
+        // 聚合摘要短信按每条原短信的接收时间统计端到端耗时
+        List<String> receiveTimes = new ArrayList<>();
+        if (forward.reports != null) {
+            for (ForwardReport report : forward.reports) {
+                receiveTimes.add(report.receiveTime);
+            }
+        }
+        if (receiveTimes.isEmpty()) {
+            receiveTimes.add(forward.receiveTime);
+        }
+        boolean sent = sendSmsToTarget(forward.targetPhone, forward.message, context, sendSimId, forward.smsId, receiveTimes);
+        if (!sent) {
+            // 没有提交到系统就不会有发送结果广播，释放探测名额
+            breaker.releaseProbe(sendSimId);
+        }
+        reportSmsResults(context, forward.reports, sent);
+        return sent;
+    }
+    
+    /**
+     * 逐条上报转发包含的原短信的短信转发结果
+     * @param context 上下文
+     * @param reports 原短信上报信息
+     * @param success 是否成功提交发送
+     */
+    static void reportSmsResults(Context context, List<ForwardReport> reports, boolean success) {
+        if (reports == null || reports.isEmpty()) {
+            return;
+        }
+        // 上报短信前打印网络状态
+        NetworkStateHolder.getInstance(context).logStatus(TAG, "上报短信数据前");
+        for (ForwardReport report : reports) {
+            reportSmsData(context, report.fields, report.senderPhone, report.content, success, report.smsId, report.receiveTime);
+        }
+    }
+    
+    /**
+     * 逐条上报邮件包含的原短信的邮件转发结果
+     * @param context 上下文
+     * @param reports 原短信上报信息
+     * @param success 邮件是否发送成功
+     */
+    static void reportEmailResults(Context context, List<ForwardReport> reports, boolean success) {
+        if (context == null || reports == null || reports.isEmpty()) {
+            return;
+        }
+        LogUtil.d(TAG, "邮件发送" + (success ? "成功" : "失败") + " 执行上报，条数: " + reports.size());
+        // 邮件上报前打印网络状态
+        NetworkStateHolder.getInstance(context).logStatus(TAG, "邮件发送后上报前");
+        for (ForwardReport report : reports) {
+            String id = report.fields != null ? report.fields.getOrDefault("id", "未知ID") : "未知ID";
+            reportEmailData(context, report.fields, id, report.senderPhone, report.receiveTime, report.content, success, report.smsId);
+        }
+    }
+    
+    /**
+     * 规则是否允许SIM卡熔断时切换到另一张SIM卡发送
+     * 规则字段 allowSimFailover 为 1/true 时允许
+     */
+    private static boolean isSimFailoverAllowed(Map<String, String> fields) {
+        if (fields == null) {
+            return false;
+        }
+        String value = fields.get("allowSimFailover");
+        return "1".equals(value) || "true".equalsIgnoreCase(value);
+    }
+    
+    /**
+     * 获取可切换发送的另一张SIM卡ID，只有双卡都可用时才返回
+     * @param context 上下文
+     * @param simId 当前SIM卡ID
+     * @return 另一张SIM卡ID，无法切换时返回null
+     */
+    private static String getFailoverSimId(Context context, String simId) {
+        String otherSimId;
+        if ("1".equals(simId)) {
+            otherSimId = "2";
+        } else if ("2".equals(simId)) {
+            otherSimId = "1";
+        } else {
+            return null;
+        }
+        if (!SendSimSelector.getInstance(context).isDualSimActive()) {
+            LogUtil.d(TAG, "只有一张可用SIM卡，无法切换发送");
+            return null;
+        }
+        return otherSimId;
+    }
+    
     /**
      * 获取当前日期的格式化字符串，格式：xxxx年xxxx月xxx日
      */
@@ -878,6 +997,13 @@ public class SmsHelper {
                     "sms"
             );
             
+            // 开启合并上报时等待邮件结果后合并为一条数据上报
+            String reportKey = CombinedReportCollector.reportKey(idStr, smsId);
+            if (reportKey != null && PreferencesHelper.isCombinedReportEnabled(context)) {
+                CombinedReportCollector.getInstance(context).onSmsResult(reportKey, request);
+                return;
+            }
+            
             // 调用ApiClient上报数据
             ApiClient.reportSmsData(context, request, new ApiCallback() {
                 @Override
@@ -906,8 +1032,9 @@ public class SmsHelper {
      * @param receiveTime 接收时间
      * @param emailContent 邮件内容
      * @param isSuccess 是否发送成功
+     * @param smsId 触发邮件的短信ID，开启合并上报时用于与短信结果配对
      */
-    private static void reportEmailData(Context context, Map<String, String> fields, String idStr, String senderPhone, String receiveTime, String emailContent, boolean isSuccess) {
+    private static void reportEmailData(Context context, Map<String, String> fields, String idStr, String senderPhone, String receiveTime, String emailContent, boolean isSuccess, String smsId) {
         try {
             // 解析ID
             int id = 0;
@@ -934,6 +1061,14 @@ public class SmsHelper {
                     "email" // 报告类型为email
             );
             
+            // 开启合并上报时等待短信结果后合并为一条数据上报，上报键与短信上报一样使用规则ID
+            String ruleId = fields != null ? fields.getOrDefault("id", "0") : "0";
+            String reportKey = CombinedReportCollector.reportKey(ruleId, smsId);
+            if (reportKey != null && PreferencesHelper.isCombinedReportEnabled(context)) {
+                CombinedReportCollector.getInstance(context).onEmailResult(reportKey, request);
+                return;
+            }
+            
             // 调用ApiClient上报数据
             ApiClient.reportEmailData(context, request, new ApiCallback() {
                 @Override
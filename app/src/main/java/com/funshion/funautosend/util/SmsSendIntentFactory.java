@@ -0,0 +1,126 @@
+package com.funshion.funautosend.util;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import com.funshion.funautosend.util.LogUtil;
+
+import com.funshion.funautosend.receiver.SmsDeliveryReceiver;
+import com.funshion.funautosend.receiver.SmsSendStatusReceiver;
+
+/**
+ * 短信发送/送达回执PendingIntent工厂
+ * 接收器组件和Intent模板只创建一次，每条短信（以及长短信的每一部分）从模板复制后填入参数；
+ * requestCode由单调递增的分配器生成，保证不同短信的PendingIntent不会互相覆盖extra导致回执丢失
+ */
+public class SmsSendIntentFactory {
+    private static final String TAG = "SmsSendIntentFactory";
+
+    // 发送状态广播的action，与SmsSendStatusReceiver保持一致
+    public static final String ACTION_SMS_SENT = "SMS_SENT";
+    // 长短信部分索引的extra键
+    public static final String EXTRA_PART_INDEX = "PART_INDEX";
+
+    // requestCode的起始值，避开应用其他地方使用的小整数requestCode
+    private static final int REQUEST_CODE_BASE = 100000;
+    // 每次从SharedPreferences预留的requestCode数量，减少写入次数
+    private static final int REQUEST_CODE_BLOCK_SIZE = 1000;
+    private static final String KEY_NEXT_REQUEST_CODE_BLOCK = "smsRequestCodeNextBlock";
+
+    private static final Object lock = new Object();
+    private static Intent sentTemplate;
+    private static Intent deliveredTemplate;
+    private static int nextRequestCode;
+    private static int blockEnd;
+
+    private SmsSendIntentFactory() {
+    }
+
+    /**
+     * 创建发送状态回执PendingIntent
+     * @param context 上下文
+     * @param smsId 短信ID（可选）
+     * @param targetPhone 目标手机号
+     * @param simId 发送使用的SIM卡ID（可选）
+     * @param partIndex 长短信部分索引，单条短信传-1
+     * @return 发送状态回执PendingIntent
+     */
+    public static PendingIntent createSentIntent(Context context, String smsId, String targetPhone, String simId, int partIndex) {
+        Intent intent = new Intent(getSentTemplate(context));
+        if (partIndex >= 0) {
+            intent.putExtra(EXTRA_PART_INDEX, partIndex);
+        }
+        SmsSendStatusReceiver.addSmsIdToIntent(intent, smsId);
+        SmsSendStatusReceiver.addTargetPhoneToIntent(intent, targetPhone);
+        SmsSendStatusReceiver.addSimIdToIntent(intent, simId);
+        return PendingIntent.getBroadcast(context, nextRequestCode(context), intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    /**
+     * 创建送达报告回执PendingIntent
+     * @param context 上下文
+     * @param smsId 短信ID（可选）
+     * @param targetPhone 目标手机号
+     * @param partIndex 长短信部分索引，单条短信传-1
+     * @return 送达报告回执PendingIntent
+     */
+    public static PendingIntent createDeliveredIntent(Context context, String smsId, String targetPhone, int partIndex) {
+        Intent intent = new Intent(getDeliveredTemplate(context));
+        if (partIndex >= 0) {
+            intent.putExtra(EXTRA_PART_INDEX, partIndex);
+        }
+        SmsSendStatusReceiver.addSmsIdToIntent(intent, smsId);
+        SmsSendStatusReceiver.addTargetPhoneToIntent(intent, targetPhone);
+        // 系统通过fillIn填入送达报告的"pdu"和"format"，不可变的PendingIntent会丢弃这些extra，
+        // 因此不能使用FLAG_IMMUTABLE（targetSdk 30及以下不加该标志即为可变）
+        return PendingIntent.getBroadcast(context, nextRequestCode(context), intent,
+                PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    private static Intent getSentTemplate(Context context) {
+        synchronized (lock) {
+            if (sentTemplate == null) {
+                // 使用显式组件，确保在Android高版本中能正确接收
+                sentTemplate = new Intent(ACTION_SMS_SENT);
+                sentTemplate.setClass(context.getApplicationContext(), SmsSendStatusReceiver.class);
+            }
+            return sentTemplate;
+        }
+    }
+
+    private static Intent getDeliveredTemplate(Context context) {
+        synchronized (lock) {
+            if (deliveredTemplate == null) {
+                deliveredTemplate = new Intent(SmsDeliveryReceiver.ACTION_SMS_DELIVERED);
+                deliveredTemplate.setClass(context.getApplicationContext(), SmsDeliveryReceiver.class);
+            }
+            return deliveredTemplate;
+        }
+    }
+
+    /**
+     * 分配下一个requestCode
+     * 按块从SharedPreferences预留，进程重启后从下一块继续，不会与上一进程中尚未回调的PendingIntent冲突
+     */
+    static int nextRequestCode(Context context) {
+        synchronized (lock) {
+            if (nextRequestCode >= blockEnd) {
+                reserveBlock(context);
+            }
+            return nextRequestCode++;
+        }
+    }
+
+    private static void reserveBlock(Context context) {
+        int blockStart = PreferencesHelper.getInt(context, KEY_NEXT_REQUEST_CODE_BLOCK, REQUEST_CODE_BASE);
+        if (blockStart < REQUEST_CODE_BASE || blockStart > Integer.MAX_VALUE - REQUEST_CODE_BLOCK_SIZE) {
+            // 用完后从头开始，此时最早分配的requestCode对应的回执早已结束
+            blockStart = REQUEST_CODE_BASE;
+        }
+        nextRequestCode = blockStart;
+        blockEnd = blockStart + REQUEST_CODE_BLOCK_SIZE;
+        PreferencesHelper.putInt(context, KEY_NEXT_REQUEST_CODE_BLOCK, blockEnd);
+        LogUtil.d(TAG, "预留短信回执requestCode: " + blockStart + " - " + (blockEnd - 1));
+    }
+}
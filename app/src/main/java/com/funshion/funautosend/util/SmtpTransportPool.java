@@ -0,0 +1,330 @@
+package com.funshion.funautosend.util;
+
+import com.funshion.funautosend.util.LogUtil;
+
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.PasswordAuthentication;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+/**
+ * SMTP连接池
+ * 共享一个邮件会话，并保持已认证的Transport连接，避免每封邮件都重新进行TCP、TLS握手和登录认证；
+ * 空闲一段时间的连接在复用前用NOOP检查是否可用，失效则重连；长时间空闲的连接由后台任务关闭。
+ * 发送出错时连接池不重发：连接出错时无法判断服务器是否已经收下邮件，重发可能导致同一封邮件送达两次，
+ * 由 {@link EmailOutbox} 按退避时间重试
+ *
+ * 邮件服务器和账号可以通过 {@link #configure(SmtpConfig)} 替换，配置变化后重建会话，旧会话的连接不再复用
+ */
+public class SmtpTransportPool {
+    private static final String TAG = "SmtpTransportPool";
+
+    // 默认邮件服务器配置，未下发SMTP配置时使用
+    public static final String DEFAULT_SMTP_HOST = "smtp.exmail.qq.com"; // foxmail邮箱SMTP服务器
+    public static final String DEFAULT_SMTP_PORT = "465"; // foxmail邮箱SMTP SSL端口
+    public static final String DEFAULT_SMTP_USER = "java_team@fun.tv";
+    public static final String DEFAULT_SMTP_PASSWORD = "Nihao123)";
+
+    // 最多同时保持的连接数，邮件服务器对单账号并发连接数有限制
+    private static final int MAX_CONNECTIONS = 3;
+    // 等待可用连接的最长时间
+    private static final long ACQUIRE_TIMEOUT_MS = 60 * 1000;
+    // 空闲超过该时间的连接在复用前先发送NOOP检查
+    private static final long NOOP_CHECK_AFTER_MS = 10 * 1000;
+    // 空闲超过该时间的连接被关闭
+    private static final long IDLE_TIMEOUT_MS = 60 * 1000;
+    // 空闲连接检查间隔
+    private static final long REAPER_INTERVAL_MS = 30 * 1000;
+
+    private static final SmtpTransportPool INSTANCE = new SmtpTransportPool(true);
+
+    // 是否使用SSL连接，单元测试中连接本地的SMTP服务使用明文连接
+    private final boolean useSsl;
+    private volatile SmtpConfig config;
+    private volatile Session session;
+    private final LinkedBlockingDeque<PooledTransport> idleTransports = new LinkedBlockingDeque<>();
+    private final Semaphore permits = new Semaphore(MAX_CONNECTIONS, true);
+    private final ScheduledExecutorService reaper;
+
+    // 统计数据
+    private final AtomicLong connectCount = new AtomicLong();
+    private final AtomicLong reuseCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+
+    SmtpTransportPool(boolean useSsl) {
+        this.useSsl = useSsl;
+        config = new SmtpConfig(null, null, null, null);
+        session = createSession(config);
+
+        reaper = Executors.newSingleThreadScheduledExecutor();
+        reaper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                closeIdleTransports(IDLE_TIMEOUT_MS);
+            }
+        }, REAPER_INTERVAL_MS, REAPER_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 获取单例实例
+     */
+    public static SmtpTransportPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * SMTP服务器配置，为空的字段使用默认配置
+     */
+    public static class SmtpConfig {
+        public final String host;
+        public final String port;
+        public final String user;
+        public final String password;
+
+        public SmtpConfig(String host, String port, String user, String password) {
+            this.host = isEmpty(host) ? DEFAULT_SMTP_HOST : host;
+            this.port = isEmpty(port) ? DEFAULT_SMTP_PORT : port;
+            this.user = isEmpty(user) ? DEFAULT_SMTP_USER : user;
+            this.password = isEmpty(password) ? DEFAULT_SMTP_PASSWORD : password;
+        }
+
+        private static boolean isEmpty(String value) {
+            return value == null || value.trim().isEmpty();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SmtpConfig)) {
+                return false;
+            }
+            SmtpConfig other = (SmtpConfig) o;
+            return host.equals(other.host) && port.equals(other.port)
+                    && user.equals(other.user) && password.equals(other.password);
+        }
+
+        @Override
+        public int hashCode() {
+            return ((host.hashCode() * 31 + port.hashCode()) * 31 + user.hashCode()) * 31 + password.hashCode();
+        }
+    }
+
+    /**
+     * 池中的连接
+     */
+    private static class PooledTransport {
+        final Transport transport;
+        // 创建连接的会话，会话重建后旧连接不再复用
+        final Session session;
+        long lastUsedTime;
+
+        PooledTransport(Transport transport, Session session, long lastUsedTime) {
+            this.transport = transport;
+            this.session = session;
+            this.lastUsedTime = lastUsedTime;
+        }
+    }
+
+    private Session createSession(final SmtpConfig smtpConfig) {
+        Properties props = new Properties();
+        props.put("mail.transport.protocol", "smtp");
+        props.put("mail.smtp.host", smtpConfig.host);
+        props.put("mail.smtp.port", smtpConfig.port);
+        props.put("mail.smtp.auth", "true");
+        if (useSsl) {
+            props.put("mail.smtp.socketFactory.port", smtpConfig.port); // SSL端口
+            props.put("mail.smtp.socketFactory.class", "javax.net.ssl.SSLSocketFactory"); // SSL工厂类
+            props.put("mail.smtp.ssl.enable", "true"); // 启用SSL
+        }
+        props.put("mail.smtp.connectiontimeout", "15000");
+        props.put("mail.smtp.timeout", "30000");
+        props.put("mail.smtp.writetimeout", "30000");
+
+        return Session.getInstance(props, new javax.mail.Authenticator() {
+            protected PasswordAuthentication getPasswordAuthentication() {
+                // 发件人邮箱地址以及授权码
+                return new PasswordAuthentication(smtpConfig.user, smtpConfig.password);
+            }
+        });
+    }
+
+    /**
+     * 替换SMTP服务器配置，配置变化时重建邮件会话并关闭空闲连接，正在使用的连接用完后关闭
+     * @param smtpConfig 新的SMTP配置
+     */
+    public synchronized void configure(SmtpConfig smtpConfig) {
+        if (smtpConfig == null || smtpConfig.equals(config)) {
+            return;
+        }
+        session = createSession(smtpConfig);
+        config = smtpConfig;
+        closeIdleTransports(0);
+        LogUtil.d(TAG, "SMTP配置已更新: " + smtpConfig.host + ":" + smtpConfig.port + ", " + smtpConfig.user);
+    }
+
+    /**
+     * 获取当前的SMTP配置
+     */
+    public SmtpConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * 获取共享的邮件会话，用于创建邮件消息
+     */
+    public Session getSession() {
+        return session;
+    }
+
+    /**
+     * 获取发件人地址
+     */
+    public String getSender() {
+        return config.user;
+    }
+
+    /**
+     * 使用池中的连接发送邮件
+     * 发送失败时不重发：连接出错时（例如DATA之后服务器的回复丢失）服务器可能已经收下了邮件，
+     * 出错的连接被关闭，由调用方决定是否重试，下一次发送使用新的连接
+     * @param message 邮件消息
+     * @throws MessagingException 发送失败
+     */
+    public void send(Message message) throws MessagingException {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(ACQUIRE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("等待SMTP连接被中断");
+        }
+        if (!acquired) {
+            throw new MessagingException("等待SMTP连接超时");
+        }
+
+        try {
+            // Transport.send会自动调用saveChanges，直接使用连接发送时需要手动调用
+            message.saveChanges();
+            PooledTransport pooled = borrow();
+            try {
+                pooled.transport.sendMessage(message, message.getAllRecipients());
+            } catch (MessagingException e) {
+                failureCount.incrementAndGet();
+                // 收件人地址被拒绝时连接本身仍然可用；服务器断开连接（回复为EOF）时同样抛出SendFailedException，
+                // 放回池中前检查连接是否仍然可用
+                if (e instanceof SendFailedException && pooled.transport.isConnected()) {
+                    release(pooled);
+                } else {
+                    close(pooled);
+                }
+                LogUtil.w(TAG, "SMTP发送失败，不在连接池中重发: " + e.getMessage());
+                throw e;
+            }
+            release(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * 用完的连接放回池中，SMTP配置已变化时直接关闭
+     */
+    private void release(PooledTransport pooled) {
+        if (pooled.session != session) {
+            close(pooled);
+            return;
+        }
+        pooled.lastUsedTime = now();
+        idleTransports.offerFirst(pooled);
+    }
+
+    /**
+     * 从池中取一个可用连接，没有时新建
+     */
+    private PooledTransport borrow() throws MessagingException {
+        PooledTransport pooled;
+        while ((pooled = idleTransports.pollFirst()) != null) {
+            if (pooled.session != session) {
+                close(pooled);
+                continue;
+            }
+            long idleTime = now() - pooled.lastUsedTime;
+            // SMTPTransport.isConnected会向服务器发送NOOP命令检查连接是否可用
+            if (idleTime < NOOP_CHECK_AFTER_MS || pooled.transport.isConnected()) {
+                reuseCount.incrementAndGet();
+                return pooled;
+            }
+            LogUtil.d(TAG, "SMTP连接已失效，空闲时间: " + idleTime + "ms");
+            close(pooled);
+        }
+        return connect();
+    }
+
+    private PooledTransport connect() throws MessagingException {
+        long startTime = System.currentTimeMillis();
+        Session current = session;
+        Transport transport = current.getTransport("smtp");
+        transport.connect();
+        connectCount.incrementAndGet();
+        LogUtil.d(TAG, "已建立新的SMTP连接，耗时: " + (System.currentTimeMillis() - startTime) + "ms");
+        return new PooledTransport(transport, current, now());
+    }
+
+    private void close(PooledTransport pooled) {
+        try {
+            pooled.transport.close();
+        } catch (Exception e) {
+            LogUtil.d(TAG, "关闭SMTP连接失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 关闭空闲超过指定时间的连接
+     * @param idleTimeoutMs 空闲时间阈值，0表示关闭所有空闲连接
+     */
+    public void closeIdleTransports(long idleTimeoutMs) {
+        long now = now();
+        int closed = 0;
+        Iterator<PooledTransport> iterator = idleTransports.iterator();
+        while (iterator.hasNext()) {
+            PooledTransport pooled = iterator.next();
+            if (now - pooled.lastUsedTime >= idleTimeoutMs && idleTransports.remove(pooled)) {
+                close(pooled);
+                closed++;
+            }
+        }
+        if (closed > 0) {
+            LogUtil.d(TAG, "已关闭空闲SMTP连接 " + closed + " 个，" + getStatsSummary());
+        }
+    }
+
+    /**
+     * 获取连接池统计信息
+     */
+    public String getStatsSummary() {
+        return "空闲连接: " + idleTransports.size()
+                + ", 新建连接: " + connectCount.get()
+                + ", 复用连接: " + reuseCount.get()
+                + ", 发送失败: " + failureCount.get();
+    }
+
+    /**
+     * 当前时间，单元测试中覆盖以控制连接的空闲时间
+     */
+    long now() {
+        return System.currentTimeMillis();
+    }
+}
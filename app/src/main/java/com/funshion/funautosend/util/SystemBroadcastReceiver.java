@@ -12,6 +12,7 @@ import com.funshion.funautosend.service.SmsForwardService;
 /**
  * 系统广播接收器，用于监听各种系统广播事件
  * 当接收到特定广播时，自动重启前台服务，提高应用在后台的存活率
+ * 接收器在清单中静态注册，系统广播保活关闭后只处理开机、应用更新和刷新闹钟广播，这些广播不属于保活
  */
 public class SystemBroadcastReceiver extends BroadcastReceiver {
     private static final String TAG = "SystemBroadcastReceiver";
@@ -28,6 +29,15 @@ public class SystemBroadcastReceiver extends BroadcastReceiver {
 
         String action = intent.getAction();
         LogUtil.d(TAG, "接收到广播: " + action);
+        // 刷新闹钟广播属于配置刷新，不计入系统广播保活的开销
+        boolean keepAliveBroadcast = !ACTION_REFRESH_RETRY.equals(action) && !ACTION_REFRESH_DATA.equals(action);
+        if (keepAliveBroadcast && !Intent.ACTION_BOOT_COMPLETED.equals(action)
+                && !Intent.ACTION_PACKAGE_REPLACED.equals(action)
+                && !KeepAliveManager.getInstance(context).isMechanismEnabled(KeepAliveManager.Mechanism.SYSTEM_BROADCAST)) {
+            LogUtil.d(TAG, "系统广播保活已关闭，忽略广播: " + action);
+            return;
+        }
+        long cpuBegin = KeepAliveCostTracker.getInstance().begin();
 
         // 根据不同的广播事件，决定是否需要重启服务
         switch (action) {
@@ -66,32 +76,21 @@ public class SystemBroadcastReceiver extends BroadcastReceiver {
                 break;
                 
             case ACTION_REFRESH_RETRY:
-                // 刷新重试广播
+                // 刷新重试广播（刷新失败后按退避时间安排）
                 LogUtil.d(TAG, "收到刷新重试广播，触发服务刷新操作");
-                // 直接启动服务，服务内部会处理刷新逻辑
-                startSmsForwardService(context);
+                startRefresh(context);
                 break;
                 
             case ACTION_REFRESH_DATA:
                 // 定时刷新数据广播（来自AlarmManager）
                 LogUtil.d(TAG, "收到定时刷新数据广播，触发服务刷新操作");
-                // 启动服务并传递刷新数据的意图
-                Intent refreshIntent = new Intent(context, SmsForwardService.class);
-                // 设置一个标记，让服务知道这是来自AlarmManager的刷新请求
-                refreshIntent.putExtra("FROM_ALARM_MANAGER", true);
-                
-                // 根据Android版本使用不同的启动方式
-                if (android.os.Build.VERSION.SDK_INT >= 26) { // 26对应Android 8.0(O)
-                    // Android 8.0及以上使用startForegroundService
-                    context.startForegroundService(refreshIntent);
-                } else {
-                    // Android 8.0以下使用普通的startService
-                    context.startService(refreshIntent);
-                }
-                
-                LogUtil.d(TAG, "通过AlarmManager触发的刷新服务已启动");
+                startRefresh(context);
                 break;
         }
+        
+        if (keepAliveBroadcast) {
+            KeepAliveCostTracker.getInstance().end(KeepAliveManager.Mechanism.SYSTEM_BROADCAST, cpuBegin);
+        }
     }
 
     /**
@@ -116,6 +115,26 @@ public class SystemBroadcastReceiver extends BroadcastReceiver {
         }
     }
 
+    /**
+     * 启动服务并执行一次刷新，服务内部会合并同时到达的刷新请求
+     */
+    private void startRefresh(Context context) {
+        Intent refreshIntent = new Intent(context, SmsForwardService.class);
+        // 设置一个标记，让服务知道这是来自AlarmManager的刷新请求
+        refreshIntent.putExtra("FROM_ALARM_MANAGER", true);
+        
+        // 根据Android版本使用不同的启动方式
+        if (android.os.Build.VERSION.SDK_INT >= 26) { // 26对应Android 8.0(O)
+            // Android 8.0及以上使用startForegroundService
+            context.startForegroundService(refreshIntent);
+        } else {
+            // Android 8.0以下使用普通的startService
+            context.startService(refreshIntent);
+        }
+        
+        LogUtil.d(TAG, "通过AlarmManager触发的刷新服务已启动");
+    }
+
     /**
      * 检查网络是否连接
      */
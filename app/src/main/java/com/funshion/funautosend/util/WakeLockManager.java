@@ -0,0 +1,233 @@
+package com.funshion.funautosend.util;
+
+import android.content.Context;
+import android.os.PowerManager;
+import com.funshion.funautosend.util.LogUtil;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按任务计数的WakeLock管理
+ * 扫描、刷新、发送和上报任务各自申请一个持有凭证，在任务真正完成（包括异步回调）时释放，
+ * 所有凭证共用一个WakeLock，还有凭证未释放时CPU不会休眠；每个凭证都有超时时间，回调丢失时也不会一直持有。
+ * 同时按任务类型统计持有时间，便于分析唤醒时间花在哪里
+ */
+public class WakeLockManager {
+    private static final String TAG = "WakeLockManager";
+
+    // WakeLock自身的超时时间，每次申请凭证时重新计时，防止计数出错时一直持有
+    private static final long MAX_HOLD_MS = 10 * 60 * 1000;
+
+    private static volatile WakeLockManager instance;
+
+    private final PowerManager.WakeLock wakeLock;
+    private final ScheduledExecutorService timeoutExecutor;
+    private final Object lock = new Object();
+
+    // 未释放的凭证，数量即为WakeLock的引用计数
+    private final Set<Hold> activeHolds = new HashSet<>();
+    // WakeLock本次开始持有的时间
+    private long heldSince;
+
+    // 统计数据
+    private long totalHeldMs;
+    private final long[] acquireCounts = new long[TaskType.values().length];
+    private final long[] heldMs = new long[TaskType.values().length];
+    private final long[] timeoutCounts = new long[TaskType.values().length];
+
+    /**
+     * 持有WakeLock的任务类型
+     */
+    public enum TaskType {
+        SCAN("短信扫描"),
+        REFRESH("配置刷新"),
+        SEND("转发发送"),
+        REPORT("数据上报");
+
+        private final String label;
+
+        TaskType(String label) {
+            this.label = label;
+        }
+    }
+
+    WakeLockManager(Context context) {
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        if (powerManager != null) {
+            // 使用PARTIAL_WAKE_LOCK确保CPU在设备休眠时仍能工作，计数由本类管理
+            wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG + ":WakeLock");
+            wakeLock.setReferenceCounted(false);
+        } else {
+            wakeLock = null;
+        }
+        timeoutExecutor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * 获取单例实例
+     */
+    public static WakeLockManager getInstance(Context context) {
+        if (instance == null) {
+            synchronized (WakeLockManager.class) {
+                if (instance == null) {
+                    instance = new WakeLockManager(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * WakeLock持有凭证，任务完成时调用 {@link #release()}，重复释放没有影响
+     */
+    public final class Hold {
+        private final TaskType type;
+        private final long acquiredAt;
+        private ScheduledFuture<?> timeoutFuture;
+        private boolean released;
+
+        private Hold(TaskType type) {
+            this.type = type;
+            this.acquiredAt = System.currentTimeMillis();
+        }
+
+        /**
+         * 任务完成，释放凭证
+         */
+        public void release() {
+            releaseHold(this, false);
+        }
+    }
+
+    /**
+     * 申请持有WakeLock
+     * @param type 任务类型，用于统计
+     * @param timeoutMs 超时时间，到时间仍未释放时自动释放
+     * @return 持有凭证
+     */
+    public Hold acquire(TaskType type, long timeoutMs) {
+        final Hold hold = new Hold(type);
+        synchronized (lock) {
+            acquireCounts[type.ordinal()]++;
+            if (activeHolds.isEmpty()) {
+                heldSince = hold.acquiredAt;
+            }
+            activeHolds.add(hold);
+            if (wakeLock != null) {
+                try {
+                    // 锁不计数，重复调用只会重新计算超时时间
+                    wakeLock.acquire(MAX_HOLD_MS);
+                } catch (Exception e) {
+                    LogUtil.e(TAG, "获取WakeLock失败: " + e.getMessage());
+                }
+            }
+            hold.timeoutFuture = timeoutExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    releaseHold(hold, true);
+                }
+            }, timeoutMs, TimeUnit.MILLISECONDS);
+        }
+        return hold;
+    }
+
+    private void releaseHold(Hold hold, boolean timedOut) {
+        synchronized (lock) {
+            if (!releaseLocked(hold, System.currentTimeMillis(), timedOut)) {
+                return;
+            }
+        }
+        if (timedOut) {
+            LogUtil.w(TAG, hold.type.label + "任务持有WakeLock超时，已自动释放");
+        }
+    }
+
+    /**
+     * 释放一个凭证，调用时需持有lock
+     * @return 是否真正释放，凭证已释放过时返回false
+     */
+    private boolean releaseLocked(Hold hold, long now, boolean timedOut) {
+        if (hold.released) {
+            return false;
+        }
+        hold.released = true;
+        if (!timedOut && hold.timeoutFuture != null) {
+            hold.timeoutFuture.cancel(false);
+        }
+        int index = hold.type.ordinal();
+        heldMs[index] += now - hold.acquiredAt;
+        if (timedOut) {
+            timeoutCounts[index]++;
+        }
+        activeHolds.remove(hold);
+        if (activeHolds.isEmpty()) {
+            totalHeldMs += now - heldSince;
+            if (wakeLock != null && wakeLock.isHeld()) {
+                try {
+                    wakeLock.release();
+                } catch (Exception e) {
+                    LogUtil.e(TAG, "释放WakeLock失败: " + e.getMessage());
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 释放所有未释放的凭证并取消它们的超时任务，服务销毁时调用
+     * 任务之后再释放自己的凭证不会重复计数
+     */
+    public void releaseAll() {
+        int count;
+        synchronized (lock) {
+            List<Hold> holds = new ArrayList<>(activeHolds);
+            count = holds.size();
+            long now = System.currentTimeMillis();
+            for (Hold hold : holds) {
+                releaseLocked(hold, now, false);
+            }
+        }
+        if (count > 0) {
+            LogUtil.d(TAG, "释放未完成任务的WakeLock凭证: " + count);
+        }
+    }
+
+    /**
+     * 获取当前未释放的凭证数
+     */
+    public int getActiveCount() {
+        synchronized (lock) {
+            return activeHolds.size();
+        }
+    }
+
+    /**
+     * 获取WakeLock持有统计信息
+     */
+    public String getStatsSummary() {
+        synchronized (lock) {
+            long total = totalHeldMs + (!activeHolds.isEmpty() ? System.currentTimeMillis() - heldSince : 0);
+            StringBuilder builder = new StringBuilder();
+            builder.append("总持有: ").append(total / 1000).append("秒, 当前凭证: ").append(activeHolds.size());
+            for (TaskType type : TaskType.values()) {
+                int index = type.ordinal();
+                if (acquireCounts[index] == 0) {
+                    continue;
+                }
+                builder.append(", ").append(type.label).append(": ").append(acquireCounts[index]).append("次/")
+                        .append(heldMs[index] / 1000).append("秒");
+                if (timeoutCounts[index] > 0) {
+                    builder.append("/超时").append(timeoutCounts[index]).append("次");
+                }
+            }
+            return builder.toString();
+        }
+    }
+}
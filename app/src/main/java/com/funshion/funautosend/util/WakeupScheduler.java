@@ -0,0 +1,212 @@
+package com.funshion.funautosend.util;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import com.funshion.funautosend.util.LogUtil;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 统一的定时唤醒调度器
+ * 进程内所有周期性任务（配置刷新、短信扫描等）都注册到这里，执行时间对齐到固定的唤醒时间片，
+ * 同一个时间片内到期的任务在一次唤醒中批量执行，不再由各自的Handler循环分别唤醒；同时统计每小时的唤醒次数
+ */
+public class WakeupScheduler {
+    private static final String TAG = "WakeupScheduler";
+
+    // 唤醒时间片长度，任务的执行时间向上对齐到时间片的整数倍
+    public static final long SLOT_MS = 30 * 1000;
+
+    private static final WakeupScheduler INSTANCE = new WakeupScheduler();
+
+    private final Handler handler;
+    private final Object lock = new Object();
+    private final Map<String, Task> tasks = new LinkedHashMap<>();
+    // 已经安排的下一次唤醒时间（elapsedRealtime），0表示没有安排
+    private long scheduledWakeup;
+
+    // 统计数据
+    private final ArrayDeque<Long> recentWakeups = new ArrayDeque<>();
+    private long wakeupCount;
+    private long taskRunCount;
+
+    private final Runnable wakeupRunnable = new Runnable() {
+        @Override
+        public void run() {
+            onWakeup();
+        }
+    };
+
+    private static class Task {
+        final String name;
+        final Runnable runnable;
+        long intervalMs;
+        long nextRunTime;
+        long runCount;
+
+        Task(String name, long intervalMs, Runnable runnable) {
+            this.name = name;
+            this.intervalMs = intervalMs;
+            this.runnable = runnable;
+        }
+    }
+
+    private WakeupScheduler() {
+        HandlerThread thread = new HandlerThread("WakeupScheduler");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * 获取单例实例
+     */
+    public static WakeupScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 注册周期性任务，同名任务会被替换
+     * 任务在调度器线程中执行，耗时操作需要自行切换到其他线程
+     * @param name 任务名称，用于取消任务和统计
+     * @param intervalMs 执行间隔，实际执行时间会对齐到唤醒时间片
+     * @param runnable 任务内容
+     */
+    public void register(String name, long intervalMs, Runnable runnable) {
+        synchronized (lock) {
+            Task task = new Task(name, intervalMs, runnable);
+            task.nextRunTime = alignToSlot(SystemClock.elapsedRealtime() + intervalMs);
+            tasks.put(name, task);
+        }
+        LogUtil.d(TAG, "注册定时任务: " + name + "，间隔: " + (intervalMs / 1000) + "秒");
+        reschedule();
+    }
+
+    /**
+     * 修改任务的执行间隔，从上一次执行开始重新计算下一次执行时间
+     * @param name 任务名称
+     * @param intervalMs 新的执行间隔
+     */
+    public void setInterval(String name, long intervalMs) {
+        synchronized (lock) {
+            Task task = tasks.get(name);
+            if (task == null || task.intervalMs == intervalMs) {
+                return;
+            }
+            task.nextRunTime = alignToSlot(task.nextRunTime - task.intervalMs + intervalMs);
+            task.intervalMs = intervalMs;
+        }
+        reschedule();
+    }
+
+    /**
+     * 取消任务
+     * @param name 任务名称
+     */
+    public void unregister(String name) {
+        synchronized (lock) {
+            if (tasks.remove(name) == null) {
+                return;
+            }
+        }
+        LogUtil.d(TAG, "取消定时任务: " + name);
+        reschedule();
+    }
+
+    /**
+     * 把时间向上对齐到时间片边界
+     */
+    private static long alignToSlot(long time) {
+        return (time + SLOT_MS - 1) / SLOT_MS * SLOT_MS;
+    }
+
+    private void reschedule() {
+        synchronized (lock) {
+            long next = 0;
+            for (Task task : tasks.values()) {
+                if (next == 0 || task.nextRunTime < next) {
+                    next = task.nextRunTime;
+                }
+            }
+            if (next == scheduledWakeup) {
+                return;
+            }
+            handler.removeCallbacks(wakeupRunnable);
+            scheduledWakeup = next;
+            if (next > 0) {
+                handler.postDelayed(wakeupRunnable, Math.max(0, next - SystemClock.elapsedRealtime()));
+            }
+        }
+    }
+
+    private void onWakeup() {
+        long now = SystemClock.elapsedRealtime();
+        List<Task> dueTasks = new ArrayList<>();
+        synchronized (lock) {
+            scheduledWakeup = 0;
+            for (Task task : tasks.values()) {
+                // 半个时间片内就要到期的任务也在本次唤醒中执行，避免紧接着再唤醒一次
+                if (task.nextRunTime <= now + SLOT_MS / 2) {
+                    dueTasks.add(task);
+                    task.runCount++;
+                    task.nextRunTime = alignToSlot(now + task.intervalMs);
+                }
+            }
+            if (!dueTasks.isEmpty()) {
+                wakeupCount++;
+                taskRunCount += dueTasks.size();
+                recentWakeups.addLast(now);
+                pruneRecentWakeups(now);
+            }
+        }
+
+        for (Task task : dueTasks) {
+            try {
+                task.runnable.run();
+            } catch (Exception e) {
+                LogUtil.e(TAG, "定时任务执行异常: " + task.name + ", " + e.getMessage(), e);
+            }
+        }
+        reschedule();
+    }
+
+    private void pruneRecentWakeups(long now) {
+        Iterator<Long> iterator = recentWakeups.iterator();
+        while (iterator.hasNext() && now - iterator.next() > 60 * 60 * 1000) {
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 获取最近一小时的唤醒次数
+     */
+    public int getWakeupsLastHour() {
+        synchronized (lock) {
+            pruneRecentWakeups(SystemClock.elapsedRealtime());
+            return recentWakeups.size();
+        }
+    }
+
+    /**
+     * 获取唤醒统计信息
+     */
+    public String getStatsSummary() {
+        synchronized (lock) {
+            pruneRecentWakeups(SystemClock.elapsedRealtime());
+            StringBuilder builder = new StringBuilder();
+            builder.append("最近一小时唤醒: ").append(recentWakeups.size())
+                    .append(", 总唤醒: ").append(wakeupCount)
+                    .append(", 任务执行: ").append(taskRunCount);
+            for (Task task : tasks.values()) {
+                builder.append(", ").append(task.name).append(": ").append(task.runCount)
+                        .append("次/").append(task.intervalMs / 1000).append("秒");
+            }
+            return builder.toString();
+        }
+    }
+}
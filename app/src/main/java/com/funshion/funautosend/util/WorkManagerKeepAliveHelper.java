@@ -18,6 +18,8 @@ import java.util.concurrent.TimeUnit;
 /**
  * WorkManager保活助手类
  * 负责管理WorkManager的定期任务调度，用于应用保活
+ * 定期任务的作用是进程被杀后由系统重新拉起，不能改为进程内的 {@link WakeupScheduler} 任务；
+ * 系统会把WorkManager任务与其他应用的任务合并执行，15分钟的间隔也远大于唤醒时间片
  */
 public class WorkManagerKeepAliveHelper {
     private static final String TAG = "WorkManagerKeepAliveHelper";
@@ -0,0 +1,41 @@
+package com.funshion.funautosend.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PipelineMetrics 停滞时间计算测试
+ */
+public class PipelineMetricsTest {
+    @Test
+    public void idleMeasuredFromLastScan() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        metrics.processStartUptime = 1_000;
+        metrics.lastScanUptime = 50_000;
+        assertEquals(30_000, metrics.getStallIdleUptimeMs(80_000));
+    }
+
+    @Test
+    public void idleMeasuredFromProcessStartBeforeFirstScan() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        metrics.processStartUptime = 1_000;
+        assertEquals(79_000, metrics.getStallIdleUptimeMs(80_000));
+    }
+
+    @Test
+    public void idleUnknownWithoutScanOrStartTime() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        assertEquals(-1, metrics.getStallIdleUptimeMs(80_000));
+        assertEquals(-1, metrics.getScanIdleUptimeMs());
+    }
+
+    @Test
+    public void summaryShowsUnscannedAndNoLatency() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        String summary = metrics.toString();
+        assertTrue(summary.contains("距上次扫描: 未扫描"));
+        assertTrue(summary.contains("最近转发耗时: 无"));
+    }
+}
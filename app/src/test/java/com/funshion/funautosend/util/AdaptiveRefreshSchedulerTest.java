@@ -0,0 +1,141 @@
+package com.funshion.funautosend.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * AdaptiveRefreshScheduler 退避与重置测试
+ */
+public class AdaptiveRefreshSchedulerTest {
+    private static final long MIN = AdaptiveRefreshScheduler.MIN_INTERVAL_MS;
+    private static final long DEFAULT_MAX = 15 * 60 * 1000L;
+
+    private TestContext context;
+    private AdaptiveRefreshScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        LogUtil.setLogEnabled(false);
+        context = new TestContext();
+        scheduler = new AdaptiveRefreshScheduler(context);
+    }
+
+    @Test
+    public void startsAtMinimumInterval() {
+        assertEquals(MIN, scheduler.getNextIntervalMs());
+    }
+
+    @Test
+    public void firstRefreshCountsAsChanged() {
+        assertTrue(scheduler.onRefreshSuccess(123));
+        assertEquals(MIN, scheduler.getNextIntervalMs());
+    }
+
+    @Test
+    public void doublesWhileUnchangedUpToDefaultMax() {
+        scheduler.onRefreshSuccess(123);
+        long[] expected = {2 * MIN, 4 * MIN, 8 * MIN, DEFAULT_MAX, DEFAULT_MAX};
+        for (long interval : expected) {
+            assertFalse(scheduler.onRefreshSuccess(123));
+            assertEquals(interval, scheduler.getNextIntervalMs());
+        }
+    }
+
+    @Test
+    public void changeResetsToMinimum() {
+        scheduler.onRefreshSuccess(123);
+        scheduler.onRefreshSuccess(123);
+        scheduler.onRefreshSuccess(123);
+        assertEquals(4 * MIN, scheduler.getNextIntervalMs());
+
+        assertTrue(scheduler.onRefreshSuccess(456));
+        assertEquals(MIN, scheduler.getNextIntervalMs());
+        assertFalse(scheduler.onRefreshSuccess(456));
+        assertEquals(2 * MIN, scheduler.getNextIntervalMs());
+    }
+
+    @Test
+    public void configChangeSignalResetsToMinimum() {
+        scheduler.onRefreshSuccess(123);
+        scheduler.onRefreshSuccess(123);
+        scheduler.onRefreshSuccess(123);
+        scheduler.onConfigChangeSignal();
+        assertEquals(MIN, scheduler.getNextIntervalMs());
+        // 通知不改变配置指纹，下一次相同配置继续退避
+        assertFalse(scheduler.onRefreshSuccess(123));
+        assertEquals(2 * MIN, scheduler.getNextIntervalMs());
+    }
+
+    @Test
+    public void respectsConfiguredMax() {
+        PreferencesHelper.saveMaxRefreshInterval(context, 150);
+        scheduler.onRefreshSuccess(123);
+        scheduler.onRefreshSuccess(123);
+        assertEquals(2 * MIN, scheduler.getNextIntervalMs());
+        scheduler.onRefreshSuccess(123);
+        assertEquals(150 * 1000L, scheduler.getNextIntervalMs());
+    }
+
+    @Test
+    public void configuredMaxNeverBelowMinimum() {
+        PreferencesHelper.saveMaxRefreshInterval(context, 10);
+        scheduler.onRefreshSuccess(123);
+        scheduler.onRefreshSuccess(123);
+        assertEquals(MIN, scheduler.getNextIntervalMs());
+    }
+
+    @Test
+    public void pushActiveUsesMaxInterval() {
+        scheduler.setPushActive(true);
+        assertEquals(DEFAULT_MAX, scheduler.getNextIntervalMs());
+        assertTrue(scheduler.getStatsSummary().contains("长轮询可用"));
+
+        scheduler.setPushActive(false);
+        assertEquals(MIN, scheduler.getNextIntervalMs());
+    }
+
+    @Test
+    public void listenerNotifiedWhenIntervalChanges() {
+        final List<Long> intervals = new ArrayList<>();
+        scheduler.setIntervalListener(new AdaptiveRefreshScheduler.IntervalListener() {
+            @Override
+            public void onIntervalChanged(long intervalMs) {
+                intervals.add(intervalMs);
+            }
+        });
+        // 第一次刷新间隔保持最短，不通知
+        scheduler.onRefreshSuccess(123);
+        scheduler.onRefreshSuccess(123);
+        scheduler.onRefreshSuccess(123);
+        scheduler.onConfigChangeSignal();
+        scheduler.onConfigChangeSignal();
+        scheduler.setPushActive(true);
+        scheduler.onRefreshSuccess(456);
+        scheduler.setPushActive(false);
+        assertEquals(Arrays.asList(2 * MIN, 4 * MIN, MIN, DEFAULT_MAX, MIN), intervals);
+
+        scheduler.setIntervalListener(null);
+        scheduler.onRefreshSuccess(456);
+        assertEquals(5, intervals.size());
+    }
+
+    @Test
+    public void statsCountRefreshesAndChanges() {
+        scheduler.onRefresh();
+        scheduler.onRefreshSuccess(1);
+        scheduler.onRefresh();
+        scheduler.onRefreshSuccess(1);
+        scheduler.onRefresh();
+        scheduler.onRefreshSuccess(2);
+        assertEquals(0, scheduler.getSavedWakeups());
+        assertEquals("当前间隔: 60秒, 已刷新: 3, 配置变化: 2, 节省唤醒: 0", scheduler.getStatsSummary());
+    }
+}
@@ -0,0 +1,126 @@
+package com.funshion.funautosend.util;
+
+import android.content.SharedPreferences;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CombinedReportCollector 等待合并结果的持久化与恢复测试
+ */
+public class CombinedReportCollectorTest {
+    private static final String KEY = CombinedReportCollector.reportKey("7", "42");
+
+    private TestContext context;
+    // 交给上报队列的数据，合并上报记为"合并"，单独上报记为"短信"或"邮件"
+    private final LinkedBlockingQueue<String> reported = new LinkedBlockingQueue<>();
+    private long now = 1_000_000L;
+
+    @Before
+    public void setUp() {
+        LogUtil.setLogEnabled(false);
+        context = new TestContext();
+    }
+
+    @Test
+    public void bothHalvesReportedAsOne() {
+        CombinedReportCollector collector = newCollector();
+        collector.onSmsResult(KEY, sms());
+        assertNull(reported.poll());
+        collector.onEmailResult(KEY, email());
+        assertEquals("合并", reported.poll());
+        assertNull(reported.poll());
+        assertNull(prefs().getString("pending_" + KEY, null));
+    }
+
+    @Test
+    public void pendingHalfSurvivesRestart() {
+        newCollector().onSmsResult(KEY, sms());
+        assertNotNull(prefs().getString("pending_" + KEY, null));
+
+        // 进程重启后恢复等待中的短信结果，邮件结果到达后仍合并上报
+        now += 30_000;
+        CombinedReportCollector restored = newCollector();
+        assertTrue(restored.getStatsSummary().startsWith("等待合并: 1"));
+        restored.onEmailResult(KEY, email());
+        assertEquals("合并", reported.poll());
+        assertNull(reported.poll());
+        assertNull(prefs().getString("pending_" + KEY, null));
+    }
+
+    @Test
+    public void expiredHalfReportedSeparatelyOnRestart() {
+        newCollector().onEmailResult(KEY, email());
+
+        // 重启时已超过等待时间，直接单独上报
+        now += 61_000;
+        CombinedReportCollector restored = newCollector();
+        assertEquals("邮件", reported.poll());
+        assertNull(reported.poll());
+        assertTrue(restored.getStatsSummary().startsWith("等待合并: 0"));
+        assertNull(prefs().getString("pending_" + KEY, null));
+    }
+
+    @Test
+    public void restoredHalfTimesOutForRemainingTime() throws Exception {
+        newCollector().onSmsResult(KEY, sms());
+
+        // 重启时只剩下不到1秒的等待时间
+        now += 59_500;
+        newCollector();
+        assertEquals("短信", reported.poll(5, TimeUnit.SECONDS));
+        waitForRemoved();
+    }
+
+    private CombinedReportCollector newCollector() {
+        return new CombinedReportCollector(context) {
+            @Override
+            void reportCombined(ApiClient.SmsReportRequest sms, ApiClient.EmailReportRequest email) {
+                reported.add("合并");
+            }
+
+            @Override
+            void reportSeparately(ApiClient.SmsReportRequest sms, ApiClient.EmailReportRequest email) {
+                if (sms != null) {
+                    reported.add("短信");
+                }
+                if (email != null) {
+                    reported.add("邮件");
+                }
+            }
+
+            @Override
+            long now() {
+                return now;
+            }
+        };
+    }
+
+    private SharedPreferences prefs() {
+        return context.getSharedPreferences("CombinedReportPrefs", 0);
+    }
+
+    private void waitForRemoved() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (prefs().getString("pending_" + KEY, null) != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNull(prefs().getString("pending_" + KEY, null));
+    }
+
+    private static ApiClient.SmsReportRequest sms() {
+        return new ApiClient.SmsReportRequest(7, "13800000000", "95588", "10:00", "余额变动", "10:01", 1, "sms");
+    }
+
+    private static ApiClient.EmailReportRequest email() {
+        return new ApiClient.EmailReportRequest(7, "13800000000", "95588", "10:00", "余额变动", "10:01", 1, "email");
+    }
+}
@@ -0,0 +1,132 @@
+package com.funshion.funautosend.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ConfigLongPollChannel 长轮询协议测试
+ */
+public class ConfigLongPollChannelTest {
+    private static final String CONFIG = "{\"data\":[]}";
+
+    private MockWebServer server;
+    private TestContext context;
+    private ConfigLongPollChannel channel;
+    private final LinkedBlockingQueue<ConfigRepository.ConfigSnapshot> changes = new LinkedBlockingQueue<>();
+    private final ConfigLongPollChannel.ConfigListener listener = new ConfigLongPollChannel.ConfigListener() {
+        @Override
+        public void onConfigChanged(ConfigRepository.ConfigSnapshot snapshot) {
+            changes.add(snapshot);
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        LogUtil.setLogEnabled(false);
+        server = new MockWebServer();
+        server.start();
+        context = new TestContext();
+        PreferencesHelper.savePhoneNumbers(context, "13800000000", "");
+        channel = new ConfigLongPollChannel(context, server.url("/smsForwardConfigWatch").toString());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        channel.stop();
+        server.shutdown();
+    }
+
+    @Test
+    public void disabledByDefault() throws InterruptedException {
+        channel.start(listener);
+        assertNull(server.takeRequest(300, TimeUnit.MILLISECONDS));
+        assertFalse(channel.isConnected());
+    }
+
+    @Test
+    public void configChangeDeliveredAndVersionSentBack() throws InterruptedException {
+        PreferencesHelper.setConfigLongPollEnabled(context, true);
+        server.enqueue(new MockResponse().setHeader("X-Config-Version", "v1").setBody(CONFIG));
+        // 第二次请求由服务器挂起
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        channel.start(listener);
+
+        RecordedRequest first = server.takeRequest(5, TimeUnit.SECONDS);
+        assertNotNull(first);
+        assertEquals("", first.getRequestUrl().queryParameter("version"));
+        assertEquals("13800000000", first.getRequestUrl().queryParameter("phones"));
+        assertEquals("60", first.getRequestUrl().queryParameter("timeout"));
+        assertNotNull(first.getHeader("Authorization"));
+        assertNotNull(changes.poll(5, TimeUnit.SECONDS));
+
+        RecordedRequest second = server.takeRequest(5, TimeUnit.SECONDS);
+        assertNotNull(second);
+        assertEquals("v1", second.getRequestUrl().queryParameter("version"));
+        assertTrue(channel.isConnected());
+        assertTrue(channel.getStatsSummary().contains("配置变化: 1, 版本: v1"));
+    }
+
+    @Test
+    public void versionReadFromBodyWithoutHeader() throws InterruptedException {
+        PreferencesHelper.setConfigLongPollEnabled(context, true);
+        server.enqueue(new MockResponse().setBody("{\"version\":\"42\",\"data\":[]}"));
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        channel.start(listener);
+
+        assertNotNull(changes.poll(5, TimeUnit.SECONDS));
+        server.takeRequest(5, TimeUnit.SECONDS);
+        RecordedRequest second = server.takeRequest(5, TimeUnit.SECONDS);
+        assertNotNull(second);
+        assertEquals("42", second.getRequestUrl().queryParameter("version"));
+    }
+
+    @Test
+    public void unsupportedServerStopsPolling() throws InterruptedException {
+        PreferencesHelper.setConfigLongPollEnabled(context, true);
+        server.enqueue(new MockResponse().setResponseCode(404));
+        channel.start(listener);
+
+        assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+        assertNull(server.takeRequest(500, TimeUnit.MILLISECONDS));
+        assertFalse(channel.isConnected());
+        assertNull(changes.poll());
+    }
+
+    @Test
+    public void responseWithoutVersionStopsPolling() throws InterruptedException {
+        PreferencesHelper.setConfigLongPollEnabled(context, true);
+        server.enqueue(new MockResponse().setBody(CONFIG));
+        channel.start(listener);
+
+        assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+        assertNull(server.takeRequest(500, TimeUnit.MILLISECONDS));
+        assertFalse(channel.isConnected());
+        assertNull(changes.poll());
+    }
+
+    @Test
+    public void parseVersion() {
+        assertEquals("v2", ConfigLongPollChannel.parseVersion("{\"version\":\"v2\"}"));
+        assertEquals("5", ConfigLongPollChannel.parseVersion("{\"version\":5}"));
+        assertNull(ConfigLongPollChannel.parseVersion("{\"version\":null}"));
+        assertNull(ConfigLongPollChannel.parseVersion("{\"data\":[]}"));
+        assertNull(ConfigLongPollChannel.parseVersion("[]"));
+        assertNull(ConfigLongPollChannel.parseVersion("not json"));
+    }
+}
@@ -0,0 +1,219 @@
+package com.funshion.funautosend.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ConfigRefreshCoordinator 请求合并与失败退避测试
+ */
+public class ConfigRefreshCoordinatorTest {
+    private TestContext context;
+    private long now = 1_000_000L;
+    // 已发起但还没有结果的配置请求
+    private final List<ApiClient.ConfigCallback> fetches = new ArrayList<>();
+    private ConfigRefreshCoordinator coordinator;
+
+    @Before
+    public void setUp() {
+        LogUtil.setLogEnabled(false);
+        context = new TestContext();
+        coordinator = new ConfigRefreshCoordinator(context) {
+            @Override
+            void fetchConfig(ApiClient.ConfigCallback callback) {
+                fetches.add(callback);
+            }
+
+            @Override
+            long now() {
+                return now;
+            }
+        };
+    }
+
+    @Test
+    public void concurrentRefreshesJoinInFlightRequest() {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        assertTrue(coordinator.refresh("定时", false, first));
+        assertTrue(coordinator.refresh("界面", true, second));
+        assertTrue(coordinator.refresh("闹钟", false, null));
+        assertEquals(1, fetches.size());
+        assertTrue(coordinator.getStatsSummary().endsWith("请求进行中"));
+
+        ConfigRepository.ConfigSnapshot snapshot = snapshot();
+        fetches.get(0).onSuccess(snapshot);
+        assertSame(snapshot, first.snapshot);
+        assertSame(snapshot, second.snapshot);
+        assertEquals("请求: 1, 合并: 2, 跳过: 0, 失败: 0", coordinator.getStatsSummary());
+    }
+
+    @Test
+    public void failureDeliveredToAllWaiters() {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        coordinator.refresh("定时", false, first);
+        coordinator.refresh("网络恢复", false, second);
+        fetches.get(0).onFailure("timeout");
+        assertEquals("timeout", first.error);
+        assertEquals("timeout", second.error);
+        assertEquals(1, coordinator.getFailureCount());
+    }
+
+    @Test
+    public void throwingWaiterDoesNotBlockOthers() {
+        RecordingCallback before = new RecordingCallback();
+        RecordingCallback after = new RecordingCallback();
+        coordinator.refresh("定时", false, before);
+        coordinator.refresh("界面", true, new RecordingCallback() {
+            @Override
+            public void onSuccess(ConfigRepository.ConfigSnapshot snapshot) {
+                throw new IllegalStateException("boom");
+            }
+        });
+        coordinator.refresh("闹钟", false, after);
+
+        ConfigRepository.ConfigSnapshot snapshot = snapshot();
+        fetches.get(0).onSuccess(snapshot);
+        assertSame(snapshot, before.snapshot);
+        assertSame(snapshot, after.snapshot);
+    }
+
+    @Test
+    public void secondCompletionIgnored() {
+        RecordingCallback waiter = new RecordingCallback();
+        coordinator.refresh("定时", false, waiter);
+        ApiClient.ConfigCallback fetch = fetches.get(0);
+        fetch.onSuccess(snapshot());
+        // 请求方在回调出错后又回调失败
+        fetch.onFailure("处理响应失败");
+        assertEquals(1, waiter.calls);
+        assertEquals(0, coordinator.getFailureCount());
+        assertEquals(10_000, coordinator.getRetryDelayMs());
+    }
+
+    @Test
+    public void staleCompletionDoesNotFinishNewerRequest() {
+        coordinator.refresh("定时", false, null);
+        ApiClient.ConfigCallback stale = fetches.get(0);
+        stale.onSuccess(snapshot());
+
+        RecordingCallback waiter = new RecordingCallback();
+        coordinator.refresh("界面", true, waiter);
+        stale.onFailure("error");
+        assertEquals(0, waiter.calls);
+        assertTrue(coordinator.getStatsSummary().endsWith("请求进行中"));
+
+        fetches.get(1).onSuccess(snapshot());
+        assertEquals(1, waiter.calls);
+    }
+
+    @Test
+    public void refreshSkippedWithinMinSpacing() {
+        coordinator.refresh("定时", false, null);
+        fetches.get(0).onSuccess(snapshot());
+
+        RecordingCallback skipped = new RecordingCallback();
+        now += 9_999;
+        assertFalse(coordinator.refresh("定时", false, skipped));
+        assertEquals(1, fetches.size());
+        assertEquals(0, skipped.calls);
+
+        now += 1;
+        assertTrue(coordinator.refresh("定时", false, null));
+        assertEquals(2, fetches.size());
+    }
+
+    @Test
+    public void forceBypassesSpacingAndBackoff() {
+        coordinator.refresh("定时", false, null);
+        fetches.get(0).onSuccess(snapshot());
+        assertTrue(coordinator.refresh("界面", true, null));
+        assertEquals(2, fetches.size());
+
+        fetches.get(1).onFailure("error");
+        assertTrue(coordinator.refresh("界面", true, null));
+        assertEquals(3, fetches.size());
+    }
+
+    @Test
+    public void failuresBackOffWithJitter() {
+        coordinator.refresh("定时", false, null);
+        fetches.get(0).onFailure("error");
+        long firstDelay = coordinator.getRetryDelayMs();
+        assertInRange(firstDelay, 5_000, 10_000);
+        assertFalse(coordinator.refresh("定时", false, null));
+
+        now += firstDelay;
+        assertTrue(coordinator.refresh("定时", false, null));
+        fetches.get(1).onFailure("error");
+        assertInRange(coordinator.getRetryDelayMs(), 10_000, 20_000);
+
+        now += coordinator.getRetryDelayMs();
+        coordinator.refresh("定时", false, null);
+        fetches.get(2).onFailure("error");
+        assertInRange(coordinator.getRetryDelayMs(), 20_000, 40_000);
+    }
+
+    @Test
+    public void backoffIsCapped() {
+        for (int i = 0; i < 15; i++) {
+            coordinator.refresh("界面", true, null);
+            fetches.get(i).onFailure("error");
+        }
+        assertInRange(coordinator.getRetryDelayMs(), 5 * 60 * 1000, 10 * 60 * 1000);
+        assertEquals(15, coordinator.getFailureCount());
+    }
+
+    @Test
+    public void successResetsBackoff() {
+        coordinator.refresh("定时", false, null);
+        fetches.get(0).onFailure("error");
+        coordinator.refresh("界面", true, null);
+        fetches.get(1).onFailure("error");
+        coordinator.refresh("界面", true, null);
+        fetches.get(2).onSuccess(snapshot());
+        assertEquals(10_000, coordinator.getRetryDelayMs());
+
+        now += 10_000;
+        coordinator.refresh("定时", false, null);
+        fetches.get(3).onFailure("error");
+        assertInRange(coordinator.getRetryDelayMs(), 5_000, 10_000);
+    }
+
+    private static void assertInRange(long value, long min, long maxExclusive) {
+        assertTrue(value + " 不在 [" + min + ", " + maxExclusive + ") 范围内", value >= min && value < maxExclusive);
+    }
+
+    private static ConfigRepository.ConfigSnapshot snapshot() {
+        List<Map<String, Object>> empty = Collections.emptyList();
+        return new ConfigRepository.ConfigSnapshot(empty, empty, 0);
+    }
+
+    private static class RecordingCallback implements ApiClient.ConfigCallback {
+        ConfigRepository.ConfigSnapshot snapshot;
+        String error;
+        int calls;
+
+        @Override
+        public void onSuccess(ConfigRepository.ConfigSnapshot snapshot) {
+            this.snapshot = snapshot;
+            calls++;
+        }
+
+        @Override
+        public void onFailure(String error) {
+            this.error = error;
+            calls++;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.funshion.funautosend.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单元测试使用的本地SMTP服务
+ * 只实现发送邮件用到的命令（EHLO、AUTH LOGIN/PLAIN、MAIL、RCPT、DATA、NOOP、RSET、QUIT），明文连接，
+ * 可以模拟建立连接的耗时、收下邮件后丢失回复以及服务器关闭空闲连接
+ */
+class LocalSmtpServer {
+    private final ServerSocket serverSocket;
+    private final List<Socket> clients = new CopyOnWriteArrayList<>();
+    private final List<String> messages = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+
+    // 每个新连接发送欢迎信息前等待的时间，模拟TLS握手和登录认证的耗时
+    volatile long connectDelayMs;
+    // 收下邮件内容后不回复并断开连接，模拟DATA之后回复丢失
+    volatile boolean dropReplyAfterData;
+
+    LocalSmtpServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptLoop();
+            }
+        }, "LocalSmtpServer");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * 已建立的连接数
+     */
+    int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * 已收下的邮件内容（包括丢失了回复的邮件）
+     */
+    List<String> getMessages() {
+        return new ArrayList<>(messages);
+    }
+
+    /**
+     * 由服务器关闭所有客户端连接，模拟服务器关闭空闲连接
+     */
+    void closeClients() {
+        for (Socket client : clients) {
+            closeQuietly(client);
+        }
+        clients.clear();
+    }
+
+    void shutdown() {
+        closeQuietly(serverSocket);
+        closeClients();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            final Socket client;
+            try {
+                client = serverSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            connectionCount.incrementAndGet();
+            clients.add(client);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        serve(client);
+                    } catch (IOException | InterruptedException e) {
+                        // 连接被任一方关闭
+                    } finally {
+                        clients.remove(client);
+                        closeQuietly(client);
+                    }
+                }
+            }, "LocalSmtpClient");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void serve(Socket client) throws IOException, InterruptedException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.US_ASCII));
+        OutputStream out = client.getOutputStream();
+        if (connectDelayMs > 0) {
+            Thread.sleep(connectDelayMs);
+        }
+        reply(out, "220 localhost ESMTP");
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String command = line.toUpperCase();
+            if (command.startsWith("EHLO")) {
+                reply(out, "250-localhost\r\n250-AUTH LOGIN PLAIN\r\n250 8BITMIME");
+            } else if (command.startsWith("HELO")) {
+                reply(out, "250 localhost");
+            } else if (command.equals("AUTH LOGIN")) {
+                reply(out, "334 VXNlcm5hbWU6");
+                reader.readLine();
+                reply(out, "334 UGFzc3dvcmQ6");
+                reader.readLine();
+                reply(out, "235 2.7.0 Authentication successful");
+            } else if (command.startsWith("AUTH PLAIN")) {
+                if (command.equals("AUTH PLAIN")) {
+                    reply(out, "334 ");
+                    reader.readLine();
+                }
+                reply(out, "235 2.7.0 Authentication successful");
+            } else if (command.startsWith("MAIL") || command.startsWith("RCPT")
+                    || command.startsWith("NOOP") || command.startsWith("RSET")) {
+                reply(out, "250 OK");
+            } else if (command.equals("DATA")) {
+                reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                StringBuilder data = new StringBuilder();
+                while ((line = reader.readLine()) != null && !line.equals(".")) {
+                    data.append(line).append("\n");
+                }
+                messages.add(data.toString());
+                if (dropReplyAfterData) {
+                    return;
+                }
+                reply(out, "250 OK queued");
+            } else if (command.startsWith("QUIT")) {
+                reply(out, "221 Bye");
+                return;
+            } else {
+                reply(out, "502 Command not implemented");
+            }
+        }
+    }
+
+    private static void reply(OutputStream out, String response) throws IOException {
+        out.write((response + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // 忽略
+        }
+    }
+}
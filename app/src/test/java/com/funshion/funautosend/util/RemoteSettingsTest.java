@@ -0,0 +1,122 @@
+package com.funshion.funautosend.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * RemoteSettings 规则字段解析与设置下发测试
+ */
+public class RemoteSettingsTest {
+    private TestContext context;
+
+    @Before
+    public void setUp() {
+        LogUtil.setLogEnabled(false);
+        context = new TestContext();
+    }
+
+    @Test
+    public void findFieldUsesFirstRuleWithValue() {
+        List<Map<String, Object>> rules = Arrays.asList(
+                rule("remark", "无"), rule("audioLowDuty", " "), rule("audioLowDuty", " 0 "), rule("audioLowDuty", "1"));
+        assertEquals("0", RemoteSettings.findField(rules, "audioLowDuty"));
+        assertNull(RemoteSettings.findField(rules, "reportBatch"));
+    }
+
+    @Test
+    public void ruleWithoutFieldsIgnored() {
+        Map<String, Object> rule = new HashMap<>();
+        rule.put("fields", "not a map");
+        assertNull(RemoteSettings.findField(Arrays.asList(rule, new HashMap<String, Object>()), "audioLowDuty"));
+    }
+
+    @Test
+    public void booleanFieldParsing() {
+        assertTrue(RemoteSettings.findBooleanField(rules("audioLowDuty", "1"), "audioLowDuty"));
+        assertTrue(RemoteSettings.findBooleanField(rules("audioLowDuty", "TRUE"), "audioLowDuty"));
+        assertFalse(RemoteSettings.findBooleanField(rules("audioLowDuty", "0"), "audioLowDuty"));
+        assertFalse(RemoteSettings.findBooleanField(rules("audioLowDuty", "false"), "audioLowDuty"));
+        assertNull(RemoteSettings.findBooleanField(rules("audioLowDuty", "yes"), "audioLowDuty"));
+        assertNull(RemoteSettings.findBooleanField(rules(), "audioLowDuty"));
+    }
+
+    @Test
+    public void intFieldParsing() {
+        assertEquals(Integer.valueOf(600), RemoteSettings.findIntField(rules("maxRefreshInterval", "600"), "maxRefreshInterval"));
+        assertEquals(Integer.valueOf(600), RemoteSettings.findIntField(rules("maxRefreshInterval", "600.0"), "maxRefreshInterval"));
+        assertNull(RemoteSettings.findIntField(rules("maxRefreshInterval", "10分钟"), "maxRefreshInterval"));
+    }
+
+    @Test
+    public void audioLowDutySwitchApplied() {
+        assertTrue(PreferencesHelper.isAudioLowDutyEnabled(context));
+        RemoteSettings.apply(context, rules("audioLowDuty", "0"));
+        assertFalse(PreferencesHelper.isAudioLowDutyEnabled(context));
+        // 格式错误时保留当前设置
+        RemoteSettings.apply(context, rules("audioLowDuty", "off"));
+        assertFalse(PreferencesHelper.isAudioLowDutyEnabled(context));
+        RemoteSettings.apply(context, rules("audioLowDuty", "true"));
+        assertTrue(PreferencesHelper.isAudioLowDutyEnabled(context));
+    }
+
+    @Test
+    public void missingFieldsKeepLocalSettings() {
+        PreferencesHelper.setAudioLowDutyEnabled(context, false);
+        PreferencesHelper.saveMaxRefreshInterval(context, 300);
+        RemoteSettings.apply(context, rules("remark", "无"));
+        assertFalse(PreferencesHelper.isAudioLowDutyEnabled(context));
+        assertEquals(300, PreferencesHelper.getMaxRefreshInterval(context));
+    }
+
+    @Test
+    public void maxRefreshIntervalMustBePositive() {
+        RemoteSettings.apply(context, rules("maxRefreshInterval", "0"));
+        assertEquals(15 * 60, PreferencesHelper.getMaxRefreshInterval(context));
+        RemoteSettings.apply(context, rules("maxRefreshInterval", "1800"));
+        assertEquals(1800, PreferencesHelper.getMaxRefreshInterval(context));
+    }
+
+    @Test
+    public void emailDigestFieldsMergedAndClamped() {
+        PreferencesHelper.saveEmailDigestConfig(context, 30, 90, 10, 4096);
+        RemoteSettings.apply(context, rules("emailDigestWindow", "60", "emailDigestMaxEntries", "0"));
+        assertEquals(60, PreferencesHelper.getEmailDigestWindow(context));
+        assertEquals(90, PreferencesHelper.getEmailDigestMaxDelay(context));
+        assertEquals(1, PreferencesHelper.getEmailDigestMaxEntries(context));
+        assertEquals(4096, PreferencesHelper.getEmailDigestMaxBytes(context));
+    }
+
+    @Test
+    public void emptyRuleListIgnored() {
+        RemoteSettings.apply(context, null);
+        RemoteSettings.apply(context, new ArrayList<Map<String, Object>>());
+        assertTrue(PreferencesHelper.isAudioLowDutyEnabled(context));
+    }
+
+    private static List<Map<String, Object>> rules(String... keyValues) {
+        List<Map<String, Object>> rules = new ArrayList<>();
+        rules.add(rule(keyValues));
+        return rules;
+    }
+
+    private static Map<String, Object> rule(String... keyValues) {
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            fields.put(keyValues[i], keyValues[i + 1]);
+        }
+        Map<String, Object> rule = new HashMap<>();
+        rule.put("fields", fields);
+        return rule;
+    }
+}
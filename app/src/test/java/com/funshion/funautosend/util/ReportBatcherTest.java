@@ -0,0 +1,237 @@
+package com.funshion.funautosend.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.GzipSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ReportBatcher 批量编码与退回逐条上报测试
+ */
+public class ReportBatcherTest {
+    private static final String BATCH_PATH = "/reportSmsForwardBatch";
+    private static final String REPORT_PATH = "/reportSmsForward";
+
+    private MockWebServer server;
+    private TestContext context;
+    private ReportBatcher batcher;
+    private final LinkedBlockingQueue<Result> results = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() throws IOException {
+        LogUtil.setLogEnabled(false);
+        server = new MockWebServer();
+        server.start();
+        context = new TestContext();
+        batcher = new ReportBatcher(context, server.url(BATCH_PATH).toString(), server.url(REPORT_PATH).toString());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void batchIsGzippedJsonArray() throws Exception {
+        server.enqueue(new MockResponse().setBody("{\"code\":0}"));
+
+        send(report("k1", "{\"smsId\":\"1\"}"), report("k2", "{\"smsId\":\"2\",\"content\":\"验证码\"}"));
+        Result result = awaitResult();
+        assertTrue(result.success);
+        assertEquals("{\"code\":0}", result.message);
+
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals(BATCH_PATH, request.getPath());
+        assertEquals("POST", request.getMethod());
+        assertEquals("gzip", request.getHeader("Content-Encoding"));
+        assertEquals("k1,k2", request.getHeader("Idempotency-Key"));
+        assertNotNull(request.getHeader("Authorization"));
+        assertEquals("[{\"smsId\":\"1\"},{\"smsId\":\"2\",\"content\":\"验证码\"}]", gunzip(request.getBody()));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void unsupportedBatchFallsBackToIndividualPosts() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(new MockResponse().setBody("ok"));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        send(report("k1", "{\"smsId\":\"1\"}"), report("k2", "{\"smsId\":\"2\"}"));
+        Result result = awaitResult();
+        assertTrue(result.success);
+        assertEquals("ok", result.message);
+
+        assertEquals(BATCH_PATH, server.takeRequest(5, TimeUnit.SECONDS).getPath());
+        Set<String> bodies = new HashSet<>();
+        Set<String> keys = new HashSet<>();
+        for (int i = 0; i < 2; i++) {
+            RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+            assertEquals(REPORT_PATH, request.getPath());
+            assertNull(request.getHeader("Content-Encoding"));
+            keys.add(request.getHeader("Idempotency-Key"));
+            bodies.add(request.getBody().readUtf8());
+        }
+        assertEquals(new HashSet<>(Arrays.asList("k1", "k2")), keys);
+        assertEquals(new HashSet<>(Arrays.asList("{\"smsId\":\"1\"}", "{\"smsId\":\"2\"}")), bodies);
+    }
+
+    @Test
+    public void unsupportedBatchIsNotRetriedImmediately() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(415));
+        server.enqueue(new MockResponse().setBody("ok"));
+        server.enqueue(new MockResponse().setBody("ok"));
+        send(report("k1", "{}"), report("k2", "{}"));
+        assertTrue(awaitResult().success);
+        drainRequests(3);
+
+        server.enqueue(new MockResponse().setBody("ok"));
+        server.enqueue(new MockResponse().setBody("ok"));
+        send(report("k3", "{}"), report("k4", "{}"));
+        assertTrue(awaitResult().success);
+        for (int i = 0; i < 2; i++) {
+            assertEquals(REPORT_PATH, server.takeRequest(5, TimeUnit.SECONDS).getPath());
+        }
+        assertEquals(5, server.getRequestCount());
+    }
+
+    @Test
+    public void badRequestFailsBatchWithoutFallback() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(400));
+
+        send(report("k1", "{}"), report("k2", "{}"));
+        Result result = awaitResult();
+        assertFalse(result.success);
+        assertTrue(result.message.contains("400"));
+        assertEquals(BATCH_PATH, server.takeRequest(5, TimeUnit.SECONDS).getPath());
+        assertNull(server.takeRequest(200, TimeUnit.MILLISECONDS));
+
+        // 批量上报仍然开启
+        server.enqueue(new MockResponse().setBody("ok"));
+        send(report("k1", "{}"), report("k2", "{}"));
+        assertTrue(awaitResult().success);
+        assertEquals(BATCH_PATH, server.takeRequest(5, TimeUnit.SECONDS).getPath());
+    }
+
+    @Test
+    public void singleReportPostedIndividually() throws Exception {
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        send(report("k1", "{\"smsId\":\"1\"}"));
+        assertTrue(awaitResult().success);
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals(REPORT_PATH, request.getPath());
+        assertEquals("k1", request.getHeader("Idempotency-Key"));
+        assertEquals("{\"smsId\":\"1\"}", request.getBody().readUtf8());
+    }
+
+    @Test
+    public void batchDisabledPostsIndividually() throws Exception {
+        PreferencesHelper.setReportBatchEnabled(context, false);
+        server.enqueue(new MockResponse().setBody("ok"));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        send(report("k1", "{}"), report("k2", "{}"));
+        assertTrue(awaitResult().success);
+        for (int i = 0; i < 2; i++) {
+            assertEquals(REPORT_PATH, server.takeRequest(5, TimeUnit.SECONDS).getPath());
+        }
+    }
+
+    @Test
+    public void individualFailureFailsWholeBatch() throws Exception {
+        PreferencesHelper.setReportBatchEnabled(context, false);
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return "k2".equals(request.getHeader("Idempotency-Key"))
+                        ? new MockResponse().setResponseCode(500)
+                        : new MockResponse().setBody("ok");
+            }
+        });
+
+        send(report("k1", "{}"), report("k2", "{}"), report("k3", "{}"));
+        Result result = awaitResult();
+        assertFalse(result.success);
+        assertTrue(result.message.contains("500"));
+        assertNull(results.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void batchUnsupportedCodes() {
+        assertTrue(ReportBatcher.isBatchUnsupported(404));
+        assertTrue(ReportBatcher.isBatchUnsupported(405));
+        assertTrue(ReportBatcher.isBatchUnsupported(415));
+        assertTrue(ReportBatcher.isBatchUnsupported(501));
+        assertFalse(ReportBatcher.isBatchUnsupported(400));
+        assertFalse(ReportBatcher.isBatchUnsupported(500));
+    }
+
+    private void send(ReportQueue.QueuedReport... batch) {
+        List<ReportQueue.QueuedReport> list = Arrays.asList(batch);
+        batcher.send(list, new ReportBatcher.ResultListener() {
+            @Override
+            public void onResult(boolean success, String message) {
+                results.add(new Result(success, message));
+            }
+        });
+    }
+
+    private Result awaitResult() throws InterruptedException {
+        Result result = results.poll(10, TimeUnit.SECONDS);
+        assertNotNull("没有收到发送结果", result);
+        return result;
+    }
+
+    private void drainRequests(int count) throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private static ReportQueue.QueuedReport report(String key, String json) {
+        ReportQueue.QueuedReport report = new ReportQueue.QueuedReport();
+        report.key = key;
+        report.label = "测试";
+        report.json = json;
+        return report;
+    }
+
+    private static String gunzip(Buffer body) throws IOException {
+        Buffer result = new Buffer();
+        GzipSource source = new GzipSource(body);
+        while (source.read(result, 8192) != -1) {
+            // 读取全部内容
+        }
+        return result.readUtf8();
+    }
+
+    private static class Result {
+        final boolean success;
+        final String message;
+
+        Result(boolean success, String message) {
+            this.success = success;
+            this.message = message;
+        }
+    }
+}
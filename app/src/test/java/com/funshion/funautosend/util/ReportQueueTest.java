@@ -0,0 +1,226 @@
+package com.funshion.funautosend.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ReportQueue 队列文件持久化、批量发送与上报暂缓测试
+ */
+public class ReportQueueTest {
+    // 达到该条数时立即发送，不等待批量窗口
+    private static final int MAX_BATCH_SIZE = 20;
+
+    private TestContext context;
+    // 批量发送器收到的批次，由测试给出发送结果
+    private final LinkedBlockingQueue<SentBatch> sent = new LinkedBlockingQueue<>();
+    private ReportBatcher batcher;
+    private NetworkDispatcher dispatcher;
+    private long now = 1_000_000L;
+
+    @Before
+    public void setUp() {
+        LogUtil.setLogEnabled(false);
+        context = new TestContext();
+        dispatcher = new NetworkDispatcher(context);
+        batcher = new ReportBatcher(context, null, null) {
+            @Override
+            void send(List<ReportQueue.QueuedReport> batch, ResultListener listener) {
+                sent.add(new SentBatch(batch, listener));
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = context.getFilesDir().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    @Test
+    public void backlogRestoredFromJournal() {
+        ReportQueue queue = newQueue();
+        queue.enqueue(payload(1), "短信", null);
+        queue.enqueue(payload(2), "邮件", null);
+        assertEquals(2, queue.getBacklogCount());
+        assertTrue(journal().exists());
+
+        ReportQueue restored = newQueue();
+        assertEquals(2, restored.getBacklogCount());
+    }
+
+    @Test
+    public void fullBatchSentImmediatelyAndRemovedOnSuccess() throws Exception {
+        ReportQueue queue = newQueue();
+        final AtomicInteger delivered = new AtomicInteger();
+        ApiClient.ApiCallback callback = new ApiClient.ApiCallback() {
+            @Override
+            public void onSuccess(String response) {
+                delivered.incrementAndGet();
+            }
+
+            @Override
+            public void onFailure(String errorMsg) {
+            }
+        };
+        for (int i = 0; i < MAX_BATCH_SIZE; i++) {
+            queue.enqueue(payload(i), "短信", callback);
+        }
+
+        SentBatch batch = sent.poll(5, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertEquals(MAX_BATCH_SIZE, batch.reports.size());
+        assertTrue(batch.reports.get(0).json.contains("\"id\":0"));
+        batch.listener.onResult(true, "ok");
+
+        assertEquals(0, queue.getBacklogCount());
+        assertEquals(MAX_BATCH_SIZE, delivered.get());
+        assertTrue(queue.getMetricsSummary().contains("已上报: " + MAX_BATCH_SIZE));
+        // 已上报的数据重启后不再恢复
+        assertEquals(0, newQueue().getBacklogCount());
+    }
+
+    @Test
+    public void failedBatchStaysQueued() throws Exception {
+        ReportQueue queue = newQueue();
+        for (int i = 0; i < MAX_BATCH_SIZE; i++) {
+            queue.enqueue(payload(i), "短信", null);
+        }
+        SentBatch batch = sent.poll(5, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        batch.listener.onResult(false, "批量上报失败，响应码: 500");
+
+        assertEquals(MAX_BATCH_SIZE, queue.getBacklogCount());
+        assertEquals(0, queue.getDroppedCount());
+        // 失败后按退避时间重试，不会立即再次发送
+        assertNull(sent.poll(500, TimeUnit.MILLISECONDS));
+        assertEquals(MAX_BATCH_SIZE, newQueue().getBacklogCount());
+    }
+
+    @Test
+    public void truncatedJournalRecordSkipped() throws IOException {
+        ReportQueue queue = newQueue();
+        queue.enqueue(payload(1), "短信", null);
+        // 模拟进程被杀时写了一半的记录
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(journal(), true), StandardCharsets.UTF_8)) {
+            writer.write("A{\"key\":\"broken\",\"json\":\"{\\\"id\\\"");
+        }
+        assertEquals(1, newQueue().getBacklogCount());
+    }
+
+    @Test
+    public void removeRecordsReplayed() throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(journal()), StandardCharsets.UTF_8)) {
+            writer.write("A{\"key\":\"k1\",\"label\":\"短信\",\"json\":\"{}\"}\n");
+            writer.write("A{\"key\":\"k2\",\"label\":\"短信\",\"json\":\"{}\"}\n");
+            writer.write("Fk2\n");
+            writer.write("Dk1\n");
+        }
+        ReportQueue queue = newQueue();
+        assertEquals(1, queue.getBacklogCount());
+        assertTrue(queue.getMetricsSummary().startsWith("积压: 1 条/2 字节"));
+    }
+
+    @Test
+    public void legacyPrefsQueueMigrated() {
+        context.getSharedPreferences("ReportQueuePrefs", 0).edit()
+                .putString("queuedReports", "[{\"key\":\"old\",\"label\":\"短信\",\"json\":\"{\\\"id\\\":9}\"}]")
+                .apply();
+        ReportQueue queue = newQueue();
+        assertEquals(1, queue.getBacklogCount());
+        assertFalse(context.getSharedPreferences("ReportQueuePrefs", 0).contains("queuedReports"));
+        assertEquals(1, newQueue().getBacklogCount());
+    }
+
+    @Test
+    public void drainPausedWhileTelemetryDeferred() throws Exception {
+        dispatcher.setTelemetryDeferred(true);
+        ReportQueue queue = newQueue();
+        for (int i = 0; i < MAX_BATCH_SIZE; i++) {
+            queue.enqueue(payload(i), "短信", null);
+        }
+        assertNull(sent.poll(500, TimeUnit.MILLISECONDS));
+
+        // 切换到不计费网络后立即发送
+        dispatcher.setTelemetryDeferred(false);
+        SentBatch batch = sent.poll(5, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertEquals(MAX_BATCH_SIZE, batch.reports.size());
+        assertNull(sent.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void deferredTimeNotCountedAsLostBatch() throws Exception {
+        ReportQueue queue = newQueue();
+        for (int i = 0; i < MAX_BATCH_SIZE; i++) {
+            queue.enqueue(payload(i), "短信", null);
+        }
+        assertNotNull(sent.poll(5, TimeUnit.SECONDS));
+
+        // 批次在调度器中等待不计费网络，超过批次超时时间也不重新发送
+        dispatcher.setTelemetryDeferred(true);
+        now += 10 * 60 * 1000;
+        queue.enqueue(payload(100), "短信", null);
+        assertNull(sent.poll(500, TimeUnit.MILLISECONDS));
+
+        // 恢复后暂缓的时间不计入超时
+        dispatcher.setTelemetryDeferred(false);
+        assertNull(sent.poll(500, TimeUnit.MILLISECONDS));
+
+        // 恢复后仍没有结果，超时后才视为丢失并重新发送
+        now += 2 * 60 * 1000;
+        queue.enqueue(payload(101), "短信", null);
+        SentBatch resent = sent.poll(5, TimeUnit.SECONDS);
+        assertNotNull(resent);
+        assertTrue(resent.reports.get(0).json.contains("\"id\":0"));
+    }
+
+    private ReportQueue newQueue() {
+        return new ReportQueue(context, batcher, dispatcher) {
+            @Override
+            long now() {
+                return now;
+            }
+        };
+    }
+
+    private File journal() {
+        return new File(context.getFilesDir(), "report_queue.journal");
+    }
+
+    private static ApiClient.ReportPayload payload(int id) {
+        return new ApiClient.SmsReportRequest(id, "13800000000", "95588", "2024-01-01 00:00:00",
+                "内容", "2024-01-01 00:00:01", 1, "sms");
+    }
+
+    private static class SentBatch {
+        final List<ReportQueue.QueuedReport> reports;
+        final ReportBatcher.ResultListener listener;
+
+        SentBatch(List<ReportQueue.QueuedReport> reports, ReportBatcher.ResultListener listener) {
+            this.reports = reports;
+            this.listener = listener;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.funshion.funautosend.util;
+
+import android.telephony.SmsManager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * SendSimSelector 选择策略测试
+ */
+public class SendSimSelectorTest {
+    private TestContext context;
+    private SimCircuitBreaker breaker;
+    private boolean dualSim = true;
+    private SendSimSelector selector;
+
+    @Before
+    public void setUp() {
+        LogUtil.setLogEnabled(false);
+        context = new TestContext();
+        breaker = new SimCircuitBreaker(context);
+        selector = new SendSimSelector(context, breaker) {
+            @Override
+            boolean isDualSimActive() {
+                return dualSim;
+            }
+        };
+    }
+
+    @Test
+    public void sameSimByDefault() {
+        assertEquals("2", selector.select("2"));
+        assertEquals("1", selector.select("1"));
+    }
+
+    @Test
+    public void receivedSimUsedWithoutDualSim() {
+        PreferencesHelper.saveSendSimPolicy(context, "ROUND_ROBIN");
+        dualSim = false;
+        assertEquals("2", selector.select("2"));
+        assertEquals("2", selector.select("2"));
+    }
+
+    @Test
+    public void roundRobinAlternates() {
+        PreferencesHelper.saveSendSimPolicy(context, "ROUND_ROBIN");
+        assertEquals("1", selector.select("2"));
+        assertEquals("2", selector.select("2"));
+        assertEquals("1", selector.select("2"));
+        assertEquals("2", selector.select("1"));
+    }
+
+    @Test
+    public void roundRobinSkipsOpenBreaker() {
+        PreferencesHelper.saveSendSimPolicy(context, "ROUND_ROBIN");
+        openBreaker("1");
+        assertEquals("2", selector.select("1"));
+        assertEquals("2", selector.select("1"));
+    }
+
+    @Test
+    public void roundRobinSkipsFailingSim() {
+        PreferencesHelper.saveSendSimPolicy(context, "ROUND_ROBIN");
+        recordResults("2", 1, 2);
+        assertEquals("1", selector.select("2"));
+        assertEquals("1", selector.select("2"));
+        assertEquals("1", selector.select("2"));
+    }
+
+    @Test
+    public void roundRobinFallsBackWhenBothFailing() {
+        PreferencesHelper.saveSendSimPolicy(context, "ROUND_ROBIN");
+        recordResults("1", 0, 3);
+        recordResults("2", 0, 3);
+        assertEquals("1", selector.select("2"));
+    }
+
+    @Test
+    public void receivedSimUsedWhenBothOpen() {
+        PreferencesHelper.saveSendSimPolicy(context, "ROUND_ROBIN");
+        openBreaker("1");
+        openBreaker("2");
+        assertEquals("2", selector.select("2"));
+
+        PreferencesHelper.saveSendSimPolicy(context, "LEAST_LOADED");
+        assertEquals("1", selector.select("1"));
+    }
+
+    @Test
+    public void leastLoadedPrefersReceivedSimOnTie() {
+        PreferencesHelper.saveSendSimPolicy(context, "LEAST_LOADED");
+        assertEquals("1", selector.select("1"));
+        assertEquals("2", selector.select("2"));
+    }
+
+    @Test
+    public void leastLoadedPicksSimWithFewerPendingParts() {
+        PreferencesHelper.saveSendSimPolicy(context, "LEAST_LOADED");
+        selector.onSubmitted("1", 3);
+        assertEquals("2", selector.select("1"));
+
+        selector.onSubmitted("2", 4);
+        assertEquals("1", selector.select("2"));
+
+        // 回执到达后待回执计数减少
+        selector.onSendResult("2", true);
+        selector.onSendResult("2", true);
+        assertEquals("2", selector.select("1"));
+    }
+
+    @Test
+    public void leastLoadedAvoidsFailingSim() {
+        PreferencesHelper.saveSendSimPolicy(context, "LEAST_LOADED");
+        recordResults("1", 2, 2);
+        assertEquals("2", selector.select("1"));
+    }
+
+    @Test
+    public void leastLoadedSkipsOpenBreaker() {
+        PreferencesHelper.saveSendSimPolicy(context, "LEAST_LOADED");
+        openBreaker("2");
+        selector.onSubmitted("1", 10);
+        assertEquals("1", selector.select("2"));
+    }
+
+    @Test
+    public void loadSummaryReportsPendingAndFailureRate() {
+        selector.onSubmitted("1", 2);
+        recordResults("2", 1, 1);
+        assertEquals("SIM1 待回执: 2 失败率: 0%, SIM2 待回执: 0 失败率: 50%", selector.getLoadSummary());
+    }
+
+    @Test
+    public void parsePolicy() {
+        assertEquals(SendSimSelector.Policy.ROUND_ROBIN, SendSimSelector.Policy.parse("round_robin"));
+        assertEquals(SendSimSelector.Policy.LEAST_LOADED, SendSimSelector.Policy.parse("LEAST_LOADED"));
+        assertEquals(SendSimSelector.Policy.SAME_SIM, SendSimSelector.Policy.parse("unknown"));
+        assertEquals(SendSimSelector.Policy.SAME_SIM, SendSimSelector.Policy.parse(null));
+    }
+
+    private void recordResults(String simId, int successes, int failures) {
+        for (int i = 0; i < successes; i++) {
+            selector.onSendResult(simId, true);
+        }
+        for (int i = 0; i < failures; i++) {
+            selector.onSendResult(simId, false);
+        }
+    }
+
+    private void openBreaker(String simId) {
+        breaker.onSendResult(simId, SmsManager.RESULT_ERROR_RADIO_OFF, false);
+        breaker.onSendResult(simId, SmsManager.RESULT_ERROR_RADIO_OFF, false);
+    }
+}
@@ -0,0 +1,207 @@
+package com.funshion.funautosend.util;
+
+import android.telephony.SmsManager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SimCircuitBreaker 状态转换测试
+ */
+public class SimCircuitBreakerTest {
+    private static final String SIM = "1";
+    private static final int RADIO_OFF = SmsManager.RESULT_ERROR_RADIO_OFF;
+    private static final int NO_SERVICE = SmsManager.RESULT_ERROR_NO_SERVICE;
+    private static final int GENERIC_FAILURE = SmsManager.RESULT_ERROR_GENERIC_FAILURE;
+
+    private TestContext context;
+    private long now = 1_000_000L;
+    private SimCircuitBreaker breaker;
+
+    @Before
+    public void setUp() {
+        LogUtil.setLogEnabled(false);
+        context = new TestContext();
+        breaker = new SimCircuitBreaker(context) {
+            @Override
+            long now() {
+                return now;
+            }
+        };
+    }
+
+    @Test
+    public void opensAfterConsecutiveRadioFailures() {
+        assertTrue(breaker.tryAcquire(SIM));
+        breaker.onSendResult(SIM, RADIO_OFF, false);
+        assertEquals(SimCircuitBreaker.State.CLOSED, breaker.getState(SIM));
+
+        breaker.onSendResult(SIM, NO_SERVICE, false);
+        assertEquals(SimCircuitBreaker.State.OPEN, breaker.getState(SIM));
+        assertFalse(breaker.tryAcquire(SIM));
+    }
+
+    @Test
+    public void nonRadioFailuresDoNotOpen() {
+        breaker.onSendResult(SIM, GENERIC_FAILURE, false);
+        breaker.onSendResult(SIM, GENERIC_FAILURE, false);
+        breaker.onSendResult(SIM, GENERIC_FAILURE, false);
+        assertEquals(SimCircuitBreaker.State.CLOSED, breaker.getState(SIM));
+        assertTrue(breaker.tryAcquire(SIM));
+    }
+
+    @Test
+    public void successResetsFailureCount() {
+        breaker.onSendResult(SIM, RADIO_OFF, false);
+        breaker.onSendResult(SIM, 0, true);
+        breaker.onSendResult(SIM, RADIO_OFF, false);
+        assertEquals(SimCircuitBreaker.State.CLOSED, breaker.getState(SIM));
+    }
+
+    @Test
+    public void simsAreTrackedIndependently() {
+        openBreaker();
+        assertEquals(SimCircuitBreaker.State.CLOSED, breaker.getState("2"));
+        assertTrue(breaker.tryAcquire("2"));
+        // 未指定SIM卡与空字符串使用同一个熔断器
+        breaker.onSendResult(null, RADIO_OFF, false);
+        breaker.onSendResult("", RADIO_OFF, false);
+        assertEquals(SimCircuitBreaker.State.OPEN, breaker.getState(null));
+    }
+
+    @Test
+    public void halfOpenAllowsSingleProbeAfterCooldown() {
+        openBreaker();
+        now += 29_999;
+        assertFalse(breaker.tryAcquire(SIM));
+
+        now += 1;
+        assertTrue(breaker.tryAcquire(SIM));
+        assertEquals(SimCircuitBreaker.State.HALF_OPEN, breaker.getState(SIM));
+        assertFalse(breaker.tryAcquire(SIM));
+    }
+
+    @Test
+    public void successfulProbeCloses() {
+        openBreaker();
+        now += 30_000;
+        assertTrue(breaker.tryAcquire(SIM));
+
+        breaker.onSendResult(SIM, 0, true);
+        assertEquals(SimCircuitBreaker.State.CLOSED, breaker.getState(SIM));
+        assertTrue(breaker.tryAcquire(SIM));
+        assertTrue(breaker.tryAcquire(SIM));
+    }
+
+    @Test
+    public void failedProbeDoublesCooldown() {
+        openBreaker();
+        now += 30_000;
+        assertTrue(breaker.tryAcquire(SIM));
+
+        // 探测短信的任何失败都视为探测失败
+        breaker.onSendResult(SIM, GENERIC_FAILURE, false);
+        assertEquals(SimCircuitBreaker.State.OPEN, breaker.getState(SIM));
+
+        now += 30_000;
+        assertFalse(breaker.tryAcquire(SIM));
+        now += 30_000;
+        assertTrue(breaker.tryAcquire(SIM));
+        assertEquals(SimCircuitBreaker.State.HALF_OPEN, breaker.getState(SIM));
+    }
+
+    @Test
+    public void cooldownIsCapped() {
+        openBreaker();
+        // 30s -> 60s -> 120s -> 240s -> 300s（上限）
+        for (int i = 0; i < 5; i++) {
+            now += 5 * 60 * 1000;
+            assertTrue(breaker.tryAcquire(SIM));
+            breaker.onSendResult(SIM, RADIO_OFF, false);
+        }
+        now += 5 * 60 * 1000 - 1;
+        assertFalse(breaker.tryAcquire(SIM));
+        now += 1;
+        assertTrue(breaker.tryAcquire(SIM));
+    }
+
+    @Test
+    public void successAfterFailedProbeResetsCooldown() {
+        openBreaker();
+        now += 30_000;
+        breaker.tryAcquire(SIM);
+        breaker.onSendResult(SIM, RADIO_OFF, false);
+        now += 60_000;
+        breaker.tryAcquire(SIM);
+        breaker.onSendResult(SIM, 0, true);
+
+        openBreaker();
+        now += 30_000;
+        assertTrue(breaker.tryAcquire(SIM));
+    }
+
+    @Test
+    public void releaseProbeAllowsAnotherProbe() {
+        openBreaker();
+        now += 30_000;
+        assertTrue(breaker.tryAcquire(SIM));
+        assertFalse(breaker.tryAcquire(SIM));
+
+        breaker.releaseProbe(SIM);
+        assertTrue(breaker.tryAcquire(SIM));
+        assertFalse(breaker.tryAcquire(SIM));
+    }
+
+    @Test
+    public void releaseProbeIgnoredWhenNotHalfOpen() {
+        openBreaker();
+        breaker.releaseProbe(SIM);
+        assertFalse(breaker.tryAcquire(SIM));
+    }
+
+    @Test
+    public void holdPersistsForwards() {
+        openBreaker();
+        SimCircuitBreaker.HeldForward forward = new SimCircuitBreaker.HeldForward(
+                "13800000000", "hello", SIM, "42", "2024-01-01 00:00:00", false,
+                Collections.emptyList());
+        breaker.hold(forward, SIM);
+
+        assertEquals(1, breaker.getHeldCount());
+        String saved = context.getSharedPreferences("SimCircuitBreakerPrefs", 0)
+                .getString("heldForwards", null);
+        assertNotNull(saved);
+        assertTrue(saved.contains("\"smsId\":\"42\""));
+        assertTrue(saved.contains("\"heldSimId\":\"1\""));
+        assertTrue(breaker.getStatusSummary().contains("暂存1条"));
+    }
+
+    @Test
+    public void statusSummaryEmptyWhenAllClosed() {
+        assertEquals("", breaker.getStatusSummary());
+        breaker.tryAcquire(SIM);
+        assertEquals("", breaker.getStatusSummary());
+        openBreaker();
+        assertEquals("SIM1:熔断", breaker.getStatusSummary());
+    }
+
+    @Test
+    public void noHeldForwardsSavedInitially() {
+        assertNull(context.getSharedPreferences("SimCircuitBreakerPrefs", 0).getString("heldForwards", null));
+        assertEquals(0, breaker.getHeldCount());
+    }
+
+    private void openBreaker() {
+        breaker.onSendResult(SIM, RADIO_OFF, false);
+        breaker.onSendResult(SIM, RADIO_OFF, false);
+        assertEquals(SimCircuitBreaker.State.OPEN, breaker.getState(SIM));
+    }
+}
@@ -0,0 +1,185 @@
+package com.funshion.funautosend.util;
+
+import android.content.SharedPreferences;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SmsAggregator 聚合配置解析、摘要内容构建与批次持久化测试
+ */
+public class SmsAggregatorTest {
+    private TestContext context;
+    // 交给发送流程的摘要，每项为摘要包含的短信条数
+    private final LinkedBlockingQueue<Integer> sent = new LinkedBlockingQueue<>();
+    // 批次已到期、发送线程开始发送
+    private final CountDownLatch sendStarted = new CountDownLatch(1);
+    // 放行发送，未放行时发送线程停在发送流程之前
+    private final CountDownLatch sendAllowed = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        LogUtil.setLogEnabled(false);
+        context = new TestContext();
+    }
+
+    @Test
+    public void aggregateWindowParsing() {
+        assertEquals(0, SmsAggregator.getAggregateWindowMs(null));
+        assertEquals(0, SmsAggregator.getAggregateWindowMs(fields()));
+        assertEquals(30_000, SmsAggregator.getAggregateWindowMs(fields("aggregateWindow", "30")));
+        assertEquals(30_000, SmsAggregator.getAggregateWindowMs(fields("aggregateWindow", "30.0")));
+        assertEquals(0, SmsAggregator.getAggregateWindowMs(fields("aggregateWindow", "")));
+        assertEquals(0, SmsAggregator.getAggregateWindowMs(fields("aggregateWindow", "abc")));
+        assertEquals(0, SmsAggregator.getAggregateWindowMs(fields("aggregateWindow", "-5")));
+    }
+
+    @Test
+    public void maxDelayDefaultsToThreeWindows() {
+        assertEquals(90_000, SmsAggregator.getMaxDelayMs(fields("aggregateWindow", "30")));
+    }
+
+    @Test
+    public void maxDelayClamped() {
+        // 不小于聚合窗口
+        assertEquals(30_000, SmsAggregator.getMaxDelayMs(fields("aggregateWindow", "30", "aggregateMaxDelay", "10")));
+        // 不超过上限
+        assertEquals(300_000, SmsAggregator.getMaxDelayMs(fields("aggregateWindow", "200")));
+        assertEquals(45_000, SmsAggregator.getMaxDelayMs(fields("aggregateWindow", "30", "aggregateMaxDelay", "45")));
+    }
+
+    @Test
+    public void singleMessageDigestMatchesNormalForward() {
+        Map<String, String> fields = fields("id", "7", "remark", "工行");
+        List<SmsAggregator.PendingSms> messages = Collections.singletonList(sms("95588", "余额变动", "10:00"));
+        assertEquals("7,工行,95588,余额变动", SmsHelper.buildDigestSmsContent(fields, messages));
+        assertEquals("余额变动", SmsHelper.buildDigestEmailContent(messages));
+    }
+
+    @Test
+    public void multiMessageDigestListsEveryMessage() {
+        Map<String, String> fields = fields("id", "7", "remark", "工行");
+        List<SmsAggregator.PendingSms> messages = Arrays.asList(
+                sms("95588", "第一段", "10:00"), sms("95588", "第二段", "10:01"), sms("10086", "话费", "10:02"));
+        assertEquals("7,工行,共3条\n1.95588,第一段\n2.95588,第二段\n3.10086,话费",
+                SmsHelper.buildDigestSmsContent(fields, messages));
+        assertEquals("【10:00 95588】\n第一段\n\n【10:01 95588】\n第二段\n\n【10:02 10086】\n话费\n\n",
+                SmsHelper.buildDigestEmailContent(messages));
+    }
+
+    @Test
+    public void digestUsesDefaultsForMissingFields() {
+        List<SmsAggregator.PendingSms> messages = Collections.singletonList(sms("95588", "内容", "10:00"));
+        assertEquals("未知ID,无备注,95588,内容", SmsHelper.buildDigestSmsContent(fields(), messages));
+    }
+
+    @Test
+    public void addedMessagesArePersistedAndRestored() {
+        SmsAggregator aggregator = new SmsAggregator(context);
+        Map<String, String> fields = fields("id", "7", "aggregateWindow", "60");
+        aggregator.add(fields, "13800000000", "95588", "第一段", "1", "1", "10:00");
+        aggregator.add(fields, "13800000000", "95588", "第二段", "2", "1", "10:01");
+        // 不同目标号码使用不同批次
+        aggregator.add(fields, "13900000000", "95588", "第一段", "1", "1", "10:00");
+        assertEquals(3, aggregator.getPendingCount());
+
+        String saved = context.getSharedPreferences("SmsAggregatorPrefs", 0).getString("pendingBatches", null);
+        assertNotNull(saved);
+        assertTrue(saved.contains("7|13800000000"));
+        assertTrue(saved.contains("7|13900000000"));
+
+        // 进程重启后恢复未发送的批次
+        SmsAggregator restored = new SmsAggregator(context);
+        assertEquals(3, restored.getPendingCount());
+    }
+
+    @Test
+    public void dueBatchStaysPersistedUntilSent() throws Exception {
+        SmsAggregator aggregator = recordingAggregator();
+        // 聚合窗口为0时立即到期
+        aggregator.add(fields("id", "7"), "13800000000", "95588", "内容", "1", "1", "10:00");
+        assertTrue(sendStarted.await(5, TimeUnit.SECONDS));
+
+        // 发送完成前进程被杀，重启后批次仍在，并重新发送
+        assertEquals(1, aggregator.getPendingCount());
+        assertNotNull(prefs().getString("flushingBatches", null));
+        assertNull(prefs().getString("pendingBatches", null));
+        SmsAggregator restored = recordingAggregator();
+        assertEquals(1, restored.getPendingCount());
+
+        sendAllowed.countDown();
+        assertEquals(Integer.valueOf(1), sent.poll(5, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(1), sent.poll(5, TimeUnit.SECONDS));
+        waitForPendingCount(aggregator, 0);
+        waitForPendingCount(restored, 0);
+        assertNull(prefs().getString("flushingBatches", null));
+    }
+
+    @Test
+    public void failedSendDoesNotKeepBatch() throws Exception {
+        SmsAggregator aggregator = new SmsAggregator(context) {
+            @Override
+            void sendDigest(Map<String, String> fields, String targetPhone, List<PendingSms> messages) {
+                sent.add(messages.size());
+                throw new IllegalStateException("boom");
+            }
+        };
+        aggregator.add(fields("id", "7"), "13800000000", "95588", "内容", "1", "1", "10:00");
+        assertEquals(Integer.valueOf(1), sent.poll(5, TimeUnit.SECONDS));
+        waitForPendingCount(aggregator, 0);
+        assertNull(prefs().getString("flushingBatches", null));
+    }
+
+    private SmsAggregator recordingAggregator() {
+        return new SmsAggregator(context) {
+            @Override
+            void sendDigest(Map<String, String> fields, String targetPhone, List<PendingSms> messages) {
+                sendStarted.countDown();
+                try {
+                    sendAllowed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                sent.add(messages.size());
+            }
+        };
+    }
+
+    private SharedPreferences prefs() {
+        return context.getSharedPreferences("SmsAggregatorPrefs", 0);
+    }
+
+    private static void waitForPendingCount(SmsAggregator aggregator, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (aggregator.getPendingCount() != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, aggregator.getPendingCount());
+    }
+
+    private static Map<String, String> fields(String... keyValues) {
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            fields.put(keyValues[i], keyValues[i + 1]);
+        }
+        return fields;
+    }
+
+    private static SmsAggregator.PendingSms sms(String sender, String content, String time) {
+        return new SmsAggregator.PendingSms(sender, content, "id-" + time, "1", time);
+    }
+}
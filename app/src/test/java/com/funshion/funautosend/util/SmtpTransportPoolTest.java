@@ -0,0 +1,227 @@
+package com.funshion.funautosend.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * SmtpTransportPool SMTP配置、连接复用与发送失败处理测试，连接复用和吞吐量使用本地SMTP服务验证
+ */
+public class SmtpTransportPoolTest {
+    private TestContext context;
+    private LocalSmtpServer server;
+    private SmtpTransportPool pool;
+    private long now = 1_000_000L;
+
+    @Before
+    public void setUp() throws Exception {
+        LogUtil.setLogEnabled(false);
+        context = new TestContext();
+        server = new LocalSmtpServer();
+        pool = new SmtpTransportPool(false) {
+            @Override
+            long now() {
+                return now;
+            }
+        };
+        pool.configure(new SmtpTransportPool.SmtpConfig("127.0.0.1", String.valueOf(server.getPort()),
+                "sender@example.com", "secret"));
+    }
+
+    @After
+    public void tearDown() {
+        pool.closeIdleTransports(0);
+        server.shutdown();
+        SmtpTransportPool.getInstance().configure(new SmtpTransportPool.SmtpConfig(null, null, null, null));
+    }
+
+    @Test
+    public void emptyFieldsFallBackToDefaults() {
+        SmtpTransportPool.SmtpConfig config = new SmtpTransportPool.SmtpConfig(null, "", " ", "secret");
+        assertEquals(SmtpTransportPool.DEFAULT_SMTP_HOST, config.host);
+        assertEquals(SmtpTransportPool.DEFAULT_SMTP_PORT, config.port);
+        assertEquals(SmtpTransportPool.DEFAULT_SMTP_USER, config.user);
+        assertEquals("secret", config.password);
+    }
+
+    @Test
+    public void equalsComparesAllFields() {
+        SmtpTransportPool.SmtpConfig config = new SmtpTransportPool.SmtpConfig("smtp.example.com", "465", "a@example.com", "p");
+        SmtpTransportPool.SmtpConfig same = new SmtpTransportPool.SmtpConfig("smtp.example.com", "465", "a@example.com", "p");
+        assertEquals(config, same);
+        assertEquals(config.hashCode(), same.hashCode());
+        assertNotEquals(config, new SmtpTransportPool.SmtpConfig("smtp.example.com", "465", "a@example.com", "q"));
+        assertNotEquals(config, new SmtpTransportPool.SmtpConfig("smtp.example.com", "587", "a@example.com", "p"));
+        // 为空的字段与显式填写默认值等价
+        assertEquals(new SmtpTransportPool.SmtpConfig(null, null, null, null),
+                new SmtpTransportPool.SmtpConfig(SmtpTransportPool.DEFAULT_SMTP_HOST, SmtpTransportPool.DEFAULT_SMTP_PORT,
+                        SmtpTransportPool.DEFAULT_SMTP_USER, SmtpTransportPool.DEFAULT_SMTP_PASSWORD));
+    }
+
+    @Test
+    public void preferencesRoundTrip() {
+        assertEquals(new SmtpTransportPool.SmtpConfig(null, null, null, null), PreferencesHelper.getSmtpConfig(context));
+        SmtpTransportPool.SmtpConfig config = new SmtpTransportPool.SmtpConfig("smtp.example.com", "465", "a@example.com", "p");
+        PreferencesHelper.saveSmtpConfig(context, config);
+        assertEquals(config, PreferencesHelper.getSmtpConfig(context));
+    }
+
+    @Test
+    public void configureRebuildsSessionOnlyWhenChanged() {
+        SmtpTransportPool pool = SmtpTransportPool.getInstance();
+        SmtpTransportPool.SmtpConfig config = new SmtpTransportPool.SmtpConfig("smtp.example.com", "587", "a@example.com", "p");
+        pool.configure(config);
+        javax.mail.Session session = pool.getSession();
+        assertEquals("a@example.com", pool.getSender());
+        assertEquals("smtp.example.com", session.getProperty("mail.smtp.host"));
+        assertEquals("587", session.getProperty("mail.smtp.port"));
+
+        pool.configure(new SmtpTransportPool.SmtpConfig("smtp.example.com", "587", "a@example.com", "p"));
+        assertSame(session, pool.getSession());
+
+        pool.configure(new SmtpTransportPool.SmtpConfig("smtp.example.com", "587", "b@example.com", "p"));
+        assertNotSame(session, pool.getSession());
+        assertEquals("b@example.com", pool.getSender());
+    }
+
+    @Test
+    public void remoteFieldsMergeWithSavedConfig() {
+        PreferencesHelper.saveSmtpConfig(context,
+                new SmtpTransportPool.SmtpConfig("smtp.example.com", "465", "a@example.com", "p"));
+
+        RemoteSettings.apply(context, rules("smtpUser", "b@example.com", "smtpPassword", "q"));
+
+        SmtpTransportPool.SmtpConfig expected = new SmtpTransportPool.SmtpConfig("smtp.example.com", "465", "b@example.com", "q");
+        assertEquals(expected, PreferencesHelper.getSmtpConfig(context));
+        assertEquals(expected, SmtpTransportPool.getInstance().getConfig());
+    }
+
+    private static List<Map<String, Object>> rules(String... keyValues) {
+        Map<String, Object> fields = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            fields.put(keyValues[i], keyValues[i + 1]);
+        }
+        Map<String, Object> rule = new HashMap<>();
+        rule.put("fields", fields);
+        return Collections.singletonList(rule);
+    }
+
+    @Test
+    public void reusesAuthenticatedConnection() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            pool.send(message("第" + i + "封"));
+        }
+        assertEquals(10, server.getMessages().size());
+        assertEquals(1, server.getConnectionCount());
+        assertEquals("空闲连接: 1, 新建连接: 1, 复用连接: 9, 发送失败: 0", pool.getStatsSummary());
+    }
+
+    @Test
+    public void pooledSendIsFasterThanConnectingPerMessage() throws Exception {
+        // 每个新连接等待50ms，相当于TLS握手和登录认证的耗时
+        server.connectDelayMs = 50;
+        int count = 10;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            pool.send(message("连接池 " + i));
+        }
+        long pooledMs = (System.nanoTime() - start) / 1_000_000;
+        assertEquals(1, server.getConnectionCount());
+
+        start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            // 原来的发送方式：每封邮件单独建立连接并登录
+            Transport.send(message("逐封连接 " + i));
+        }
+        long perMessageMs = (System.nanoTime() - start) / 1_000_000;
+        assertEquals(1 + count, server.getConnectionCount());
+        assertEquals(2 * count, server.getMessages().size());
+
+        assertTrue("连接池: " + pooledMs + "ms, 逐封连接: " + perMessageMs + "ms", pooledMs * 2 < perMessageMs);
+    }
+
+    @Test
+    public void lostReplyAfterDataIsNotResent() throws Exception {
+        server.dropReplyAfterData = true;
+        try {
+            pool.send(message("回复丢失"));
+            fail("回复丢失时应当抛出异常");
+        } catch (MessagingException expected) {
+            // 由发件箱决定是否重试
+        }
+        // 服务器已经收下邮件，连接池没有用新连接重发
+        assertEquals(1, server.getMessages().size());
+        assertEquals(1, server.getConnectionCount());
+
+        server.dropReplyAfterData = false;
+        pool.send(message("下一封"));
+        assertEquals(2, server.getMessages().size());
+        assertEquals(2, server.getConnectionCount());
+        assertTrue(pool.getStatsSummary().endsWith("发送失败: 1"));
+    }
+
+    @Test
+    public void brokenReusedConnectionFailsWithoutResend() throws Exception {
+        pool.send(message("第一封"));
+        server.closeClients();
+        Thread.sleep(100);
+
+        // 空闲时间不到NOOP检查阈值，直接复用已断开的连接
+        now += 1000;
+        try {
+            pool.send(message("第二封"));
+            fail("连接已断开时应当抛出异常");
+        } catch (MessagingException expected) {
+            // 由发件箱决定是否重试
+        }
+        assertEquals(1, server.getMessages().size());
+        assertEquals(1, server.getConnectionCount());
+
+        // 出错的连接已关闭，下一次发送使用新连接
+        pool.send(message("第二封"));
+        assertEquals(2, server.getMessages().size());
+        assertEquals(2, server.getConnectionCount());
+    }
+
+    @Test
+    public void idleConnectionCheckedBeforeReuse() throws Exception {
+        pool.send(message("第一封"));
+        server.closeClients();
+        Thread.sleep(100);
+
+        // 空闲超过NOOP检查阈值，复用前发现连接已断开，改用新连接
+        now += 11_000;
+        pool.send(message("第二封"));
+        assertEquals(2, server.getMessages().size());
+        assertEquals(2, server.getConnectionCount());
+        assertTrue(pool.getStatsSummary().endsWith("发送失败: 0"));
+    }
+
+    private Message message(String subject) throws MessagingException {
+        Message message = new MimeMessage(pool.getSession());
+        message.setFrom(new InternetAddress(pool.getSender()));
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse("to@example.com"));
+        message.setSubject(subject);
+        message.setText("内容: " + subject);
+        return message;
+    }
+}
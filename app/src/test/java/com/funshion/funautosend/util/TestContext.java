@@ -0,0 +1,62 @@
+package com.funshion.funautosend.util;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.SharedPreferences;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 本地单元测试使用的Context
+ * SharedPreferences保存在内存中，系统服务一律返回null，各工具类按服务不可用处理
+ */
+public class TestContext extends ContextWrapper {
+    private final Map<String, SharedPreferences> preferences = new HashMap<>();
+    private File filesDir;
+
+    public TestContext() {
+        super(null);
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    @Override
+    public String getPackageName() {
+        return "com.funshion.funautosend";
+    }
+
+    @Override
+    public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+        SharedPreferences prefs = preferences.get(name);
+        if (prefs == null) {
+            prefs = new InMemorySharedPreferences();
+            preferences.put(name, prefs);
+        }
+        return prefs;
+    }
+
+    @Override
+    public Object getSystemService(String name) {
+        return null;
+    }
+
+    @Override
+    public synchronized File getFilesDir() {
+        if (filesDir == null) {
+            try {
+                filesDir = Files.createTempDirectory("funautosend-test").toFile();
+                filesDir.deleteOnExit();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return filesDir;
+    }
+}
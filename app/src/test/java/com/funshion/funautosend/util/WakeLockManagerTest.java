@@ -0,0 +1,85 @@
+package com.funshion.funautosend.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * WakeLockManager 凭证计数测试
+ * 测试环境没有PowerManager，只验证凭证计数、超时释放和统计
+ */
+public class WakeLockManagerTest {
+    private static final long LONG_TIMEOUT_MS = 60 * 1000;
+
+    private WakeLockManager manager;
+
+    @Before
+    public void setUp() {
+        LogUtil.setLogEnabled(false);
+        manager = new WakeLockManager(new TestContext());
+    }
+
+    @Test
+    public void countsActiveHolds() {
+        WakeLockManager.Hold scan = manager.acquire(WakeLockManager.TaskType.SCAN, LONG_TIMEOUT_MS);
+        WakeLockManager.Hold send = manager.acquire(WakeLockManager.TaskType.SEND, LONG_TIMEOUT_MS);
+        WakeLockManager.Hold sendAgain = manager.acquire(WakeLockManager.TaskType.SEND, LONG_TIMEOUT_MS);
+        assertEquals(3, manager.getActiveCount());
+
+        send.release();
+        assertEquals(2, manager.getActiveCount());
+        scan.release();
+        sendAgain.release();
+        assertEquals(0, manager.getActiveCount());
+    }
+
+    @Test
+    public void repeatedReleaseIsIgnored() {
+        WakeLockManager.Hold first = manager.acquire(WakeLockManager.TaskType.REFRESH, LONG_TIMEOUT_MS);
+        manager.acquire(WakeLockManager.TaskType.REPORT, LONG_TIMEOUT_MS);
+        first.release();
+        first.release();
+        assertEquals(1, manager.getActiveCount());
+    }
+
+    @Test
+    public void timedOutHoldIsReleased() throws InterruptedException {
+        WakeLockManager.Hold hold = manager.acquire(WakeLockManager.TaskType.SEND, 50);
+        manager.acquire(WakeLockManager.TaskType.SCAN, LONG_TIMEOUT_MS);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (manager.getActiveCount() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, manager.getActiveCount());
+        assertTrue(manager.getStatsSummary().contains("转发发送: 1次/0秒/超时1次"));
+
+        // 超时后任务再释放不会重复计数
+        hold.release();
+        assertEquals(1, manager.getActiveCount());
+    }
+
+    @Test
+    public void releaseAllClearsHolds() {
+        WakeLockManager.Hold hold = manager.acquire(WakeLockManager.TaskType.SCAN, LONG_TIMEOUT_MS);
+        manager.acquire(WakeLockManager.TaskType.REFRESH, LONG_TIMEOUT_MS);
+        manager.releaseAll();
+        assertEquals(0, manager.getActiveCount());
+
+        hold.release();
+        assertEquals(0, manager.getActiveCount());
+        WakeLockManager.Hold next = manager.acquire(WakeLockManager.TaskType.SCAN, LONG_TIMEOUT_MS);
+        assertEquals(1, manager.getActiveCount());
+        next.release();
+        assertEquals(0, manager.getActiveCount());
+    }
+
+    @Test
+    public void statsCountAcquiresPerTaskType() {
+        manager.acquire(WakeLockManager.TaskType.SCAN, LONG_TIMEOUT_MS).release();
+        manager.acquire(WakeLockManager.TaskType.SCAN, LONG_TIMEOUT_MS).release();
+        manager.acquire(WakeLockManager.TaskType.REPORT, LONG_TIMEOUT_MS);
+        assertEquals("总持有: 0秒, 当前凭证: 1, 短信扫描: 2次/0秒, 数据上报: 1次/0秒", manager.getStatsSummary());
+    }
+}